@@ -0,0 +1,62 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.algorithm.model.ExplorationStrategy;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.algorithm.quality.StateActionQuality;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Chooses the next {@link Action} to take from a {@link State}, the same way for every kind of
+ * agent.
+ */
+/* package-private */ final class ActionSelector {
+  @Nonnull
+  private final ExplorationStrategy explorationStrategy;
+  @Nonnull
+  private final QualityMap qualityMap;
+
+  /* package-private */ ActionSelector(ExplorationStrategy explorationStrategy,
+      QualityMap qualityMap) {
+    this.explorationStrategy = explorationStrategy;
+    this.qualityMap = qualityMap;
+  }
+
+  /* package-private */ Action selectAction(State state) {
+    return explorationStrategy.getNextAction(buildTriplets(state));
+  }
+
+  private SortedSet<StateActionQuality> buildTriplets(State state) {
+    assert state != null : "state must not be null";
+    SortedSet<StateActionQuality> pairs = new TreeSet<>();
+
+    // Using streams is not as fast as this plain ol' iteration
+    for (Action action : state.getActions()) {
+      if (action == null) {
+        continue;
+      }
+      pairs.add(qualityMap.getTriplet(state, action));
+    }
+    return pairs;
+  }
+}
@@ -21,14 +21,11 @@ import io.github.cantido.qlearner.algorithm.model.ExplorationStrategy;
 import io.github.cantido.qlearner.algorithm.model.Quality;
 import io.github.cantido.qlearner.algorithm.model.QualityMap;
 import io.github.cantido.qlearner.algorithm.quality.QualityUpdater;
-import io.github.cantido.qlearner.algorithm.quality.StateActionQuality;
 import io.github.cantido.qlearner.client.Action;
 import io.github.cantido.qlearner.client.Environment;
 import io.github.cantido.qlearner.client.State;
 
 import java.util.Optional;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -55,13 +52,11 @@ public class Agent {
   private final Environment environment;
 
   @Nonnull
-  private final ExplorationStrategy explorationStrategy;
-  @Nonnull
-  private final QualityMap qualityMap;
+  private final ActionSelector actionSelector;
   @Nonnull
   private final ExecutorService actionExecutorService;
   @Nonnull
-  private final QualityUpdater updater;
+  private final TransitionSink transitionSink;
 
   @Nullable
   private Step lastStep;
@@ -85,11 +80,30 @@ public class Agent {
                             QualityMap qualityMap,
                             ExecutorService actionExecutor,
                             QualityUpdater updater) {
+    this(environment, explorationStrategy, qualityMap, actionExecutor,
+        updater::updateQuality);
+  }
+
+  /**
+   * Clients should not be instantiating this object themselves. Please use the {@link AgentBuilder}
+   * .
+   * 
+   * @param environment the source of {@link State} objects
+   * @param explorationStrategy the type of exploration to use
+   * @param qualityMap where this agent should get {@link Quality} values
+   * @param actionExecutor the object that should execute chosen {@link Action}s
+   * @param transitionSink where this agent should send the transitions it makes, to learn from
+   */
+  /* package-private */ Agent(
+                            Environment environment,
+                            ExplorationStrategy explorationStrategy,
+                            QualityMap qualityMap,
+                            ExecutorService actionExecutor,
+                            TransitionSink transitionSink) {
     this.environment = environment;
-    this.explorationStrategy = explorationStrategy;
-    this.qualityMap = qualityMap;
+    this.actionSelector = new ActionSelector(explorationStrategy, qualityMap);
     this.actionExecutorService = actionExecutor;
-    this.updater = updater;
+    this.transitionSink = transitionSink;
   }
 
   /**
@@ -119,33 +133,18 @@ public class Agent {
    */
   public void takeNextAction() {
     State currentState = environment.getState();
-    SortedSet<StateActionQuality> potentialQualities = buildTriplets(currentState);
-    Action nextAction = explorationStrategy.getNextAction(potentialQualities);
+    Action nextAction = actionSelector.selectAction(currentState);
     
     lastExecutedActionFuture = actionExecutorService.submit(nextAction);
     
 
     if (lastStep != null) {
-      updater.updateQuality(lastStep, currentState);
+      transitionSink.publish(lastStep, currentState);
     }
 
     lastStep = new Step(currentState, nextAction);
   }
 
-  private SortedSet<StateActionQuality> buildTriplets(State state) {
-    assert state != null : "state must not be null";
-    SortedSet<StateActionQuality> pairs = new TreeSet<>();
-
-    // Using streams is not as fast as this plain ol' iteration
-    for (Action action : state.getActions()) {
-      if (action == null) {
-        continue;
-      }
-      pairs.add(qualityMap.getTriplet(state, action));
-    }
-    return pairs;
-  }
-
   /**
    * Get the most recent {@code Step} made by this Agent.
    * 
@@ -155,9 +154,8 @@ public class Agent {
    * 
    * @return the most recent {@code Step} taken by this object.
    */
-  @SuppressWarnings("null")
-public Optional<Step> getLastStep() {
-    return Optional.of(lastStep);
+  public Optional<Step> getLastStep() {
+    return Optional.ofNullable(lastStep);
   }
   
   /**
@@ -17,25 +17,36 @@ package io.github.cantido.qlearner.agent;
 
 import com.google.common.util.concurrent.MoreExecutors;
 
+import io.github.cantido.qlearner.algorithm.abstraction.StateAbstraction;
+import io.github.cantido.qlearner.algorithm.abstraction.StateAggregatingQualityMap;
 import io.github.cantido.qlearner.algorithm.exploration.RandomExplorationStrategy;
 import io.github.cantido.qlearner.algorithm.model.DiscountFactor;
 import io.github.cantido.qlearner.algorithm.model.ExplorationFactor;
 import io.github.cantido.qlearner.algorithm.model.ExplorationStrategy;
 import io.github.cantido.qlearner.algorithm.model.LearningRate;
 import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityLog;
 import io.github.cantido.qlearner.algorithm.model.QualityMap;
 import io.github.cantido.qlearner.algorithm.model.QualityUpdateStrategy;
 import io.github.cantido.qlearner.algorithm.quality.BackwardInduction;
+import io.github.cantido.qlearner.algorithm.quality.FloatQualityHashMap;
 import io.github.cantido.qlearner.algorithm.quality.QualityHashMap;
 import io.github.cantido.qlearner.algorithm.quality.QualityUpdater;
+import io.github.cantido.qlearner.algorithm.quality.ShardedQualityMap;
 import io.github.cantido.qlearner.client.Action;
 import io.github.cantido.qlearner.client.Environment;
+import io.github.cantido.qlearner.client.State;
 
+import java.io.Closeable;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -48,14 +59,19 @@ import javax.annotation.concurrent.NotThreadSafe;
  * </pre>
  */
 @NotThreadSafe
-public class AgentBuilder {
+public class AgentBuilder implements Closeable {
   @Nonnull
   private static final ExplorationFactor DEFAULT_EXPLORATION_FACTOR = new ExplorationFactor(0.2);
+  private static final int DEFAULT_LEARNER_BATCH_SIZE = 64;
 
   @Nonnull
   private final Environment environment;
   @Nonnull
   private ExecutorService actionExecutor = MoreExecutors.newDirectExecutorService();
+  @Nullable
+  private BoundedActionExecutor boundedActionExecutor;
+  @Nullable
+  private ExecutorService virtualThreadExecutor;
   @Nonnull
   private DiscountFactor discountFactor = new DiscountFactor(1);
   @Nonnull
@@ -67,6 +83,10 @@ public class AgentBuilder {
   private QualityMap qualityMap = new QualityHashMap();
   @Nonnull
   private QualityUpdateStrategy qualityUpdateStrategy = new BackwardInduction();
+  @Nullable
+  private QualityLog qualityLog = null;
+  @Nullable
+  private StateAbstraction stateAbstraction = null;
   @Nonnull
   private QualityUpdater qualityUpdater =
       new QualityUpdater(qualityMap, qualityUpdateStrategy, learningRate, discountFactor);
@@ -88,16 +108,135 @@ public class AgentBuilder {
    * @return the {@code Agent} that this object was building.
    */
   public Agent getAgent() {
-    return new Agent(environment, explorationStrategy, qualityMap, actionExecutor, qualityUpdater);
+    return new Agent(environment, explorationStrategy, qualityMap, newActionExecutor(),
+        learningSink());
+  }
+
+  /**
+   * Get an {@link AsyncAgent} built from this builder's settings, whose steps complete
+   * asynchronously. Subsequent calls will return new and distinct agent objects.
+   * 
+   * @return a new {@code AsyncAgent}.
+   */
+  public AsyncAgent getAsyncAgent() {
+    return new AsyncAgent(environment, explorationStrategy, qualityMap, newActionExecutor(),
+        learningSink());
+  }
+
+  /**
+   * Get a {@link ConcurrentAgent} built from this builder's settings, which many threads can
+   * drive at once through sessions of their own. The environment given to this builder on
+   * construction is not used, since a {@code ConcurrentAgent} is handed its {@link State}s.
+   * Subsequent calls will return new and distinct agent objects.
+   * 
+   * @param <K> the type of the keys that identify sessions.
+   * @return a new {@code ConcurrentAgent} with no sessions.
+   */
+  public <K> ConcurrentAgent<K> getConcurrentAgent() {
+    return getConcurrentAgent(learningSink());
+  }
+
+  /**
+   * Get a {@link ConcurrentAgent} that only acts, and publishes the transitions of all of its
+   * sessions to the given sink instead of learning from them itself.
+   * 
+   * @param <K> the type of the keys that identify sessions.
+   * @param transitions where the agent will publish its transitions, such as a
+   *        {@link TransitionQueue} or a {@link PartitionedLearner}.
+   * @return a new {@code ConcurrentAgent} with no sessions.
+   * @see #getActorAgent(TransitionSink)
+   */
+  public <K> ConcurrentAgent<K> getConcurrentAgent(TransitionSink transitions) {
+    return new ConcurrentAgent<K>(explorationStrategy, qualityMap, newActionExecutor(),
+        transitions);
+  }
+
+  /**
+   * Get a {@link VectorizedRunner} that steps the given environments in lockstep, using this
+   * builder's settings. The environment given to this builder on construction is not used.
+   * Subsequent calls will return new and distinct runners.
+   * 
+   * @param <E> the type of environment being stepped.
+   * @param environments the environments to step together.
+   * @param isTerminal whether an environment has reached the end of an episode.
+   * @param reset starts a new episode in an environment.
+   * @return a new {@code VectorizedRunner}.
+   */
+  public <E extends Environment> VectorizedRunner<E> getVectorizedRunner(
+      List<? extends E> environments, Predicate<? super E> isTerminal,
+      Consumer<? super E> reset) {
+    return new VectorizedRunner<E>(environments, isTerminal, reset, explorationStrategy, qualityMap,
+        learningSink());
+  }
+
+  /**
+   * Get an {@link Agent} that only acts, and leaves learning to a {@link Learner}. Instead of
+   * updating {@link Quality} values itself, the agent publishes each transition it makes to the
+   * given queue, which keeps updates out of the time it takes to choose an {@link Action}.
+   * 
+   * <p>
+   * The {@code QualityMap} will be read by the agent while learners write to it, so it must be
+   * thread-safe, like a
+   * {@link io.github.cantido.qlearner.algorithm.quality.ConcurrentQualityHashMap
+   * ConcurrentQualityHashMap}.
+   * </p>
+   * 
+   * @param transitions where the agent will publish its transitions, such as a
+   *        {@link TransitionQueue} or a {@link PartitionedLearner}.
+   * @return a new {@code Agent} that does not learn on its own.
+   * @see #getLearner(TransitionQueue)
+   */
+  public Agent getActorAgent(TransitionSink transitions) {
+    return new Agent(environment, explorationStrategy, qualityMap, newActionExecutor(),
+        transitions);
+  }
+
+  /**
+   * Get a {@link Learner} that updates {@link Quality} values from the transitions published to the
+   * given queue, using this builder's settings. Subsequent calls will return new and distinct
+   * learner objects.
+   * 
+   * @param transitions the queue that the learner will take transitions from.
+   * @return a new {@code Learner}, which has not yet been started.
+   * @see #getActorAgent(TransitionSink)
+   */
+  public Learner getLearner(TransitionQueue transitions) {
+    return new Learner(transitions, qualityUpdater, DEFAULT_LEARNER_BATCH_SIZE);
+  }
+
+  /**
+   * Get a {@link PartitionedLearner} that learns on one thread per shard of this builder's
+   * {@link ShardedQualityMap}, using this builder's settings. Subsequent calls will return new and
+   * distinct learner objects.
+   * 
+   * @param queueCapacity how many transitions each shard's queue can hold.
+   * @return a new {@code PartitionedLearner}, which has not yet been started.
+   * @throws IllegalStateException if this builder's {@code QualityMap} is not a
+   *         {@code ShardedQualityMap}.
+   * @see #getActorAgent(TransitionSink)
+   */
+  public PartitionedLearner getPartitionedLearner(int queueCapacity) {
+    if (!(qualityMap instanceof ShardedQualityMap)) {
+      throw new IllegalStateException(
+          "Partitioned learning needs a ShardedQualityMap, but got: " + qualityMap.getClass());
+    }
+    return new PartitionedLearner((ShardedQualityMap) qualityMap, qualityUpdater, queueCapacity,
+        DEFAULT_LEARNER_BATCH_SIZE);
   }
 
   /**
    * Get the {@code Executor} that this builder will give to its resulting {@link Agent}. This
-   * object could be a default value, or one provided by the user.
+   * object could be a default value, or one provided by the user. If a
+   * {@link BoundedActionExecutor} has been set, this is that executor, and each resulting
+   * {@code Agent} gets a lane of its own from it.
    * 
    * @return the {@code Executor} that the resulting {@code Agent} will use.
    */
   public Executor getActionExecutor() {
+    BoundedActionExecutor bounded = this.boundedActionExecutor;
+    if (bounded != null) {
+      return bounded;
+    }
     return this.actionExecutor;
   }
 
@@ -141,6 +280,18 @@ public class AgentBuilder {
     return this.learningRate;
   }
 
+  /**
+   * Get the {@code QualityLog} that this builder will give to its resulting {@link Agent}, if the
+   * user provided one.
+   * 
+   * @return the {@code QualityLog} that the resulting {@code Agent} will use, or {@code null} if it
+   *         will not log new values.
+   */
+  @Nullable
+  public QualityLog getQualityLog() {
+    return this.qualityLog;
+  }
+
   /**
    * Get the {@code QualityMap} that this builder will give to its resulting {@link Agent}. This
    * object could be a default value, or one provided by the user.
@@ -171,7 +322,7 @@ public class AgentBuilder {
   public AgentBuilder setDiscountFactor(DiscountFactor discountFactor) {
     this.discountFactor = discountFactor;
     this.qualityUpdater = new QualityUpdater(this.qualityMap, this.qualityUpdateStrategy,
-        this.learningRate, discountFactor);
+        this.learningRate, discountFactor, this.qualityLog);
     return this;
   }
 
@@ -185,7 +336,8 @@ public class AgentBuilder {
    * incur too much overhead to be worthwhile. For example using a
    * {@link Executors#newSingleThreadExecutor()} in the Gridworld example increases its execution
    * time six-fold, purely through its overhead. Be sure that your {@code Action}s really do need to
-   * be executed in their own threads.
+   * be executed in their own threads. If they spend their time blocked on I/O, see
+   * {@link #useVirtualThreads()}.
    * </p>
    * 
    * @param executor the {@code ExecutorService} that the resulting {@code Agent} will use.
@@ -193,9 +345,65 @@ public class AgentBuilder {
    */
   public AgentBuilder setExecutorService(ExecutorService executor) {
     this.actionExecutor = executor;
+    this.boundedActionExecutor = null;
+    return this;
+  }
+
+  /**
+   * Make the resulting {@link Agent}s perform their {@link Action}s through the given
+   * {@link BoundedActionExecutor}, each in a bounded lane of its own. This replaces any
+   * {@code ExecutorService} set before.
+   * 
+   * @param executor the executor whose lanes the resulting {@code Agent}s will use.
+   * @return this builder, for chaining
+   */
+  public AgentBuilder setBoundedActionExecutor(BoundedActionExecutor executor) {
+    this.boundedActionExecutor = executor;
     return this;
   }
 
+  /**
+   * Make the resulting {@link Agent}s run each chosen {@link Action} on its own virtual thread, so
+   * that {@code Action}s blocked on I/O do not each hold an operating-system thread. On runtimes
+   * older than Java 21 this falls back to platform threads; see {@link VirtualThreads}.
+   * 
+   * <p>
+   * If the code driving the agents can itself run on virtual threads, it is cheaper still to keep
+   * the default direct executor and run each agent's loop with
+   * {@link VirtualThreads#newExecutor()}. Then each {@code Action} blocks its own agent's virtual
+   * thread, with no hand-off at all.
+   * </p>
+   * 
+   * <p>
+   * This builder creates the executor on the first call, reuses it on later calls, and shuts it
+   * down in {@link #close()}.
+   * </p>
+   * 
+   * @return this builder, for chaining
+   */
+  public AgentBuilder useVirtualThreads() {
+    ExecutorService executor = this.virtualThreadExecutor;
+    if (executor == null) {
+      executor = VirtualThreads.newExecutor();
+      this.virtualThreadExecutor = executor;
+    }
+    return setExecutorService(executor);
+  }
+
+  /**
+   * Shut down the executor created by {@link #useVirtualThreads()}, if there is one, letting the
+   * {@link Action}s already given to it finish. {@code Agent}s built with it cannot perform any
+   * more {@code Action}s. Executors given to this builder are left for their owners to shut down.
+   */
+  @Override
+  public void close() {
+    ExecutorService executor = this.virtualThreadExecutor;
+    if (executor != null) {
+      executor.shutdown();
+      this.virtualThreadExecutor = null;
+    }
+  }
+
   /**
    * Set the {@code ExplorationStrategy} that this builder will give to its resulting {@link Agent}
    * to control how it explores its {@link Environment}.
@@ -219,21 +427,77 @@ public class AgentBuilder {
   public AgentBuilder setLearningRate(LearningRate learningRate) {
     this.learningRate = learningRate;
     this.qualityUpdater = new QualityUpdater(this.qualityMap, this.qualityUpdateStrategy,
-        learningRate, this.discountFactor);
+        learningRate, this.discountFactor, this.qualityLog);
+    return this;
+  }
+
+  /**
+   * Set the {@code QualityLog} that the resulting {@link Agent} will record every new
+   * {@link Quality} value in, before storing it. By default, values are not logged.
+   * 
+   * @param qualityLog the {@code QualityLog} that the resulting {@code Agent} will use.
+   * @return this builder, for chaining
+   */
+  public AgentBuilder setQualityLog(QualityLog qualityLog) {
+    this.qualityLog = qualityLog;
+    this.qualityUpdater = new QualityUpdater(this.qualityMap, this.qualityUpdateStrategy,
+        this.learningRate, this.discountFactor, qualityLog);
     return this;
   }
 
   /**
    * Set the {@code QualityMap} that this builder will give to its resulting {@link Agent} to store
-   * {@link Quality} values.
+   * {@link Quality} values. This drops any {@link StateAbstraction} set before, since the new map
+   * does not use it.
    * 
    * @param qualityMap the {@code QualityMap} that the resulting {@code Agent} will use.
    * @return this builder, for chaining
+   * @see #setStateAbstraction(StateAbstraction)
    */
   public AgentBuilder setQualityMap(QualityMap qualityMap) {
     this.qualityMap = qualityMap;
+    this.stateAbstraction = null;
     this.qualityUpdater = new QualityUpdater(qualityMap, this.qualityUpdateStrategy,
-        this.learningRate, this.discountFactor);
+        this.learningRate, this.discountFactor, this.qualityLog);
+    return this;
+  }
+
+  /**
+   * Store {@link Quality} values in a new {@link FloatQualityHashMap}, which takes half the memory
+   * of the default map and keeps a state's values next to each other, at the cost of precision.
+   * 
+   * @param compensated whether the map should carry rounding errors into later values, so that
+   *        updates smaller than a {@code float}'s precision are not lost.
+   * @return this builder, for chaining
+   * @see #setQualityMap(QualityMap)
+   */
+  public AgentBuilder useFloatQualities(boolean compensated) {
+    return setQualityMap(new FloatQualityHashMap(compensated));
+  }
+
+  /**
+   * Look {@link Quality} values up by abstract {@link State}s instead of raw ones, so that states
+   * which the given abstraction treats as equivalent share their values. This wraps the current
+   * {@code QualityMap} in a {@link StateAggregatingQualityMap}, so call it after
+   * {@link #setQualityMap(QualityMap)}, which drops the abstraction again. Setting another
+   * abstraction replaces this one, rather than wrapping the map a second time.
+   * 
+   * <p>
+   * If the abstraction is also a {@link TransitionSink}, agents that learn for themselves pass it
+   * every transition they make before learning from it. Agents that publish their transitions
+   * elsewhere, from {@link #getActorAgent(TransitionSink)}, leave that to their sink.
+   * </p>
+   * 
+   * @param stateAbstraction how to map raw states to abstract ones.
+   * @return this builder, for chaining
+   */
+  public AgentBuilder setStateAbstraction(StateAbstraction stateAbstraction) {
+    QualityMap backingMap = this.qualityMap;
+    if (this.stateAbstraction != null && backingMap instanceof StateAggregatingQualityMap) {
+      backingMap = ((StateAggregatingQualityMap) backingMap).getBackingMap();
+    }
+    setQualityMap(new StateAggregatingQualityMap(backingMap, stateAbstraction));
+    this.stateAbstraction = stateAbstraction;
     return this;
   }
 
@@ -248,7 +512,28 @@ public class AgentBuilder {
   public AgentBuilder setQualityUpdateStrategy(QualityUpdateStrategy qualityUpdateStrategy) {
     this.qualityUpdateStrategy = qualityUpdateStrategy;
     this.qualityUpdater = new QualityUpdater(this.qualityMap, qualityUpdateStrategy,
-        this.learningRate, this.discountFactor);
+        this.learningRate, this.discountFactor, this.qualityLog);
     return this;
   }
+
+  private TransitionSink learningSink() {
+    QualityUpdater updater = this.qualityUpdater;
+    StateAbstraction abstraction = this.stateAbstraction;
+    if (abstraction instanceof TransitionSink) {
+      TransitionSink observer = (TransitionSink) abstraction;
+      return (stepTaken, resultingState) -> {
+        observer.publish(stepTaken, resultingState);
+        updater.updateQuality(stepTaken, resultingState);
+      };
+    }
+    return updater::updateQuality;
+  }
+
+  private ExecutorService newActionExecutor() {
+    BoundedActionExecutor bounded = this.boundedActionExecutor;
+    if (bounded != null) {
+      return bounded.newLane();
+    }
+    return this.actionExecutor;
+  }
 }
@@ -0,0 +1,218 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.algorithm.model.ExplorationStrategy;
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.AsyncAction;
+import io.github.cantido.qlearner.client.AsyncEnvironment;
+import io.github.cantido.qlearner.client.Environment;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An {@link Agent} whose steps complete asynchronously, so that no thread has to wait while an
+ * {@link Action} is being performed.
+ * 
+ * <p>
+ * Each step observes the {@link Environment}, selects an {@code Action}, starts it, and learns from
+ * the transition that led to the observed {@link State}, in that order. Learning happens while the
+ * {@code Action} is being performed, rather than after. Steps are pipelined: asking for a step
+ * while another is in flight chains it after that one, so callers never have to wait before
+ * asking for the next.
+ * </p>
+ * 
+ * <p>
+ * {@code Action}s that implement {@link AsyncAction} are started without taking up a thread, which
+ * is what lets a single thread drive thousands of these agents. Other {@code Action}s are run on
+ * the agent's {@code Executor}. Likewise, an {@code Environment} that implements
+ * {@link AsyncEnvironment} is observed without taking up a thread, so that other agents can select
+ * actions and learn while this one waits for its next {@code State}.
+ * </p>
+ * 
+ * <pre>
+ * AsyncAgent agent = new AgentBuilder(environment).getAsyncAgent();
+ * agent.takeActions(1_000).thenRun(() -&gt; System.out.println("Done"));
+ * </pre>
+ */
+@ThreadSafe
+public class AsyncAgent {
+  @Nonnull
+  private final Environment environment;
+  @Nonnull
+  private final ActionSelector actionSelector;
+  @Nonnull
+  private final Executor actionExecutor;
+  @Nonnull
+  private final TransitionSink transitionSink;
+
+  @GuardedBy("this")
+  @Nullable
+  private Step lastStep;
+  @GuardedBy("this")
+  @Nonnull
+  private CompletableFuture<?> lastStage = CompletableFuture.completedFuture(null);
+
+  /**
+   * Clients should not be instantiating this object themselves. Please use the {@link AgentBuilder}
+   * .
+   * 
+   * @param environment the source of {@link State} objects
+   * @param explorationStrategy the type of exploration to use
+   * @param qualityMap where this agent should get {@link Quality} values
+   * @param actionExecutor runs chosen {@code Action}s that are not {@code AsyncAction}s
+   * @param transitionSink where this agent should send the transitions it makes, to learn from
+   */
+  /* package-private */ AsyncAgent(
+                            Environment environment,
+                            ExplorationStrategy explorationStrategy,
+                            QualityMap qualityMap,
+                            Executor actionExecutor,
+                            TransitionSink transitionSink) {
+    this.environment = environment;
+    this.actionSelector = new ActionSelector(explorationStrategy, qualityMap);
+    this.actionExecutor = actionExecutor;
+    this.transitionSink = transitionSink;
+  }
+
+  /**
+   * Remove recent history from this object, so that it does not associate the next {@link State}
+   * with the previous {@link Step}. This applies from the next step that is asked for, even if
+   * earlier steps are still in flight.
+   * 
+   * @see Agent#reset()
+   */
+  public void reset() {
+    CompletableFuture<?> previous;
+    synchronized (this) {
+      previous = lastStage;
+      lastStage = previous.handle((result, error) -> {
+        synchronized (this) {
+          lastStep = null;
+        }
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Take the next step, once every step asked for before it has completed.
+   * 
+   * @return a stage that completes with the {@code Step} taken, once its {@code Action} has been
+   *         performed. It completes exceptionally if observing, selecting, learning, or performing
+   *         the {@code Action} failed. Later steps still go ahead if an earlier one fails.
+   */
+  public CompletionStage<Step> takeNextAction() {
+    synchronized (this) {
+      CompletableFuture<Step> next =
+          lastStage.handle((result, error) -> this).thenCompose(AsyncAgent::step);
+      lastStage = next;
+      return next;
+    }
+  }
+
+  /**
+   * Take the given number of steps, one after another.
+   * 
+   * <p>
+   * Steps whose {@code Action}s finish right away are taken in a loop rather than by nesting
+   * callbacks, so any number of steps can be taken with a direct executor.
+   * </p>
+   * 
+   * @param count how many steps to take.
+   * @return a stage that completes once every step has, or completes exceptionally with the first
+   *         failure, after which no more steps are taken.
+   */
+  public CompletionStage<Void> takeActions(@Nonnegative long count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Count must not be negative, but got: " + count);
+    }
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    continueTaking(count, done);
+    return done;
+  }
+
+  /**
+   * Get the most recent {@code Step} that this agent has started.
+   * 
+   * @return the most recent {@code Step}, or nothing if no step has been taken since the last
+   *         reset.
+   */
+  public synchronized Optional<Step> getLastStep() {
+    return Optional.ofNullable(lastStep);
+  }
+
+  private void continueTaking(long remaining, CompletableFuture<Void> done) {
+    while (remaining > 0) {
+      CompletableFuture<Step> next = takeNextAction().toCompletableFuture();
+      remaining--;
+      if (!next.isDone() || next.isCompletedExceptionally()) {
+        long left = remaining;
+        next.whenComplete((step, error) -> {
+          if (error != null) {
+            done.completeExceptionally(error);
+          } else {
+            continueTaking(left, done);
+          }
+        });
+        return;
+      }
+    }
+    done.complete(null);
+  }
+
+  private CompletionStage<Step> step() {
+    if (environment instanceof AsyncEnvironment) {
+      return ((AsyncEnvironment) environment).observe().thenCompose(this::stepFrom);
+    }
+    return stepFrom(environment.getState());
+  }
+
+  private CompletionStage<Step> stepFrom(State currentState) {
+    Action nextAction = actionSelector.selectAction(currentState);
+    CompletionStage<?> execution = execute(nextAction);
+
+    Step previousStep;
+    Step stepTaken = new Step(currentState, nextAction);
+    synchronized (this) {
+      previousStep = lastStep;
+      lastStep = stepTaken;
+    }
+    if (previousStep != null) {
+      transitionSink.publish(previousStep, currentState);
+    }
+    return execution.thenApply(result -> stepTaken);
+  }
+
+  private CompletionStage<?> execute(Action action) {
+    if (action instanceof AsyncAction) {
+      return ((AsyncAction) action).start();
+    }
+    return CompletableFuture.runAsync(action, actionExecutor);
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.client.AsyncEnvironment;
+import io.github.cantido.qlearner.client.BatchEnvironment;
+import io.github.cantido.qlearner.client.Environment;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Gives each instance of a {@link BatchEnvironment} its own {@link Environment}, and gathers the
+ * observations asked for through them into batches.
+ * 
+ * <p>
+ * Only one batch is in flight at a time. Observations asked for while a batch is in flight wait
+ * for it to complete and then go out together in the next one, so the busier the agents are, the
+ * bigger the batches get. An idle agent never waits for others to fill a batch.
+ * </p>
+ * 
+ * <pre>
+ * BatchingEnvironment environments = new BatchingEnvironment(simulator, 256);
+ * for (int i = 0; i &lt; agentCount; i++) {
+ *   AsyncAgent agent = new AgentBuilder(environments.getInstance(i)).getAsyncAgent();
+ *   agent.takeActions(1_000);
+ * }
+ * </pre>
+ */
+@ThreadSafe
+public class BatchingEnvironment {
+  @Nonnull
+  private final BatchEnvironment environment;
+  @Nonnegative
+  private final int maximumBatchSize;
+
+  @GuardedBy("this")
+  @Nonnull
+  private final Queue<Observation> pending = new ArrayDeque<>();
+  @GuardedBy("this")
+  private boolean batchInFlight;
+  @GuardedBy("this")
+  private long batchesSent;
+
+  /**
+   * Create a batching view of the given environment.
+   * 
+   * @param environment the instances to observe.
+   * @param maximumBatchSize the most instances to observe in one call.
+   */
+  public BatchingEnvironment(BatchEnvironment environment, @Nonnegative int maximumBatchSize) {
+    if (maximumBatchSize < 1) {
+      throw new IllegalArgumentException(
+          "Maximum batch size must be at least 1, but got: " + maximumBatchSize);
+    }
+    this.environment = environment;
+    this.maximumBatchSize = maximumBatchSize;
+  }
+
+  /**
+   * Get the {@link Environment} of one instance. It is also an {@link AsyncEnvironment}, so an
+   * {@link AsyncAgent} built with it never waits for its observations.
+   * 
+   * @param instance the number of the instance.
+   * @return an environment whose state is observed through batches.
+   */
+  public Environment getInstance(@Nonnegative int instance) {
+    if (instance < 0) {
+      throw new IllegalArgumentException("Instance must not be negative, but got: " + instance);
+    }
+    return new Instance(instance);
+  }
+
+  /**
+   * Get the number of calls that have been made to the underlying {@link BatchEnvironment}.
+   * 
+   * @return how many batches have been sent.
+   */
+  @Nonnegative
+  public synchronized long getBatchesSent() {
+    return batchesSent;
+  }
+
+  private CompletionStage<State> observe(int instance) {
+    Observation observation = new Observation(instance);
+    synchronized (this) {
+      pending.add(observation);
+    }
+    sendBatches();
+    return observation.result;
+  }
+
+  /**
+   * Send pending observations until there are none left, or until a batch does not complete right
+   * away. In that case the batch's completion carries on sending. Looping rather than recursing
+   * keeps the stack flat when the environment answers synchronously.
+   */
+  private void sendBatches() {
+    while (true) {
+      List<Observation> batch;
+      synchronized (this) {
+        if (batchInFlight || pending.isEmpty()) {
+          return;
+        }
+        batchInFlight = true;
+        batchesSent++;
+        int size = Math.min(pending.size(), maximumBatchSize);
+        batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          batch.add(pending.remove());
+        }
+      }
+
+      CompletableFuture<List<State>> states = send(batch);
+      if (!states.isDone()) {
+        states.whenComplete((result, error) -> {
+          finish(batch, result, error);
+          sendBatches();
+        });
+        return;
+      }
+      states.whenComplete((result, error) -> finish(batch, result, error));
+    }
+  }
+
+  private CompletableFuture<List<State>> send(List<Observation> batch) {
+    int[] instances = new int[batch.size()];
+    for (int i = 0; i < instances.length; i++) {
+      instances[i] = batch.get(i).instance;
+    }
+    try {
+      return environment.observe(instances).toCompletableFuture();
+    } catch (RuntimeException e) {
+      CompletableFuture<List<State>> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+  }
+
+  /**
+   * Complete each observation in the batch, and only then let the next batch go, so that agents
+   * which ask again straight away join the next batch instead of each sending one of their own.
+   */
+  private void finish(List<Observation> batch, @Nullable List<State> states,
+      @Nullable Throwable error) {
+    Throwable failure = error;
+    if (failure == null && (states == null || states.size() != batch.size())) {
+      failure = new IllegalStateException("Observed " + batch.size() + " instances, but got: "
+          + (states == null ? null : states.size()) + " states");
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      if (failure != null) {
+        batch.get(i).result.completeExceptionally(failure);
+      } else {
+        batch.get(i).result.complete(states.get(i));
+      }
+    }
+    synchronized (this) {
+      batchInFlight = false;
+    }
+  }
+
+  private static final class Observation {
+    @Nonnegative
+    private final int instance;
+    @Nonnull
+    private final CompletableFuture<State> result = new CompletableFuture<>();
+
+    private Observation(@Nonnegative int instance) {
+      this.instance = instance;
+    }
+  }
+
+  private final class Instance implements Environment, AsyncEnvironment {
+    @Nonnegative
+    private final int instance;
+
+    private Instance(@Nonnegative int instance) {
+      this.instance = instance;
+    }
+
+    @Override
+    public CompletionStage<State> observe() {
+      return BatchingEnvironment.this.observe(instance);
+    }
+
+    @Override
+    public State getState() {
+      return observe().toCompletableFuture().join();
+    }
+  }
+}
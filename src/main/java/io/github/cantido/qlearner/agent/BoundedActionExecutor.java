@@ -0,0 +1,350 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.client.Action;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Performs the {@link Action}s of many {@link Agent}s on a shared pool of threads, giving each
+ * agent a bounded queue so that bursts cannot use unbounded memory.
+ * 
+ * <p>
+ * Each agent gets its own lane from {@link #newLane()}. A lane holds at most a fixed number of
+ * waiting actions; what happens to a new action when it is full depends on the
+ * {@link OverflowPolicy}. A lane's actions are performed one at a time, in the order they were
+ * taken. Worker threads take a lane rather than a single action, and perform up to a batch of its
+ * actions before moving on, so that one hand-off between threads covers many actions.
+ * </p>
+ * 
+ * <p>
+ * Cancelled actions are never run, and waiting on them with {@link Agent#await()} throws a
+ * {@link java.util.concurrent.CancellationException CancellationException}.
+ * </p>
+ * 
+ * <pre>
+ * BoundedActionExecutor actions =
+ *     new BoundedActionExecutor(4, 16, OverflowPolicy.COALESCE_LATEST, 8);
+ * AgentBuilder builder = new AgentBuilder(environment).setBoundedActionExecutor(actions);
+ * </pre>
+ */
+@ThreadSafe
+public class BoundedActionExecutor implements Executor, Closeable {
+  @SuppressWarnings("null")
+  @Nonnull
+  private static final Logger logger = LoggerFactory.getLogger(BoundedActionExecutor.class);
+
+  @Nonnull
+  private final ExecutorService workers;
+  @Nonnegative
+  private final int queueCapacity;
+  @Nonnull
+  private final OverflowPolicy overflowPolicy;
+  @Nonnegative
+  private final int batchSize;
+
+  @Nonnull
+  private final ExecutorService sharedLane;
+
+  @Nonnull
+  private final AtomicLong cancelledActions = new AtomicLong();
+  @Nonnull
+  private final AtomicLong blockedActions = new AtomicLong();
+
+  /**
+   * Create an executor with its own pool of daemon worker threads.
+   * 
+   * @param threads how many actions can be performed at once, across all lanes.
+   * @param queueCapacity the most actions that can wait in each lane.
+   * @param overflowPolicy what to do with a new action when its lane is full.
+   * @param batchSize the most actions a worker performs from one lane before moving on.
+   */
+  public BoundedActionExecutor(@Nonnegative int threads, @Nonnegative int queueCapacity,
+      OverflowPolicy overflowPolicy, @Nonnegative int batchSize) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Need at least one thread, but got: " + threads);
+    }
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException(
+          "Queue capacity must be at least 1, but got: " + queueCapacity);
+    }
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be at least 1, but got: " + batchSize);
+    }
+    AtomicInteger threadCount = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "qlearner-action-" + threadCount.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.queueCapacity = queueCapacity;
+    this.overflowPolicy = overflowPolicy;
+    this.batchSize = batchSize;
+    this.sharedLane = new Lane();
+  }
+
+  /**
+   * Create a lane for one agent's actions.
+   * 
+   * @return an {@code ExecutorService} whose tasks are performed by this executor's workers.
+   */
+  public ExecutorService newLane() {
+    return new Lane();
+  }
+
+  /**
+   * Perform the given task in a lane shared by every caller of this method, with the same bound
+   * and overflow policy as any other lane.
+   * 
+   * @param task the task to perform.
+   * @throws RejectedExecutionException if this executor has been closed.
+   */
+  @Override
+  public void execute(Runnable task) {
+    sharedLane.execute(task);
+  }
+
+  /**
+   * Get the number of actions cancelled by {@link OverflowPolicy#DROP_OLDEST} or
+   * {@link OverflowPolicy#COALESCE_LATEST}.
+   * 
+   * @return how many actions have been cancelled to make room.
+   */
+  @Nonnegative
+  public long getCancelledActionCount() {
+    return cancelledActions.get();
+  }
+
+  /**
+   * Get the number of times an agent had to wait for room under {@link OverflowPolicy#BLOCK}.
+   * 
+   * @return how many actions have been held back.
+   */
+  @Nonnegative
+  public long getBlockedActionCount() {
+    return blockedActions.get();
+  }
+
+  /**
+   * Stop the worker threads once every action already taken has been performed. Lanes refuse new
+   * actions from then on, by throwing a {@link RejectedExecutionException}.
+   */
+  @Override
+  public void close() {
+    workers.shutdown();
+  }
+
+  private final class Lane extends AbstractExecutorService {
+    @GuardedBy("this")
+    @Nonnull
+    private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+    @GuardedBy("this")
+    private boolean scheduled;
+    @GuardedBy("this")
+    private boolean shutdown;
+
+    @Override
+    public void execute(Runnable task) {
+      List<Runnable> dropped = new ArrayList<>();
+      boolean schedule;
+      synchronized (this) {
+        if (shutdown) {
+          throw new RejectedExecutionException("This lane has been shut down");
+        }
+        if (workers.isShutdown()) {
+          throw new RejectedExecutionException("The action executor has been closed");
+        }
+        if (waiting.size() >= queueCapacity) {
+          makeRoom(dropped);
+          if (shutdown) {
+            throw new RejectedExecutionException("This lane was shut down while waiting for room");
+          }
+        }
+        waiting.add(task);
+        schedule = !scheduled;
+        scheduled = true;
+      }
+      cancel(dropped);
+      if (schedule) {
+        try {
+          workers.execute(this::performBatch);
+        } catch (RejectedExecutionException e) {
+          unschedule(task);
+          throw e;
+        }
+      }
+    }
+
+    /**
+     * Undo taking the given task after the workers refused to perform this lane, because the
+     * executor was closed in the meantime. Any other actions that were taken since can never be
+     * performed either, so they are cancelled.
+     */
+    private void unschedule(Runnable task) {
+      List<Runnable> stranded;
+      synchronized (this) {
+        waiting.remove(task);
+        stranded = new ArrayList<>(waiting);
+        waiting.clear();
+        scheduled = false;
+        notifyAll();
+      }
+      for (Runnable strandedTask : stranded) {
+        if (strandedTask instanceof Future) {
+          ((Future<?>) strandedTask).cancel(false);
+        }
+      }
+    }
+
+    @GuardedBy("this")
+    private void makeRoom(List<Runnable> dropped) {
+      switch (overflowPolicy) {
+        case BLOCK:
+          blockedActions.incrementAndGet();
+          boolean interrupted = false;
+          while (waiting.size() >= queueCapacity && !shutdown) {
+            try {
+              wait();
+            } catch (InterruptedException e) {
+              interrupted = true;
+            }
+          }
+          if (interrupted) {
+            Thread.currentThread().interrupt();
+          }
+          break;
+        case DROP_OLDEST:
+          dropped.add(waiting.remove());
+          break;
+        case COALESCE_LATEST:
+          dropped.addAll(waiting);
+          waiting.clear();
+          break;
+        default:
+          throw new AssertionError("Unknown overflow policy: " + overflowPolicy);
+      }
+    }
+
+    private void cancel(List<Runnable> dropped) {
+      for (Runnable task : dropped) {
+        if (task instanceof Future) {
+          ((Future<?>) task).cancel(false);
+        }
+        cancelledActions.incrementAndGet();
+      }
+    }
+
+    /**
+     * Perform up to a batch of waiting actions, then give the worker back. If actions are still
+     * waiting, the lane goes to the back of the workers' queue so that other lanes get a turn.
+     */
+    private void performBatch() {
+      for (int i = 0; i < batchSize; i++) {
+        Runnable task;
+        synchronized (this) {
+          task = waiting.poll();
+          if (task == null) {
+            scheduled = false;
+            notifyAll();
+            return;
+          }
+          notifyAll();
+        }
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          logger.warn("Action failed", e);
+        }
+      }
+      synchronized (this) {
+        if (waiting.isEmpty()) {
+          scheduled = false;
+          notifyAll();
+          return;
+        }
+      }
+      try {
+        workers.execute(this::performBatch);
+      } catch (RejectedExecutionException e) {
+        // The executor is closing, but the actions already taken still need performing
+        performBatch();
+      }
+    }
+
+    @Override
+    public synchronized void shutdown() {
+      shutdown = true;
+      notifyAll();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      List<Runnable> pending;
+      synchronized (this) {
+        shutdown = true;
+        pending = new ArrayList<>(waiting);
+        waiting.clear();
+        notifyAll();
+      }
+      return pending;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+      return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+      return shutdown && !scheduled;
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      while (!isTerminated()) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.algorithm.model.ExplorationStrategy;
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.Environment;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An {@link Agent} that any number of threads can drive at once, each through its own session.
+ * 
+ * <p>
+ * Where an {@code Agent} pulls {@link State}s from its {@link Environment}, this agent is handed
+ * them, along with the key of the session they belong to. A session is one stream of observations,
+ * like a single user, a single device, or a single episode: each one remembers its own last
+ * {@link Step}, so that transitions are only ever learned within a session. Sessions are created
+ * on their first observation and live until {@link #endSession(Object)} is called. Different
+ * sessions never wait for each other, and all of them learn into the same {@link QualityMap}.
+ * </p>
+ * 
+ * <p>
+ * The {@code QualityMap} is read and written by many threads at once, so it must be thread-safe,
+ * like a {@link io.github.cantido.qlearner.algorithm.quality.ConcurrentQualityHashMap
+ * ConcurrentQualityHashMap}. Two sessions updating the same {@code State} and {@code Action} at
+ * the same instant can each overwrite the other's update; where that matters, learn on one thread
+ * instead, by building this agent with
+ * {@link AgentBuilder#getConcurrentAgent(TransitionSink)} and a {@link Learner}.
+ * </p>
+ * 
+ * <pre>
+ * ConcurrentAgent&lt;String&gt; agent = builder.getConcurrentAgent();
+ * // On any thread, whenever a device reports in:
+ * agent.takeNextAction(deviceId, observedState);
+ * </pre>
+ * 
+ * @param <K> the type of the keys that identify sessions.
+ */
+@ThreadSafe
+public class ConcurrentAgent<K> {
+  @Nonnull
+  private final ActionSelector actionSelector;
+  @Nonnull
+  private final ExecutorService actionExecutor;
+  @Nonnull
+  private final TransitionSink transitionSink;
+  @Nonnull
+  private final ConcurrentMap<K, Session> sessions = new ConcurrentHashMap<>();
+
+  /**
+   * Clients should not be instantiating this object themselves. Please use the {@link AgentBuilder}
+   * .
+   * 
+   * @param explorationStrategy the type of exploration to use
+   * @param qualityMap where this agent should get {@link Quality} values
+   * @param actionExecutor the object that should execute chosen {@link Action}s
+   * @param transitionSink where this agent should send the transitions it makes, to learn from
+   */
+  /* package-private */ ConcurrentAgent(
+                            ExplorationStrategy explorationStrategy,
+                            QualityMap qualityMap,
+                            ExecutorService actionExecutor,
+                            TransitionSink transitionSink) {
+    this.actionSelector = new ActionSelector(explorationStrategy, qualityMap);
+    this.actionExecutor = actionExecutor;
+    this.transitionSink = transitionSink;
+  }
+
+  /**
+   * Learn from the transition that led the given session to the given {@link State}, then choose
+   * the next {@link Action} to take from it and start performing it.
+   * 
+   * <p>
+   * Calls for the same session are meant to come one after another, as observations do. If they
+   * overlap, each still learns from whichever step was recorded just before its own.
+   * </p>
+   * 
+   * @param session the key of the session that observed the state.
+   * @param currentState the state that the session is now in.
+   * @return the {@code Action} being performed, which can be waited on like
+   *         {@link Agent#await()}.
+   */
+  public Future<?> takeNextAction(K session, State currentState) {
+    Action nextAction = actionSelector.selectAction(currentState);
+    Future<?> execution = actionExecutor.submit(nextAction);
+
+    Step previousStep = sessions.computeIfAbsent(session, key -> new Session())
+        .swapLastStep(new Step(currentState, nextAction));
+    if (previousStep != null) {
+      transitionSink.publish(previousStep, currentState);
+    }
+    return execution;
+  }
+
+  /**
+   * Forget a session, so that its next observation, if any, starts afresh.
+   * 
+   * @param session the key of the session to forget.
+   * @see Agent#reset()
+   */
+  public void endSession(K session) {
+    sessions.remove(session);
+  }
+
+  /**
+   * Get the most recent {@code Step} taken in a session.
+   * 
+   * @param session the key of the session.
+   * @return the most recent {@code Step}, or nothing if the session has taken none.
+   */
+  public Optional<Step> getLastStep(K session) {
+    Session found = sessions.get(session);
+    return found == null ? Optional.empty() : Optional.ofNullable(found.getLastStep());
+  }
+
+  /**
+   * Get the number of sessions this agent is keeping track of.
+   * 
+   * @return how many sessions have started and not yet ended.
+   */
+  @Nonnegative
+  public int getSessionCount() {
+    return sessions.size();
+  }
+
+  private static final class Session {
+    @GuardedBy("this")
+    @Nullable
+    private Step lastStep;
+
+    @Nullable
+    private synchronized Step swapLastStep(Step step) {
+      Step previous = lastStep;
+      lastStep = step;
+      return previous;
+    }
+
+    @Nullable
+    private synchronized Step getLastStep() {
+      return lastStep;
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.client.Environment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Runs an {@link Agent} through whole episodes of an {@link Environment}: taking actions until the
+ * environment reaches a terminal state, then resetting both and starting again.
+ * 
+ * <p>
+ * The terminal and reset hooks are given as functions, so any environment can be run without
+ * implementing anything extra. The step loop is kept in a small method of its own that only
+ * calls the agent and the terminal hook, with everything it needs held in local variables, so
+ * the JIT can compile it tightly.
+ * </p>
+ * 
+ * <p>
+ * That loop is shared by every runner, and the JIT profiles the types at each of its call sites
+ * across all of them, not per runner. The agent and terminal hook are only inlined while every
+ * runner in the process uses the same kind of agent and the same hook. Once two kinds are in use,
+ * the calls go through a type check, and with more than two they become ordinary virtual calls.
+ * </p>
+ * 
+ * <pre>
+ * EpisodeRunner&lt;GridWorldEnvironment&gt; runner = new EpisodeRunner&lt;&gt;(agent, environment,
+ *     GridWorldEnvironment::isAtGoalState, GridWorldEnvironment::reset);
+ * runner.runUntil(history -&gt; history.size() &gt; 100, 10_000);
+ * </pre>
+ * 
+ * @param <E> the type of environment being run.
+ */
+@NotThreadSafe
+public final class EpisodeRunner<E extends Environment> {
+  @Nonnull
+  private final Agent agent;
+  @Nonnull
+  private final E environment;
+  @Nonnull
+  private final Predicate<? super E> isTerminal;
+  @Nonnull
+  private final Consumer<? super E> reset;
+  @Nonnull
+  private final List<EpisodeStatistics> history = new ArrayList<>();
+
+  @Nonnegative
+  private long maximumSteps = Long.MAX_VALUE;
+  @Nonnegative
+  private long totalSteps;
+
+  /**
+   * Create a runner for the given agent and its environment.
+   * 
+   * @param agent the agent to run, which must have been built for the given environment.
+   * @param environment the environment that the agent acts in.
+   * @param isTerminal whether the environment has reached the end of an episode.
+   * @param reset starts a new episode in the environment.
+   */
+  public EpisodeRunner(Agent agent, E environment, Predicate<? super E> isTerminal,
+      Consumer<? super E> reset) {
+    this.agent = agent;
+    this.environment = environment;
+    this.isTerminal = isTerminal;
+    this.reset = reset;
+  }
+
+  /**
+   * Cut episodes short after the given number of steps, so that an agent that cannot find a
+   * terminal state does not run forever. By default, episodes are never cut short.
+   * 
+   * @param maximumSteps the most steps to take in one episode.
+   * @return this runner, for chaining
+   */
+  public EpisodeRunner<E> setMaximumSteps(@Nonnegative long maximumSteps) {
+    if (maximumSteps < 1) {
+      throw new IllegalArgumentException(
+          "Maximum steps must be at least 1, but got: " + maximumSteps);
+    }
+    this.maximumSteps = maximumSteps;
+    return this;
+  }
+
+  /**
+   * Run one episode.
+   * 
+   * @return how the episode went.
+   * @throws ExecutionException if an {@code Action} threw an exception
+   * @throws InterruptedException if the current thread was interrupted while waiting for an
+   *         {@code Action}
+   */
+  public EpisodeStatistics runEpisode() throws InterruptedException, ExecutionException {
+    long start = System.nanoTime();
+    long steps = runSteps(agent, environment, isTerminal, maximumSteps);
+    boolean truncated = steps >= maximumSteps && !isTerminal.test(environment);
+    reset.accept(environment);
+    agent.reset();
+
+    totalSteps += steps;
+    EpisodeStatistics statistics =
+        new EpisodeStatistics(history.size(), steps, System.nanoTime() - start, truncated);
+    history.add(statistics);
+    return statistics;
+  }
+
+  /**
+   * Run the given number of episodes.
+   * 
+   * @param count how many episodes to run.
+   * @return how each of the episodes went, in order.
+   * @throws ExecutionException if an {@code Action} threw an exception
+   * @throws InterruptedException if the current thread was interrupted while waiting for an
+   *         {@code Action}
+   */
+  public List<EpisodeStatistics> runEpisodes(@Nonnegative long count)
+      throws InterruptedException, ExecutionException {
+    if (count < 0) {
+      throw new IllegalArgumentException("Count must not be negative, but got: " + count);
+    }
+    int first = history.size();
+    for (long i = 0; i < count; i++) {
+      runEpisode();
+    }
+    return Collections.unmodifiableList(new ArrayList<>(history.subList(first, history.size())));
+  }
+
+  /**
+   * Run episodes until the given predicate holds for the history of episodes run so far, or until
+   * the given number of episodes have been run.
+   * 
+   * @param converged tested with every episode this runner has run, oldest first, after each one.
+   * @param maximumEpisodes the most episodes to run.
+   * @return {@code true} if the predicate held, or {@code false} if the episodes ran out first.
+   * @throws ExecutionException if an {@code Action} threw an exception
+   * @throws InterruptedException if the current thread was interrupted while waiting for an
+   *         {@code Action}
+   */
+  public boolean runUntil(Predicate<? super List<EpisodeStatistics>> converged,
+      @Nonnegative long maximumEpisodes) throws InterruptedException, ExecutionException {
+    if (maximumEpisodes < 0) {
+      throw new IllegalArgumentException(
+          "Maximum episodes must not be negative, but got: " + maximumEpisodes);
+    }
+    List<EpisodeStatistics> view = getHistory();
+    for (long i = 0; i < maximumEpisodes; i++) {
+      runEpisode();
+      if (converged.test(view)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get how every episode run so far went.
+   * 
+   * @return a live, read-only view of every episode, oldest first.
+   */
+  public List<EpisodeStatistics> getHistory() {
+    return Collections.unmodifiableList(history);
+  }
+
+  /**
+   * Get the number of steps taken across every episode run so far.
+   * 
+   * @return how many actions the agent has taken through this runner.
+   */
+  @Nonnegative
+  public long getTotalSteps() {
+    return totalSteps;
+  }
+
+  /**
+   * Take steps until the environment is terminal or the step limit is reached. This is static and
+   * takes everything as arguments so that the loop reads nothing but locals. Its call sites are
+   * shared by every runner, so their type profiles are too.
+   */
+  private static <E extends Environment> long runSteps(Agent agent, E environment,
+      Predicate<? super E> isTerminal, long maximumSteps)
+      throws InterruptedException, ExecutionException {
+    long steps = 0;
+    while (steps < maximumSteps && !isTerminal.test(environment)) {
+      agent.takeNextAction();
+      agent.await();
+      steps++;
+    }
+    return steps;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * How one episode run by an {@link EpisodeRunner} went.
+ */
+@Immutable
+public final class EpisodeStatistics {
+  @Nonnegative
+  private final long episode;
+  @Nonnegative
+  private final long steps;
+  @Nonnegative
+  private final long durationNanos;
+  private final boolean truncated;
+
+  /* package-private */ EpisodeStatistics(@Nonnegative long episode, @Nonnegative long steps,
+      @Nonnegative long durationNanos, boolean truncated) {
+    this.episode = episode;
+    this.steps = steps;
+    this.durationNanos = durationNanos;
+    this.truncated = truncated;
+  }
+
+  /**
+   * Get the number of this episode, counting from zero for the runner's first.
+   * 
+   * @return which episode this was.
+   */
+  @Nonnegative
+  public long getEpisode() {
+    return episode;
+  }
+
+  /**
+   * Get the number of actions taken in this episode.
+   * 
+   * @return how many steps this episode took.
+   */
+  @Nonnegative
+  public long getSteps() {
+    return steps;
+  }
+
+  /**
+   * Get the time this episode took, including resetting at its end.
+   * 
+   * @param unit the unit to give the duration in.
+   * @return how long this episode took.
+   */
+  @Nonnegative
+  public long getDuration(TimeUnit unit) {
+    return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Check whether this episode was cut short by the runner's step limit, rather than reaching a
+   * terminal state.
+   * 
+   * @return {@code true} if this episode hit the step limit.
+   */
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  @Override
+  public String toString() {
+    return "EpisodeStatistics [episode=" + episode + ", steps=" + steps + ", durationNanos="
+        + durationNanos + ", truncated=" + truncated + "]";
+  }
+}
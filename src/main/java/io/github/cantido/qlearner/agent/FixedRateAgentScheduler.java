@@ -0,0 +1,153 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Drives many {@link Agent}s on precise, fixed-rate ticks across a small pool of threads.
+ * 
+ * <p>
+ * Each agent takes one action per tick, and each tick is due at a fixed offset from the agent's
+ * first, so control loops keep their frequency even when individual ticks start late. Agents are
+ * given first ticks spread across their period, so that a thousand agents at 100 Hz do not all
+ * wake up in the same instant. Each {@link ScheduledAgent} keeps histograms of its scheduling
+ * latency and jitter, and counts its overruns, so that it is clear when a host is full.
+ * </p>
+ * 
+ * <p>
+ * An agent's ticks never overlap, so a plain {@code Agent} can be scheduled without locking. Each
+ * tick waits for the agent's {@code Action} to finish before it ends.
+ * </p>
+ * 
+ * <pre>
+ * FixedRateAgentScheduler scheduler = new FixedRateAgentScheduler(4);
+ * ScheduledAgent thermostat = scheduler.schedule(agent, 10, TimeUnit.MILLISECONDS);
+ * ...
+ * System.out.println(thermostat.getLatency());
+ * </pre>
+ */
+@ThreadSafe
+public class FixedRateAgentScheduler implements Closeable {
+  /**
+   * The fractional part of the golden ratio, as a 64-bit fixed-point number. Multiples of it are
+   * spread about as evenly as possible across the unit interval, however many there are.
+   */
+  private static final long GOLDEN_RATIO_FRACTION = 0x9E3779B97F4A7C15L;
+
+  @Nonnull
+  private final ScheduledExecutorService executor;
+  @Nonnull
+  private final LongSupplier clock;
+  @Nonnull
+  private final AtomicLong agentsScheduled = new AtomicLong();
+
+  /**
+   * Create a scheduler that runs ticks on the given number of daemon threads.
+   * 
+   * @param threads how many ticks can run at once.
+   */
+  public FixedRateAgentScheduler(@Nonnegative int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Need at least one thread, but got: " + threads);
+    }
+    AtomicInteger threadCount = new AtomicInteger();
+    ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(threads, runnable -> {
+      Thread thread = new Thread(runnable, "qlearner-tick-" + threadCount.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    pool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    pool.setRemoveOnCancelPolicy(true);
+    this.executor = pool;
+    this.clock = System::nanoTime;
+  }
+
+  /**
+   * Create a scheduler that runs ticks on the given executor, and reads the time from the given
+   * clock.
+   * 
+   * @param executor where to run ticks.
+   * @param clock the current time in nanoseconds, on the same scale as {@link System#nanoTime()}.
+   */
+  /* package-private */ FixedRateAgentScheduler(ScheduledExecutorService executor,
+      LongSupplier clock) {
+    this.executor = executor;
+    this.clock = clock;
+  }
+
+  /**
+   * Start making the given agent take an action on every tick.
+   * 
+   * @param agent the agent to drive.
+   * @param period the time between ticks.
+   * @param unit the unit of the period.
+   * @return a handle to watch the agent's timing with, and to stop it.
+   */
+  public ScheduledAgent schedule(Agent agent, @Nonnegative long period, TimeUnit unit) {
+    return schedule(() -> {
+      agent.takeNextAction();
+      try {
+        agent.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Action failed", e.getCause());
+      }
+    }, period, unit);
+  }
+
+  /**
+   * Start running the given task on every tick, as if it were an agent.
+   * 
+   * @param tick the task to run.
+   * @param period the time between ticks.
+   * @param unit the unit of the period.
+   * @return a handle to watch the task's timing with, and to stop it.
+   */
+  public ScheduledAgent schedule(Runnable tick, @Nonnegative long period, TimeUnit unit) {
+    long periodNanos = unit.toNanos(period);
+    if (periodNanos < 1) {
+      throw new IllegalArgumentException(
+          "Period must be positive, but got: " + period + " " + unit);
+    }
+    long fraction = (agentsScheduled.getAndIncrement() * GOLDEN_RATIO_FRACTION) >>> 11;
+    long phase = (long) (periodNanos * (fraction / (double) (1L << 53)));
+
+    ScheduledAgent scheduled = new ScheduledAgent(tick, periodNanos, executor, clock);
+    scheduled.start(phase);
+    return scheduled;
+  }
+
+  /**
+   * Stop every agent. Ticks that are already running are allowed to finish.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Counts durations in buckets whose width grows with their value, so that percentiles can be
+ * read off without storing every sample.
+ * 
+ * <p>
+ * Durations are counted in nanoseconds. Each power of two is split into eight buckets, so any
+ * percentile is accurate to within one eighth of its value, from nanoseconds up to centuries.
+ * Recording takes no locks and costs a few atomic increments, so it can be done on every tick.
+ * </p>
+ */
+@ThreadSafe
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  @Nonnull
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  @Nonnull
+  private final AtomicLong count = new AtomicLong();
+  @Nonnull
+  private final AtomicLong total = new AtomicLong();
+  @Nonnull
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Count one duration.
+   * 
+   * @param nanos the duration, in nanoseconds. Negative durations are counted as zero.
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(bucketOf(value));
+    count.incrementAndGet();
+    total.addAndGet(value);
+    long largest = max.get();
+    while (value > largest && !max.compareAndSet(largest, value)) {
+      largest = max.get();
+    }
+  }
+
+  /**
+   * Get the number of durations counted.
+   * 
+   * @return how many times {@link #record(long)} has been called.
+   */
+  @Nonnegative
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Get the longest duration counted.
+   * 
+   * @param unit the unit to give the duration in.
+   * @return the longest duration, or zero if none have been counted.
+   */
+  @Nonnegative
+  public long getMax(TimeUnit unit) {
+    return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Get the average duration counted.
+   * 
+   * @param unit the unit to give the duration in.
+   * @return the mean duration, or zero if none have been counted.
+   */
+  @Nonnegative
+  public double getMean(TimeUnit unit) {
+    long samples = count.get();
+    if (samples == 0) {
+      return 0;
+    }
+    return (double) total.get() / samples / unit.toNanos(1);
+  }
+
+  /**
+   * Get the duration that the given percentage of counted durations were no longer than. This is
+   * the upper edge of the bucket that the percentile falls in, and never more than the longest
+   * duration counted.
+   * 
+   * @param percentile the percentage of durations, from 0 to 100.
+   * @param unit the unit to give the duration in.
+   * @return the duration at that percentile, or zero if none have been counted.
+   */
+  @Nonnegative
+  public long getValueAtPercentile(double percentile, TimeUnit unit) {
+    if (!(percentile >= 0 && percentile <= 100)) {
+      throw new IllegalArgumentException(
+          "Percentile must be between 0 and 100, but got: " + percentile);
+    }
+    long samples = count.get();
+    if (samples == 0) {
+      return 0;
+    }
+    long wanted = Math.max(1, (long) Math.ceil(samples * percentile / 100));
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += counts.get(bucket);
+      if (seen >= wanted) {
+        long upper = bucket + 1 < BUCKETS ? lowestValueOf(bucket + 1) - 1 : Long.MAX_VALUE;
+        return unit.convert(Math.min(upper, max.get()), TimeUnit.NANOSECONDS);
+      }
+    }
+    return getMax(unit);
+  }
+
+  @Override
+  public String toString() {
+    return "LatencyHistogram [count=" + getCount()
+        + ", mean=" + getMean(TimeUnit.MICROSECONDS)
+        + "us, p50=" + getValueAtPercentile(50, TimeUnit.MICROSECONDS)
+        + "us, p99=" + getValueAtPercentile(99, TimeUnit.MICROSECONDS)
+        + "us, max=" + getMax(TimeUnit.MICROSECONDS) + "us]";
+  }
+
+  private static int bucketOf(@Nonnegative long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long lowestValueOf(@Nonnegative int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = bucket % SUB_BUCKETS;
+    return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+}
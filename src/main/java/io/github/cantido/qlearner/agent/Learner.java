@@ -0,0 +1,135 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.quality.QualityUpdater;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Updates {@link Quality} values from the transitions that acting {@link Agent}s publish to a
+ * {@link TransitionQueue}, in batches.
+ * 
+ * <p>
+ * Run a {@code Learner} on its own thread to take updates off of the acting thread. It drains the
+ * queue until it is {@link #stop() stopped}, then drains whatever is left before returning. More
+ * than one {@code Learner} can drain the same queue, as long as the
+ * {@link io.github.cantido.qlearner.algorithm.model.QualityMap QualityMap} they update is
+ * thread-safe.
+ * </p>
+ * 
+ * <pre>
+ * TransitionQueue transitions = new TransitionQueue(1024);
+ * AgentBuilder builder =
+ *     new AgentBuilder(environment).setQualityMap(new ConcurrentQualityHashMap());
+ * Agent agent = builder.getActorAgent(transitions);
+ * Learner learner = builder.getLearner(transitions);
+ * new Thread(learner).start();
+ * </pre>
+ */
+@ThreadSafe
+public class Learner implements Runnable {
+  @Nonnull
+  private final TransitionQueue transitions;
+  @Nonnull
+  private final TransitionSink updater;
+  @Nonnegative
+  private final int batchSize;
+  @Nonnull
+  private final AtomicLong transitionsLearned = new AtomicLong();
+
+  private volatile boolean stopped = false;
+
+  /**
+   * Clients should not be instantiating this object themselves. Please use the
+   * {@link AgentBuilder}.
+   * 
+   * @param transitions the queue to take transitions from.
+   * @param updater the object that this learner will use to update {@code Quality} values.
+   * @param batchSize the most transitions to take from the queue at once.
+   */
+  /* package-private */ Learner(TransitionQueue transitions, QualityUpdater updater,
+      @Nonnegative int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be positive, but got: " + batchSize);
+    }
+    this.transitions = transitions;
+    this.updater = updater::updateQuality;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Learn from transitions as they are published, until this learner is stopped or its thread is
+   * interrupted.
+   */
+  @Override
+  public void run() {
+    int idleAttempts = 0;
+    while (!stopped && !Thread.currentThread().isInterrupted()) {
+      if (learnBatch() == 0) {
+        TransitionQueue.idle(idleAttempts++);
+      } else {
+        idleAttempts = 0;
+      }
+    }
+    learnAll();
+  }
+
+  /**
+   * Learn from every transition that is currently queued, on the calling thread.
+   * 
+   * @return how many transitions were learned from.
+   */
+  @Nonnegative
+  public long learnAll() {
+    long learned = 0;
+    int batch;
+    while ((batch = learnBatch()) > 0) {
+      learned += batch;
+    }
+    return learned;
+  }
+
+  /**
+   * Ask this learner to stop once it has learned from the transitions that are already queued.
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  /**
+   * Get the number of transitions that this learner has learned from.
+   * 
+   * @return how many transitions have been applied.
+   */
+  @Nonnegative
+  public long getTransitionsLearned() {
+    return transitionsLearned.get();
+  }
+
+  private int learnBatch() {
+    int learned = transitions.drain(updater, batchSize);
+    if (learned > 0) {
+      transitionsLearned.addAndGet(learned);
+    }
+    return learned;
+  }
+}
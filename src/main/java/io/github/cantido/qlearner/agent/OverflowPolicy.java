@@ -0,0 +1,41 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.client.Action;
+
+/**
+ * What a {@link BoundedActionExecutor} does with a new {@link Action} when the agent's queue of
+ * actions waiting to be performed is full.
+ */
+public enum OverflowPolicy {
+  /**
+   * The agent waits until there is room in its queue. No actions are lost, but a slow action
+   * slows down its agent.
+   */
+  BLOCK,
+
+  /**
+   * The oldest waiting action is cancelled to make room for the new one.
+   */
+  DROP_OLDEST,
+
+  /**
+   * Every waiting action is cancelled, and only the new one is kept. Use this when only the latest
+   * decision matters, like a set point that supersedes the ones before it.
+   */
+  COALESCE_LATEST
+}
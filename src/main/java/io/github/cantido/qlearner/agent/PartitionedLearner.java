@@ -0,0 +1,150 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.algorithm.quality.QualityUpdater;
+import io.github.cantido.qlearner.algorithm.quality.ShardedQualityMap;
+import io.github.cantido.qlearner.client.State;
+
+import java.io.Closeable;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Learns from transitions on one thread per shard of a {@link ShardedQualityMap}, routing each
+ * transition to the thread that owns its starting {@link State}.
+ * 
+ * <p>
+ * A transition only ever writes the value of its starting {@code State}, so sending it to that
+ * {@code State}'s shard means every shard is written by exactly one thread. Writers never contend
+ * with each other, and throughput grows with the number of shards. Each shard has its own
+ * {@link TransitionQueue}, so a slow shard only holds back the agents publishing to it.
+ * </p>
+ * 
+ * <pre>
+ * AgentBuilder builder = new AgentBuilder(environment).setQualityMap(new ShardedQualityMap(4));
+ * PartitionedLearner learner = builder.getPartitionedLearner(1024);
+ * learner.start();
+ * Agent agent = builder.getActorAgent(learner);
+ * </pre>
+ */
+@ThreadSafe
+public class PartitionedLearner implements TransitionSink, Closeable {
+  @Nonnull
+  private final ShardedQualityMap qualityMap;
+  @Nonnull
+  private final TransitionQueue[] queues;
+  @Nonnull
+  private final Learner[] learners;
+  @GuardedBy("this")
+  @Nonnull
+  private final Thread[] threads;
+
+  /**
+   * Clients should not be instantiating this object themselves. Please use the
+   * {@link AgentBuilder}.
+   * 
+   * @param qualityMap the sharded map that the updater writes to.
+   * @param updater the object that each shard's learner will use to update values.
+   * @param queueCapacity how many transitions each shard's queue can hold.
+   * @param batchSize the most transitions to take from a queue at once.
+   */
+  /* package-private */ PartitionedLearner(ShardedQualityMap qualityMap, QualityUpdater updater,
+      @Nonnegative int queueCapacity, @Nonnegative int batchSize) {
+    this.qualityMap = qualityMap;
+    int shardCount = qualityMap.getShardCount();
+    this.queues = new TransitionQueue[shardCount];
+    this.learners = new Learner[shardCount];
+    this.threads = new Thread[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      queues[i] = new TransitionQueue(queueCapacity);
+      learners[i] = new Learner(queues[i], updater, batchSize);
+    }
+  }
+
+  /**
+   * Start one learning thread per shard. Transitions published before this are kept until then.
+   */
+  public synchronized void start() {
+    for (int i = 0; i < threads.length; i++) {
+      if (threads[i] == null) {
+        threads[i] = new Thread(learners[i], "qlearner-learner-" + i);
+        threads[i].setDaemon(true);
+        threads[i].start();
+      }
+    }
+  }
+
+  /**
+   * Route a transition to the queue of the shard that owns its starting {@code State}, waiting
+   * for room if that queue is full.
+   */
+  @Override
+  public void publish(Step stepTaken, State resultingState) {
+    queues[qualityMap.shardOf(stepTaken.getStartingState())].publish(stepTaken, resultingState);
+  }
+
+  /**
+   * Get the queue that feeds a single shard, for example to monitor its depth.
+   * 
+   * @param shard the index of the shard.
+   * @return that shard's queue.
+   */
+  public TransitionQueue getQueue(@Nonnegative int shard) {
+    return queues[shard];
+  }
+
+  /**
+   * Get the total number of transitions learned from by every shard.
+   * 
+   * @return how many transitions have been applied.
+   */
+  @Nonnegative
+  public long getTransitionsLearned() {
+    long learned = 0;
+    for (Learner learner : learners) {
+      learned += learner.getTransitionsLearned();
+    }
+    return learned;
+  }
+
+  /**
+   * Stop every learning thread once it has learned from the transitions already in its queue, and
+   * wait for them to finish.
+   */
+  @Override
+  public synchronized void close() {
+    for (Learner learner : learners) {
+      learner.stop();
+    }
+    boolean interrupted = false;
+    for (Thread thread : threads) {
+      while (thread != null && thread.isAlive()) {
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
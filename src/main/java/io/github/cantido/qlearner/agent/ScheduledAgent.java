@@ -0,0 +1,208 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An {@link Agent} being driven on fixed-rate ticks by a {@link FixedRateAgentScheduler}, and how
+ * well it is keeping to its schedule.
+ * 
+ * <p>
+ * Each tick is due at a fixed offset from the first, so lateness does not build up from one tick
+ * to the next. The scheduling latency of a tick is how long after it was due it started, and its
+ * jitter is how far the time since the previous tick strayed from the intended period. A tick that
+ * is still running when the next one is due is an overrun: the ticks it ran into are skipped,
+ * rather than run back to back to catch up.
+ * </p>
+ */
+@ThreadSafe
+public class ScheduledAgent {
+  @SuppressWarnings("null")
+  @Nonnull
+  private static final Logger logger = LoggerFactory.getLogger(ScheduledAgent.class);
+
+  @Nonnull
+  private final Runnable tick;
+  @Nonnegative
+  private final long periodNanos;
+  @Nonnull
+  private final ScheduledExecutorService executor;
+  @Nonnull
+  private final LongSupplier clock;
+
+  @Nonnull
+  private final LatencyHistogram latency = new LatencyHistogram();
+  @Nonnull
+  private final LatencyHistogram jitter = new LatencyHistogram();
+  @Nonnull
+  private final AtomicLong ticks = new AtomicLong();
+  @Nonnull
+  private final AtomicLong overruns = new AtomicLong();
+  @Nonnull
+  private final AtomicLong failures = new AtomicLong();
+
+  private long deadline;
+  private long previousDeadline;
+  private long previousStart;
+
+  @Nullable
+  private volatile ScheduledFuture<?> nextTick;
+  private volatile boolean cancelled;
+
+  /* package-private */ ScheduledAgent(Runnable tick, @Nonnegative long periodNanos,
+      ScheduledExecutorService executor, LongSupplier clock) {
+    this.tick = tick;
+    this.periodNanos = periodNanos;
+    this.executor = executor;
+    this.clock = clock;
+  }
+
+  /**
+   * Schedule the first tick. Later ticks schedule their own successors.
+   * 
+   * @param phaseNanos how long after now the first tick is due.
+   */
+  /* package-private */ void start(@Nonnegative long phaseNanos) {
+    deadline = clock.getAsLong() + phaseNanos;
+    nextTick = executor.schedule(this::runTick, phaseNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Stop ticking. A tick that is already running is allowed to finish.
+   */
+  public void cancel() {
+    cancelled = true;
+    ScheduledFuture<?> scheduled = nextTick;
+    if (scheduled != null) {
+      scheduled.cancel(false);
+    }
+  }
+
+  /**
+   * Get the time between the ticks of this agent.
+   * 
+   * @param unit the unit to give the period in.
+   * @return the period of this agent's ticks.
+   */
+  public long getPeriod(TimeUnit unit) {
+    return unit.convert(periodNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Get how long after they were due this agent's ticks started.
+   * 
+   * @return the scheduling latency of every tick so far.
+   */
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  /**
+   * Get how far the time between this agent's ticks strayed from their intended period.
+   * 
+   * @return the jitter of every tick so far, except the first.
+   */
+  public LatencyHistogram getJitter() {
+    return jitter;
+  }
+
+  /**
+   * Get the number of ticks that have run.
+   * 
+   * @return how many ticks have run, including any that failed.
+   */
+  @Nonnegative
+  public long getTicks() {
+    return ticks.get();
+  }
+
+  /**
+   * Get the number of ticks skipped because an earlier tick was still running when they were due.
+   * 
+   * @return how many ticks have been skipped.
+   */
+  @Nonnegative
+  public long getOverrunCount() {
+    return overruns.get();
+  }
+
+  /**
+   * Get the number of ticks that threw an exception. Ticking carries on after a failure.
+   * 
+   * @return how many ticks have failed.
+   */
+  @Nonnegative
+  public long getFailureCount() {
+    return failures.get();
+  }
+
+  private void runTick() {
+    long start = clock.getAsLong();
+    latency.record(start - deadline);
+    if (ticks.get() > 0) {
+      jitter.record(Math.abs((start - previousStart) - (deadline - previousDeadline)));
+    }
+    previousStart = start;
+    previousDeadline = deadline;
+
+    try {
+      tick.run();
+    } catch (RuntimeException e) {
+      failures.incrementAndGet();
+      logger.warn("Scheduled agent failed to take its action", e);
+    }
+    ticks.incrementAndGet();
+
+    long next = deadline + periodNanos;
+    long now = clock.getAsLong();
+    if (now - next > 0) {
+      long missed = (now - next) / periodNanos + 1;
+      overruns.addAndGet(missed);
+      next += missed * periodNanos;
+    }
+    deadline = next;
+
+    if (cancelled) {
+      return;
+    }
+    ScheduledFuture<?> scheduled;
+    try {
+      scheduled = executor.schedule(this::runTick, next - now, TimeUnit.NANOSECONDS);
+    } catch (RejectedExecutionException e) {
+      cancelled = true;
+      return;
+    }
+    nextTick = scheduled;
+    // cancel() may have run after the check above, and only seen the tick that is ending now
+    if (cancelled) {
+      scheduled.cancel(false);
+    }
+  }
+}
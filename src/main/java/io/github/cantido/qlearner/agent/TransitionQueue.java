@@ -0,0 +1,237 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.client.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A bounded, lock-free queue of transitions, passed from acting {@link Agent}s to {@link Learner}s.
+ * 
+ * <p>
+ * Any number of threads can publish and drain at the same time. Each slot of the ring carries a
+ * sequence number that tells publishers and drainers whose turn it is to use it, so neither side
+ * ever takes a lock, and a publisher never has to wait for another publisher.
+ * </p>
+ * 
+ * <p>
+ * When the queue is full, {@link #publish(Step, State)} waits for a learner to make room, so
+ * acting slows down to the speed of learning instead of using unbounded memory. Use
+ * {@link #offer(Step, State)} to drop transitions instead. The queue's depth, its deepest point,
+ * and the number of times a publisher had to wait are all available for monitoring.
+ * </p>
+ */
+@ThreadSafe
+public class TransitionQueue implements TransitionSink {
+  private static final int SPINS_BEFORE_YIELDING = 64;
+  private static final int YIELDS_BEFORE_PARKING = 64;
+  private static final long MAXIMUM_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  @Nonnegative
+  private final int mask;
+  @Nonnull
+  private final AtomicLongArray sequences;
+  @Nonnull
+  private final Step[] steps;
+  @Nonnull
+  private final State[] resultingStates;
+
+  @Nonnull
+  private final AtomicLong tail = new AtomicLong();
+  @Nonnull
+  private final AtomicLong head = new AtomicLong();
+  @Nonnull
+  private final AtomicLong highWaterMark = new AtomicLong();
+  @Nonnull
+  private final AtomicLong blockedPublishes = new AtomicLong();
+
+  /**
+   * Create an empty queue that can hold at least the given number of transitions. The capacity is
+   * rounded up to a power of two.
+   * 
+   * @param capacity the least number of transitions that this queue can hold.
+   */
+  public TransitionQueue(@Nonnegative int capacity) {
+    if (capacity < 1 || capacity > 1 << 30) {
+      throw new IllegalArgumentException(
+          "Capacity must be between 1 and 2^30, but got: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.mask = size - 1;
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+    this.steps = new Step[size];
+    this.resultingStates = new State[size];
+  }
+
+  /**
+   * Add a transition to this queue, waiting for room if it is full.
+   */
+  @Override
+  public void publish(Step stepTaken, State resultingState) {
+    if (offer(stepTaken, resultingState)) {
+      return;
+    }
+    blockedPublishes.incrementAndGet();
+    for (int attempt = 0; !offer(stepTaken, resultingState); attempt++) {
+      idle(attempt);
+    }
+  }
+
+  /**
+   * Add a transition to this queue, unless it is full.
+   * 
+   * @param stepTaken the starting {@code State} and the {@code Action} taken from it.
+   * @param resultingState the {@code State} that the {@code Action} led to.
+   * @return {@code true} if the transition was added, or {@code false} if the queue was full.
+   */
+  public boolean offer(Step stepTaken, State resultingState) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          steps[index] = stepTaken;
+          resultingStates[index] = resultingState;
+          sequences.lazySet(index, position + 1);
+          recordDepth(position + 1 - head.get());
+          return true;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Remove up to the given number of transitions from this queue, oldest first, and pass each of
+   * them to the given sink. This never waits for transitions to be published.
+   * 
+   * @param sink where to pass each transition.
+   * @param maximumTransitions the most transitions to remove.
+   * @return how many transitions were removed.
+   */
+  @Nonnegative
+  public int drain(TransitionSink sink, @Nonnegative int maximumTransitions) {
+    int drained = 0;
+    long position = head.get();
+    while (drained < maximumTransitions) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - (position + 1);
+      if (difference == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          Step step = steps[index];
+          State resultingState = resultingStates[index];
+          steps[index] = null;
+          resultingStates[index] = null;
+          sequences.lazySet(index, position + mask + 1);
+          sink.publish(step, resultingState);
+          drained++;
+        }
+        position = head.get();
+      } else if (difference < 0) {
+        break;
+      } else {
+        position = head.get();
+      }
+    }
+    return drained;
+  }
+
+  /**
+   * Get the number of transitions that this queue can hold.
+   * 
+   * @return the capacity of this queue.
+   */
+  @Nonnegative
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Get the number of transitions waiting in this queue. This is only a snapshot, since other
+   * threads may be publishing and draining at the same time.
+   * 
+   * @return the current depth of this queue.
+   */
+  @Nonnegative
+  public int size() {
+    long size = tail.get() - head.get();
+    return (int) Math.max(0, Math.min(size, getCapacity()));
+  }
+
+  /**
+   * Get the most transitions that have been waiting in this queue at once.
+   * 
+   * @return the deepest this queue has been.
+   */
+  @Nonnegative
+  public long getHighWaterMark() {
+    return highWaterMark.get();
+  }
+
+  /**
+   * Get the number of times that {@link #publish(Step, State)} found this queue full and had to
+   * wait for room.
+   * 
+   * @return how many publishes have been held back.
+   */
+  @Nonnegative
+  public long getBlockedPublishCount() {
+    return blockedPublishes.get();
+  }
+
+  private void recordDepth(long depth) {
+    long deepest = highWaterMark.get();
+    while (depth > deepest && !highWaterMark.compareAndSet(deepest, depth)) {
+      deepest = highWaterMark.get();
+    }
+  }
+
+  /**
+   * Back off a little more on each attempt: first spin, then yield, then park for a growing time.
+   * 
+   * @param attempt how many times the caller has already waited.
+   */
+  /* package-private */ static void idle(@Nonnegative int attempt) {
+    if (attempt < SPINS_BEFORE_YIELDING) {
+      return;
+    }
+    if (attempt < SPINS_BEFORE_YIELDING + YIELDS_BEFORE_PARKING) {
+      Thread.yield();
+      return;
+    }
+    int parks = attempt - SPINS_BEFORE_YIELDING - YIELDS_BEFORE_PARKING;
+    LockSupport.parkNanos(Math.min(MAXIMUM_PARK_NANOS, 1_000L << Math.min(parks, 7)));
+  }
+}
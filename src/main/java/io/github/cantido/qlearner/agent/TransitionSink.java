@@ -0,0 +1,34 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+/**
+ * Receives the transitions that an {@link Agent} makes between {@link State}s, so that they can be
+ * learned from.
+ */
+@FunctionalInterface
+public interface TransitionSink {
+  /**
+   * Receive a single transition.
+   * 
+   * @param stepTaken the starting {@code State} and the {@link Action} taken from it.
+   * @param resultingState the {@code State} that the {@code Action} led to.
+   */
+  void publish(Step stepTaken, State resultingState);
+}
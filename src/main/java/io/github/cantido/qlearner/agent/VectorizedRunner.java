@@ -0,0 +1,240 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.algorithm.model.ExplorationStrategy;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.Environment;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Steps many copies of an {@link Environment} in lockstep, sharing what they learn.
+ * 
+ * <p>
+ * Each tick observes every environment, learns from every transition that led to the observed
+ * {@link State}s, selects an {@link Action} for every environment, and then performs them all.
+ * Doing each phase for all environments at once keeps the same code and the same data hot, which
+ * matters when a single step costs about as much as calling an agent to take it. Within a tick,
+ * transitions are learned and actions selected in order of their {@code State}'s hash, so that
+ * environments in the same {@code State} look up the same {@link QualityMap} entry back to back.
+ * </p>
+ * 
+ * <p>
+ * An environment that reaches a terminal state is learned from, reset, and observed again in the
+ * same tick, so that every environment acts on every tick. {@code Action}s are performed on the
+ * calling thread, one after another.
+ * </p>
+ * 
+ * <pre>
+ * VectorizedRunner&lt;GridWorldEnvironment&gt; runner = builder.getVectorizedRunner(environments,
+ *     GridWorldEnvironment::isAtGoalState, GridWorldEnvironment::reset);
+ * runner.runEpisodes(10_000);
+ * </pre>
+ * 
+ * @param <E> the type of environment being stepped.
+ */
+@NotThreadSafe
+public class VectorizedRunner<E extends Environment> {
+  @Nonnull
+  private final List<E> environments;
+  @Nonnull
+  private final Predicate<? super E> isTerminal;
+  @Nonnull
+  private final Consumer<? super E> reset;
+  @Nonnull
+  private final ActionSelector actionSelector;
+  @Nonnull
+  private final TransitionSink transitionSink;
+
+  @Nonnull
+  private final State[] states;
+  @Nonnull
+  private final Step[] lastSteps;
+  @Nonnull
+  private final long[] order;
+
+  @Nonnegative
+  private long ticks;
+  @Nonnegative
+  private long episodesCompleted;
+
+  /**
+   * Clients should not be instantiating this object themselves. Please use the {@link AgentBuilder}
+   * .
+   * 
+   * @param environments the environments to step together
+   * @param isTerminal whether an environment has reached the end of an episode
+   * @param reset starts a new episode in an environment
+   * @param explorationStrategy the type of exploration to use
+   * @param qualityMap where to get {@code Quality} values
+   * @param transitionSink where to send the transitions made, to learn from
+   */
+  /* package-private */ VectorizedRunner(
+                            List<? extends E> environments,
+                            Predicate<? super E> isTerminal,
+                            Consumer<? super E> reset,
+                            ExplorationStrategy explorationStrategy,
+                            QualityMap qualityMap,
+                            TransitionSink transitionSink) {
+    if (environments.isEmpty()) {
+      throw new IllegalArgumentException("Need at least one environment, but got none");
+    }
+    this.environments = new ArrayList<>(environments);
+    this.isTerminal = isTerminal;
+    this.reset = reset;
+    this.actionSelector = new ActionSelector(explorationStrategy, qualityMap);
+    this.transitionSink = transitionSink;
+
+    int count = this.environments.size();
+    this.states = new State[count];
+    this.lastSteps = new Step[count];
+    this.order = new long[count];
+  }
+
+  /**
+   * Step every environment once.
+   */
+  public void tick() {
+    int count = environments.size();
+    for (int i = 0; i < count; i++) {
+      states[i] = environments.get(i).getState();
+    }
+    sortByState();
+
+    for (long entry : order) {
+      int i = (int) entry;
+      if (lastSteps[i] != null) {
+        transitionSink.publish(lastSteps[i], states[i]);
+      }
+    }
+
+    boolean anyReset = false;
+    for (int i = 0; i < count; i++) {
+      E environment = environments.get(i);
+      if (isTerminal.test(environment)) {
+        episodesCompleted++;
+        reset.accept(environment);
+        lastSteps[i] = null;
+        states[i] = environment.getState();
+        anyReset = true;
+      }
+    }
+    if (anyReset) {
+      sortByState();
+    }
+
+    for (long entry : order) {
+      int i = (int) entry;
+      lastSteps[i] = new Step(states[i], actionSelector.selectAction(states[i]));
+    }
+
+    for (int i = 0; i < count; i++) {
+      lastSteps[i].getLeavingAction().run();
+      states[i] = null;
+    }
+    ticks++;
+  }
+
+  /**
+   * Order the environments by the hash of their current state, so that environments in the same
+   * state are visited one after another.
+   */
+  private void sortByState() {
+    for (int i = 0; i < order.length; i++) {
+      order[i] = ((long) states[i].hashCode() << 32) | i;
+    }
+    Arrays.sort(order);
+  }
+
+  /**
+   * Step every environment the given number of times.
+   * 
+   * @param count how many ticks to run.
+   */
+  public void runTicks(@Nonnegative long count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Count must not be negative, but got: " + count);
+    }
+    for (long i = 0; i < count; i++) {
+      tick();
+    }
+  }
+
+  /**
+   * Step every environment until the given number of episodes have been completed, across all of
+   * the environments together.
+   * 
+   * @param count how many more episodes to complete.
+   */
+  public void runEpisodes(@Nonnegative long count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Count must not be negative, but got: " + count);
+    }
+    long target = episodesCompleted + count;
+    while (episodesCompleted < target) {
+      tick();
+    }
+  }
+
+  /**
+   * Forget the last step taken in every environment, so that the next tick does not learn from
+   * them. This does not reset the environments themselves.
+   */
+  public void reset() {
+    Arrays.fill(lastSteps, null);
+  }
+
+  /**
+   * Get the number of environments stepped on each tick.
+   * 
+   * @return how many environments this runner holds.
+   */
+  @Nonnegative
+  public int getEnvironmentCount() {
+    return environments.size();
+  }
+
+  /**
+   * Get the number of ticks run so far.
+   * 
+   * @return how many times every environment has been stepped.
+   */
+  @Nonnegative
+  public long getTicks() {
+    return ticks;
+  }
+
+  /**
+   * Get the number of episodes completed so far, across all of the environments.
+   * 
+   * @return how many times an environment has reached a terminal state.
+   */
+  @Nonnegative
+  public long getEpisodesCompleted() {
+    return episodesCompleted;
+  }
+}
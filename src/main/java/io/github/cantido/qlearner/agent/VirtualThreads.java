@@ -0,0 +1,128 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.client.Action;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Executors that run each task on its own virtual thread, for {@link Agent}s whose
+ * {@link Action}s spend most of their time blocked on I/O.
+ * 
+ * <p>
+ * A virtual thread that blocks gives its carrier thread back to the JVM, so tens of thousands of
+ * agents can each wait on their own {@code Action} without tens of thousands of operating-system
+ * threads. Virtual threads need Java 21. On older runtimes these executors fall back to a cached
+ * pool of daemon threads, which behaves the same but costs a platform thread per blocked task.
+ * </p>
+ * 
+ * <p>
+ * This is the Java 8 version of this class. The library jar also carries a Java 21 version, which
+ * multi-release runtimes load in its place. This version still finds virtual threads by
+ * reflection, for when the library is loaded from an unpacked class directory.
+ * </p>
+ * 
+ * <pre>
+ * ExecutorService agentLoops = VirtualThreads.newExecutor();
+ * for (int i = 0; i &lt; 10_000; i++) {
+ *   Agent agent = builder.getAgent();
+ *   agentLoops.execute(() -&gt; {
+ *     while (running) {
+ *       agent.takeNextAction();
+ *     }
+ *   });
+ * }
+ * </pre>
+ */
+public final class VirtualThreads {
+  @SuppressWarnings("null")
+  @Nonnull
+  private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+  @Nullable
+  private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualExecutor();
+
+  @Nonnull
+  private static final AtomicInteger threadCount = new AtomicInteger();
+
+  private VirtualThreads() {
+    // Static methods only
+  }
+
+  /**
+   * Check whether this runtime can run tasks on virtual threads.
+   * 
+   * @return {@code true} if {@link #newExecutor()} creates virtual threads, or {@code false} if it
+   *         falls back to platform threads. This is found by trying to create a virtual thread
+   *         executor, not by checking the Java version.
+   */
+  public static boolean isSupported() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Create an {@code ExecutorService} that starts a new virtual thread for each task, or a new
+   * daemon platform thread if virtual threads are not supported. Tasks never wait in a queue.
+   * 
+   * @return a new thread-per-task executor.
+   */
+  public static ExecutorService newExecutor() {
+    MethodHandle factory = NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+    if (factory != null) {
+      try {
+        return (ExecutorService) factory.invokeExact();
+      } catch (Throwable e) {
+        logger.warn("Could not create a virtual thread executor, using platform threads", e);
+      }
+    }
+    return Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "qlearner-agent-" + threadCount.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Nullable
+  private static MethodHandle findVirtualExecutor() {
+    MethodHandle factory;
+    try {
+      factory = MethodHandles.publicLookup().findStatic(Executors.class,
+          "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+    // Java 19 and 20 have the method as a preview feature, which throws unless previews are enabled
+    try {
+      ((ExecutorService) factory.invokeExact()).shutdown();
+    } catch (Throwable e) {
+      logger.debug("Virtual threads are not available, using platform threads", e);
+      return null;
+    }
+    return factory;
+  }
+}
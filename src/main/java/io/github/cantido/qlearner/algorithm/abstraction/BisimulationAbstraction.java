@@ -0,0 +1,208 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.abstraction;
+
+import io.github.cantido.qlearner.agent.Step;
+import io.github.cantido.qlearner.agent.TransitionSink;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A {@link StateAbstraction} that learns which {@link State}s are equivalent from the transitions
+ * it is given, by grouping states that cannot be told apart by their rewards or by where their
+ * {@link Action}s lead.
+ * 
+ * <p>
+ * States start out grouped by their reward, rounded to a tolerance, and the {@code Action}s they
+ * offer. Groups are then split, again and again, until every state in a group leads, by each
+ * {@code Action}, to a state in the same group as the others do. This is the partition refinement
+ * that computes a bisimulation, run over the most recent transition seen for each state and
+ * {@code Action}. It is exact for deterministic environments, and an approximation otherwise.
+ * </p>
+ * 
+ * <p>
+ * Groups are recomputed every so many transitions, or on {@link #refine()}. Until then, new states
+ * are their own abstract states. Each group is represented by the state in it that was seen
+ * first, so a group keeps its values when it is recomputed, unless its first state moves to
+ * another group. A state whose {@code Action}s have not been tried yet may share a group with
+ * other such states, until it has been explored enough to be told apart.
+ * </p>
+ */
+@NotThreadSafe
+public class BisimulationAbstraction implements StateAbstraction, TransitionSink {
+  private static final int DEFAULT_REFINEMENT_INTERVAL = 1_000;
+
+  private final double rewardTolerance;
+  @Nonnegative
+  private final int refinementInterval;
+  /**
+   * Every state seen, in the order it was first seen, with the last state each of its actions led
+   * to.
+   */
+  @Nonnull
+  private final Map<State, Map<Action, State>> successors = new LinkedHashMap<>();
+  @Nonnull
+  private Map<State, State> representatives = Collections.emptyMap();
+  @Nonnegative
+  private long transitions;
+  @Nonnegative
+  private long version;
+  @Nonnegative
+  private int groupCount;
+
+  /**
+   * Create an abstraction that regroups states every 1,000 transitions.
+   * 
+   * @param rewardTolerance how close two rewards must be to be treated as equal.
+   */
+  public BisimulationAbstraction(double rewardTolerance) {
+    this(rewardTolerance, DEFAULT_REFINEMENT_INTERVAL);
+  }
+
+  /**
+   * Create an abstraction that regroups states every given number of transitions.
+   * 
+   * @param rewardTolerance how close two rewards must be to be treated as equal.
+   * @param refinementInterval how many transitions to receive between regroupings.
+   */
+  public BisimulationAbstraction(double rewardTolerance, @Nonnegative int refinementInterval) {
+    if (!(rewardTolerance > 0)) {
+      throw new IllegalArgumentException(
+          "Reward tolerance must be positive, but got: " + rewardTolerance);
+    }
+    if (refinementInterval < 1) {
+      throw new IllegalArgumentException(
+          "Refinement interval must be at least 1, but got: " + refinementInterval);
+    }
+    this.rewardTolerance = rewardTolerance;
+    this.refinementInterval = refinementInterval;
+  }
+
+  /**
+   * Remember where the transition's {@code Action} led, and regroup states if it is time to.
+   */
+  @Override
+  public void publish(Step stepTaken, State resultingState) {
+    successors.computeIfAbsent(stepTaken.getStartingState(), state -> new HashMap<>())
+        .put(stepTaken.getLeavingAction(), resultingState);
+    successors.computeIfAbsent(resultingState, state -> new HashMap<>());
+    transitions++;
+    if (transitions % refinementInterval == 0) {
+      refine();
+    }
+  }
+
+  @Override
+  public State abstractState(State state) {
+    State representative = representatives.get(state);
+    return representative == null ? state : representative;
+  }
+
+  @Override
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Get the number of groups that states were divided into by the last regrouping.
+   * 
+   * @return the number of abstract states.
+   */
+  @Nonnegative
+  public int getGroupCount() {
+    return groupCount;
+  }
+
+  /**
+   * Get the number of distinct states that have been seen.
+   * 
+   * @return the number of raw states.
+   */
+  @Nonnegative
+  public int getStateCount() {
+    return successors.size();
+  }
+
+  /**
+   * Regroup every state seen so far, now.
+   */
+  public void refine() {
+    List<State> states = new ArrayList<>(successors.keySet());
+    Map<State, Integer> groups = new HashMap<>();
+    int count = partition(states, groups, state -> Arrays.asList(
+        Math.round(state.getReward().doubleValue() / rewardTolerance), state.getActions()));
+
+    while (true) {
+      Map<State, Integer> previous = new HashMap<>(groups);
+      int refined = partition(states, groups, state -> {
+        Map<Action, Integer> next = new HashMap<>();
+        for (Map.Entry<Action, State> successor : successors.get(state).entrySet()) {
+          next.put(successor.getKey(), previous.get(successor.getValue()));
+        }
+        return Arrays.asList(previous.get(state), next);
+      });
+      // Groups only ever split, so an unchanged count means nothing split
+      if (refined == count) {
+        break;
+      }
+      count = refined;
+    }
+
+    Map<Integer, State> firsts = new HashMap<>();
+    Map<State, State> refinedRepresentatives = new HashMap<>(states.size() * 4 / 3 + 1);
+    for (State state : states) {
+      refinedRepresentatives.put(state, firsts.computeIfAbsent(groups.get(state), group -> state));
+    }
+    if (!refinedRepresentatives.equals(representatives)) {
+      representatives = refinedRepresentatives;
+      version++;
+    }
+    groupCount = count;
+  }
+
+  /**
+   * Number every state's group, so that states with equal signatures share a group.
+   * 
+   * @return the number of groups.
+   */
+  private static int partition(List<State> states, Map<State, Integer> groups,
+      Function<State, Object> signature) {
+    Map<Object, Integer> ids = new HashMap<>();
+    for (State state : states) {
+      Object key = signature.apply(state);
+      Integer id = ids.get(key);
+      if (id == null) {
+        id = ids.size();
+        ids.put(key, id);
+      }
+      groups.put(state, id);
+    }
+    return ids.size();
+  }
+}
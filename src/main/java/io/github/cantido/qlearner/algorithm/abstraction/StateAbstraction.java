@@ -0,0 +1,50 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.abstraction;
+
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+/**
+ * Maps each {@link State} to the abstract {@code State} whose values it shares.
+ * 
+ * <p>
+ * Two states that map to equal abstract states are treated as one: learning about either of them
+ * changes the values of both. The abstract state should offer the same {@link Action}s as the
+ * states that map to it, so it is usually one of those states, chosen to represent the rest.
+ * </p>
+ */
+@FunctionalInterface
+public interface StateAbstraction {
+  /**
+   * Get the abstract {@code State} that the given {@code State} shares its values with.
+   * 
+   * @param state a raw {@code State}, as given by an environment.
+   * @return the abstract {@code State} to look values up with.
+   */
+  State abstractState(State state);
+
+  /**
+   * Get a number that changes every time this abstraction starts mapping some state differently,
+   * so that anything remembering its mappings knows to forget them. Abstractions that never change
+   * can leave this at zero.
+   * 
+   * @return the current version of this abstraction's mappings.
+   */
+  default long getVersion() {
+    return 0;
+  }
+}
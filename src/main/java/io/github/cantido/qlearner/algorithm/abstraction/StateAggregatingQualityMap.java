@@ -0,0 +1,164 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.abstraction;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.algorithm.quality.StateActionQuality;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A {@link QualityMap} that maps every {@link State} through a {@link StateAbstraction} before
+ * handing it to another {@code QualityMap}, so that equivalent states share one row of values.
+ * 
+ * <p>
+ * The abstract state of each recently-seen raw state is remembered, so the abstraction is usually
+ * only consulted once per state. When the abstraction's version changes, everything remembered is
+ * forgotten. Triplets are returned with the raw state the caller asked about.
+ * </p>
+ */
+@NotThreadSafe
+public class StateAggregatingQualityMap implements QualityMap {
+  private static final int DEFAULT_CACHE_SIZE = 10_000;
+
+  @Nonnull
+  private final QualityMap backingMap;
+  @Nonnull
+  private final StateAbstraction abstraction;
+  @Nonnull
+  private final Map<State, State> cache;
+  private long cachedVersion;
+  @Nonnegative
+  private long cacheHits;
+  @Nonnegative
+  private long cacheMisses;
+
+  /**
+   * Wrap the given map, remembering the abstract states of a default number (10,000) of raw
+   * states.
+   * 
+   * @param backingMap the map that holds the abstract states' values.
+   * @param abstraction how to map raw states to abstract ones.
+   */
+  public StateAggregatingQualityMap(QualityMap backingMap, StateAbstraction abstraction) {
+    this(backingMap, abstraction, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Wrap the given map, remembering the abstract states of up to the given number of raw states.
+   * 
+   * @param backingMap the map that holds the abstract states' values.
+   * @param abstraction how to map raw states to abstract ones.
+   * @param cacheSize the most raw states to remember the abstract states of.
+   */
+  public StateAggregatingQualityMap(QualityMap backingMap, StateAbstraction abstraction,
+      @Nonnegative int cacheSize) {
+    if (cacheSize < 1) {
+      throw new IllegalArgumentException(
+          "Must be able to cache at least one state, but got: " + cacheSize);
+    }
+    this.backingMap = backingMap;
+    this.abstraction = abstraction;
+    this.cachedVersion = abstraction.getVersion();
+    this.cache = new LinkedHashMap<State, State>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<State, State> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Get the map that holds the abstract states' values.
+   * 
+   * @return the wrapped map.
+   */
+  public QualityMap getBackingMap() {
+    return backingMap;
+  }
+
+  /**
+   * Get the number of lookups whose abstract state was remembered.
+   * 
+   * @return how many times the abstraction did not need to be consulted.
+   */
+  @Nonnegative
+  public long getCacheHitCount() {
+    return cacheHits;
+  }
+
+  /**
+   * Get the number of lookups that had to consult the abstraction.
+   * 
+   * @return how many times a raw state's abstract state was not remembered.
+   */
+  @Nonnegative
+  public long getCacheMissCount() {
+    return cacheMisses;
+  }
+
+  @Override
+  public Quality getDefaultQuality() {
+    return backingMap.getDefaultQuality();
+  }
+
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    backingMap.put(abstractStateOf(state), action, quality);
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    return backingMap.get(abstractStateOf(state), action);
+  }
+
+  @Override
+  public Quality getBestQuality(State state) {
+    return backingMap.getBestQuality(abstractStateOf(state));
+  }
+
+  @Override
+  public StateActionQuality getTriplet(State state, Action action) {
+    return new StateActionQuality(state, action, get(state, action));
+  }
+
+  private State abstractStateOf(State state) {
+    long version = abstraction.getVersion();
+    if (version != cachedVersion) {
+      cache.clear();
+      cachedVersion = version;
+    }
+    State abstractState = cache.get(state);
+    if (abstractState != null) {
+      cacheHits++;
+      return abstractState;
+    }
+    cacheMisses++;
+    abstractState = abstraction.abstractState(state);
+    cache.put(state, abstractState);
+    return abstractState;
+  }
+}
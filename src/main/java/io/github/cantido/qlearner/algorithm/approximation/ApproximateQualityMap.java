@@ -0,0 +1,68 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.algorithm.quality.StateActionQuality;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * The parts of a {@link QualityMap} that do not depend on how {@link Quality} values are
+ * approximated. Subclasses only need to read and store a single {@link State}-{@link Action} pair.
+ */
+@NotThreadSafe
+/* package-private */ abstract class ApproximateQualityMap implements QualityMap {
+  @SuppressWarnings("null")
+  @Nonnull
+  private Quality defaultQuality = Quality.ZERO;
+
+  /**
+   * Set the {@code Quality} value that every state and action has before anything is learned
+   * about it.
+   * 
+   * @param defaultQuality the default {@code Quality} value.
+   */
+  public void setDefaultQuality(Quality defaultQuality) {
+    this.defaultQuality = defaultQuality;
+  }
+
+  @Override
+  public Quality getDefaultQuality() {
+    return defaultQuality;
+  }
+
+  @Override
+  public Quality getBestQuality(State state) {
+    Quality best = null;
+    for (Action action : state.getActions()) {
+      Quality quality = get(state, action);
+      if (best == null || quality.compareTo(best) > 0) {
+        best = quality;
+      }
+    }
+    return best == null ? defaultQuality : best;
+  }
+
+  @Override
+  public StateActionQuality getTriplet(State state, Action action) {
+    return new StateActionQuality(state, action, get(state, action));
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.BitSet;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A {@link QualityMap} that hashes every {@link State}-{@link Action} pair straight into a
+ * fixed-size array, so that its memory never grows however many states are seen.
+ * 
+ * <p>
+ * Each pair is hashed to several slots, each with its own sign. Its quality is the default plus
+ * the average of those slots' values, each multiplied by its sign. When two pairs share a slot,
+ * their signs agree as often as they disagree, so on average the collision cancels out instead of
+ * pushing both qualities the same way. Averaging over several slots shrinks what is left. Storing
+ * a quality moves every one of the pair's slots by the difference from its current value.
+ * </p>
+ * 
+ * <p>
+ * States are keyed by their {@link State#hashCode()}, so states that are not equal but have equal
+ * hash codes share their qualities. Values are stored as {@code float}s, to fit twice as many
+ * slots in the same memory. {@link #getEstimatedCollisionRate()} tells how crowded the map is, to
+ * help choose a size.
+ * </p>
+ */
+@NotThreadSafe
+public class FeatureHashingQualityMap extends ApproximateQualityMap {
+  @Nonnull
+  private final float[] slots;
+  @Nonnegative
+  private final int hashes;
+  @Nonnull
+  private final BitSet occupied;
+  @Nonnegative
+  private int occupiedCount;
+
+  /**
+   * Create an empty map.
+   * 
+   * @param size the number of slots, which is all the memory this map will ever use.
+   * @param hashes the number of slots that each pair is hashed to.
+   */
+  public FeatureHashingQualityMap(@Nonnegative int size, @Nonnegative int hashes) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Size must be at least 1, but got: " + size);
+    }
+    if (hashes < 1 || hashes > size) {
+      throw new IllegalArgumentException(
+          "Hashes must be between 1 and the size, but got: " + hashes);
+    }
+    this.slots = new float[size];
+    this.hashes = hashes;
+    this.occupied = new BitSet(size);
+  }
+
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    long key = keyOf(state, action);
+    float difference = (float) (quality.doubleValue() - valueOf(key));
+    for (int i = 0; i < hashes; i++) {
+      long hash = hash(key, i);
+      int slot = slotOf(hash);
+      slots[slot] += signOf(hash) * difference;
+      if (!occupied.get(slot)) {
+        occupied.set(slot);
+        occupiedCount++;
+      }
+    }
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    return new Quality(valueOf(keyOf(state, action)));
+  }
+
+  /**
+   * Get the fraction of slots that have been written to.
+   * 
+   * @return a number from zero, for an empty map, to one, for a full one.
+   */
+  public double getLoadFactor() {
+    return (double) occupiedCount / slots.length;
+  }
+
+  /**
+   * Estimate the chance that a pair not yet stored would share at least one slot with a pair that
+   * has been. When this gets high, qualities start to blur into each other and the map should be
+   * made bigger.
+   * 
+   * @return a probability from zero to one.
+   */
+  public double getEstimatedCollisionRate() {
+    return 1 - Math.pow(1 - getLoadFactor(), hashes);
+  }
+
+  /**
+   * Estimate how many distinct pairs have been stored, from how many slots are in use. This is
+   * exact enough to size the map by, until the map is nearly full.
+   * 
+   * @return the estimated number of distinct pairs stored.
+   */
+  public double getEstimatedPairCount() {
+    double empty = 1 - getLoadFactor();
+    if (empty <= 0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return -slots.length * Math.log(empty) / hashes;
+  }
+
+  /**
+   * Get the number of slots in this map.
+   * 
+   * @return the size this map was created with.
+   */
+  @Nonnegative
+  public int getSize() {
+    return slots.length;
+  }
+
+  private double valueOf(long key) {
+    double sum = 0;
+    for (int i = 0; i < hashes; i++) {
+      long hash = hash(key, i);
+      sum += signOf(hash) * slots[slotOf(hash)];
+    }
+    return getDefaultQuality().doubleValue() + sum / hashes;
+  }
+
+  private int slotOf(long hash) {
+    return (int) ((hash >>> 1) % slots.length);
+  }
+
+  private static int signOf(long hash) {
+    return (hash & 1) == 0 ? 1 : -1;
+  }
+
+  private static long keyOf(State state, Action action) {
+    return Hashes.mix(state.hashCode() * Hashes.GOLDEN_RATIO + action.hashCode());
+  }
+
+  private static long hash(long key, int index) {
+    return Hashes.mix(key + index * Hashes.GOLDEN_RATIO);
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+/**
+ * Hashing shared by the approximations that hash their inputs into fixed-size tables.
+ */
+/* package-private */ final class Hashes {
+  /**
+   * The fractional part of the golden ratio, as a 64-bit fixed-point number. Adding multiples of it
+   * gives well-spread seeds for a family of hash functions.
+   */
+  /* package-private */ static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+  private Hashes() {
+    throw new AssertionError("Hashes is a utility class and should not be instantiated");
+  }
+
+  /**
+   * The finalizer of MurmurHash3, which spreads every input bit over every output bit.
+   * 
+   * @param value the value to hash.
+   * @return the hash of the value.
+   */
+  /* package-private */ static long mix(long value) {
+    long hash = value;
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
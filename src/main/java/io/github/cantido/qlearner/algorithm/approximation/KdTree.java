@@ -0,0 +1,343 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A k-d tree of points, each with a value, that answers nearest neighbour queries in logarithmic
+ * time.
+ * 
+ * <p>
+ * Points are inserted one at a time, wherever they fall. The tree is kept balanced the way a
+ * scapegoat tree is: if a new point lands deeper than {@code log(n) / log(1 / ALPHA)}, the
+ * nearest subtree above it in which one side holds more than {@code ALPHA} of the points is
+ * rebuilt around medians. Only that subtree is rebuilt, and it must have taken a number of
+ * inserts in proportion to its size to get that way, so inserts take amortized polylogarithmic
+ * time even when points arrive in sorted order.
+ * </p>
+ * 
+ * <p>
+ * Once the tree holds its capacity, each new point evicts the oldest one. Evicted points are only
+ * marked as such until they are dropped by a rebuild, and the whole tree is rebuilt once they
+ * make up half of it.
+ * </p>
+ */
+@NotThreadSafe
+/* package-private */ final class KdTree {
+  /**
+   * The largest share of a subtree that one side of it may hold before the subtree is rebuilt.
+   */
+  private static final double ALPHA = 0.7;
+  private static final double LOG_INVERSE_ALPHA = Math.log(1 / ALPHA);
+
+  @Nonnegative
+  private final int dimensions;
+  @Nonnegative
+  private final int capacity;
+  @Nonnull
+  private final Deque<Node> insertionOrder = new ArrayDeque<>();
+  @Nullable
+  private Node root;
+  @Nonnegative
+  private int nodeCount;
+  @Nonnegative
+  private long rebuiltNodeCount;
+  @Nonnull
+  private Node[] path = new Node[32];
+
+  /**
+   * Create an empty tree.
+   * 
+   * @param dimensions the length of every point.
+   * @param capacity the most points to keep.
+   */
+  /* package-private */ KdTree(@Nonnegative int dimensions, @Nonnegative int capacity) {
+    if (dimensions < 1) {
+      throw new IllegalArgumentException("Need at least one dimension, but got: " + dimensions);
+    }
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least 1, but got: " + capacity);
+    }
+    this.dimensions = dimensions;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Set the value of a point, adding the point if it is not already in the tree.
+   */
+  /* package-private */ void put(double[] point, double value) {
+    checkDimensions(point);
+    Node node = root;
+    int level = 0;
+    while (node != null) {
+      if (!node.evicted && Arrays.equals(node.point, point)) {
+        node.value = value;
+        return;
+      }
+      if (level == path.length) {
+        path = Arrays.copyOf(path, 2 * level);
+      }
+      path[level++] = node;
+      node = point[node.axis] < node.point[node.axis] ? node.left : node.right;
+    }
+
+    Node added = new Node(point.clone(), value, level % dimensions);
+    if (level == 0) {
+      root = added;
+    } else {
+      Node parent = path[level - 1];
+      if (point[parent.axis] < parent.point[parent.axis]) {
+        parent.left = added;
+      } else {
+        parent.right = added;
+      }
+    }
+    for (int i = 0; i < level; i++) {
+      path[i].size++;
+    }
+    insertionOrder.addLast(added);
+    nodeCount++;
+
+    if (insertionOrder.size() > capacity) {
+      insertionOrder.removeFirst().evicted = true;
+    }
+    if (nodeCount > 2 * insertionOrder.size()) {
+      rebuild();
+    } else if (level > Math.log(nodeCount) / LOG_INVERSE_ALPHA) {
+      rebuildScapegoat(added, level);
+    }
+    Arrays.fill(path, 0, level, null);
+  }
+
+  /**
+   * Find the points nearest to a query point, nearest first.
+   * 
+   * @param point the query point.
+   * @param values where to write the values of the nearest points.
+   * @param squaredDistances where to write the squared distances of the nearest points. Its length
+   *        is the most points to find.
+   * @return the number of points found.
+   */
+  @Nonnegative
+  /* package-private */ int nearest(double[] point, double[] values, double[] squaredDistances) {
+    checkDimensions(point);
+    Neighbours neighbours = new Neighbours(values, squaredDistances);
+    search(root, point, neighbours);
+    return neighbours.count;
+  }
+
+  /**
+   * Get the number of points in this tree, not counting evicted points.
+   */
+  @Nonnegative
+  /* package-private */ int size() {
+    return insertionOrder.size();
+  }
+
+  /**
+   * Get the length of the longest path from the root to a leaf. This walks the whole tree.
+   */
+  @Nonnegative
+  /* package-private */ int getDepth() {
+    return depth(root);
+  }
+
+  /**
+   * Get the total size of every subtree that has been rebuilt, which is the work spent on
+   * keeping this tree balanced.
+   */
+  @Nonnegative
+  /* package-private */ long getRebuiltNodeCount() {
+    return rebuiltNodeCount;
+  }
+
+  private void search(@Nullable Node node, double[] point, Neighbours neighbours) {
+    if (node == null) {
+      return;
+    }
+    if (!node.evicted) {
+      neighbours.offer(node.value, squaredDistance(node.point, point));
+    }
+    double difference = point[node.axis] - node.point[node.axis];
+    Node near = difference < 0 ? node.left : node.right;
+    Node far = difference < 0 ? node.right : node.left;
+    search(near, point, neighbours);
+    if (difference * difference < neighbours.worst()) {
+      search(far, point, neighbours);
+    }
+  }
+
+  private void rebuild() {
+    Node[] live = insertionOrder.toArray(new Node[0]);
+    root = build(live, 0, live.length, 0);
+    nodeCount = live.length;
+    rebuiltNodeCount += live.length;
+  }
+
+  /**
+   * Rebuild the lowest subtree above a node that is too deep in which one side is too heavy. The
+   * path to the node must still be in {@link #path}.
+   */
+  private void rebuildScapegoat(Node added, @Nonnegative int level) {
+    Node child = added;
+    for (int i = level - 1; i >= 0; i--) {
+      Node scapegoat = path[i];
+      if (child.size <= ALPHA * scapegoat.size) {
+        child = scapegoat;
+        continue;
+      }
+
+      Node[] live = new Node[scapegoat.size];
+      int liveCount = collectLive(scapegoat, live, 0);
+      Node rebuilt = build(live, 0, liveCount, i);
+      if (i == 0) {
+        root = rebuilt;
+      } else if (path[i - 1].left == scapegoat) {
+        path[i - 1].left = rebuilt;
+      } else {
+        path[i - 1].right = rebuilt;
+      }
+      int dropped = scapegoat.size - liveCount;
+      for (int j = 0; j < i; j++) {
+        path[j].size -= dropped;
+      }
+      nodeCount -= dropped;
+      rebuiltNodeCount += liveCount;
+      return;
+    }
+  }
+
+  private static int collectLive(@Nullable Node node, Node[] live, @Nonnegative int count) {
+    if (node == null) {
+      return count;
+    }
+    int collected = collectLive(node.left, live, count);
+    if (!node.evicted) {
+      live[collected++] = node;
+    }
+    return collectLive(node.right, live, collected);
+  }
+
+  @Nullable
+  private Node build(Node[] nodes, int from, int to, int level) {
+    if (from >= to) {
+      return null;
+    }
+    int axis = level % dimensions;
+    Arrays.sort(nodes, from, to, Comparator.comparingDouble(node -> node.point[axis]));
+    int median = (from + to) >>> 1;
+    // Points equal to the split belong on the right, where put and search look for them
+    while (median > from && nodes[median - 1].point[axis] == nodes[median].point[axis]) {
+      median--;
+    }
+    Node node = nodes[median];
+    node.axis = axis;
+    node.left = build(nodes, from, median, level + 1);
+    node.right = build(nodes, median + 1, to, level + 1);
+    node.size = to - from;
+    return node;
+  }
+
+  private static int depth(@Nullable Node node) {
+    return node == null ? 0 : 1 + Math.max(depth(node.left), depth(node.right));
+  }
+
+  private void checkDimensions(double[] point) {
+    if (point.length != dimensions) {
+      throw new IllegalArgumentException(
+          "Expected " + dimensions + " dimensions, but got: " + point.length);
+    }
+  }
+
+  private static double squaredDistance(double[] a, double[] b) {
+    double sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      double difference = a[i] - b[i];
+      sum += difference * difference;
+    }
+    return sum;
+  }
+
+  private static final class Node {
+    @Nonnull
+    private final double[] point;
+    private double value;
+    @Nonnegative
+    private int axis;
+    @Nullable
+    private Node left;
+    @Nullable
+    private Node right;
+    /**
+     * The number of nodes in the subtree under this one, including this one and evicted nodes.
+     */
+    @Nonnegative
+    private int size = 1;
+    private boolean evicted;
+
+    private Node(double[] point, double value, int axis) {
+      this.point = point;
+      this.value = value;
+      this.axis = axis;
+    }
+  }
+
+  /**
+   * The nearest points found so far, kept in order of distance.
+   */
+  private static final class Neighbours {
+    @Nonnull
+    private final double[] values;
+    @Nonnull
+    private final double[] squaredDistances;
+    @Nonnegative
+    private int count;
+
+    private Neighbours(double[] values, double[] squaredDistances) {
+      this.values = values;
+      this.squaredDistances = squaredDistances;
+    }
+
+    private double worst() {
+      return count < squaredDistances.length ? Double.POSITIVE_INFINITY
+          : squaredDistances[count - 1];
+    }
+
+    private void offer(double value, double squaredDistance) {
+      if (squaredDistance >= worst()) {
+        return;
+      }
+      int position = Math.min(count, squaredDistances.length - 1);
+      while (position > 0 && squaredDistances[position - 1] > squaredDistance) {
+        squaredDistances[position] = squaredDistances[position - 1];
+        values[position] = values[position - 1];
+        position--;
+      }
+      squaredDistances[position] = squaredDistance;
+      values[position] = value;
+      count = Math.min(count + 1, squaredDistances.length);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.FeatureState;
+import io.github.cantido.qlearner.client.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A {@link QualityMap} that approximates each {@link Quality} as a weighted sum of the features of
+ * a {@link FeatureState}, with one vector of weights for each {@link Action}.
+ * 
+ * <p>
+ * The quality of a state and action is the default quality plus the dot product of the state's
+ * features with that action's weights. Storing a quality takes one normalized gradient step
+ * towards it, touching only the weights of the state's non-zero features: afterwards, that state
+ * and action have exactly the stored quality, and states that share features have moved towards
+ * it too. Since {@link io.github.cantido.qlearner.algorithm.quality.QualityUpdater QualityUpdater}
+ * has already scaled the update by the learning rate, the usual temporal-difference updates become
+ * sparse gradient steps without any change to the agent.
+ * </p>
+ * 
+ * <p>
+ * Memory is one {@code double} per feature per action, however many states are seen. Every
+ * {@code State} given to this map must implement {@code FeatureState}.
+ * </p>
+ */
+@NotThreadSafe
+public class LinearQualityFunction extends ApproximateQualityMap {
+  @SuppressWarnings("null")
+  @Nonnull
+  private static final Logger logger = LoggerFactory.getLogger(LinearQualityFunction.class);
+
+  @Nonnegative
+  private final int featureCount;
+  @Nonnull
+  private final Map<Action, double[]> weights = new HashMap<>();
+
+  /**
+   * Create a function whose weights are all zero, so that every quality starts at the default.
+   * 
+   * @param featureCount the number of features that states can have.
+   */
+  public LinearQualityFunction(@Nonnegative int featureCount) {
+    if (featureCount < 1) {
+      throw new IllegalArgumentException(
+          "Feature count must be at least 1, but got: " + featureCount);
+    }
+    this.featureCount = featureCount;
+  }
+
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    FeatureState features = featuresOf(state);
+    int[] indices = features.getFeatureIndices();
+    double[] values = features.getFeatureValues();
+
+    double squaredNorm = 0;
+    for (double value : values) {
+      squaredNorm += value * value;
+    }
+    if (squaredNorm == 0) {
+      logger.debug("State {} has no non-zero features, so cannot learn its quality", state);
+      return;
+    }
+
+    double[] actionWeights = weights.get(action);
+    if (actionWeights == null) {
+      actionWeights = new double[featureCount];
+      weights.put(action, actionWeights);
+    }
+    double step = (quality.doubleValue() - dot(actionWeights, indices, values)) / squaredNorm;
+    for (int i = 0; i < indices.length; i++) {
+      actionWeights[indices[i]] += step * values[i];
+    }
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    FeatureState features = featuresOf(state);
+    double[] actionWeights = weights.get(action);
+    if (actionWeights == null) {
+      return getDefaultQuality();
+    }
+    return new Quality(
+        dot(actionWeights, features.getFeatureIndices(), features.getFeatureValues()));
+  }
+
+  /**
+   * Get the number of weights this function has learned, which is what its memory grows with.
+   * 
+   * @return the number of features times the number of actions seen so far.
+   */
+  @Nonnegative
+  public long getWeightCount() {
+    return (long) featureCount * weights.size();
+  }
+
+  private double dot(double[] actionWeights, int[] indices, double[] values) {
+    double sum = getDefaultQuality().doubleValue();
+    for (int i = 0; i < indices.length; i++) {
+      sum += actionWeights[indices[i]] * values[i];
+    }
+    return sum;
+  }
+
+  private FeatureState featuresOf(State state) {
+    if (!(state instanceof FeatureState)) {
+      throw new IllegalArgumentException(
+          "States must implement FeatureState, but got: " + state.getClass());
+    }
+    FeatureState features = (FeatureState) state;
+    int[] indices = features.getFeatureIndices();
+    double[] values = features.getFeatureValues();
+    if (indices.length != values.length) {
+      throw new IllegalArgumentException("State has " + indices.length + " feature indices but "
+          + values.length + " feature values: " + state);
+    }
+    for (int index : indices) {
+      if (index < 0 || index >= featureCount) {
+        throw new IllegalArgumentException("Feature indices must be between 0 and "
+            + (featureCount - 1) + ", but got: " + index);
+      }
+    }
+    return features;
+  }
+}
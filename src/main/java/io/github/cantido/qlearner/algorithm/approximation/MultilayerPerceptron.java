@@ -0,0 +1,352 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A small, dense neural network, with rectified linear hidden layers and a linear output layer,
+ * trained by mini-batch gradient descent.
+ * 
+ * <p>
+ * Every weight and bias lives in one contiguous {@code double[]}, layer after layer, with each
+ * layer's weights stored row by row. Layers are computed for a whole batch at once, a block of
+ * weight rows at a time: each block is used for every input in the batch before moving on to the
+ * next, so that it stays in cache instead of being read from memory once per input. Large batches
+ * of predictions are split across the common fork/join pool.
+ * </p>
+ * 
+ * <p>
+ * Predicting only reads the weights, so any number of threads can predict at once, but not while
+ * the network is being trained.
+ * </p>
+ */
+@NotThreadSafe
+public final class MultilayerPerceptron {
+  /**
+   * How many rows of weights to keep hot at once. 32 rows of a few hundred weights fit comfortably
+   * in a level 1 or 2 cache.
+   */
+  private static final int ROW_BLOCK = 32;
+  /**
+   * The smallest batch worth splitting across threads.
+   */
+  private static final int PARALLEL_THRESHOLD = 64;
+  /**
+   * Errors larger than this are clipped when training, which keeps rare, large errors from
+   * swamping a batch.
+   */
+  private static final double MAXIMUM_ERROR = 1.0;
+
+  @Nonnull
+  private final int[] layerSizes;
+  @Nonnull
+  private final int[] weightOffsets;
+  @Nonnull
+  private final int[] biasOffsets;
+  @Nonnull
+  private final double[] parameters;
+  @Nonnull
+  private final double[] gradients;
+
+  /**
+   * Create a network with randomly initialized weights.
+   * 
+   * @param layerSizes the number of units in each layer, starting with the inputs and ending with
+   *        the outputs.
+   * @param random where to get the initial weights from.
+   */
+  public MultilayerPerceptron(int[] layerSizes, Random random) {
+    if (layerSizes.length < 2) {
+      throw new IllegalArgumentException(
+          "Need at least an input and an output layer, but got: " + Arrays.toString(layerSizes));
+    }
+    for (int size : layerSizes) {
+      if (size < 1) {
+        throw new IllegalArgumentException(
+            "Every layer needs at least one unit, but got: " + Arrays.toString(layerSizes));
+      }
+    }
+    this.layerSizes = layerSizes.clone();
+    this.weightOffsets = new int[layerSizes.length - 1];
+    this.biasOffsets = new int[layerSizes.length - 1];
+
+    int offset = 0;
+    for (int layer = 0; layer < layerSizes.length - 1; layer++) {
+      weightOffsets[layer] = offset;
+      offset += layerSizes[layer] * layerSizes[layer + 1];
+      biasOffsets[layer] = offset;
+      offset += layerSizes[layer + 1];
+    }
+    this.parameters = new double[offset];
+    this.gradients = new double[offset];
+
+    for (int layer = 0; layer < layerSizes.length - 1; layer++) {
+      boolean output = layer == layerSizes.length - 2;
+      double scale = Math.sqrt((output ? 1.0 : 2.0) / layerSizes[layer]);
+      int end = weightOffsets[layer] + layerSizes[layer] * layerSizes[layer + 1];
+      for (int i = weightOffsets[layer]; i < end; i++) {
+        parameters[i] = random.nextGaussian() * scale;
+      }
+    }
+  }
+
+  /**
+   * Get the number of inputs this network takes.
+   * 
+   * @return the size of the first layer.
+   */
+  @Nonnegative
+  public int getInputCount() {
+    return layerSizes[0];
+  }
+
+  /**
+   * Get the number of outputs this network gives.
+   * 
+   * @return the size of the last layer.
+   */
+  @Nonnegative
+  public int getOutputCount() {
+    return layerSizes[layerSizes.length - 1];
+  }
+
+  /**
+   * Get the number of weights and biases in this network.
+   * 
+   * @return the length of this network's parameter array.
+   */
+  @Nonnegative
+  public int getParameterCount() {
+    return parameters.length;
+  }
+
+  /**
+   * Make this network's weights the same as another's, for example to freeze a copy of them.
+   * 
+   * @param other a network with the same layer sizes as this one.
+   */
+  public void copyFrom(MultilayerPerceptron other) {
+    if (!Arrays.equals(layerSizes, other.layerSizes)) {
+      throw new IllegalArgumentException("Expected layer sizes " + Arrays.toString(layerSizes)
+          + ", but got: " + Arrays.toString(other.layerSizes));
+    }
+    System.arraycopy(other.parameters, 0, parameters, 0, parameters.length);
+  }
+
+  /**
+   * Compute this network's outputs for one input.
+   * 
+   * @param input the values of the input layer.
+   * @return the values of the output layer.
+   */
+  public double[] predict(double[] input) {
+    double[] output = new double[getOutputCount()];
+    predict(input, 1, output);
+    return output;
+  }
+
+  /**
+   * Compute this network's outputs for a batch of inputs. Large batches are split across the
+   * common fork/join pool.
+   * 
+   * @param inputs the inputs, one after another.
+   * @param batch the number of inputs.
+   * @param outputs where to write the outputs, one after another.
+   */
+  public void predict(double[] inputs, @Nonnegative int batch, double[] outputs) {
+    checkBatch(inputs, batch);
+    if (outputs.length < batch * getOutputCount()) {
+      throw new IllegalArgumentException("Need room for " + batch * getOutputCount()
+          + " outputs, but got: " + outputs.length);
+    }
+    if (batch < PARALLEL_THRESHOLD) {
+      predictSlice(inputs, outputs, 0, batch);
+    } else {
+      ForkJoinPool.commonPool().invoke(new PredictTask(inputs, outputs, 0, batch));
+    }
+  }
+
+  /**
+   * Take one gradient descent step on a batch, moving one output of each input towards a target
+   * and leaving the other outputs alone. This is what Q-learning needs, where only the
+   * {@code Action} that was taken has a target.
+   * 
+   * @param inputs the inputs, one after another.
+   * @param batch the number of inputs.
+   * @param outputIndices for each input, the output that has a target.
+   * @param targets for each input, the target for that output.
+   * @param learningRate how far to step.
+   * @return the mean squared error of the batch, before the step.
+   */
+  public double train(double[] inputs, @Nonnegative int batch, int[] outputIndices,
+      double[] targets, double learningRate) {
+    checkBatch(inputs, batch);
+    int layers = layerSizes.length - 1;
+    double[][] activations = new double[layers + 1][];
+    activations[0] = inputs;
+    for (int layer = 0; layer < layers; layer++) {
+      activations[layer + 1] = new double[batch * layerSizes[layer + 1]];
+      computeLayer(layer, activations[layer], activations[layer + 1], batch);
+    }
+
+    int outputCount = getOutputCount();
+    double[] delta = new double[batch * outputCount];
+    double squaredError = 0;
+    for (int sample = 0; sample < batch; sample++) {
+      int index = sample * outputCount + outputIndices[sample];
+      double error = activations[layers][index] - targets[sample];
+      squaredError += error * error;
+      delta[index] = Math.max(-MAXIMUM_ERROR, Math.min(MAXIMUM_ERROR, error));
+    }
+
+    Arrays.fill(gradients, 0);
+    for (int layer = layers - 1; layer >= 0; layer--) {
+      delta = backpropagate(layer, activations[layer], delta, batch);
+    }
+
+    double scale = learningRate / batch;
+    for (int i = 0; i < parameters.length; i++) {
+      parameters[i] -= scale * gradients[i];
+    }
+    return squaredError / batch;
+  }
+
+  private void checkBatch(double[] inputs, int batch) {
+    if (batch < 1) {
+      throw new IllegalArgumentException("Batch must have at least one input, but got: " + batch);
+    }
+    if (inputs.length < batch * getInputCount()) {
+      throw new IllegalArgumentException("Expected " + batch * getInputCount()
+          + " inputs, but got: " + inputs.length);
+    }
+  }
+
+  private void predictSlice(double[] inputs, double[] outputs, int first, int count) {
+    double[] activations =
+        Arrays.copyOfRange(inputs, first * getInputCount(), (first + count) * getInputCount());
+    for (int layer = 0; layer < layerSizes.length - 1; layer++) {
+      double[] next = new double[count * layerSizes[layer + 1]];
+      computeLayer(layer, activations, next, count);
+      activations = next;
+    }
+    System.arraycopy(activations, 0, outputs, first * getOutputCount(), count * getOutputCount());
+  }
+
+  /**
+   * Compute one layer for a batch, a block of weight rows at a time.
+   */
+  private void computeLayer(int layer, double[] in, double[] out, int batch) {
+    int inSize = layerSizes[layer];
+    int outSize = layerSizes[layer + 1];
+    int weights = weightOffsets[layer];
+    int biases = biasOffsets[layer];
+    boolean rectify = layer < layerSizes.length - 2;
+
+    for (int rowStart = 0; rowStart < outSize; rowStart += ROW_BLOCK) {
+      int rowEnd = Math.min(outSize, rowStart + ROW_BLOCK);
+      for (int sample = 0; sample < batch; sample++) {
+        int inBase = sample * inSize;
+        int outBase = sample * outSize;
+        for (int row = rowStart; row < rowEnd; row++) {
+          int rowBase = weights + row * inSize;
+          double sum = parameters[biases + row];
+          for (int column = 0; column < inSize; column++) {
+            sum += parameters[rowBase + column] * in[inBase + column];
+          }
+          out[outBase + row] = rectify && sum < 0 ? 0 : sum;
+        }
+      }
+    }
+  }
+
+  /**
+   * Add one layer's gradients, and return the error at its inputs.
+   */
+  private double[] backpropagate(int layer, double[] in, double[] delta, int batch) {
+    int inSize = layerSizes[layer];
+    int outSize = layerSizes[layer + 1];
+    int weights = weightOffsets[layer];
+    int biases = biasOffsets[layer];
+    double[] inDelta = layer > 0 ? new double[batch * inSize] : null;
+
+    for (int sample = 0; sample < batch; sample++) {
+      int inBase = sample * inSize;
+      for (int row = 0; row < outSize; row++) {
+        double error = delta[sample * outSize + row];
+        if (error == 0) {
+          continue;
+        }
+        int rowBase = weights + row * inSize;
+        gradients[biases + row] += error;
+        for (int column = 0; column < inSize; column++) {
+          gradients[rowBase + column] += error * in[inBase + column];
+          if (inDelta != null) {
+            inDelta[inBase + column] += parameters[rowBase + column] * error;
+          }
+        }
+      }
+    }
+
+    if (inDelta != null) {
+      // Hidden activations are rectified, so no error flows back through units that were off
+      for (int i = 0; i < inDelta.length; i++) {
+        if (in[i] <= 0) {
+          inDelta[i] = 0;
+        }
+      }
+    }
+    return inDelta;
+  }
+
+  private final class PredictTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    @Nonnull
+    private final double[] inputs;
+    @Nonnull
+    private final double[] outputs;
+    @Nonnegative
+    private final int first;
+    @Nonnegative
+    private final int count;
+
+    private PredictTask(double[] inputs, double[] outputs, int first, int count) {
+      this.inputs = inputs;
+      this.outputs = outputs;
+      this.first = first;
+      this.count = count;
+    }
+
+    @Override
+    protected void compute() {
+      if (count <= PARALLEL_THRESHOLD) {
+        predictSlice(inputs, outputs, first, count);
+        return;
+      }
+      int half = count / 2;
+      invokeAll(new PredictTask(inputs, outputs, first, half),
+          new PredictTask(inputs, outputs, first + half, count - half));
+    }
+  }
+}
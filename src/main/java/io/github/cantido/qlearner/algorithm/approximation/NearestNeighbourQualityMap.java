@@ -0,0 +1,139 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.ContinuousState;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A {@link QualityMap} for {@link ContinuousState}s, which estimates the {@link Quality} of a state
+ * from the stored states nearest to it.
+ * 
+ * <p>
+ * Every {@link Action} keeps the states it has been stored for in its own {@link KdTree}. A state
+ * that was stored has exactly its stored quality. Any other state gets the average quality of its
+ * nearest stored neighbours, weighted by the inverse of their squared distance, so that closer
+ * neighbours count for more. Finding the neighbours takes logarithmic time in the number of stored
+ * states.
+ * </p>
+ * 
+ * <p>
+ * Each {@code Action} stores at most a fixed number of states. Once it is full, storing a new
+ * state forgets the state that was first stored the longest time ago.
+ * </p>
+ * 
+ * <p>
+ * Every {@code State} given to this map must implement {@code ContinuousState}.
+ * </p>
+ */
+@NotThreadSafe
+public class NearestNeighbourQualityMap extends ApproximateQualityMap {
+  @Nonnegative
+  private final int capacity;
+  @Nonnull
+  private final Map<Action, KdTree> trees = new HashMap<>();
+  @Nonnull
+  private final double[] values;
+  @Nonnull
+  private final double[] squaredDistances;
+
+  /**
+   * Create an empty map.
+   * 
+   * @param neighbours how many stored states to estimate each quality from.
+   * @param capacity the most states to store for each {@code Action}.
+   */
+  public NearestNeighbourQualityMap(@Nonnegative int neighbours, @Nonnegative int capacity) {
+    if (neighbours < 1) {
+      throw new IllegalArgumentException(
+          "Need at least one neighbour, but got: " + neighbours);
+    }
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least 1, but got: " + capacity);
+    }
+    this.capacity = capacity;
+    this.values = new double[neighbours];
+    this.squaredDistances = new double[neighbours];
+  }
+
+  /**
+   * Get the number of states stored, across all actions.
+   * 
+   * @return the total size of this map.
+   */
+  @Nonnegative
+  public int size() {
+    int size = 0;
+    for (KdTree tree : trees.values()) {
+      size += tree.size();
+    }
+    return size;
+  }
+
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    double[] inputs = inputsOf(state);
+    KdTree tree = trees.get(action);
+    if (tree == null) {
+      tree = new KdTree(inputs.length, capacity);
+      trees.put(action, tree);
+    }
+    tree.put(inputs, quality.doubleValue());
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    double[] inputs = inputsOf(state);
+    KdTree tree = trees.get(action);
+    if (tree == null) {
+      return getDefaultQuality();
+    }
+    int found = tree.nearest(inputs, values, squaredDistances);
+    if (found == 0) {
+      return getDefaultQuality();
+    }
+    if (squaredDistances[0] == 0) {
+      return new Quality(values[0]);
+    }
+
+    double weightedSum = 0;
+    double totalWeight = 0;
+    for (int i = 0; i < found; i++) {
+      double weight = 1 / squaredDistances[i];
+      weightedSum += weight * values[i];
+      totalWeight += weight;
+    }
+    return new Quality(weightedSum / totalWeight);
+  }
+
+  private static double[] inputsOf(State state) {
+    if (!(state instanceof ContinuousState)) {
+      throw new IllegalArgumentException(
+          "States must implement ContinuousState, but got: " + state.getClass());
+    }
+    return ((ContinuousState) state).getInputs();
+  }
+}
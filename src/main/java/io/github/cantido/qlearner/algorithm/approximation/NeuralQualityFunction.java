@@ -0,0 +1,367 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import io.github.cantido.qlearner.agent.AgentBuilder;
+import io.github.cantido.qlearner.agent.Step;
+import io.github.cantido.qlearner.agent.TransitionSink;
+import io.github.cantido.qlearner.algorithm.model.DiscountFactor;
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.algorithm.quality.StateActionQuality;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.ContinuousState;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link QualityMap} for {@link ContinuousState}s, which approximates every {@link Quality} with
+ * a {@link MultilayerPerceptron} that has one output for each {@link Action}.
+ * 
+ * <p>
+ * This is also a {@link TransitionSink}, and learns from the transitions it is given rather than
+ * from {@link #put(State, Action, Quality)}. Each transition goes into a replay buffer, and every
+ * few transitions a random mini-batch from the buffer is trained towards the reward plus the
+ * discounted best quality of the resulting state. That best quality comes from a frozen copy of
+ * the network, which is only brought up to date every so many batches, so that the network is not
+ * chasing its own changing predictions. Use it as both the agent's quality map and its sink:
+ * </p>
+ * 
+ * <pre>
+ * NeuralQualityFunction q = new NeuralQualityFunction(inputCount, new int[] {64, 64}, actions,
+ *     random);
+ * Agent agent = new AgentBuilder(environment).setQualityMap(q).getActorAgent(q);
+ * </pre>
+ * 
+ * <p>
+ * Every {@code State} given to this map must implement {@code ContinuousState}, and may only offer
+ * the {@code Action}s that this map was created with. The network's predictions for the most
+ * recent state are kept, so selecting among its actions only runs the network once.
+ * </p>
+ * 
+ * @see AgentBuilder#getActorAgent(TransitionSink)
+ */
+@ThreadSafe
+public class NeuralQualityFunction implements QualityMap, TransitionSink {
+  private static final int DEFAULT_REPLAY_CAPACITY = 10_000;
+  private static final int DEFAULT_BATCH_SIZE = 32;
+  private static final int DEFAULT_TRAINING_INTERVAL = 4;
+  private static final int DEFAULT_TARGET_UPDATE_INTERVAL = 250;
+  private static final double DEFAULT_LEARNING_RATE = 0.01;
+  private static final double DEFAULT_DISCOUNT_FACTOR = 0.9;
+
+  @Nonnull
+  private final Map<Action, Integer> actionIndices = new HashMap<>();
+  @Nonnull
+  private final Random random;
+
+  @GuardedBy("this")
+  @Nonnull
+  private final MultilayerPerceptron online;
+  @GuardedBy("this")
+  @Nonnull
+  private final MultilayerPerceptron target;
+  @GuardedBy("this")
+  @Nonnull
+  private ReplayBuffer replay = new ReplayBuffer(DEFAULT_REPLAY_CAPACITY);
+
+  @GuardedBy("this")
+  @Nonnegative
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  @GuardedBy("this")
+  @Nonnegative
+  private int trainingInterval = DEFAULT_TRAINING_INTERVAL;
+  @GuardedBy("this")
+  @Nonnegative
+  private int targetUpdateInterval = DEFAULT_TARGET_UPDATE_INTERVAL;
+  @GuardedBy("this")
+  private double learningRate = DEFAULT_LEARNING_RATE;
+  @GuardedBy("this")
+  private double discountFactor = DEFAULT_DISCOUNT_FACTOR;
+
+  @GuardedBy("this")
+  @Nonnegative
+  private long transitions;
+  @GuardedBy("this")
+  @Nonnegative
+  private long trainingSteps;
+  @GuardedBy("this")
+  private double lastLoss;
+  @GuardedBy("this")
+  @Nullable
+  private State predictedState;
+  @GuardedBy("this")
+  @Nonnull
+  private double[] predictions;
+
+  /**
+   * Create a network with the given hidden layers, and random weights.
+   * 
+   * @param inputCount the length of every state's inputs.
+   * @param hiddenLayerSizes the number of units in each hidden layer.
+   * @param actions every {@code Action} that a state could offer, one for each output.
+   * @param random where to get the initial weights and the mini-batches from.
+   */
+  public NeuralQualityFunction(@Nonnegative int inputCount, int[] hiddenLayerSizes,
+      List<Action> actions, Random random) {
+    for (Action action : actions) {
+      if (actionIndices.putIfAbsent(action, actionIndices.size()) != null) {
+        throw new IllegalArgumentException("Actions must be distinct, but got: " + actions);
+      }
+    }
+    int[] layerSizes = new int[hiddenLayerSizes.length + 2];
+    layerSizes[0] = inputCount;
+    System.arraycopy(hiddenLayerSizes, 0, layerSizes, 1, hiddenLayerSizes.length);
+    layerSizes[layerSizes.length - 1] = actions.size();
+
+    this.random = random;
+    this.online = new MultilayerPerceptron(layerSizes, random);
+    this.target = new MultilayerPerceptron(layerSizes, random);
+    this.target.copyFrom(online);
+    this.predictions = new double[actions.size()];
+  }
+
+  /**
+   * Set how many of the most recent transitions to keep for training. This clears the transitions
+   * that are already kept.
+   * 
+   * @param capacity the size of the replay buffer.
+   */
+  public synchronized void setReplayCapacity(@Nonnegative int capacity) {
+    this.replay = new ReplayBuffer(capacity);
+  }
+
+  /**
+   * Set how many transitions to train on at once.
+   * 
+   * @param batchSize the size of each mini-batch.
+   */
+  public synchronized void setBatchSize(@Nonnegative int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be at least 1, but got: " + batchSize);
+    }
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Set how many transitions to receive between mini-batches.
+   * 
+   * @param trainingInterval the number of transitions per mini-batch.
+   */
+  public synchronized void setTrainingInterval(@Nonnegative int trainingInterval) {
+    if (trainingInterval < 1) {
+      throw new IllegalArgumentException(
+          "Training interval must be at least 1, but got: " + trainingInterval);
+    }
+    this.trainingInterval = trainingInterval;
+  }
+
+  /**
+   * Set how many mini-batches to train between updates of the frozen copy of the network.
+   * 
+   * @param targetUpdateInterval the number of mini-batches per update.
+   */
+  public synchronized void setTargetUpdateInterval(@Nonnegative int targetUpdateInterval) {
+    if (targetUpdateInterval < 1) {
+      throw new IllegalArgumentException(
+          "Target update interval must be at least 1, but got: " + targetUpdateInterval);
+    }
+    this.targetUpdateInterval = targetUpdateInterval;
+  }
+
+  /**
+   * Set the step size of gradient descent.
+   * 
+   * @param learningRate how far to move the weights on each mini-batch.
+   */
+  public synchronized void setLearningRate(double learningRate) {
+    if (!(learningRate > 0)) {
+      throw new IllegalArgumentException(
+          "Learning rate must be positive, but got: " + learningRate);
+    }
+    this.learningRate = learningRate;
+  }
+
+  /**
+   * Set how much future rewards are worth compared to immediate ones.
+   * 
+   * @param discountFactor the discount factor of the learning targets.
+   */
+  public synchronized void setDiscountFactor(DiscountFactor discountFactor) {
+    this.discountFactor = discountFactor.doubleValue();
+  }
+
+  /**
+   * Get the number of mini-batches trained so far.
+   * 
+   * @return how many gradient descent steps have been taken.
+   */
+  @Nonnegative
+  public synchronized long getTrainingSteps() {
+    return trainingSteps;
+  }
+
+  /**
+   * Get the mean squared error of the last mini-batch, before it was trained on.
+   * 
+   * @return the last training loss, or zero if nothing has been trained yet.
+   */
+  public synchronized double getLastLoss() {
+    return lastLoss;
+  }
+
+  /**
+   * Every quality starts wherever the network's random weights put it, which is close to zero.
+   */
+  @SuppressWarnings("null")
+  @Override
+  public Quality getDefaultQuality() {
+    return Quality.ZERO;
+  }
+
+  /**
+   * Train the network one step towards the given quality, on its own, outside of any mini-batch.
+   */
+  @Override
+  public synchronized void put(State state, Action action, Quality quality) {
+    online.train(inputsOf(state), 1, new int[] {indexOf(action)},
+        new double[] {quality.doubleValue()}, learningRate);
+    predictedState = null;
+  }
+
+  @Override
+  public synchronized Quality get(State state, Action action) {
+    return new Quality(predict(state)[indexOf(action)]);
+  }
+
+  @Override
+  public synchronized Quality getBestQuality(State state) {
+    if (state.getActions().isEmpty()) {
+      return getDefaultQuality();
+    }
+    return new Quality(bestOf(state, predict(state)));
+  }
+
+  @Override
+  public StateActionQuality getTriplet(State state, Action action) {
+    return new StateActionQuality(state, action, get(state, action));
+  }
+
+  /**
+   * Remember the transition, and train a mini-batch if it is time to.
+   */
+  @Override
+  public synchronized void publish(Step stepTaken, State resultingState) {
+    State startingState = stepTaken.getStartingState();
+    inputsOf(startingState);
+    inputsOf(resultingState);
+    replay.add(startingState, indexOf(stepTaken.getLeavingAction()), resultingState);
+    transitions++;
+    if (replay.size() >= batchSize && transitions % trainingInterval == 0) {
+      trainBatch();
+    }
+  }
+
+  @GuardedBy("this")
+  private void trainBatch() {
+    int inputCount = online.getInputCount();
+    int outputCount = online.getOutputCount();
+    int[] samples = new int[batchSize];
+    replay.sample(random, samples);
+
+    double[] inputs = new double[batchSize * inputCount];
+    double[] nextInputs = new double[batchSize * inputCount];
+    for (int i = 0; i < batchSize; i++) {
+      System.arraycopy(inputsOf(replay.getStartingState(samples[i])), 0, inputs, i * inputCount,
+          inputCount);
+      System.arraycopy(inputsOf(replay.getResultingState(samples[i])), 0, nextInputs,
+          i * inputCount, inputCount);
+    }
+
+    double[] nextQualities = new double[batchSize * outputCount];
+    target.predict(nextInputs, batchSize, nextQualities);
+
+    int[] actions = new int[batchSize];
+    double[] targets = new double[batchSize];
+    double[] row = new double[outputCount];
+    for (int i = 0; i < batchSize; i++) {
+      State resultingState = replay.getResultingState(samples[i]);
+      double future = 0;
+      if (!resultingState.getActions().isEmpty()) {
+        System.arraycopy(nextQualities, i * outputCount, row, 0, outputCount);
+        future = bestOf(resultingState, row);
+      }
+      actions[i] = replay.getActionIndex(samples[i]);
+      targets[i] = resultingState.getReward().doubleValue() + discountFactor * future;
+    }
+
+    lastLoss = online.train(inputs, batchSize, actions, targets, learningRate);
+    predictedState = null;
+    trainingSteps++;
+    if (trainingSteps % targetUpdateInterval == 0) {
+      target.copyFrom(online);
+    }
+  }
+
+  @GuardedBy("this")
+  private double[] predict(State state) {
+    if (state != predictedState) {
+      online.predict(inputsOf(state), 1, predictions);
+      predictedState = state;
+    }
+    return predictions;
+  }
+
+  private double bestOf(State state, double[] qualities) {
+    double best = Double.NEGATIVE_INFINITY;
+    for (Action action : state.getActions()) {
+      best = Math.max(best, qualities[indexOf(action)]);
+    }
+    return best;
+  }
+
+  private int indexOf(Action action) {
+    Integer index = actionIndices.get(action);
+    if (index == null) {
+      throw new IllegalArgumentException(
+          "Action was not given to this function's constructor: " + action);
+    }
+    return index;
+  }
+
+  private double[] inputsOf(State state) {
+    if (!(state instanceof ContinuousState)) {
+      throw new IllegalArgumentException(
+          "States must implement ContinuousState, but got: " + state.getClass());
+    }
+    double[] inputs = ((ContinuousState) state).getInputs();
+    if (inputs.length != online.getInputCount()) {
+      throw new IllegalArgumentException("Expected " + online.getInputCount()
+          + " inputs, but got: " + inputs.length);
+    }
+    return inputs;
+  }
+}
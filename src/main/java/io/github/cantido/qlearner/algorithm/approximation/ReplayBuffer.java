@@ -0,0 +1,95 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import io.github.cantido.qlearner.client.State;
+
+import java.util.Random;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A fixed number of the most recent transitions, to be sampled from at random. Once the buffer is
+ * full, each new transition replaces the oldest one.
+ */
+@NotThreadSafe
+/* package-private */ final class ReplayBuffer {
+  @Nonnull
+  private final State[] startingStates;
+  @Nonnull
+  private final int[] actionIndices;
+  @Nonnull
+  private final State[] resultingStates;
+  @Nonnegative
+  private int size;
+  @Nonnegative
+  private int next;
+
+  /**
+   * Create an empty buffer.
+   * 
+   * @param capacity the most transitions to keep.
+   */
+  /* package-private */ ReplayBuffer(@Nonnegative int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least 1, but got: " + capacity);
+    }
+    this.startingStates = new State[capacity];
+    this.actionIndices = new int[capacity];
+    this.resultingStates = new State[capacity];
+  }
+
+  /* package-private */ void add(State startingState, int actionIndex, State resultingState) {
+    startingStates[next] = startingState;
+    actionIndices[next] = actionIndex;
+    resultingStates[next] = resultingState;
+    next = (next + 1) % actionIndices.length;
+    size = Math.max(size, next == 0 ? actionIndices.length : next);
+  }
+
+  /**
+   * Pick transitions uniformly at random, with replacement.
+   * 
+   * @param random where to get the choices from.
+   * @param indices where to write the chosen transitions' indices.
+   */
+  /* package-private */ void sample(Random random, int[] indices) {
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = random.nextInt(size);
+    }
+  }
+
+  @SuppressWarnings("null")
+  /* package-private */ State getStartingState(@Nonnegative int index) {
+    return startingStates[index];
+  }
+
+  /* package-private */ int getActionIndex(@Nonnegative int index) {
+    return actionIndices[index];
+  }
+
+  @SuppressWarnings("null")
+  /* package-private */ State getResultingState(@Nonnegative int index) {
+    return resultingStates[index];
+  }
+
+  @Nonnegative
+  /* package-private */ int size() {
+    return size;
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.ContinuousState;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A {@link QualityMap} for {@link ContinuousState}s, which approximates each {@link Quality} as the
+ * sum of the weights of the tiles that cover the state.
+ * 
+ * <p>
+ * Every {@link Action} gets its own tiles from a {@link TileCoder}, all hashed into one fixed-size
+ * array of weights. Storing a quality spreads the difference from the current value evenly over
+ * the state's tiles, so that afterwards the state and action have the stored quality, unless two
+ * of its tiles were hashed to the same weight, and nearby states have moved towards it too.
+ * Memory for the weights is fixed at construction, however many states are seen, and finding a
+ * state's tiles reuses one array instead of allocating a new one each time.
+ * </p>
+ * 
+ * <p>
+ * Every {@code State} given to this map must implement {@code ContinuousState}.
+ * </p>
+ */
+@NotThreadSafe
+public class TileCodedQualityMap extends ApproximateQualityMap {
+  @Nonnull
+  private final TileCoder coder;
+  @Nonnull
+  private final double[] weights;
+  @Nonnull
+  private final int[] tiles;
+  @Nonnull
+  private final Map<Action, Integer> actionIds = new HashMap<>();
+
+  /**
+   * Create a map whose weights are all zero, so that every quality starts at the default.
+   * 
+   * @param coder how to turn states into tiles. Its size is the number of weights to keep.
+   */
+  public TileCodedQualityMap(TileCoder coder) {
+    this.coder = coder;
+    this.weights = new double[coder.getSize()];
+    this.tiles = new int[coder.getTilings()];
+  }
+
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    Integer actionId = actionIds.get(action);
+    if (actionId == null) {
+      actionId = actionIds.size();
+      actionIds.put(action, actionId);
+    }
+    coder.activeTiles(inputsOf(state), actionId, tiles);
+    double step = (quality.doubleValue() - sumOfTiles()) / tiles.length;
+    for (int tile : tiles) {
+      weights[tile] += step;
+    }
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    Integer actionId = actionIds.get(action);
+    if (actionId == null) {
+      return getDefaultQuality();
+    }
+    coder.activeTiles(inputsOf(state), actionId, tiles);
+    return new Quality(sumOfTiles());
+  }
+
+  private double sumOfTiles() {
+    double sum = getDefaultQuality().doubleValue();
+    for (int tile : tiles) {
+      sum += weights[tile];
+    }
+    return sum;
+  }
+
+  private static double[] inputsOf(State state) {
+    if (!(state instanceof ContinuousState)) {
+      throw new IllegalArgumentException(
+          "States must implement ContinuousState, but got: " + state.getClass());
+    }
+    return ((ContinuousState) state).getInputs();
+  }
+}
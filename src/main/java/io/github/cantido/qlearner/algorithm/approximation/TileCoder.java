@@ -0,0 +1,142 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Turns a point in a continuous space into the tiles that cover it, in several overlapping grids.
+ * 
+ * <p>
+ * Each tiling is a grid of tiles with the given width in each dimension, shifted by a fraction of a
+ * tile from the one before, so that a point lies in exactly one tile of every tiling. Points that
+ * are close share most of their tiles, and the more tilings there are, the finer the distinctions
+ * that can be learned. Shifts are by different amounts in each dimension, which avoids the
+ * artifacts of shifting every dimension together.
+ * </p>
+ * 
+ * <p>
+ * Tiles are hashed into a fixed number of indices, so memory stays bounded however large the space
+ * is. Computing the tiles of a point does not allocate.
+ * </p>
+ */
+@Immutable
+@ThreadSafe
+public final class TileCoder {
+  @Nonnegative
+  private final int tilings;
+  @Nonnull
+  private final double[] tileWidths;
+  @Nonnegative
+  private final int size;
+
+  /**
+   * Create a tile coder for a space with as many dimensions as there are tile widths.
+   * 
+   * @param tilings the number of overlapping grids, and so the number of tiles for each point.
+   * @param tileWidths the width of a tile along each dimension.
+   * @param size the number of distinct indices to hash tiles into.
+   */
+  public TileCoder(@Nonnegative int tilings, double[] tileWidths, @Nonnegative int size) {
+    if (tilings < 1) {
+      throw new IllegalArgumentException("Need at least one tiling, but got: " + tilings);
+    }
+    if (tileWidths.length == 0) {
+      throw new IllegalArgumentException("Need at least one dimension, but got none");
+    }
+    for (double width : tileWidths) {
+      if (!(width > 0) || Double.isInfinite(width)) {
+        throw new IllegalArgumentException("Tile widths must be positive, but got: " + width);
+      }
+    }
+    if (size < 1) {
+      throw new IllegalArgumentException("Size must be at least 1, but got: " + size);
+    }
+    this.tilings = tilings;
+    this.tileWidths = tileWidths.clone();
+    this.size = size;
+  }
+
+  /**
+   * Get the number of tiles that cover each point.
+   * 
+   * @return the number of tilings.
+   */
+  @Nonnegative
+  public int getTilings() {
+    return tilings;
+  }
+
+  /**
+   * Get the number of dimensions of the space.
+   * 
+   * @return how many inputs each point must have.
+   */
+  @Nonnegative
+  public int getDimensions() {
+    return tileWidths.length;
+  }
+
+  /**
+   * Get the number of distinct indices that tiles are hashed into.
+   * 
+   * @return one more than the largest index this coder produces.
+   */
+  @Nonnegative
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Find the tiles that cover a point.
+   * 
+   * @param inputs the point, with one value for each dimension.
+   * @param salt a number mixed into every tile's hash, so that, for example, each action can have
+   *        its own tiles over the same space.
+   * @param tiles where to write the index of each tiling's tile, which must have room for
+   *        {@link #getTilings()} of them.
+   */
+  public void activeTiles(double[] inputs, int salt, int[] tiles) {
+    if (inputs.length != tileWidths.length) {
+      throw new IllegalArgumentException("Expected " + tileWidths.length
+          + " inputs, but got: " + inputs.length);
+    }
+    if (tiles.length < tilings) {
+      throw new IllegalArgumentException("Need room for " + tilings
+          + " tiles, but got: " + tiles.length);
+    }
+    for (int tiling = 0; tiling < tilings; tiling++) {
+      long hash = Hashes.mix(salt * Hashes.GOLDEN_RATIO + tiling);
+      for (int dimension = 0; dimension < inputs.length; dimension++) {
+        double offset = (double) tiling * (2 * dimension + 1) / tilings;
+        long coordinate = (long) Math.floor(inputs[dimension] / tileWidths[dimension] + offset);
+        hash = Hashes.mix(hash ^ coordinate);
+      }
+      tiles[tiling] = (int) Math.floorMod(hash, (long) size);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "TileCoder [tilings=" + tilings + ", tileWidths=" + Arrays.toString(tileWidths)
+        + ", size=" + size + "]";
+  }
+}
@@ -0,0 +1,23 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Classes that approximate {@link io.github.cantido.qlearner.algorithm.model.Quality Quality}
+ * values from features of {@link io.github.cantido.qlearner.client.State State}s, instead of
+ * storing one for every {@code State} seen. Their memory does not grow with the number of states,
+ * and what they learn about one state generalizes to similar ones.
+ */
+@javax.annotation.ParametersAreNonnullByDefault
+package io.github.cantido.qlearner.algorithm.approximation;
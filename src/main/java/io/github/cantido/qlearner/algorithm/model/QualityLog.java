@@ -0,0 +1,35 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.model;
+
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+/**
+ * Records every new {@link Quality} value before it is stored in a {@link QualityMap}, so that the
+ * values can be recovered if the map is lost.
+ */
+@FunctionalInterface
+public interface QualityLog {
+  /**
+   * Record that the given value is about to be stored.
+   * 
+   * @param state the starting {@code State}.
+   * @param action the {@code Action} taken from that {@code State}.
+   * @param quality the new {@code Quality} of that pair.
+   */
+  void append(State state, Action action, Quality quality);
+}
@@ -0,0 +1,56 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.model;
+
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.Map;
+
+/**
+ * A {@link QualityMap} that can read and write all of a {@link State}'s stored {@link Quality}
+ * values at once.
+ * 
+ * <p>
+ * Stores that live behind a slow boundary, like a disk or another process, can usually move a
+ * whole row in the same time it takes them to move a single value. Decorators that hold rows in
+ * memory use this interface to avoid paying that cost once per {@link Action}.
+ * </p>
+ */
+public interface RowQualityMap extends QualityMap {
+  /**
+   * Get every {@code Quality} that has been stored for the given {@code State}.
+   * 
+   * <p>
+   * Only stored values are returned. {@code Action}s that have never been stored for this
+   * {@code State} are absent from the result, instead of being mapped to the default quality.
+   * </p>
+   * 
+   * @param state the {@code State} to get the stored values of.
+   * @return a map of each stored {@code Action} to its {@code Quality}, which may be empty. The
+   *         caller must not modify it.
+   */
+  Map<Action, Quality> getRow(State state);
+
+  /**
+   * Store every given value for the given {@code State}. This has the same effect as calling
+   * {@link #put(State, Action, Quality)} once for every entry.
+   * 
+   * @param state the starting {@code State}.
+   * @param qualities the {@code Quality} of each {@code Action} taken from that {@code State}.
+   */
+  void putRow(State state, Map<Action, Quality> qualities);
+}
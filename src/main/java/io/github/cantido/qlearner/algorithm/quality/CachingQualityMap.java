@@ -0,0 +1,496 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.algorithm.model.RowQualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link QualityMap} that keeps the rows of recently-used {@link State}s in memory, in front of
+ * another, slower {@code QualityMap}.
+ * 
+ * <p>
+ * Reads are read-through: the first time a {@code State} is seen, all of its stored
+ * {@link Quality} values are loaded from the backing map as one row. Writes are write-back: they
+ * only change the cached row, and the row is marked dirty. Dirty rows are flushed to the backing
+ * map on a background thread, either once enough of them have piled up or when they are evicted
+ * from the cache. Repeated writes to the same {@code State}-{@link Action} pair between flushes
+ * are coalesced, so the backing map only ever sees the latest value. Rows that fail to flush are
+ * not retried on their own; they are kept and written by the next flush, whatever starts it.
+ * </p>
+ * 
+ * <p>
+ * If the backing map is a {@link RowQualityMap}, whole rows are moved in a single call. Otherwise
+ * a row is read by asking for every {@code Action} of the {@code State}, and values equal to the
+ * backing map's default quality are treated as never having been stored.
+ * </p>
+ * 
+ * <p>
+ * Given a {@link SeenStateFilter}, reads of {@code State}s that the filter has certainly never
+ * seen return the default quality straight away, without touching or waiting for the backing
+ * map, and without taking up room in the cache. The filter must already hold every
+ * {@code State} stored in the backing map; this object adds the ones written through it.
+ * </p>
+ * 
+ * <p>
+ * The backing map is only ever accessed by one thread at a time, so it does not need to be
+ * thread-safe itself. Call {@link #close()} to flush all pending writes and stop the background
+ * thread.
+ * </p>
+ */
+@ThreadSafe
+public class CachingQualityMap implements QualityMap, Closeable {
+  @SuppressWarnings("null")
+  @Nonnull
+  private static final Logger logger = LoggerFactory.getLogger(CachingQualityMap.class);
+
+  private static final int DEFAULT_MAXIMUM_STATES = 10_000;
+  private static final int DEFAULT_FLUSH_THRESHOLD = 1_000;
+
+  /**
+   * The in-memory copy of a single {@code State}'s stored values.
+   */
+  private static final class Row {
+    @Nonnull
+    private final Map<Action, Quality> qualities;
+    @Nullable
+    private Map<Action, Quality> pendingWrites;
+
+    private Row(Map<Action, Quality> qualities) {
+      this.qualities = qualities;
+    }
+  }
+
+  @Nonnull
+  private final QualityMap backingMap;
+  @Nonnull
+  private final Quality defaultQuality;
+  @Nonnegative
+  private final int flushThreshold;
+  @Nonnull
+  private final ExecutorService flushExecutor;
+
+  /**
+   * Guards every access to {@link #backingMap}. When both locks are needed, this one must be
+   * taken before the lock on {@code this}.
+   */
+  @Nonnull
+  private final Object backingLock = new Object();
+
+  @GuardedBy("this")
+  @Nonnull
+  private final Map<State, Row> rows;
+  @GuardedBy("this")
+  @Nonnull
+  private final Set<State> dirtyStates = new LinkedHashSet<>();
+  /**
+   * Writes belonging to rows that were evicted before they could be flushed.
+   */
+  @GuardedBy("this")
+  @Nonnull
+  private final Map<State, Map<Action, Quality>> evictedWrites = new HashMap<>();
+  @GuardedBy("this")
+  private boolean flushScheduled = false;
+  @GuardedBy("this")
+  @Nullable
+  private final SeenStateFilter seenStates;
+  @GuardedBy("this")
+  @Nonnegative
+  private long filteredLookups = 0;
+
+  /**
+   * Wrap the given map with a cache of a default size (10,000 states), flushing after a default
+   * number of dirty states (1,000).
+   * 
+   * @param backingMap the map that values will be loaded from and flushed to.
+   */
+  public CachingQualityMap(QualityMap backingMap) {
+    this(backingMap, DEFAULT_MAXIMUM_STATES, DEFAULT_FLUSH_THRESHOLD);
+  }
+
+  /**
+   * Wrap the given map with a cache of the given size.
+   * 
+   * @param backingMap the map that values will be loaded from and flushed to.
+   * @param maximumStates the most {@code State} rows that will be kept in memory at once.
+   * @param flushThreshold how many dirty rows can accumulate before a background flush starts.
+   */
+  public CachingQualityMap(QualityMap backingMap, @Nonnegative int maximumStates,
+      @Nonnegative int flushThreshold) {
+    this(backingMap, maximumStates, flushThreshold, null);
+  }
+
+  /**
+   * Wrap the given map with a cache of the given size, skipping the backing map for states that
+   * the given filter has not seen.
+   * 
+   * @param backingMap the map that values will be loaded from and flushed to.
+   * @param maximumStates the most {@code State} rows that will be kept in memory at once.
+   * @param flushThreshold how many dirty rows can accumulate before a background flush starts.
+   * @param seenStates a filter holding every {@code State} stored in the backing map, or
+   *        {@code null} to always ask the backing map.
+   */
+  @SuppressWarnings("null")
+  public CachingQualityMap(QualityMap backingMap, @Nonnegative int maximumStates,
+      @Nonnegative int flushThreshold, @Nullable SeenStateFilter seenStates) {
+    if (maximumStates < 1) {
+      throw new IllegalArgumentException(
+          "Must be able to cache at least one state, but got: " + maximumStates);
+    }
+    if (flushThreshold < 1) {
+      throw new IllegalArgumentException(
+          "Flush threshold must be at least one, but got: " + flushThreshold);
+    }
+    this.backingMap = backingMap;
+    this.defaultQuality = backingMap.getDefaultQuality();
+    this.flushThreshold = flushThreshold;
+    this.seenStates = seenStates;
+    this.flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "qlearner-cache-flush");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.rows = new LinkedHashMap<State, Row>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<State, Row> eldest) {
+        if (size() <= maximumStates) {
+          return false;
+        }
+        evict(eldest.getKey(), eldest.getValue());
+        return true;
+      }
+    };
+  }
+
+  @Override
+  public Quality getDefaultQuality() {
+    return defaultQuality;
+  }
+
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    synchronized (this) {
+      Row row = rows.get(state);
+      if (row == null && isUnseen(state)) {
+        row = new Row(new HashMap<>());
+        rows.put(state, row);
+      }
+      if (row != null) {
+        write(state, row, action, quality);
+        return;
+      }
+    }
+    synchronized (backingLock) {
+      synchronized (this) {
+        write(state, loadRow(state), action, quality);
+      }
+    }
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    Row row = getRow(state);
+    if (row == null) {
+      return defaultQuality;
+    }
+    synchronized (this) {
+      Quality quality = row.qualities.get(action);
+      if (quality == null) {
+        return defaultQuality;
+      }
+      return quality;
+    }
+  }
+
+  @Override
+  public Quality getBestQuality(State state) {
+    Row row = getRow(state);
+    if (row == null) {
+      return defaultQuality;
+    }
+    synchronized (this) {
+      Quality bestQuality = null;
+      for (Quality quality : row.qualities.values()) {
+        if (bestQuality == null || quality.compareTo(bestQuality) > 0) {
+          bestQuality = quality;
+        }
+      }
+      if (bestQuality == null) {
+        return defaultQuality;
+      }
+      return bestQuality;
+    }
+  }
+
+  @Override
+  public StateActionQuality getTriplet(State state, Action action) {
+    return new StateActionQuality(state, action, get(state, action));
+  }
+
+  /**
+   * Get the number of lookups that skipped the backing map because the {@link SeenStateFilter}
+   * had never seen their {@code State}.
+   * 
+   * @return how many backing map reads the filter saved.
+   */
+  @Nonnegative
+  public synchronized long getFilteredLookupCount() {
+    return filteredLookups;
+  }
+
+  /**
+   * Write every pending value to the backing map, and wait until it has been written.
+   */
+  public void flush() {
+    flushPendingWrites();
+  }
+
+  /**
+   * Flush every pending value to the backing map, then stop the background flushing thread. This
+   * object must not be used after it has been closed.
+   */
+  @Override
+  public void close() {
+    flushExecutor.shutdown();
+    try {
+      flushExecutor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flushPendingWrites();
+  }
+
+  /**
+   * Get the cached row of the given {@code State}, loading it if needed, or {@code null} if the
+   * state has certainly never been stored.
+   */
+  @Nullable
+  private Row getRow(State state) {
+    synchronized (this) {
+      Row row = rows.get(state);
+      if (row != null) {
+        return row;
+      }
+      if (isUnseen(state)) {
+        return null;
+      }
+    }
+    synchronized (backingLock) {
+      synchronized (this) {
+        return loadRow(state);
+      }
+    }
+  }
+
+  /**
+   * Load the row for the given {@code State} from the backing map, unless another thread did so
+   * first. The caller must hold both {@link #backingLock} and the lock on {@code this}.
+   */
+  @GuardedBy("this")
+  private Row loadRow(State state) {
+    Row row = rows.get(state);
+    if (row != null) {
+      return row;
+    }
+
+    row = new Row(readBackingRow(state));
+
+    Map<Action, Quality> unflushed = evictedWrites.remove(state);
+    if (unflushed != null) {
+      row.qualities.putAll(unflushed);
+      row.pendingWrites = unflushed;
+      dirtyStates.add(state);
+    }
+
+    rows.put(state, row);
+    return row;
+  }
+
+  private Map<Action, Quality> readBackingRow(State state) {
+    if (backingMap instanceof RowQualityMap) {
+      return new HashMap<>(((RowQualityMap) backingMap).getRow(state));
+    }
+
+    Map<Action, Quality> qualities = new HashMap<>();
+    for (Action action : state.getActions()) {
+      Quality quality = backingMap.get(state, action);
+      if (!quality.equals(defaultQuality)) {
+        qualities.put(action, quality);
+      }
+    }
+    return qualities;
+  }
+
+  /**
+   * Check whether the filter has certainly never seen a {@code State}, counting it if so. States
+   * with writes waiting to be flushed have always been seen.
+   */
+  @GuardedBy("this")
+  private boolean isUnseen(State state) {
+    SeenStateFilter filter = seenStates;
+    if (filter == null || filter.mightContain(state)) {
+      return false;
+    }
+    filteredLookups++;
+    return true;
+  }
+
+  @GuardedBy("this")
+  private void write(State state, Row row, Action action, Quality quality) {
+    SeenStateFilter filter = seenStates;
+    if (filter != null) {
+      filter.add(state);
+    }
+    row.qualities.put(action, quality);
+    if (row.pendingWrites == null) {
+      row.pendingWrites = new HashMap<>();
+      dirtyStates.add(state);
+    }
+    row.pendingWrites.put(action, quality);
+
+    if (dirtyStates.size() >= flushThreshold) {
+      scheduleFlush();
+    }
+  }
+
+  @GuardedBy("this")
+  private void evict(State state, Row row) {
+    Map<Action, Quality> pendingWrites = row.pendingWrites;
+    if (pendingWrites == null) {
+      return;
+    }
+    dirtyStates.remove(state);
+    Map<Action, Quality> alreadyEvicted = evictedWrites.get(state);
+    if (alreadyEvicted == null) {
+      evictedWrites.put(state, pendingWrites);
+    } else {
+      alreadyEvicted.putAll(pendingWrites);
+    }
+    scheduleFlush();
+  }
+
+  @GuardedBy("this")
+  private void scheduleFlush() {
+    if (flushScheduled || flushExecutor.isShutdown()) {
+      return;
+    }
+    flushScheduled = true;
+    flushExecutor.execute(() -> {
+      try {
+        flushPendingWrites();
+      } catch (RuntimeException e) {
+        logger.error("Failed to flush dirty rows to " + backingMap
+            + ", they will be written again by the next flush", e);
+      }
+    });
+  }
+
+  private void flushPendingWrites() {
+    synchronized (backingLock) {
+      List<State> states;
+      List<Map<Action, Quality>> writes;
+
+      synchronized (this) {
+        flushScheduled = false;
+        states = new ArrayList<>(dirtyStates.size() + evictedWrites.size());
+        writes = new ArrayList<>(dirtyStates.size() + evictedWrites.size());
+
+        // Evicted writes are always older than a cached row's writes, so they go first.
+        for (Map.Entry<State, Map<Action, Quality>> evicted : evictedWrites.entrySet()) {
+          states.add(evicted.getKey());
+          writes.add(evicted.getValue());
+        }
+        evictedWrites.clear();
+
+        for (Iterator<State> dirty = dirtyStates.iterator(); dirty.hasNext();) {
+          State state = dirty.next();
+          dirty.remove();
+          Row row = rows.get(state);
+          if (row != null && row.pendingWrites != null) {
+            states.add(state);
+            writes.add(row.pendingWrites);
+            row.pendingWrites = null;
+          }
+        }
+      }
+
+      logger.debug("Flushing {} dirty rows to {}", states.size(), backingMap);
+
+      int written = 0;
+      try {
+        for (; written < states.size(); written++) {
+          writeBackingRow(states.get(written), writes.get(written));
+        }
+      } catch (RuntimeException e) {
+        requeue(states.subList(written, states.size()), writes.subList(written, writes.size()));
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Put writes that could not be flushed back in line for the next flush, without letting them
+   * replace any newer value written in the meantime.
+   */
+  private synchronized void requeue(List<State> states, List<Map<Action, Quality>> writes) {
+    for (int i = 0; i < states.size(); i++) {
+      Map<Action, Quality> newer = evictedWrites.get(states.get(i));
+      if (newer == null) {
+        evictedWrites.put(states.get(i), writes.get(i));
+      } else {
+        for (Map.Entry<Action, Quality> older : writes.get(i).entrySet()) {
+          newer.putIfAbsent(older.getKey(), older.getValue());
+        }
+      }
+    }
+  }
+
+  private void writeBackingRow(State state, Map<Action, Quality> qualities) {
+    if (backingMap instanceof RowQualityMap) {
+      ((RowQualityMap) backingMap).putRow(state, qualities);
+      return;
+    }
+    for (Map.Entry<Action, Quality> entry : qualities.entrySet()) {
+      backingMap.put(state, entry.getKey(), entry.getValue());
+    }
+  }
+}
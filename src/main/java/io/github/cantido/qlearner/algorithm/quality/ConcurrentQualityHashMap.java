@@ -0,0 +1,198 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.RowQualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A thread-safe data structure that stores {@link Quality} values in a hashed form.
+ * 
+ * <p>
+ * Reads never take a lock, so any number of threads can choose {@link Action}s from this map while
+ * another thread updates it. Writes to the same {@link State} are serialized so that each
+ * {@code State}'s best {@code Quality} stays consistent with its values. This makes it a good fit
+ * for an actor-learner setup, where {@link io.github.cantido.qlearner.agent.Agent Agent}s read
+ * values and a {@link io.github.cantido.qlearner.agent.Learner Learner} writes them.
+ * </p>
+ * 
+ * <p>
+ * Like {@link QualityHashMap}, the best {@code Quality} of a {@code State} is the highest of the
+ * values stored for it, or the default quality if none have been stored.
+ * </p>
+ * 
+ * @see io.github.cantido.qlearner.agent.TransitionQueue
+ */
+@ThreadSafe
+public class ConcurrentQualityHashMap implements RowQualityMap {
+  /**
+   * The stored values of a single {@code State}.
+   */
+  private static final class Row {
+    @Nonnull
+    private final ConcurrentMap<Action, Quality> qualities;
+    /**
+     * Only written while holding the lock on this row, but read without it.
+     */
+    @Nullable
+    private volatile Quality best;
+
+    private Row(int expectedActions) {
+      this.qualities = new ConcurrentHashMap<>(expectedActions);
+    }
+  }
+
+  @Nonnegative
+  private final int expectedAverageActionsPerState;
+  @Nonnull
+  private final ConcurrentMap<State, Row> rows;
+  @Nonnull
+  private volatile Quality defaultQuality = Quality.ZERO;
+
+  /**
+   * Constructs an empty {@code ConcurrentQualityHashMap} with a default number of expected total
+   * states (16) and a default number of expected actions per state (4).
+   */
+  public ConcurrentQualityHashMap() {
+    this(16, 4);
+  }
+
+  /**
+   * Constructs an empty {@code ConcurrentQualityHashMap} with a specified number of expected total
+   * states and number of expected actions per state.
+   * 
+   * <p>
+   * Specifying these values is only a performance optimization. It does not change the
+   * functionality of this object.
+   * </p>
+   * 
+   * @param expectedStates the approximate total count of states this object will store.
+   * @param actionsPerState the average count of actions that each stored state will have.
+   */
+  public ConcurrentQualityHashMap(@Nonnegative int expectedStates,
+      @Nonnegative int actionsPerState) {
+    if (expectedStates < 0) {
+      throw new IllegalArgumentException(
+          "Was given a negative expectedStates number, which is invalid. Got: " + expectedStates);
+    }
+    if (actionsPerState < 0) {
+      throw new IllegalArgumentException(
+          "Was given a negative actionsPerState number, which is invalid. Got: " + actionsPerState);
+    }
+    this.expectedAverageActionsPerState = actionsPerState;
+    this.rows = new ConcurrentHashMap<>(expectedStates);
+  }
+
+  /**
+   * Set the {@code Quality} value that will be returned for {@code State}-{@code Action} pairs that
+   * this object has not yet stored.
+   * 
+   * @param defaultQuality the default {@code Quality} value.
+   */
+  public void setDefaultQuality(Quality defaultQuality) {
+    this.defaultQuality = defaultQuality;
+  }
+
+  @Override
+  public Quality getDefaultQuality() {
+    return defaultQuality;
+  }
+
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    Row row = rows.computeIfAbsent(state, s -> new Row(expectedAverageActionsPerState));
+    synchronized (row) {
+      Quality oldQuality = row.qualities.put(action, quality);
+      Quality best = row.best;
+      if (best == null || quality.compareTo(best) >= 0) {
+        row.best = quality;
+      } else if (best.equals(oldQuality)) {
+        // The best value just got worse, so another action might be the best now.
+        row.best = Collections.max(row.qualities.values());
+      }
+    }
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    Row row = rows.get(state);
+    if (row == null) {
+      return defaultQuality;
+    }
+    Quality quality = row.qualities.get(action);
+    if (quality == null) {
+      return defaultQuality;
+    }
+    return quality;
+  }
+
+  @Override
+  public Quality getBestQuality(State state) {
+    Row row = rows.get(state);
+    if (row == null) {
+      return defaultQuality;
+    }
+    Quality best = row.best;
+    if (best == null) {
+      return defaultQuality;
+    }
+    return best;
+  }
+
+  @Override
+  public Map<Action, Quality> getRow(State state) {
+    Row row = rows.get(state);
+    if (row == null) {
+      return Collections.emptyMap();
+    }
+    return Collections.unmodifiableMap(row.qualities);
+  }
+
+  @Override
+  public void putRow(State state, Map<Action, Quality> qualities) {
+    for (Map.Entry<Action, Quality> entry : qualities.entrySet()) {
+      put(state, entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Get every {@code State} that has at least one stored value. The returned set is a read-only
+   * view of this map, and it is safe to iterate while other threads write to the map.
+   * 
+   * @return the {@code State}s stored in this map.
+   */
+  public Set<State> getStates() {
+    return Collections.unmodifiableSet(rows.keySet());
+  }
+
+  @Override
+  public StateActionQuality getTriplet(State state, Action action) {
+    return new StateActionQuality(state, action, get(state, action));
+  }
+}
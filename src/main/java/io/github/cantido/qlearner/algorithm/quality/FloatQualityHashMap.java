@@ -0,0 +1,333 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.RowQualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A {@link RowQualityMap} that stores {@link Quality} values as {@code float}s instead of objects,
+ * in one dense row per {@link State}.
+ * 
+ * <p>
+ * States are kept in an open-addressed hash table. Each has a row of one {@code float} for every
+ * {@link Action} this map has seen, laid out one row after another in a single array, so that a
+ * state's values share cache lines and finding its best quality is a scan over a few adjacent
+ * floats. A {@code float} holds a little over seven significant digits, which is enough to choose
+ * between actions, but not always to add up many small updates.
+ * </p>
+ * 
+ * <p>
+ * A compensated map also keeps the part of each value that did not fit in its {@code float}, and
+ * carries it into the next value stored for the same pair, as in Kahan summation. Updates smaller
+ * than a {@code float}'s precision then still add up over time, at the cost of a second
+ * {@code float} per value. Reads only use the first.
+ * </p>
+ */
+@NotThreadSafe
+public class FloatQualityHashMap implements RowQualityMap {
+  private static final int DEFAULT_EXPECTED_STATES = 16;
+  private static final int DEFAULT_ACTIONS_PER_STATE = 4;
+
+  private final boolean compensated;
+  @Nonnull
+  private final Map<Action, Integer> actionIds = new HashMap<>();
+  @Nonnull
+  private final List<Action> actions = new ArrayList<>();
+  @Nonnull
+  private State[] keys;
+  /**
+   * Each state's row, at {@code slot * width}. Values that have not been stored are NaN.
+   */
+  @Nonnull
+  private float[] values;
+  @Nullable
+  private float[] compensations;
+  @Nonnegative
+  private int width;
+  @Nonnegative
+  private int size;
+  @SuppressWarnings("null")
+  @Nonnull
+  private Quality defaultQuality = Quality.ZERO;
+
+  /**
+   * Constructs an empty {@code FloatQualityHashMap} with a default number of expected states and
+   * actions per state.
+   * 
+   * @param compensated whether to carry rounding errors into later values.
+   */
+  public FloatQualityHashMap(boolean compensated) {
+    this(DEFAULT_EXPECTED_STATES, DEFAULT_ACTIONS_PER_STATE, compensated);
+  }
+
+  /**
+   * Constructs an empty {@code FloatQualityHashMap} with room for a specified number of states and
+   * actions per state. The map grows past these when it needs to.
+   * 
+   * @param expectedStates the approximate total count of states this object will store.
+   * @param actionsPerState the count of distinct actions that states will have.
+   * @param compensated whether to carry rounding errors into later values.
+   */
+  public FloatQualityHashMap(@Nonnegative int expectedStates, @Nonnegative int actionsPerState,
+      boolean compensated) {
+    if (expectedStates < 0) {
+      throw new IllegalArgumentException(
+          "Was given a negative expectedStates number, which is invalid. Got: " + expectedStates);
+    }
+    if (actionsPerState < 0) {
+      throw new IllegalArgumentException(
+          "Was given a negative actionsPerState number, which is invalid. Got: " + actionsPerState);
+    }
+    int capacity = Integer.highestOneBit(Math.max(2, expectedStates) * 2 - 1) << 1;
+    this.compensated = compensated;
+    this.width = Math.max(1, actionsPerState);
+    this.keys = new State[capacity];
+    this.values = newRows(capacity, width);
+    this.compensations = compensated ? new float[capacity * width] : null;
+  }
+
+  /**
+   * Set the {@code Quality} value that will be returned for {@code State}-{@code Action} pairs that
+   * this object has not yet stored.
+   * 
+   * @param defaultQuality the default {@code Quality} value.
+   */
+  public void setDefaultQuality(Quality defaultQuality) {
+    this.defaultQuality = defaultQuality;
+  }
+
+  @Override
+  public Quality getDefaultQuality() {
+    return defaultQuality;
+  }
+
+  /**
+   * Find out whether this map carries rounding errors into later values.
+   * 
+   * @return {@code true} if this map is compensated.
+   */
+  public boolean isCompensated() {
+    return compensated;
+  }
+
+  /**
+   * Get the number of states with at least one stored value.
+   * 
+   * @return the number of rows in this map.
+   */
+  @Nonnegative
+  public int size() {
+    return size;
+  }
+
+  @SuppressWarnings("null")
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    int id = idOf(action);
+    int index = insert(state) * width + id;
+    double value = quality.doubleValue();
+    if (compensations == null) {
+      values[index] = (float) value;
+      return;
+    }
+    double corrected = value + compensations[index];
+    float rounded = (float) corrected;
+    values[index] = rounded;
+    compensations[index] = (float) (corrected - rounded);
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    int slot = find(state);
+    Integer id = actionIds.get(action);
+    if (slot < 0 || id == null) {
+      return defaultQuality;
+    }
+    float value = values[slot * width + id];
+    return Float.isNaN(value) ? defaultQuality : new Quality(value);
+  }
+
+  @Override
+  public Quality getBestQuality(State state) {
+    int slot = find(state);
+    if (slot < 0) {
+      return defaultQuality;
+    }
+    float best = Float.NaN;
+    for (int index = slot * width; index < (slot + 1) * width; index++) {
+      // Comparisons with NaN are false, so unstored values are skipped
+      if (Float.isNaN(best) || values[index] > best) {
+        best = values[index];
+      }
+    }
+    return Float.isNaN(best) ? defaultQuality : new Quality(best);
+  }
+
+  @Override
+  public Map<Action, Quality> getRow(State state) {
+    int slot = find(state);
+    if (slot < 0) {
+      return Collections.emptyMap();
+    }
+    Map<Action, Quality> row = new HashMap<>();
+    for (int id = 0; id < actions.size(); id++) {
+      float value = values[slot * width + id];
+      if (!Float.isNaN(value)) {
+        row.put(actions.get(id), new Quality(value));
+      }
+    }
+    return Collections.unmodifiableMap(row);
+  }
+
+  @Override
+  public void putRow(State state, Map<Action, Quality> qualities) {
+    for (Map.Entry<Action, Quality> entry : qualities.entrySet()) {
+      put(state, entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Get every {@code State} that has at least one stored value, for example to write them all
+   * out to a checkpoint. The returned set is a copy, and does not change with this map.
+   * 
+   * @return the {@code State}s stored in this map.
+   */
+  public Set<State> getStates() {
+    Set<State> states = new HashSet<>();
+    for (State key : keys) {
+      if (key != null) {
+        states.add(key);
+      }
+    }
+    return Collections.unmodifiableSet(states);
+  }
+
+  @Override
+  public StateActionQuality getTriplet(State state, Action action) {
+    return new StateActionQuality(state, action, get(state, action));
+  }
+
+  private int idOf(Action action) {
+    Integer id = actionIds.get(action);
+    if (id == null) {
+      id = actions.size();
+      actionIds.put(action, id);
+      actions.add(action);
+      if (id >= width) {
+        resize(keys.length, Math.max(width * 2, id + 1));
+      }
+    }
+    return id;
+  }
+
+  /**
+   * Find the slot of a state, or return a negative number if it is not stored.
+   */
+  private int find(State state) {
+    int mask = keys.length - 1;
+    for (int slot = spread(state.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      State key = keys[slot];
+      if (key == null) {
+        return -1;
+      }
+      if (key.equals(state)) {
+        return slot;
+      }
+    }
+  }
+
+  /**
+   * Find the slot of a state, adding it if it is not stored.
+   */
+  private int insert(State state) {
+    int slot = find(state);
+    if (slot >= 0) {
+      return slot;
+    }
+    if ((size + 1) * 2 > keys.length) {
+      resize(keys.length * 2, width);
+    }
+    int mask = keys.length - 1;
+    slot = spread(state.hashCode()) & mask;
+    while (keys[slot] != null) {
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = state;
+    size++;
+    return slot;
+  }
+
+  private void resize(int capacity, int newWidth) {
+    State[] oldKeys = keys;
+    float[] oldValues = values;
+    float[] oldCompensations = compensations;
+    int oldWidth = width;
+
+    keys = new State[capacity];
+    values = newRows(capacity, newWidth);
+    compensations = compensated ? new float[capacity * newWidth] : null;
+    width = newWidth;
+
+    int mask = capacity - 1;
+    for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+      State key = oldKeys[oldSlot];
+      if (key == null) {
+        continue;
+      }
+      int slot = spread(key.hashCode()) & mask;
+      while (keys[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      System.arraycopy(oldValues, oldSlot * oldWidth, values, slot * newWidth, oldWidth);
+      if (oldCompensations != null && compensations != null) {
+        System.arraycopy(oldCompensations, oldSlot * oldWidth, compensations, slot * newWidth,
+            oldWidth);
+      }
+    }
+  }
+
+  private static float[] newRows(int capacity, int width) {
+    float[] rows = new float[capacity * width];
+    Arrays.fill(rows, Float.NaN);
+    return rows;
+  }
+
+  /**
+   * Spread sequential hash codes across the table, so that linear probing does not cluster.
+   */
+  private static int spread(int hash) {
+    int spread = hash * 0x9E3779B9;
+    return spread ^ (spread >>> 16);
+  }
+}
@@ -15,29 +15,48 @@
 
 package io.github.cantido.qlearner.algorithm.quality;
 
+import com.google.common.collect.Sets;
+
 import io.github.cantido.qlearner.algorithm.model.Quality;
-import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.algorithm.model.RowQualityMap;
 import io.github.cantido.qlearner.client.Action;
 import io.github.cantido.qlearner.client.State;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * A data structure that stores {@link Quality} values in a hashed form.
+ * 
+ * <p>
+ * Every stored value takes up room, even one equal to the default quality, and the hash tables
+ * never shrink by themselves. {@link #compact(long, TimeUnit)} drops values within a tolerance of
+ * the default, and rows left empty, a time slice at a time, while moving the remaining rows into
+ * tables sized for what is left. Slices can be run between training steps; until a pass is done,
+ * lookups check both the old and the new tables.
+ * </p>
  */
 @NotThreadSafe
-public class QualityHashMap implements QualityMap {
+public class QualityHashMap implements RowQualityMap {
   @SuppressWarnings("null")
   @Nonnull
   private static final Logger logger = LoggerFactory.getLogger(QualityHashMap.class);
+  /**
+   * How many rows to compact between looks at the clock.
+   */
+  private static final int ROWS_PER_CLOCK_CHECK = 64;
   @Nonnegative
   private final int expectedAverageActionsPerState;
 
@@ -45,7 +64,7 @@ public class QualityHashMap implements QualityMap {
    * Mapping of State-Action pairs to their Quality value.
    */
   @Nonnull
-  private final Map<State, Map<Action, Quality>> actionQualities;
+  private Map<State, Map<Action, Quality>> actionQualities;
   
   /**
    * An optimization; stores the best quality for each state.
@@ -55,11 +74,29 @@ public class QualityHashMap implements QualityMap {
    * that quality, we would lose that quality for all gridworld.actions.</p>
    */
   @Nonnull
-  private final Map<State, PriorityQueue<Quality>> bestQualities;
+  private Map<State, PriorityQueue<Quality>> bestQualities;
   @SuppressWarnings("null")
   @Nonnull
   private Quality defaultQuality = Quality.ZERO;
 
+  /**
+   * How far from the default quality a value can be and still be dropped by compaction.
+   */
+  private double compactionTolerance = 0;
+  /**
+   * The rows that the current compaction pass has not reached yet, or {@code null} if no pass is
+   * running. The tables they are in only shrink while a pass runs, through this iterator; new rows
+   * go into the new tables.
+   */
+  @Nullable
+  private Iterator<Map.Entry<State, Map<Action, Quality>>> compactionCursor;
+  @Nullable
+  private Map<State, Map<Action, Quality>> oldActionQualities;
+  @Nullable
+  private Map<State, PriorityQueue<Quality>> oldBestQualities;
+  @Nonnegative
+  private long droppedValues = 0;
+
   /**
    * Constructs an empty {@code QualityHashMap} with a default number of expected total states (16)
    * and a default number of expected actions per state (11).
@@ -113,21 +150,38 @@ public class QualityHashMap implements QualityMap {
     return this.defaultQuality;
   }
 
+  /**
+   * Set how far from the default quality a value can be and still be dropped by compaction. This
+   * is also the most that compaction can change any state's values or best quality by.
+   * 
+   * @param compactionTolerance the largest difference from the default quality to drop.
+   */
+  public void setCompactionTolerance(@Nonnegative double compactionTolerance) {
+    if (!(compactionTolerance >= 0)) {
+      throw new IllegalArgumentException(
+          "Compaction tolerance must not be negative, but got: " + compactionTolerance);
+    }
+    this.compactionTolerance = compactionTolerance;
+  }
+
   @Override
   public void put(State state, Action action, Quality quality) {
-    Quality oldQuality = get(state, action);
-
-    if (!actionQualities.containsKey(state)) {
-      actionQualities.put(state, new HashMap<>(expectedAverageActionsPerState));
+    Map<Action, Quality> row = findRow(state);
+    if (row == null) {
+      row = new HashMap<>(expectedAverageActionsPerState);
+      actionQualities.put(state, row);
     }
-    actionQualities.get(state).put(action, quality);
+    // Only a value that was actually stored may be taken out of the queue. Removing the default
+    // quality for a new action would drop another action's stored value that happens to equal it.
+    Quality oldQuality = row.put(action, quality);
     //actionQualities.put(new ImmutablePair<>(state, action), quality);
 
-    PriorityQueue<Quality> queueToUpdate;
+    PriorityQueue<Quality> queueToUpdate = findBestQualities(state);
 
-    if (bestQualities.containsKey(state)) {
-      queueToUpdate = bestQualities.get(state);
-      queueToUpdate.remove(oldQuality);
+    if (queueToUpdate != null) {
+      if (oldQuality != null) {
+        queueToUpdate.remove(oldQuality);
+      }
     } else {
       queueToUpdate =
           new PriorityQueue<>(expectedAverageActionsPerState, Quality.DESCENDING_ORDER);
@@ -141,7 +195,7 @@ public class QualityHashMap implements QualityMap {
 
   @Override
   public Quality get(State state, Action action) {
-    Map<Action, Quality> actions = actionQualities.get(state);
+    Map<Action, Quality> actions = findRow(state);
     if (actions == null) {
       return defaultQuality;
     }
@@ -157,11 +211,13 @@ public class QualityHashMap implements QualityMap {
 
   @Override
   public Quality getBestQuality(State state) {
-    Quality bestQuality = defaultQuality;
-
-    if (bestQualities.containsKey(state)) {
-      bestQuality = bestQualities.get(state).peek();
+    // One probe, so that states which were never stored cost no more than a single miss
+    PriorityQueue<Quality> qualities = findBestQualities(state);
+    if (qualities == null) {
+      return defaultQuality;
     }
+
+    Quality bestQuality = qualities.peek();
     if (bestQuality == null) {
       return defaultQuality;
     }
@@ -169,8 +225,176 @@ public class QualityHashMap implements QualityMap {
     return bestQuality;
   }
 
+  @Override
+  public Map<Action, Quality> getRow(State state) {
+    Map<Action, Quality> actions = findRow(state);
+    if (actions == null) {
+      return Collections.emptyMap();
+    }
+    return Collections.unmodifiableMap(actions);
+  }
+
+  @Override
+  public void putRow(State state, Map<Action, Quality> qualities) {
+    for (Map.Entry<Action, Quality> entry : qualities.entrySet()) {
+      put(state, entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Get every {@code State} that has at least one stored value, for example to write them all
+   * out to a checkpoint. The returned set is a read-only view of this map, until the next
+   * compaction pass starts.
+   * 
+   * @return the {@code State}s stored in this map.
+   */
+  public Set<State> getStates() {
+    Map<State, Map<Action, Quality>> old = oldActionQualities;
+    if (old == null) {
+      return Collections.unmodifiableSet(actionQualities.keySet());
+    }
+    return Collections.unmodifiableSet(Sets.union(old.keySet(), actionQualities.keySet()));
+  }
+
+  /**
+   * Compact this map for up to the given time, starting a new pass if none is running. Each row
+   * reached loses its values within the compaction tolerance of the default quality, unless that
+   * would lower the row's best quality by more than the tolerance, and is dropped if nothing is
+   * left. Rows that are kept move into new tables, sized for the rows left when the pass started.
+   * 
+   * @param timeSlice how long to spend compacting. At least a few rows are always compacted.
+   * @param unit the unit of {@code timeSlice}.
+   * @return {@code true} if the pass is finished, or {@code false} if there is more to do.
+   */
+  public boolean compact(long timeSlice, TimeUnit unit) {
+    if (compactionCursor == null) {
+      oldActionQualities = actionQualities;
+      oldBestQualities = bestQualities;
+      actionQualities = new HashMap<>(actionQualities.size() * 4 / 3 + 1);
+      bestQualities = new HashMap<>(bestQualities.size() * 4 / 3 + 1);
+      compactionCursor = oldActionQualities.entrySet().iterator();
+    }
+    Iterator<Map.Entry<State, Map<Action, Quality>>> cursor = compactionCursor;
+    Map<State, PriorityQueue<Quality>> oldBest = oldBestQualities;
+    if (cursor == null || oldBest == null) {
+      throw new AssertionError("Compaction pass was not started");
+    }
+
+    long deadline = System.nanoTime() + unit.toNanos(timeSlice);
+    do {
+      for (int i = 0; i < ROWS_PER_CLOCK_CHECK && cursor.hasNext(); i++) {
+        Map.Entry<State, Map<Action, Quality>> entry = cursor.next();
+        cursor.remove();
+        PriorityQueue<Quality> best = oldBest.remove(entry.getKey());
+        compactRow(entry.getKey(), entry.getValue(), best);
+      }
+    } while (cursor.hasNext() && System.nanoTime() - deadline < 0);
+
+    if (cursor.hasNext()) {
+      return false;
+    }
+    logger.debug("Finished compaction pass, {} states left", actionQualities.size());
+    compactionCursor = null;
+    oldActionQualities = null;
+    oldBestQualities = null;
+    return true;
+  }
+
+  /**
+   * Compact this whole map now, finishing any pass that is already running first.
+   * 
+   * @see #compact(long, TimeUnit)
+   */
+  public void compact() {
+    if (compactionCursor != null) {
+      compact(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+    compact(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Find out whether a compaction pass has been started and not yet finished.
+   * 
+   * @return {@code true} if a pass is running.
+   */
+  public boolean isCompacting() {
+    return compactionCursor != null;
+  }
+
+  /**
+   * Get the number of values that compaction has dropped, over all passes.
+   * 
+   * @return how many values were within the tolerance of the default quality.
+   */
+  @Nonnegative
+  public long getDroppedValueCount() {
+    return droppedValues;
+  }
+
   @Override
   public StateActionQuality getTriplet(State state, Action action) {
     return new StateActionQuality(state, action, this.get(state, action));
   }
+
+  @Nullable
+  private Map<Action, Quality> findRow(State state) {
+    Map<Action, Quality> row = actionQualities.get(state);
+    Map<State, Map<Action, Quality>> old = oldActionQualities;
+    if (row == null && old != null) {
+      row = old.get(state);
+    }
+    return row;
+  }
+
+  @Nullable
+  private PriorityQueue<Quality> findBestQualities(State state) {
+    PriorityQueue<Quality> best = bestQualities.get(state);
+    Map<State, PriorityQueue<Quality>> old = oldBestQualities;
+    if (best == null && old != null) {
+      best = old.get(state);
+    }
+    return best;
+  }
+
+  /**
+   * Drop a row's default values and move what is left into the current tables.
+   */
+  private void compactRow(State state, Map<Action, Quality> row,
+      @Nullable PriorityQueue<Quality> best) {
+    double defaultValue = defaultQuality.doubleValue();
+    double highestKept = Double.NEGATIVE_INFINITY;
+    int droppable = 0;
+    for (Quality quality : row.values()) {
+      if (Math.abs(quality.doubleValue() - defaultValue) <= compactionTolerance) {
+        droppable++;
+      } else {
+        highestKept = Math.max(highestKept, quality.doubleValue());
+      }
+    }
+
+    boolean empty = droppable == row.size();
+    // Without its default values, a row's best would fall to its highest remaining value
+    if (droppable > 0 && (empty || highestKept >= defaultValue - compactionTolerance)) {
+      droppedValues += droppable;
+      if (empty) {
+        return;
+      }
+      Map<Action, Quality> kept = new HashMap<>(row.size() - droppable);
+      PriorityQueue<Quality> keptBest =
+          new PriorityQueue<>(row.size() - droppable, Quality.DESCENDING_ORDER);
+      for (Map.Entry<Action, Quality> entry : row.entrySet()) {
+        if (Math.abs(entry.getValue().doubleValue() - defaultValue) > compactionTolerance) {
+          kept.put(entry.getKey(), entry.getValue());
+          keptBest.add(entry.getValue());
+        }
+      }
+      row = kept;
+      best = keptBest;
+    }
+
+    actionQualities.put(state, row);
+    if (best != null) {
+      bestQualities.put(state, best);
+    }
+  }
 }
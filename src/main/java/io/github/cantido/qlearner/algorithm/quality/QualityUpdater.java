@@ -19,6 +19,7 @@ import io.github.cantido.qlearner.agent.Step;
 import io.github.cantido.qlearner.algorithm.model.DiscountFactor;
 import io.github.cantido.qlearner.algorithm.model.LearningRate;
 import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityLog;
 import io.github.cantido.qlearner.algorithm.model.QualityMap;
 import io.github.cantido.qlearner.algorithm.model.QualityUpdateStrategy;
 import io.github.cantido.qlearner.algorithm.model.Reward;
@@ -26,6 +27,7 @@ import io.github.cantido.qlearner.client.Action;
 import io.github.cantido.qlearner.client.State;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Caches values that are needed by a {@link QualityUpdateStrategy}, but that do not change, to
@@ -40,6 +42,8 @@ public class QualityUpdater {
   private final LearningRate learningRate;
   @Nonnull
   private final DiscountFactor discountFactor;
+  @Nullable
+  private final QualityLog qualityLog;
 
   /**
    * Create a new {@code QualityUpdater}.
@@ -51,10 +55,25 @@ public class QualityUpdater {
    */
   public QualityUpdater(QualityMap qualityMap, QualityUpdateStrategy strategy,
       LearningRate learningRate, DiscountFactor discountFactor) {
+    this(qualityMap, strategy, learningRate, discountFactor, null);
+  }
+
+  /**
+   * Create a new {@code QualityUpdater} that records every new value in a log before storing it.
+   * 
+   * @param qualityMap the map to retrieve values from.
+   * @param strategy the strategy to actually update values with.
+   * @param learningRate the learning rate to pass to the strategy.
+   * @param discountFactor the discount factor to pass to the strategy.
+   * @param qualityLog the log to append new values to, or {@code null} to not log them.
+   */
+  public QualityUpdater(QualityMap qualityMap, QualityUpdateStrategy strategy,
+      LearningRate learningRate, DiscountFactor discountFactor, @Nullable QualityLog qualityLog) {
     this.qualityMap = qualityMap;
     this.strategy = strategy;
     this.learningRate = learningRate;
     this.discountFactor = discountFactor;
+    this.qualityLog = qualityLog;
   }
 
   /**
@@ -75,6 +94,9 @@ public class QualityUpdater {
     Quality newQuality = this.strategy.next(oldQuality, learningRate, reward, discountFactor,
         optimalFutureValueEstimate);
 
+    if (qualityLog != null) {
+      qualityLog.append(previousState, actionTaken, newQuality);
+    }
     qualityMap.put(previousState, actionTaken, newQuality);
   }
 }
@@ -0,0 +1,53 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+/**
+ * How many bits a {@link QuantizedQualityTable} stores each value in, trading precision against
+ * memory.
+ */
+public enum Quantization {
+  /**
+   * Each value takes 16 bits, and is within 1/131070th of its state's range of its full-precision
+   * value.
+   */
+  INT16(16),
+
+  /**
+   * Each value takes 8 bits, and is within 1/510th of its state's range of its full-precision
+   * value.
+   */
+  INT8(8);
+
+  private final int bits;
+
+  private Quantization(int bits) {
+    this.bits = bits;
+  }
+
+  /**
+   * Get the number of bits that each value is stored in.
+   * 
+   * @return the width of a stored value.
+   */
+  public int getBits() {
+    return bits;
+  }
+
+  /* package-private */ int getLevels() {
+    return (1 << bits) - 1;
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.algorithm.model.RowQualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A read-only copy of a trained table of {@link Quality} values, stored in 8 or 16 bits each
+ * instead of as {@code Quality} objects, for serving a policy that no longer learns.
+ * 
+ * <p>
+ * Each {@link State}'s values are scaled to the range between that state's lowest and highest
+ * value, and rounded to the nearest of the {@link Quantization}'s levels. A state's lowest and
+ * highest values are reproduced exactly, and every other value to within half a level. The best
+ * quality and the best {@link Action} are found by comparing the stored integers directly, and
+ * only the winner is converted back to a {@code double}.
+ * </p>
+ * 
+ * <p>
+ * Like {@link QualityHashMap#getBestQuality(State)}, the best quality of a state only considers
+ * stored values. Storing new values is not supported; quantize the training table again instead:
+ * </p>
+ * 
+ * <pre>
+ * QuantizedQualityTable served =
+ *     new QuantizedQualityTable(trained, trained.getStates(), Quantization.INT8);
+ * </pre>
+ */
+@Immutable
+@ThreadSafe
+public class QuantizedQualityTable implements QualityMap {
+  @Nonnull
+  private final Quantization quantization;
+  @Nonnull
+  private final Quality defaultQuality;
+  @Nonnull
+  private final Map<State, Integer> rows;
+  @Nonnull
+  private final Action[] actions;
+  /**
+   * Where each row starts in {@link #actionIds} and the value arrays, with one extra entry for the
+   * end of the last row.
+   */
+  @Nonnull
+  private final int[] rowOffsets;
+  @Nonnull
+  private final int[] actionIds;
+  @Nonnull
+  private final double[] minimums;
+  @Nonnull
+  private final double[] maximums;
+  @Nonnull
+  private final double[] scales;
+  @Nullable
+  private final byte[] bytes;
+  @Nullable
+  private final short[] shorts;
+
+  /**
+   * Quantize every stored value of the given states.
+   * 
+   * @param source the full-precision table to copy.
+   * @param states the {@code State}s to copy from the table.
+   * @param quantization how many bits to store each value in.
+   */
+  public QuantizedQualityTable(RowQualityMap source, Iterable<? extends State> states,
+      Quantization quantization) {
+    this.quantization = quantization;
+    this.defaultQuality = source.getDefaultQuality();
+
+    List<State> stateList = new ArrayList<>();
+    List<Map<Action, Quality>> rowList = new ArrayList<>();
+    int valueCount = 0;
+    for (State state : states) {
+      Map<Action, Quality> row = source.getRow(state);
+      if (!row.isEmpty()) {
+        stateList.add(state);
+        rowList.add(row);
+        valueCount += row.size();
+      }
+    }
+
+    this.rows = new HashMap<>(stateList.size() * 4 / 3 + 1);
+    this.rowOffsets = new int[stateList.size() + 1];
+    this.actionIds = new int[valueCount];
+    this.minimums = new double[stateList.size()];
+    this.maximums = new double[stateList.size()];
+    this.scales = new double[stateList.size()];
+    this.bytes = quantization == Quantization.INT8 ? new byte[valueCount] : null;
+    this.shorts = quantization == Quantization.INT16 ? new short[valueCount] : null;
+
+    Map<Action, Integer> actionIndex = new HashMap<>();
+    List<Action> actionList = new ArrayList<>();
+    int levels = quantization.getLevels();
+    int offset = 0;
+    for (int row = 0; row < stateList.size(); row++) {
+      rows.put(stateList.get(row), row);
+      rowOffsets[row] = offset;
+
+      double minimum = Double.POSITIVE_INFINITY;
+      double maximum = Double.NEGATIVE_INFINITY;
+      for (Quality quality : rowList.get(row).values()) {
+        minimum = Math.min(minimum, quality.doubleValue());
+        maximum = Math.max(maximum, quality.doubleValue());
+      }
+      minimums[row] = minimum;
+      maximums[row] = maximum;
+      scales[row] = (maximum - minimum) / levels;
+
+      for (Map.Entry<Action, Quality> entry : rowList.get(row).entrySet()) {
+        Integer id = actionIndex.get(entry.getKey());
+        if (id == null) {
+          id = actionList.size();
+          actionIndex.put(entry.getKey(), id);
+          actionList.add(entry.getKey());
+        }
+        actionIds[offset] = id;
+        int level = scales[row] == 0 ? 0
+            : (int) Math.round((entry.getValue().doubleValue() - minimum) / scales[row]);
+        store(offset, Math.min(level, levels));
+        offset++;
+      }
+    }
+    rowOffsets[stateList.size()] = offset;
+    this.actions = actionList.toArray(new Action[0]);
+  }
+
+  /**
+   * Get the number of bits that each value is stored in.
+   * 
+   * @return this table's quantization.
+   */
+  public Quantization getQuantization() {
+    return quantization;
+  }
+
+  /**
+   * Get the number of values stored in this table.
+   * 
+   * @return how many {@code State}-{@code Action} pairs were copied.
+   */
+  @Nonnegative
+  public int size() {
+    return actionIds.length;
+  }
+
+  /**
+   * Get the {@code Action} with the best stored quality for a {@code State}, comparing the stored
+   * integers without converting them.
+   * 
+   * @param state the {@code State} to choose an {@code Action} for.
+   * @return the best {@code Action}, or {@code null} if no value was stored for the state.
+   */
+  @CheckForNull
+  public Action getBestAction(State state) {
+    Integer row = rows.get(state);
+    if (row == null) {
+      return null;
+    }
+    return actions[actionIds[bestOffset(row)]];
+  }
+
+  @Override
+  public Quality getDefaultQuality() {
+    return defaultQuality;
+  }
+
+  /**
+   * This table is read-only.
+   * 
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    throw new UnsupportedOperationException(
+        "QuantizedQualityTable is read-only; quantize the training table again instead");
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    Integer row = rows.get(state);
+    if (row == null) {
+      return defaultQuality;
+    }
+    for (int offset = rowOffsets[row]; offset < rowOffsets[row + 1]; offset++) {
+      if (actions[actionIds[offset]].equals(action)) {
+        return new Quality(restore(row, offset));
+      }
+    }
+    return defaultQuality;
+  }
+
+  @Override
+  public Quality getBestQuality(State state) {
+    Integer row = rows.get(state);
+    if (row == null) {
+      return defaultQuality;
+    }
+    return new Quality(restore(row, bestOffset(row)));
+  }
+
+  @Override
+  public StateActionQuality getTriplet(State state, Action action) {
+    return new StateActionQuality(state, action, get(state, action));
+  }
+
+  private int bestOffset(int row) {
+    int best = rowOffsets[row];
+    int bestLevel = load(best);
+    for (int offset = best + 1; offset < rowOffsets[row + 1]; offset++) {
+      int level = load(offset);
+      if (level > bestLevel) {
+        best = offset;
+        bestLevel = level;
+      }
+    }
+    return best;
+  }
+
+  private double restore(int row, int offset) {
+    int level = load(offset);
+    // The top level is the maximum itself, which adding up scales could miss by rounding
+    return level == quantization.getLevels() ? maximums[row] : minimums[row] + level * scales[row];
+  }
+
+  @SuppressWarnings("null")
+  private void store(int offset, int level) {
+    if (bytes != null) {
+      bytes[offset] = (byte) level;
+    } else {
+      shorts[offset] = (short) level;
+    }
+  }
+
+  @SuppressWarnings("null")
+  private int load(int offset) {
+    return bytes != null ? bytes[offset] & 0xFF : shorts[offset] & 0xFFFF;
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+
+import io.github.cantido.qlearner.client.State;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A bloom filter of the {@link State}s that have had values stored for them, which can tell for
+ * certain that a {@code State} has never been seen, so that looking it up can be skipped.
+ * 
+ * <p>
+ * States are filtered by their hash codes, so a state that has not been seen may still be
+ * reported as possibly seen, either by chance or because it shares a hash code with one that has.
+ * A state that has been seen is never reported as unseen.
+ * </p>
+ */
+@NotThreadSafe
+public final class SeenStateFilter {
+  @SuppressWarnings("null")
+  @Nonnull
+  private static final Funnel<State> STATE_FUNNEL =
+      (state, into) -> into.putInt(state.hashCode());
+
+  @Nonnull
+  private final BloomFilter<State> filter;
+
+  /**
+   * Create a filter that has seen no states yet.
+   * 
+   * @param expectedStates how many states the filter should be sized for. Past this many, the
+   *        false positive rate climbs.
+   * @param falsePositiveRate how often an unseen state may be reported as possibly seen, when the
+   *        filter holds the expected number of states.
+   */
+  @SuppressWarnings("null")
+  public SeenStateFilter(@Nonnegative int expectedStates, double falsePositiveRate) {
+    if (expectedStates < 1) {
+      throw new IllegalArgumentException(
+          "Must expect at least one state, but got: " + expectedStates);
+    }
+    if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+      throw new IllegalArgumentException(
+          "False positive rate must be between 0 and 1, but got: " + falsePositiveRate);
+    }
+    this.filter = BloomFilter.create(STATE_FUNNEL, expectedStates, falsePositiveRate);
+  }
+
+  /**
+   * Record that a state has been seen.
+   * 
+   * @param state a {@code State} that has a stored value.
+   */
+  public void add(State state) {
+    filter.put(state);
+  }
+
+  /**
+   * Record that every given state has been seen, for example every state already stored in a
+   * map's backing store.
+   * 
+   * @param states the {@code State}s that have stored values.
+   */
+  public void addAll(Iterable<? extends State> states) {
+    for (State state : states) {
+      filter.put(state);
+    }
+  }
+
+  /**
+   * Find out whether a state might have been seen.
+   * 
+   * @param state the {@code State} to check.
+   * @return {@code false} if the state has certainly not been seen, otherwise {@code true}.
+   */
+  public boolean mightContain(State state) {
+    return filter.mightContain(state);
+  }
+
+  /**
+   * Estimate how often an unseen state is reported as possibly seen, given the states added so
+   * far.
+   * 
+   * @return the current false positive rate.
+   */
+  public double getExpectedFalsePositiveRate() {
+    return filter.expectedFpp();
+  }
+}
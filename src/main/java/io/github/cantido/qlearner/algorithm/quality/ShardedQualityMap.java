@@ -0,0 +1,141 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A {@link QualityMap} that splits its {@link State}s between a fixed number of shards by hash, so
+ * that each shard can be owned by a single writing thread.
+ * 
+ * <p>
+ * Every value of a {@code State} lives in the same shard, so all of the writes for a
+ * {@code State} can be routed to the one thread that owns its shard. Each shard then only ever
+ * has one writer, and no two writers share a shard's memory.
+ * </p>
+ * 
+ * <p>
+ * By default, each shard is a {@link SingleWriterQualityHashMap}, which writes without locks or
+ * atomic operations. Its values can be read from any thread, but it must only be written by one
+ * thread at a time, so this map is only safe to share between threads that write to disjoint
+ * shards. Use {@link #ShardedQualityMap(int, Supplier)} with {@link ConcurrentQualityHashMap}
+ * shards to allow any thread to write any shard, at the cost of a lock on every write.
+ * </p>
+ * 
+ * @see io.github.cantido.qlearner.agent.PartitionedLearner
+ */
+@NotThreadSafe
+public class ShardedQualityMap implements QualityMap {
+  @Nonnull
+  private final QualityMap[] shards;
+
+  /**
+   * Create a map with the given number of empty {@link SingleWriterQualityHashMap} shards.
+   * 
+   * @param shardCount how many shards to split {@code State}s between.
+   */
+  public ShardedQualityMap(@Nonnegative int shardCount) {
+    this(shardCount, SingleWriterQualityHashMap::new);
+  }
+
+  /**
+   * Create a map with the given number of shards, each created by the given factory.
+   * 
+   * @param shardCount how many shards to split {@code State}s between.
+   * @param shardFactory creates each shard. Every shard should have the same default quality.
+   */
+  public ShardedQualityMap(@Nonnegative int shardCount,
+      Supplier<? extends QualityMap> shardFactory) {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("Shard count must be positive, but got: " + shardCount);
+    }
+    this.shards = new QualityMap[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = shardFactory.get();
+    }
+  }
+
+  /**
+   * Get the number of shards that this map is split into.
+   * 
+   * @return the shard count.
+   */
+  @Nonnegative
+  public int getShardCount() {
+    return shards.length;
+  }
+
+  /**
+   * Get the index of the shard that holds the given {@code State}'s values. This is always the
+   * same for equal {@code State}s.
+   * 
+   * @param state the {@code State} to locate.
+   * @return an index from zero to one less than the shard count.
+   */
+  @Nonnegative
+  public int shardOf(State state) {
+    int hash = state.hashCode();
+    // Spread the high bits down, so that hash codes that only differ there still spread out.
+    hash ^= hash >>> 16;
+    hash *= 0x85EBCA6B;
+    hash ^= hash >>> 13;
+    return Math.floorMod(hash, shards.length);
+  }
+
+  /**
+   * Get a single shard of this map.
+   * 
+   * @param index the index of the shard, as returned by {@link #shardOf(State)}.
+   * @return the shard at that index.
+   */
+  public QualityMap getShard(@Nonnegative int index) {
+    return shards[index];
+  }
+
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    shards[shardOf(state)].put(state, action, quality);
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    return shards[shardOf(state)].get(state, action);
+  }
+
+  @Override
+  public Quality getBestQuality(State state) {
+    return shards[shardOf(state)].getBestQuality(state);
+  }
+
+  @Override
+  public Quality getDefaultQuality() {
+    return shards[0].getDefaultQuality();
+  }
+
+  @Override
+  public StateActionQuality getTriplet(State state, Action action) {
+    return shards[shardOf(state)].getTriplet(state, action);
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.RowQualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A data structure that stores {@link Quality} values in a hashed form, for one writing thread
+ * and any number of reading threads.
+ * 
+ * <p>
+ * Writes take no locks and use no atomic or volatile variables, so they cost no more than they
+ * would in a map for a single thread. That is only safe while a single thread writes at a time,
+ * which is how the shards of a {@link ShardedQualityMap} are written by a
+ * {@link io.github.cantido.qlearner.agent.PartitionedLearner PartitionedLearner}.
+ * </p>
+ * 
+ * <p>
+ * Other threads can read at the same time. Each {@link State}'s row is immutable and replaced
+ * whole on every write, and the hash table is only ever replaced by one that was filled before it
+ * was published. Both are published through {@code final} fields, so a reader never sees a
+ * partly written row or table. Nothing else orders a reader after the writer, though, so a reader
+ * may see a value that is a little out of date. Learning tolerates that, since an update only
+ * ever moves a value a step closer to its target.
+ * </p>
+ * 
+ * <p>
+ * Like {@link QualityHashMap}, the best {@code Quality} of a {@code State} is the highest of the
+ * values stored for it, or the default quality if none have been stored.
+ * </p>
+ */
+@NotThreadSafe
+public class SingleWriterQualityHashMap implements RowQualityMap {
+  private static final int DEFAULT_EXPECTED_STATES = 16;
+
+  /**
+   * The stored values of a single {@code State}. Rows are never changed once they are built.
+   */
+  @Immutable
+  private static final class Row {
+    @Nonnull
+    private final State state;
+    @Nonnull
+    private final Action[] actions;
+    @Nonnull
+    private final Quality[] qualities;
+    @Nonnull
+    private final Quality best;
+
+    private Row(State state, Action[] actions, Quality[] qualities) {
+      this.state = state;
+      this.actions = actions;
+      this.qualities = qualities;
+      Quality highest = qualities[0];
+      for (int i = 1; i < qualities.length; i++) {
+        if (qualities[i].compareTo(highest) > 0) {
+          highest = qualities[i];
+        }
+      }
+      this.best = highest;
+    }
+
+    @Nullable
+    private Quality get(Action action) {
+      for (int i = 0; i < actions.length; i++) {
+        if (actions[i].equals(action)) {
+          return qualities[i];
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Build a copy of this row with the given value stored for the given action.
+     */
+    private Row with(Action action, Quality quality) {
+      for (int i = 0; i < actions.length; i++) {
+        if (actions[i].equals(action)) {
+          Quality[] newQualities = qualities.clone();
+          newQualities[i] = quality;
+          return new Row(state, actions, newQualities);
+        }
+      }
+      Action[] newActions = Arrays.copyOf(actions, actions.length + 1);
+      Quality[] newQualities = Arrays.copyOf(qualities, qualities.length + 1);
+      newActions[actions.length] = action;
+      newQualities[qualities.length] = quality;
+      return new Row(state, newActions, newQualities);
+    }
+  }
+
+  /**
+   * An open-addressed hash table of rows. Its slots are filled before it is published, and only
+   * slots that were empty are filled afterwards, so a reader can probe it without a lock.
+   */
+  private static final class Table {
+    @Nonnull
+    private final Row[] slots;
+
+    private Table(@Nonnegative int capacity, @Nullable Row[] oldSlots) {
+      this.slots = new Row[capacity];
+      if (oldSlots != null) {
+        for (Row row : oldSlots) {
+          if (row != null) {
+            slots[emptySlot(slots, row.state)] = row;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Only written by the writing thread.
+   */
+  @Nonnull
+  private Table table;
+  /**
+   * Only read and written by the writing thread.
+   */
+  @Nonnegative
+  private int size = 0;
+  @Nonnull
+  private Quality defaultQuality = Quality.ZERO;
+
+  /**
+   * Constructs an empty {@code SingleWriterQualityHashMap} with a default number of expected total
+   * states (16).
+   */
+  public SingleWriterQualityHashMap() {
+    this(DEFAULT_EXPECTED_STATES);
+  }
+
+  /**
+   * Constructs an empty {@code SingleWriterQualityHashMap} with a specified number of expected
+   * total states.
+   * 
+   * <p>
+   * Specifying this value is only a performance optimization. It does not change the
+   * functionality of this object.
+   * </p>
+   * 
+   * @param expectedStates the approximate total count of states this object will store.
+   */
+  public SingleWriterQualityHashMap(@Nonnegative int expectedStates) {
+    if (expectedStates < 0) {
+      throw new IllegalArgumentException(
+          "Was given a negative expectedStates number, which is invalid. Got: " + expectedStates);
+    }
+    this.table = new Table(capacityFor(expectedStates), null);
+  }
+
+  /**
+   * Set the {@code Quality} value that will be returned for {@code State}-{@code Action} pairs that
+   * this object has not yet stored. This should be set before the map is shared with other
+   * threads.
+   * 
+   * @param defaultQuality the default {@code Quality} value.
+   */
+  public void setDefaultQuality(Quality defaultQuality) {
+    this.defaultQuality = defaultQuality;
+  }
+
+  @Override
+  public Quality getDefaultQuality() {
+    return defaultQuality;
+  }
+
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    Row[] slots = table.slots;
+    int mask = slots.length - 1;
+    for (int slot = spread(state.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      Row row = slots[slot];
+      if (row == null) {
+        slots[slot] = new Row(state, new Action[] {action}, new Quality[] {quality});
+        if (++size > slots.length / 2) {
+          table = new Table(slots.length * 2, slots);
+        }
+        return;
+      }
+      if (row.state.equals(state)) {
+        slots[slot] = row.with(action, quality);
+        return;
+      }
+    }
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    Row row = find(state);
+    if (row == null) {
+      return defaultQuality;
+    }
+    Quality quality = row.get(action);
+    return quality == null ? defaultQuality : quality;
+  }
+
+  @Override
+  public Quality getBestQuality(State state) {
+    Row row = find(state);
+    return row == null ? defaultQuality : row.best;
+  }
+
+  @Override
+  public Map<Action, Quality> getRow(State state) {
+    Row row = find(state);
+    if (row == null) {
+      return Collections.emptyMap();
+    }
+    Map<Action, Quality> qualities = new HashMap<>(row.actions.length * 2);
+    for (int i = 0; i < row.actions.length; i++) {
+      qualities.put(row.actions[i], row.qualities[i]);
+    }
+    return Collections.unmodifiableMap(qualities);
+  }
+
+  @Override
+  public void putRow(State state, Map<Action, Quality> qualities) {
+    for (Map.Entry<Action, Quality> entry : qualities.entrySet()) {
+      put(state, entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Get the number of {@code State}s that have at least one stored value. This should only be
+   * called by the writing thread.
+   * 
+   * @return how many {@code State}s this map stores.
+   */
+  @Nonnegative
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public StateActionQuality getTriplet(State state, Action action) {
+    return new StateActionQuality(state, action, get(state, action));
+  }
+
+  @Nullable
+  private Row find(State state) {
+    Row[] slots = table.slots;
+    int mask = slots.length - 1;
+    for (int slot = spread(state.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      Row row = slots[slot];
+      if (row == null || row.state.equals(state)) {
+        return row;
+      }
+    }
+  }
+
+  private static int emptySlot(Row[] slots, State state) {
+    int mask = slots.length - 1;
+    int slot = spread(state.hashCode()) & mask;
+    while (slots[slot] != null) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private static int capacityFor(@Nonnegative int expectedStates) {
+    int capacity = Integer.highestOneBit(Math.max(expectedStates, 1) * 2 - 1) << 1;
+    return Math.max(capacity, 2);
+  }
+
+  /**
+   * Spread sequential hash codes across the table, so that linear probing does not cluster.
+   */
+  private static int spread(int hash) {
+    int spread = hash * 0x9E3779B9;
+    return spread ^ (spread >>> 16);
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.client;
+
+import io.github.cantido.qlearner.agent.AsyncAgent;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An {@link Action} that can be performed without blocking the thread that starts it.
+ * <p>
+ * Implement this alongside {@code Action} when performing your action mostly means waiting, for
+ * example on a network call to an actuator. An {@link AsyncAgent} will call {@link #start()}
+ * instead of {@link Action#run()}, so that it does not need a thread for every action in flight.
+ * Other agents will still call {@code run()}, which should block until the action is done.
+ * </p>
+ */
+public interface AsyncAction {
+  /**
+   * Start performing this action.
+   * 
+   * @return a stage that completes once the action has been performed, or completes
+   *         exceptionally if it failed.
+   */
+  CompletionStage<?> start();
+}
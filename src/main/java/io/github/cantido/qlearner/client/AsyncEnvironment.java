@@ -0,0 +1,41 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.client;
+
+import io.github.cantido.qlearner.agent.AsyncAgent;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An {@link Environment} whose {@link State} can be observed without blocking the thread that asks
+ * for it.
+ * <p>
+ * Implement this alongside {@code Environment} when observing your environment mostly means
+ * waiting, for example on a round trip to a remote simulator. An {@link AsyncAgent} will call
+ * {@link #observe()} instead of {@link Environment#getState()}, so that it can select actions and
+ * learn for other agents while the observation is in flight. Other agents will still call
+ * {@code getState()}, which should block until the state arrives.
+ * </p>
+ */
+public interface AsyncEnvironment {
+  /**
+   * Start observing the current {@link State} of the environment.
+   * 
+   * @return a stage that completes with the environment's current state, or completes
+   *         exceptionally if it could not be observed.
+   */
+  CompletionStage<State> observe();
+}
@@ -0,0 +1,41 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.client;
+
+import io.github.cantido.qlearner.agent.BatchingEnvironment;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Many instances of an environment, whose {@link State}s can be observed together in one call.
+ * <p>
+ * Implement this when a single simulator hosts the environments of many agents, and each call to
+ * it costs a round trip. A {@link BatchingEnvironment} turns this into one {@link Environment} per
+ * instance, and gathers the observations that agents ask for at about the same time into batches.
+ * </p>
+ */
+@FunctionalInterface
+public interface BatchEnvironment {
+  /**
+   * Start observing the current {@link State}s of the given instances.
+   * 
+   * @param instances the numbers of the instances to observe, each at most once.
+   * @return a stage that completes with the current state of each instance, in the same order as
+   *         the instances were given, or completes exceptionally if they could not be observed.
+   */
+  CompletionStage<List<State>> observe(int[] instances);
+}
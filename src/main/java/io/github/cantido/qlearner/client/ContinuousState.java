@@ -0,0 +1,37 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.client;
+
+import io.github.cantido.qlearner.algorithm.approximation.TileCodedQualityMap;
+
+/**
+ * A {@link State} made of continuous readings, like sensor values, so that no two states are
+ * likely to ever be exactly equal.
+ * <p>
+ * Implement this alongside {@code State} to use a {@link TileCodedQualityMap}, which learns about
+ * regions of the input space instead of individual states, so that what it learns about one
+ * reading carries over to nearby readings. Since {@code State}s are immutable, the array can be
+ * built once and returned every time; callers will not modify it.
+ * </p>
+ */
+public interface ContinuousState {
+  /**
+   * Get the readings that make up this state.
+   * 
+   * @return one value for each dimension of the input space, always in the same order.
+   */
+  double[] getInputs();
+}
@@ -0,0 +1,44 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.client;
+
+import io.github.cantido.qlearner.algorithm.approximation.LinearQualityFunction;
+
+/**
+ * A {@link State} that can be described by a sparse vector of numeric features.
+ * <p>
+ * Implement this alongside {@code State} to use a {@link LinearQualityFunction}, which learns
+ * weights for features instead of values for whole states, so that what it learns about one state
+ * carries over to states that share its features. Only the features that are not zero need to be
+ * given. Since {@code State}s are immutable, the arrays can be built once and returned every time;
+ * callers will not modify them.
+ * </p>
+ */
+public interface FeatureState {
+  /**
+   * Get the indices of this state's non-zero features.
+   * 
+   * @return the index of each feature, each from zero to one less than the number of features.
+   */
+  int[] getFeatureIndices();
+
+  /**
+   * Get the values of this state's non-zero features.
+   * 
+   * @return the value of each feature, in the same order as {@link #getFeatureIndices()}.
+   */
+  double[] getFeatureValues();
+}
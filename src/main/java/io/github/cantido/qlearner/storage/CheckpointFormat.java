@@ -0,0 +1,47 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+/**
+ * Constants shared by {@link CheckpointWriter} and {@link CheckpointReader}.
+ * 
+ * <pre>
+ * checkpoint := header block* int(0)
+ * header     := int(magic) byte(version) double(default quality)
+ * block      := int(payload length) int(CRC-32 of payload) payload
+ * payload    := varint(new action count) action* varint(row count) row*
+ * action     := varint(length) bytes
+ * row        := varint(length) state bytes varint(entry count) entry*
+ * entry      := varint(action id) double(quality)
+ * </pre>
+ * 
+ * <p>
+ * Actions are numbered in the order they are first written, and each block defines the actions
+ * that first appear in it before any of its rows use them. Every row holds its own encoded
+ * state, so a reader only ever needs to keep the action dictionary and a single block in memory.
+ * </p>
+ */
+/* package-private */ final class CheckpointFormat {
+  static final int MAGIC = 0x514C4350;
+  static final byte VERSION = 1;
+  static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES + Double.BYTES;
+  static final int BLOCK_HEADER_SIZE = 2 * Integer.BYTES;
+  static final int BLOCK_SIZE = 64 * 1024;
+
+  private CheckpointFormat() {
+    throw new AssertionError("CheckpointFormat holds constants and should not be instantiated");
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import com.google.common.io.ByteStreams;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.algorithm.model.RowQualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Streams the {@link Quality} values of a checkpoint written by a {@link CheckpointWriter} back
+ * into a {@link QualityMap}.
+ * 
+ * <p>
+ * Only the {@link Action} dictionary and one block of rows are kept in memory at a time, so any
+ * size of checkpoint can be read. Every block is checked against its checksum before any of its
+ * rows are used.
+ * </p>
+ * 
+ * <pre>
+ * try (CheckpointReader reader = new CheckpointReader(
+ *     FileChannel.open(path, READ), stateCodec, actionCodec)) {
+ *   qualityMap.setDefaultQuality(reader.getDefaultQuality());
+ *   reader.readAll(qualityMap);
+ * }</pre>
+ */
+@NotThreadSafe
+public class CheckpointReader implements Closeable {
+  /**
+   * Receives each row read from a checkpoint.
+   */
+  @FunctionalInterface
+  public interface RowConsumer {
+    /**
+     * Accept one row of a checkpoint.
+     * 
+     * @param state the {@code State} that the values belong to.
+     * @param qualities the value of each stored {@code Action} of that {@code State}.
+     * @throws IOException if the row could not be handled.
+     */
+    void accept(State state, Map<Action, Quality> qualities) throws IOException;
+  }
+
+  /**
+   * One row of a checkpoint.
+   */
+  @Immutable
+  /* package-private */ static final class Row {
+    @Nonnull
+    final byte[] encodedState;
+    @Nonnull
+    final State state;
+    @Nonnull
+    final Map<Action, Quality> qualities;
+
+    Row(byte[] encodedState, State state, Map<Action, Quality> qualities) {
+      this.encodedState = encodedState;
+      this.state = state;
+      this.qualities = qualities;
+    }
+  }
+
+  @Nonnull
+  private final ReadableByteChannel channel;
+  @Nonnull
+  private final Codec<State> stateCodec;
+  @Nonnull
+  private final Codec<Action> actionCodec;
+  @Nonnull
+  private final Quality defaultQuality;
+
+  @Nonnull
+  private final List<Action> actions = new ArrayList<>();
+  @Nonnull
+  private final CRC32 checksum = new CRC32();
+  @Nonnull
+  private final ByteBuffer blockHeader = ByteBuffer.allocate(Integer.BYTES);
+  @Nonnull
+  private ByteBuffer block = ByteBuffer.allocate(CheckpointFormat.BLOCK_SIZE);
+  @Nonnegative
+  private int rowsLeftInBlock = 0;
+  private boolean finished = false;
+  @Nonnegative
+  private long rowsRead = 0;
+
+  /**
+   * Start reading a checkpoint by reading its header from the given channel.
+   * 
+   * @param channel where to read the checkpoint from. It will be closed along with this reader.
+   * @param stateCodec the codec to read {@code State}s with.
+   * @param actionCodec the codec to read {@code Action}s with.
+   * @throws IOException if the header could not be read, or is not a checkpoint header.
+   */
+  public CheckpointReader(ReadableByteChannel channel, Codec<State> stateCodec,
+      Codec<Action> actionCodec) throws IOException {
+    this.channel = channel;
+    this.stateCodec = stateCodec;
+    this.actionCodec = actionCodec;
+
+    ByteBuffer header = ByteBuffer.allocate(CheckpointFormat.HEADER_SIZE);
+    readFully(header);
+    if (header.getInt() != CheckpointFormat.MAGIC) {
+      throw new IOException("Not a checkpoint: the header is missing");
+    }
+    byte version = header.get();
+    if (version != CheckpointFormat.VERSION) {
+      throw new IOException("Unsupported checkpoint version: " + version);
+    }
+    this.defaultQuality = new Quality(header.getDouble());
+  }
+
+  /**
+   * Get the default quality of the map that this checkpoint was written from.
+   * 
+   * @return the default {@code Quality}.
+   */
+  public Quality getDefaultQuality() {
+    return defaultQuality;
+  }
+
+  /**
+   * Store every value of this checkpoint in the given map, one row at a time.
+   * 
+   * @param qualityMap where to store the values.
+   * @throws IOException if the checkpoint could not be read, or is corrupt.
+   */
+  public void readAll(QualityMap qualityMap) throws IOException {
+    if (qualityMap instanceof RowQualityMap) {
+      RowQualityMap rowMap = (RowQualityMap) qualityMap;
+      forEachRow(rowMap::putRow);
+      return;
+    }
+    forEachRow((state, qualities) -> {
+      for (Map.Entry<Action, Quality> entry : qualities.entrySet()) {
+        qualityMap.put(state, entry.getKey(), entry.getValue());
+      }
+    });
+  }
+
+  /**
+   * Pass every remaining row of this checkpoint to the given consumer, in the order they were
+   * written.
+   * 
+   * @param consumer what to do with each row.
+   * @throws IOException if the checkpoint could not be read, or is corrupt.
+   */
+  public void forEachRow(RowConsumer consumer) throws IOException {
+    for (Row row = nextRow(); row != null; row = nextRow()) {
+      consumer.accept(row.state, row.qualities);
+    }
+  }
+
+  /**
+   * Read the next row of this checkpoint, along with the bytes its {@code State} was written as.
+   * 
+   * @return the next row, or {@code null} if every row has been read.
+   * @throws IOException if the checkpoint could not be read, or is corrupt.
+   */
+  @Nullable
+  /* package-private */ Row nextRow() throws IOException {
+    while (rowsLeftInBlock == 0) {
+      if (finished || !readBlock()) {
+        finished = true;
+        return null;
+      }
+      int newActionCount = Varints.get(block);
+      for (int i = 0; i < newActionCount; i++) {
+        actions.add(actionCodec.read(ByteStreams.newDataInput(nextBytes())));
+      }
+      rowsLeftInBlock = Varints.get(block);
+    }
+
+    byte[] encodedState = nextBytes();
+    State state = stateCodec.read(ByteStreams.newDataInput(encodedState));
+    int entryCount = Varints.get(block);
+    Map<Action, Quality> qualities = new HashMap<>(entryCount * 2);
+    for (int j = 0; j < entryCount; j++) {
+      int actionId = Varints.get(block);
+      if (actionId >= actions.size()) {
+        throw new IOException("Checkpoint refers to an undefined action: " + actionId);
+      }
+      qualities.put(actions.get(actionId), new Quality(block.getDouble()));
+    }
+    rowsLeftInBlock--;
+    rowsRead++;
+    return new Row(encodedState, state, qualities);
+  }
+
+  /**
+   * Get the number of rows read so far.
+   * 
+   * @return how many rows this reader has read.
+   */
+  @Nonnegative
+  public long getRowsRead() {
+    return rowsRead;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Read and verify the next block.
+   * 
+   * @return {@code false} if the end of the checkpoint was reached instead.
+   */
+  private boolean readBlock() throws IOException {
+    blockHeader.clear();
+    readFully(blockHeader);
+    int payloadLength = blockHeader.getInt();
+    if (payloadLength == 0) {
+      return false;
+    }
+    if (payloadLength < 0) {
+      throw new IOException("Checkpoint has a block of negative length: " + payloadLength);
+    }
+    blockHeader.clear();
+    readFully(blockHeader);
+    int expectedChecksum = blockHeader.getInt();
+
+    if (block.capacity() < payloadLength) {
+      block = ByteBuffer.allocate(payloadLength);
+    }
+    block.clear().limit(payloadLength);
+    readFully(block);
+
+    checksum.reset();
+    checksum.update(block.array(), 0, payloadLength);
+    if ((int) checksum.getValue() != expectedChecksum) {
+      throw new IOException("Checkpoint block failed its checksum after row " + rowsRead);
+    }
+    return true;
+  }
+
+  private byte[] nextBytes() throws IOException {
+    byte[] bytes = new byte[Varints.get(block)];
+    block.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Fill the buffer up to its limit, then flip it for reading.
+   */
+  private void readFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException("Checkpoint ended unexpectedly after row " + rowsRead);
+      }
+    }
+    buffer.flip();
+  }
+}
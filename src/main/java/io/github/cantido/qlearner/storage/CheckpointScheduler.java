@@ -0,0 +1,536 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import com.google.common.primitives.UnsignedBytes;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Periodically persists the changes made to a {@link DirtyTrackingQualityMap} as incremental
+ * checkpoints, on a background thread.
+ * 
+ * <p>
+ * Each checkpoint only holds the {@link Quality} values written since the one before it, so its
+ * cost grows with how much the map has changed rather than with how big it is. The agent writing
+ * to the map is never blocked for longer than it takes to swap out the set of changes.
+ * </p>
+ * 
+ * <p>
+ * The newest checkpoints, up to the configured retention, are kept just as they were written, so
+ * the map can be restored as it was at any one of them. Older checkpoints are merged together in
+ * tiers, the way a log-structured merge tree does: a file is only merged into the one before it
+ * once it holds at least half as many bytes. Rows are written in order of their encoded
+ * {@link State}, so a merge streams through its files a block at a time and never holds a whole
+ * table in memory. Each value is rewritten a logarithmic number of times, which keeps the
+ * amortized cost of a checkpoint in proportion to the changes it holds, and the number of files
+ * that a restore has to read stays logarithmic in the size of the map.
+ * </p>
+ * 
+ * <p>
+ * Every file is written under a temporary name, synced to disk, and atomically renamed, so a
+ * crash never leaves a partial checkpoint behind. A shutdown hook writes a final checkpoint when
+ * the JVM exits, and so does {@link #close()}.
+ * </p>
+ * 
+ * <pre>
+ * QualityHashMap values = new QualityHashMap();
+ * CheckpointScheduler.restore(directory, values, stateCodec, actionCodec);
+ * DirtyTrackingQualityMap qualityMap = new DirtyTrackingQualityMap(values);
+ * CheckpointScheduler scheduler = new CheckpointScheduler(qualityMap, directory, stateCodec,
+ *     actionCodec, 30, TimeUnit.SECONDS, 10);
+ * </pre>
+ */
+@ThreadSafe
+public class CheckpointScheduler implements Closeable {
+  @SuppressWarnings("null")
+  @Nonnull
+  private static final Logger logger = LoggerFactory.getLogger(CheckpointScheduler.class);
+
+  private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+  private static final String CHECKPOINT_TEMPORARY = "checkpoint.tmp";
+  /**
+   * How many times bigger an older checkpoint has to be than the newer ones after it before they
+   * are left unmerged.
+   */
+  private static final int TIER_RATIO = 2;
+  @SuppressWarnings("null")
+  @Nonnull
+  private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+  @Nonnull
+  private final DirtyTrackingQualityMap qualityMap;
+  @Nonnull
+  private final Path directory;
+  @Nonnull
+  private final Codec<State> stateCodec;
+  @Nonnull
+  private final Codec<Action> actionCodec;
+  @Nonnegative
+  private final int retention;
+  @Nonnull
+  private final ScheduledExecutorService executor;
+  @Nonnull
+  private final Thread shutdownHook;
+  @Nullable
+  private final WriteAheadLog writeAheadLog;
+
+  @GuardedBy("this")
+  @Nonnegative
+  private long nextNumber;
+  /**
+   * The log segment that was started by the previous checkpoint.
+   */
+  @GuardedBy("this")
+  @Nonnegative
+  private long previousLogSegment = 0;
+  @GuardedBy("this")
+  private boolean closed = false;
+
+  /**
+   * Start checkpointing the given map into the given directory at a fixed interval.
+   * 
+   * <p>
+   * Numbering continues from any checkpoints already in the directory. Restore them into the
+   * wrapped map with {@link #restore(Path, QualityMap, Codec, Codec)} before wrapping it, or else
+   * they will be merged together with checkpoints of an unrelated map.
+   * </p>
+   * 
+   * @param qualityMap the map whose changes should be persisted.
+   * @param directory where to write checkpoint files. It will be created if it does not exist.
+   * @param stateCodec the codec to write {@code State}s with.
+   * @param actionCodec the codec to write {@code Action}s with.
+   * @param interval how long to wait between the end of one checkpoint and the start of the next.
+   * @param unit the unit of {@code interval}.
+   * @param retention how many of the newest checkpoints to keep unmerged, so that the map can be
+   *        restored as it was at any of them.
+   * @throws IOException if the directory could not be prepared.
+   */
+  public CheckpointScheduler(DirtyTrackingQualityMap qualityMap, Path directory,
+      Codec<State> stateCodec, Codec<Action> actionCodec, long interval, TimeUnit unit,
+      int retention) throws IOException {
+    this(qualityMap, directory, stateCodec, actionCodec, interval, unit, retention, null);
+  }
+
+  /**
+   * Start checkpointing the given map into the given directory at a fixed interval, and delete
+   * segments of the given write-ahead log once the updates in them have been checkpointed.
+   * 
+   * <p>
+   * Each checkpoint starts a new log segment before taking the map's changes. The segments from
+   * before the previous checkpoint are deleted once the new checkpoint has been written, so that
+   * an update which was logged but not yet stored when the changes were taken is never lost.
+   * </p>
+   * 
+   * @param qualityMap the map whose changes should be persisted.
+   * @param directory where to write checkpoint files. It will be created if it does not exist.
+   * @param stateCodec the codec to write {@code State}s with.
+   * @param actionCodec the codec to write {@code Action}s with.
+   * @param interval how long to wait between the end of one checkpoint and the start of the next.
+   * @param unit the unit of {@code interval}.
+   * @param retention how many of the newest checkpoints to keep unmerged, so that the map can be
+   *        restored as it was at any of them.
+   * @param writeAheadLog the log that updates to the map are written to, or {@code null} if there
+   *        is none.
+   * @throws IOException if the directory could not be prepared.
+   */
+  public CheckpointScheduler(DirtyTrackingQualityMap qualityMap, Path directory,
+      Codec<State> stateCodec, Codec<Action> actionCodec, long interval, TimeUnit unit,
+      int retention, @Nullable WriteAheadLog writeAheadLog) throws IOException {
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Interval must be positive, but got: " + interval);
+    }
+    if (retention < 1) {
+      throw new IllegalArgumentException("Retention must be at least 1, but got: " + retention);
+    }
+    this.qualityMap = qualityMap;
+    this.directory = directory;
+    this.stateCodec = stateCodec;
+    this.actionCodec = actionCodec;
+    this.retention = retention;
+    this.writeAheadLog = writeAheadLog;
+
+    Files.createDirectories(directory);
+    Files.deleteIfExists(directory.resolve(CHECKPOINT_TEMPORARY));
+    List<Path> checkpoints = listCheckpoints(directory);
+    this.nextNumber =
+        checkpoints.isEmpty() ? 0 : checkpointNumber(checkpoints.get(checkpoints.size() - 1)) + 1;
+
+    this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "qlearner-checkpoint");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.executor.scheduleWithFixedDelay(this::checkpointQuietly, interval, interval, unit);
+
+    this.shutdownHook = new Thread(this::checkpointQuietly, "qlearner-checkpoint-shutdown");
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  /**
+   * Read every checkpoint in the given directory into the given map, oldest first.
+   * 
+   * @param directory where the checkpoints were written.
+   * @param target where to store the restored values.
+   * @param stateCodec the codec to read {@code State}s with.
+   * @param actionCodec the codec to read {@code Action}s with.
+   * @return how many rows were read, which is zero if the directory does not exist.
+   * @throws IOException if a checkpoint could not be read, or is corrupt.
+   */
+  public static long restore(Path directory, QualityMap target, Codec<State> stateCodec,
+      Codec<Action> actionCodec) throws IOException {
+    return restore(directory, target, stateCodec, actionCodec, Long.MAX_VALUE);
+  }
+
+  /**
+   * Read the checkpoints in the given directory into the given map, oldest first, up to and
+   * including the given one. This restores the map as it was when that checkpoint was written, as
+   * long as it is still one of the retained checkpoints.
+   * 
+   * @param directory where the checkpoints were written.
+   * @param target where to store the restored values.
+   * @param stateCodec the codec to read {@code State}s with.
+   * @param actionCodec the codec to read {@code Action}s with.
+   * @param checkpoint the newest checkpoint to read, as returned by {@link #checkpoint()}.
+   * @return how many rows were read, which is zero if the directory does not exist.
+   * @throws IOException if a checkpoint could not be read, or is corrupt.
+   */
+  public static long restore(Path directory, QualityMap target, Codec<State> stateCodec,
+      Codec<Action> actionCodec, Path checkpoint) throws IOException {
+    return restore(directory, target, stateCodec, actionCodec, checkpointNumber(checkpoint));
+  }
+
+  private static long restore(Path directory, QualityMap target, Codec<State> stateCodec,
+      Codec<Action> actionCodec, long lastNumber) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return 0;
+    }
+    long rowsRead = 0;
+    for (Path path : listCheckpoints(directory)) {
+      if (checkpointNumber(path) > lastNumber) {
+        break;
+      }
+      try (CheckpointReader reader =
+          new CheckpointReader(FileChannel.open(path, StandardOpenOption.READ), stateCodec,
+              actionCodec)) {
+        reader.readAll(target);
+        rowsRead += reader.getRowsRead();
+      }
+    }
+    return rowsRead;
+  }
+
+  /**
+   * Write a checkpoint of every change made since the last one, right away. If the checkpoint
+   * cannot be written, its changes are kept to be written by the next one.
+   * 
+   * @return the new checkpoint file, or {@code null} if nothing has changed.
+   * @throws IOException if the checkpoint could not be written.
+   */
+  @Nullable
+  public synchronized Path checkpoint() throws IOException {
+    long logSegment = writeAheadLog == null ? 0 : writeAheadLog.roll();
+    Map<State, Map<Action, Quality>> changes = qualityMap.takeChanges();
+    if (changes.isEmpty()) {
+      return null;
+    }
+
+    Path path;
+    try {
+      path = write(nextNumber, qualityMap.getDefaultQuality(), changes);
+    } catch (IOException | RuntimeException e) {
+      qualityMap.restoreChanges(changes);
+      throw e;
+    }
+    nextNumber++;
+    logger.debug("Wrote checkpoint of {} states to {}", changes.size(), path);
+
+    if (writeAheadLog != null) {
+      writeAheadLog.deleteSegmentsBefore(previousLogSegment);
+      previousLogSegment = logSegment;
+    }
+
+    mergeOlderCheckpoints();
+    return path;
+  }
+
+  /**
+   * Stop the periodic checkpoints and write a final one.
+   * 
+   * @throws IOException if the final checkpoint could not be written.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    executor.shutdown();
+    try {
+      Runtime.getRuntime().removeShutdownHook(shutdownHook);
+    } catch (IllegalStateException e) {
+      // The JVM is already shutting down, and the hook will write the final checkpoint.
+      return;
+    }
+    checkpoint();
+  }
+
+  private void checkpointQuietly() {
+    try {
+      checkpoint();
+    } catch (IOException | RuntimeException e) {
+      logger.error("Could not write a checkpoint to {}", directory, e);
+    }
+  }
+
+  /**
+   * Merge the newest checkpoints older than the retained ones, for as long as they hold at least
+   * half as many bytes as the checkpoint before them.
+   */
+  @GuardedBy("this")
+  private void mergeOlderCheckpoints() throws IOException {
+    List<Path> checkpoints = listCheckpoints(directory);
+    List<Path> older = checkpoints.subList(0, Math.max(0, checkpoints.size() - retention));
+    if (older.size() < 2) {
+      return;
+    }
+
+    int first = older.size() - 1;
+    long mergedBytes = Files.size(older.get(first));
+    while (first > 0 && TIER_RATIO * mergedBytes >= Files.size(older.get(first - 1))) {
+      first--;
+      mergedBytes += Files.size(older.get(first));
+    }
+    if (first < older.size() - 1) {
+      merge(new ArrayList<>(older.subList(first, older.size())));
+    }
+  }
+
+  /**
+   * Replace the given checkpoints with a single one holding the latest value of every pair, under
+   * the number of the newest. Their rows are merged in order of their encoded {@code State}s, a
+   * block at a time. If this is interrupted, the old files are still there to be read before the
+   * new one, which gives the same result.
+   */
+  @GuardedBy("this")
+  private void merge(List<Path> checkpoints) throws IOException {
+    Path newest = checkpoints.get(checkpoints.size() - 1);
+    Path temporary = directory.resolve(CHECKPOINT_TEMPORARY);
+    List<CheckpointReader> readers = new ArrayList<>(checkpoints.size());
+    long rowsWritten;
+    try {
+      for (Path path : checkpoints) {
+        readers.add(new CheckpointReader(FileChannel.open(path, StandardOpenOption.READ),
+            stateCodec, actionCodec));
+      }
+      Quality defaultQuality = readers.get(readers.size() - 1).getDefaultQuality();
+      try (CheckpointWriter writer = new CheckpointWriter(FileChannel.open(temporary,
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING), stateCodec, actionCodec, defaultQuality)) {
+        mergeRows(checkpoints, readers, writer);
+        rowsWritten = writer.getRowsWritten();
+      }
+    } finally {
+      for (CheckpointReader reader : readers) {
+        reader.close();
+      }
+    }
+    replace(temporary, newest);
+
+    for (Path path : checkpoints.subList(0, checkpoints.size() - 1)) {
+      Files.delete(path);
+    }
+    logger.debug("Merged {} checkpoints into {} states in {}", checkpoints.size(), rowsWritten,
+        newest);
+  }
+
+  /**
+   * Write the rows of every reader in order of their encoded {@code State}s. When more than one
+   * holds the same {@code State}, their values are combined, and the later reader wins.
+   */
+  private static void mergeRows(List<Path> checkpoints, List<CheckpointReader> readers,
+      CheckpointWriter writer) throws IOException {
+    PriorityQueue<Cursor> cursors = new PriorityQueue<>(readers.size());
+    for (int i = 0; i < readers.size(); i++) {
+      Cursor cursor = new Cursor(checkpoints.get(i), i, readers.get(i));
+      if (cursor.advance()) {
+        cursors.add(cursor);
+      }
+    }
+
+    while (!cursors.isEmpty()) {
+      Cursor cursor = cursors.poll();
+      byte[] encodedState = cursor.row.encodedState;
+      Map<Action, Quality> qualities = cursor.row.qualities;
+      Cursor same = cursors.peek();
+      if (same != null && COMPARATOR.compare(same.row.encodedState, encodedState) == 0) {
+        qualities = new HashMap<>(qualities);
+      }
+      while (true) {
+        if (cursor.advance()) {
+          cursors.add(cursor);
+        }
+        Cursor next = cursors.peek();
+        if (next == null || COMPARATOR.compare(next.row.encodedState, encodedState) != 0) {
+          break;
+        }
+        cursor = cursors.poll();
+        qualities.putAll(cursor.row.qualities);
+      }
+      writer.writeEncodedRow(encodedState, qualities);
+    }
+  }
+
+  private Path write(long number, Quality defaultQuality, Map<State, Map<Action, Quality>> rows)
+      throws IOException {
+    Path temporary = directory.resolve(CHECKPOINT_TEMPORARY);
+    try (CheckpointWriter writer = new CheckpointWriter(FileChannel.open(temporary,
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING), stateCodec, actionCodec, defaultQuality)) {
+      SortedMap<byte[], Map<Action, Quality>> sorted = new TreeMap<>(COMPARATOR);
+      for (Map.Entry<State, Map<Action, Quality>> row : rows.entrySet()) {
+        sorted.put(writer.encode(row.getKey()), row.getValue());
+      }
+      for (Map.Entry<byte[], Map<Action, Quality>> row : sorted.entrySet()) {
+        writer.writeEncodedRow(row.getKey(), row.getValue());
+      }
+    }
+
+    Path path = checkpointPath(number);
+    replace(temporary, path);
+    return path;
+  }
+
+  /**
+   * Sync the given temporary file to disk, then atomically move it into place.
+   */
+  private static void replace(Path temporary, Path path) throws IOException {
+    try (FileChannel sync = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+      sync.force(true);
+    }
+    Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @SuppressWarnings("null")
+  private Path checkpointPath(long number) {
+    return directory.resolve(String.format("%020d%s", number, CHECKPOINT_SUFFIX));
+  }
+
+  private static long checkpointNumber(Path path) {
+    String name = path.getFileName().toString();
+    return Long.parseLong(name.substring(0, name.length() - CHECKPOINT_SUFFIX.length()));
+  }
+
+  /**
+   * List the checkpoint files in the given directory, oldest first.
+   */
+  private static List<Path> listCheckpoints(Path directory) throws IOException {
+    List<Path> checkpoints = new ArrayList<>();
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(directory, "*" + CHECKPOINT_SUFFIX)) {
+      for (Path file : files) {
+        checkpoints.add(file);
+      }
+    } catch (NoSuchFileException e) {
+      return Collections.emptyList();
+    }
+    Collections.sort(checkpoints);
+    return checkpoints;
+  }
+
+  /**
+   * The next unmerged row of one checkpoint. Cursors are ordered by the encoded {@code State} of
+   * their rows, then from the oldest checkpoint to the newest.
+   */
+  @NotThreadSafe
+  private static final class Cursor implements Comparable<Cursor> {
+    @Nonnull
+    private final Path path;
+    @Nonnegative
+    private final int age;
+    @Nonnull
+    private final CheckpointReader reader;
+    @Nullable
+    private CheckpointReader.Row row;
+
+    Cursor(Path path, @Nonnegative int age, CheckpointReader reader) {
+      this.path = path;
+      this.age = age;
+      this.reader = reader;
+    }
+
+    /**
+     * Move on to the next row.
+     * 
+     * @return {@code false} if there are no rows left.
+     * @throws IOException if the row could not be read, or is out of order.
+     */
+    boolean advance() throws IOException {
+      CheckpointReader.Row previous = row;
+      row = reader.nextRow();
+      if (row == null) {
+        return false;
+      }
+      if (previous != null && COMPARATOR.compare(previous.encodedState, row.encodedState) >= 0) {
+        throw new IOException("Checkpoint rows are out of order, so it cannot be merged: " + path);
+      }
+      return true;
+    }
+
+    @Override
+    public int compareTo(Cursor other) {
+      int comparison = COMPARATOR.compare(row.encodedState, other.row.encodedState);
+      return comparison != 0 ? comparison : Integer.compare(age, other.age);
+    }
+  }
+}
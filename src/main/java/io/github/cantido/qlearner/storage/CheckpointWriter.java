@@ -0,0 +1,306 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.algorithm.model.RowQualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Streams the {@link Quality} values of a {@link QualityMap} to a channel in a compact binary
+ * checkpoint format, which can be read back with a {@link CheckpointReader}.
+ * 
+ * <p>
+ * Values are written one {@link State} row at a time and buffered into blocks of about 64 KiB, so
+ * memory use does not depend on the size of the map. Each {@link Action} is written out once and
+ * referred to by number afterwards, which keeps rows small when many {@code State}s share the
+ * same {@code Action}s.
+ * </p>
+ * 
+ * <pre>
+ * try (CheckpointWriter writer = new CheckpointWriter(
+ *     FileChannel.open(path, CREATE, WRITE, TRUNCATE_EXISTING), stateCodec, actionCodec,
+ *     qualityMap.getDefaultQuality())) {
+ *   writer.writeAll(qualityMap, qualityMap.getStates());
+ * }</pre>
+ */
+@NotThreadSafe
+public class CheckpointWriter implements Closeable {
+  @Nonnull
+  private final WritableByteChannel channel;
+  @Nonnull
+  private final Codec<State> stateCodec;
+  @Nonnull
+  private final Codec<Action> actionCodec;
+
+  @Nonnull
+  private final Map<Action, Integer> actionIds = new HashMap<>();
+  @Nonnull
+  private final CRC32 checksum = new CRC32();
+
+  @Nonnull
+  private ByteArrayDataOutput newActions = ByteStreams.newDataOutput();
+  @Nonnegative
+  private int newActionCount = 0;
+  @Nonnull
+  private ByteArrayDataOutput rows = ByteStreams.newDataOutput(CheckpointFormat.BLOCK_SIZE);
+  @Nonnegative
+  private int rowCount = 0;
+  @Nonnegative
+  private int blockBytes = 0;
+  @Nonnegative
+  private long rowsWritten = 0;
+  private boolean closed = false;
+
+  /**
+   * Start a new checkpoint by writing its header to the given channel.
+   * 
+   * @param channel where to write the checkpoint. It will be closed along with this writer.
+   * @param stateCodec the codec to write {@code State}s with.
+   * @param actionCodec the codec to write {@code Action}s with.
+   * @param defaultQuality the default quality of the map being written, to be restored along
+   *        with the values.
+   * @throws IOException if the header could not be written.
+   */
+  public CheckpointWriter(WritableByteChannel channel, Codec<State> stateCodec,
+      Codec<Action> actionCodec, Quality defaultQuality) throws IOException {
+    this.channel = channel;
+    this.stateCodec = stateCodec;
+    this.actionCodec = actionCodec;
+
+    ByteBuffer header = ByteBuffer.allocate(CheckpointFormat.HEADER_SIZE);
+    header.putInt(CheckpointFormat.MAGIC);
+    header.put(CheckpointFormat.VERSION);
+    header.putDouble(defaultQuality.doubleValue());
+    header.flip();
+    writeFully(header);
+  }
+
+  /**
+   * Write the row of every given {@code State}.
+   * 
+   * @param qualityMap the map to read values from.
+   * @param states the {@code State}s whose rows should be written. They are read one at a time,
+   *        so they can be produced lazily.
+   * @throws IOException if the rows could not be written.
+   * @see #writeRow(QualityMap, State)
+   */
+  public void writeAll(QualityMap qualityMap, Iterable<? extends State> states)
+      throws IOException {
+    for (State state : states) {
+      writeRow(qualityMap, state);
+    }
+  }
+
+  /**
+   * Write the row of a single {@code State}.
+   * 
+   * <p>
+   * If the map is a {@link RowQualityMap}, its stored values are written. Otherwise, the value of
+   * every {@code Action} of the {@code State} is written, except for those equal to the map's
+   * default quality.
+   * </p>
+   * 
+   * @param qualityMap the map to read values from.
+   * @param state the {@code State} whose row should be written.
+   * @throws IOException if the row could not be written.
+   */
+  public void writeRow(QualityMap qualityMap, State state) throws IOException {
+    if (qualityMap instanceof RowQualityMap) {
+      writeRow(state, ((RowQualityMap) qualityMap).getRow(state));
+      return;
+    }
+
+    Map<Action, Quality> row = new HashMap<>();
+    Quality defaultQuality = qualityMap.getDefaultQuality();
+    for (Action action : state.getActions()) {
+      Quality quality = qualityMap.get(state, action);
+      if (!quality.equals(defaultQuality)) {
+        row.put(action, quality);
+      }
+    }
+    writeRow(state, row);
+  }
+
+  /**
+   * Write the given values of a single {@code State}. Empty rows are skipped.
+   * 
+   * @param state the {@code State} the values belong to.
+   * @param qualities the value of each {@code Action} taken from that {@code State}.
+   * @throws IOException if the row could not be written.
+   */
+  public void writeRow(State state, Map<Action, Quality> qualities) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Cannot write rows after the writer was closed");
+    }
+    if (qualities.isEmpty()) {
+      return;
+    }
+    writeEncodedRow(encode(state), qualities);
+  }
+
+  /**
+   * Write the given values of a single {@code State} that has already been encoded with this
+   * writer's state codec. Empty rows are skipped.
+   * 
+   * @param encodedState the bytes of the {@code State} the values belong to.
+   * @param qualities the value of each {@code Action} taken from that {@code State}.
+   * @throws IOException if the row could not be written.
+   */
+  /* package-private */ void writeEncodedRow(byte[] encodedState, Map<Action, Quality> qualities)
+      throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Cannot write rows after the writer was closed");
+    }
+    if (qualities.isEmpty()) {
+      return;
+    }
+
+    int rowStart = blockBytes;
+    Varints.write(rows, encodedState.length);
+    rows.write(encodedState);
+    Varints.write(rows, qualities.size());
+    for (Map.Entry<Action, Quality> entry : qualities.entrySet()) {
+      Varints.write(rows, actionId(entry.getKey()));
+      rows.writeDouble(entry.getValue().doubleValue());
+    }
+    rowCount++;
+    rowsWritten++;
+    blockBytes = rowStart + Varints.size(encodedState.length) + encodedState.length
+        + Varints.size(qualities.size()) + qualities.size() * Double.BYTES;
+
+    if (blockBytes >= CheckpointFormat.BLOCK_SIZE) {
+      flushBlock();
+    }
+  }
+
+  /**
+   * Get the number of non-empty rows written so far.
+   * 
+   * @return how many rows this writer has written.
+   */
+  @Nonnegative
+  public long getRowsWritten() {
+    return rowsWritten;
+  }
+
+  /**
+   * Write any buffered rows and the end of the checkpoint, then close the channel.
+   * 
+   * @throws IOException if the checkpoint could not be finished.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      flushBlock();
+      ByteBuffer end = ByteBuffer.allocate(Integer.BYTES);
+      end.putInt(0);
+      end.flip();
+      writeFully(end);
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Encode the given {@code State} the same way that rows of this checkpoint are written.
+   * 
+   * @param state the {@code State} to encode.
+   * @return the bytes of the {@code State}.
+   * @throws IOException if the {@code State} could not be encoded.
+   */
+  /* package-private */ byte[] encode(State state) throws IOException {
+    ByteArrayDataOutput stateBytes = ByteStreams.newDataOutput();
+    stateCodec.write(state, stateBytes);
+    return stateBytes.toByteArray();
+  }
+
+  private int actionId(Action action) throws IOException {
+    Integer id = actionIds.get(action);
+    if (id != null) {
+      return id;
+    }
+    int newId = actionIds.size();
+    actionIds.put(action, newId);
+
+    ByteArrayDataOutput actionBytes = ByteStreams.newDataOutput();
+    actionCodec.write(action, actionBytes);
+    byte[] encodedAction = actionBytes.toByteArray();
+    Varints.write(newActions, encodedAction.length);
+    newActions.write(encodedAction);
+    newActionCount++;
+    return newId;
+  }
+
+  @SuppressWarnings("null")
+  private void flushBlock() throws IOException {
+    if (rowCount == 0 && newActionCount == 0) {
+      return;
+    }
+    byte[] actionSection = newActions.toByteArray();
+    byte[] rowSection = rows.toByteArray();
+    int payloadLength = Varints.size(newActionCount) + actionSection.length
+        + Varints.size(rowCount) + rowSection.length;
+
+    ByteBuffer block =
+        ByteBuffer.allocate(CheckpointFormat.BLOCK_HEADER_SIZE + payloadLength);
+    block.position(CheckpointFormat.BLOCK_HEADER_SIZE);
+    Varints.put(block, newActionCount);
+    block.put(actionSection);
+    Varints.put(block, rowCount);
+    block.put(rowSection);
+
+    checksum.reset();
+    checksum.update(block.array(), CheckpointFormat.BLOCK_HEADER_SIZE, payloadLength);
+    block.putInt(0, payloadLength);
+    block.putInt(Integer.BYTES, (int) checksum.getValue());
+    block.rewind();
+    writeFully(block);
+
+    newActions = ByteStreams.newDataOutput();
+    newActionCount = 0;
+    rows = ByteStreams.newDataOutput(CheckpointFormat.BLOCK_SIZE);
+    rowCount = 0;
+    blockBytes = 0;
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
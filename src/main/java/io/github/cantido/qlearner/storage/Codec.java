@@ -0,0 +1,58 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts objects to and from bytes, so that they can be stored outside of the heap.
+ * 
+ * <p>
+ * {@link io.github.cantido.qlearner.client.State State} and
+ * {@link io.github.cantido.qlearner.client.Action Action} objects are supplied by clients, so
+ * this library has no way of knowing how to store them. Clients that want to persist their
+ * {@link io.github.cantido.qlearner.algorithm.model.Quality Quality} values must provide a
+ * {@code Codec} for each.
+ * </p>
+ * 
+ * <p>
+ * Reading back what was written must produce an object that is {@link Object#equals(Object)
+ * equal} to the original, and equal objects must always be written as the same bytes.
+ * </p>
+ *
+ * @param <T> the type of object this codec can read and write.
+ */
+public interface Codec<T> {
+  /**
+   * Write the given object.
+   * 
+   * @param value the object to write.
+   * @param output where to write the object's bytes.
+   * @throws IOException if the output cannot be written to.
+   */
+  void write(T value, DataOutput output) throws IOException;
+
+  /**
+   * Read an object that was written by {@link #write(Object, DataOutput)}.
+   * 
+   * @param input where to read the object's bytes from.
+   * @return the object that was read.
+   * @throws IOException if the input cannot be read, or does not contain a valid object.
+   */
+  T read(DataInput input) throws IOException;
+}
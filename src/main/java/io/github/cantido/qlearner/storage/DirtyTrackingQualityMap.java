@@ -0,0 +1,144 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.algorithm.quality.StateActionQuality;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A {@link QualityMap} that remembers every value written to it since the last time its changes
+ * were taken, so that a {@link CheckpointScheduler} only has to persist what has changed.
+ * 
+ * <p>
+ * Each write is recorded as the latest value of its {@link State}-{@link Action} pair, so the
+ * memory used and the work done by the next checkpoint grow with the number of distinct pairs
+ * written, not with the size of the wrapped map. Taking the changes is a constant-time swap, and
+ * never needs to read the wrapped map, so it is safe to do from another thread while an agent is
+ * writing.
+ * </p>
+ * 
+ * <p>
+ * This class is only as thread-safe as the wrapped map. Concurrent writers need a thread-safe map
+ * underneath, but a single writer can safely share this map with a checkpointing thread.
+ * </p>
+ */
+public class DirtyTrackingQualityMap implements QualityMap {
+  @Nonnull
+  private final QualityMap delegate;
+
+  /**
+   * Writes hold the read lock so that they can proceed concurrently with each other. Taking the
+   * changes holds the write lock, so that no write can land in a map that has already been taken.
+   */
+  @Nonnull
+  private final ReadWriteLock changesLock = new ReentrantReadWriteLock();
+  @GuardedBy("changesLock")
+  @Nonnull
+  private Map<State, Map<Action, Quality>> changes = new ConcurrentHashMap<>();
+
+  /**
+   * Start tracking writes to the given map. Values that it already holds are considered clean.
+   * 
+   * @param delegate the map to read from and write to.
+   */
+  public DirtyTrackingQualityMap(QualityMap delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    Lock lock = changesLock.readLock();
+    lock.lock();
+    try {
+      delegate.put(state, action, quality);
+      changes.computeIfAbsent(state, s -> new ConcurrentHashMap<>()).put(action, quality);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    return delegate.get(state, action);
+  }
+
+  @Override
+  public Quality getBestQuality(State state) {
+    return delegate.getBestQuality(state);
+  }
+
+  @Override
+  public Quality getDefaultQuality() {
+    return delegate.getDefaultQuality();
+  }
+
+  @Override
+  public StateActionQuality getTriplet(State state, Action action) {
+    return delegate.getTriplet(state, action);
+  }
+
+  /**
+   * Take every change made since the last call, and start tracking from scratch.
+   * 
+   * @return the latest value written for each changed {@code State}-{@code Action} pair, grouped
+   *         by {@code State}.
+   */
+  /* package-private */ Map<State, Map<Action, Quality>> takeChanges() {
+    Lock lock = changesLock.writeLock();
+    lock.lock();
+    try {
+      Map<State, Map<Action, Quality>> taken = changes;
+      changes = new ConcurrentHashMap<>();
+      return taken;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Put back changes that were taken but could not be persisted. Changes made since they were
+   * taken are newer, and are kept instead.
+   * 
+   * @param taken the changes returned from an earlier call to {@link #takeChanges()}.
+   */
+  /* package-private */ void restoreChanges(Map<State, Map<Action, Quality>> taken) {
+    Lock lock = changesLock.readLock();
+    lock.lock();
+    try {
+      for (Map.Entry<State, Map<Action, Quality>> row : taken.entrySet()) {
+        Map<Action, Quality> current =
+            changes.computeIfAbsent(row.getKey(), s -> new ConcurrentHashMap<>());
+        for (Map.Entry<Action, Quality> entry : row.getValue().entrySet()) {
+          current.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+/**
+ * How often a {@link WriteAheadLog} makes its records durable, trading update latency against how
+ * many updates can be lost in a crash.
+ */
+public enum FsyncPolicy {
+  /**
+   * Records are committed in the background at the log's commit interval, but never explicitly
+   * synced to disk. They survive the process crashing, but not the operating system.
+   */
+  NEVER,
+
+  /**
+   * Records are committed and synced to disk in the background at the log's commit interval, so
+   * that many updates share the cost of one sync. At most one interval's worth of updates can be
+   * lost.
+   */
+  BATCHED,
+
+  /**
+   * Every record is committed and synced to disk before {@link WriteAheadLog#append} returns. No
+   * updates can be lost, but each one costs a disk sync.
+   */
+  EVERY_UPDATE
+}
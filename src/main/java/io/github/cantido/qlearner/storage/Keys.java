@@ -0,0 +1,102 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * Builds and compares the byte keys of stored {@code State}-{@code Action} pairs.
+ * 
+ * <p>
+ * A key is the length of the encoded {@code State}, followed by the encoded {@code State},
+ * followed by the encoded {@code Action}. The length keeps keys unambiguous no matter what bytes
+ * the codecs produce, and putting the {@code State} first keeps all of a {@code State}'s keys
+ * next to each other when keys are sorted, so that a row can be read with one prefix scan.
+ * </p>
+ */
+/* package-private */ final class Keys {
+  private Keys() {
+    throw new AssertionError("Keys is a utility class and should not be instantiated");
+  }
+
+  /**
+   * Build the prefix shared by every key of the given encoded {@code State}.
+   */
+  static byte[] statePrefix(byte[] state) {
+    byte[] prefix = new byte[Varints.size(state.length) + state.length];
+    int offset = Varints.put(prefix, 0, state.length);
+    System.arraycopy(state, 0, prefix, offset, state.length);
+    return prefix;
+  }
+
+  /**
+   * Build the key of an encoded {@code Action} taken from the {@code State} with the given prefix.
+   */
+  static byte[] key(byte[] statePrefix, byte[] action) {
+    byte[] key = new byte[statePrefix.length + action.length];
+    System.arraycopy(statePrefix, 0, key, 0, statePrefix.length);
+    System.arraycopy(action, 0, key, statePrefix.length, action.length);
+    return key;
+  }
+
+  /**
+   * Get the length of the {@code State} prefix of the given key.
+   */
+  @Nonnegative
+  static int statePrefixLength(byte[] key) {
+    ByteBuffer buffer = ByteBuffer.wrap(key);
+    int stateLength;
+    try {
+      stateLength = Varints.get(buffer);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Key does not start with a valid state length", e);
+    }
+    return buffer.position() + stateLength;
+  }
+
+  /**
+   * Check if the key stored in {@code bytes} at the given offset starts with {@code prefix}.
+   */
+  static boolean hasPrefix(byte[] bytes, int offset, int length, byte[] prefix) {
+    if (length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (bytes[offset + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compare two keys as unsigned bytes, in lexicographic order.
+   */
+  static int compare(byte[] left, int leftOffset, int leftLength, byte[] right, int rightOffset,
+      int rightLength) {
+    int length = Math.min(leftLength, rightLength);
+    for (int i = 0; i < length; i++) {
+      int comparison = (left[leftOffset + i] & 0xFF) - (right[rightOffset + i] & 0xFF);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return leftLength - rightLength;
+  }
+}
@@ -0,0 +1,763 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.UnsignedBytes;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.RowQualityMap;
+import io.github.cantido.qlearner.algorithm.quality.StateActionQuality;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link RowQualityMap} that stores its {@link Quality} values in log-structured files on the
+ * local filesystem, so that it can hold far more values than fit in memory.
+ * 
+ * <p>
+ * Writes go into an in-memory sorted table. Once that table gets big enough, it is written out
+ * as an immutable, sorted segment file on a background thread, and a fresh table takes its place.
+ * Reads check the in-memory tables first, then the segments from newest to oldest. Each segment
+ * keeps a sparse index and a bloom filter in memory, so that a read costs at most one block read
+ * per segment that might contain the value, and usually none for segments that do not.
+ * </p>
+ * 
+ * <p>
+ * As segments accumulate, a second background thread merges runs of neighbouring segments into
+ * one, keeping only the newest value of each {@code State}-{@link Action} pair. The list of live
+ * segments is kept in a manifest file that is replaced atomically, so the directory can always be
+ * reopened in a consistent state.
+ * </p>
+ * 
+ * <p>
+ * Values that are still in memory are written out by {@link #flush()} and {@link #close()}. If
+ * the process dies before then, they are lost.
+ * </p>
+ */
+@ThreadSafe
+public class LogStructuredQualityMap implements RowQualityMap, Closeable {
+  @SuppressWarnings("null")
+  @Nonnull
+  private static final Logger logger = LoggerFactory.getLogger(LogStructuredQualityMap.class);
+
+  private static final long DEFAULT_MEMTABLE_BYTES = 32L * 1024 * 1024;
+  private static final int DEFAULT_COMPACTION_FAN_IN = 4;
+  private static final int MAXIMUM_FLUSHING_MEMTABLES = 2;
+  /**
+   * Writes stall once there are this many times the compaction fan-in segments, so that reads
+   * stay fast even when writes outpace compaction.
+   */
+  private static final int STALL_SEGMENTS_PER_FAN_IN = 4;
+  /**
+   * A rough guess at the memory used by each in-memory entry, on top of its key.
+   */
+  private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+  private static final String MANIFEST = "MANIFEST";
+  private static final String MANIFEST_TEMPORARY = "MANIFEST.tmp";
+  private static final String SEGMENT_SUFFIX = ".segment";
+  private static final int MANIFEST_MAGIC = 0x514C4D46;
+
+  @SuppressWarnings("null")
+  @Nonnull
+  private static final Comparator<byte[]> KEY_ORDER = UnsignedBytes.lexicographicalComparator();
+
+  /**
+   * An immutable snapshot of everything a read needs to look at, newest first.
+   */
+  @Immutable
+  private static final class Version {
+    @Nonnull
+    private final ConcurrentNavigableMap<byte[], Double> memtable;
+    @Nonnull
+    private final List<ConcurrentNavigableMap<byte[], Double>> flushing;
+    @Nonnull
+    private final List<Segment> segments;
+
+    private Version(ConcurrentNavigableMap<byte[], Double> memtable,
+        List<ConcurrentNavigableMap<byte[], Double>> flushing, List<Segment> segments) {
+      this.memtable = memtable;
+      this.flushing = flushing;
+      this.segments = segments;
+    }
+  }
+
+  @Nonnull
+  private final Path directory;
+  @Nonnull
+  private final Codec<State> stateCodec;
+  @Nonnull
+  private final Codec<Action> actionCodec;
+  @Nonnegative
+  private final long memtableBytes;
+  @Nonnegative
+  private final int compactionFanIn;
+  @Nonnull
+  private final ExecutorService flushExecutor;
+  @Nonnull
+  private final ExecutorService compactionExecutor;
+
+  @Nonnull
+  private final Object versionLock = new Object();
+  @Nonnull
+  private volatile Version version;
+  @GuardedBy("versionLock")
+  private long memtableSize = 0;
+  @GuardedBy("versionLock")
+  private long nextFileNumber;
+  @GuardedBy("versionLock")
+  private boolean compacting = false;
+  @GuardedBy("versionLock")
+  private boolean closed = false;
+
+  @Nullable
+  private volatile IOException backgroundFailure;
+  @SuppressWarnings("null")
+  @Nonnull
+  private volatile Quality defaultQuality = Quality.ZERO;
+
+  /**
+   * Open the store in the given directory, creating it if it does not exist, with a default
+   * in-memory table size (32 MiB) and compaction fan-in (4 segments).
+   * 
+   * @param directory the directory to keep this store's files in.
+   * @param stateCodec the codec to read and write {@code State}s with.
+   * @param actionCodec the codec to read and write {@code Action}s with.
+   * @throws IOException if the directory cannot be created or its files cannot be read.
+   */
+  public LogStructuredQualityMap(Path directory, Codec<State> stateCodec,
+      Codec<Action> actionCodec) throws IOException {
+    this(directory, stateCodec, actionCodec, DEFAULT_MEMTABLE_BYTES, DEFAULT_COMPACTION_FAN_IN);
+  }
+
+  /**
+   * Open the store in the given directory, creating it if it does not exist.
+   * 
+   * @param directory the directory to keep this store's files in.
+   * @param stateCodec the codec to read and write {@code State}s with.
+   * @param actionCodec the codec to read and write {@code Action}s with.
+   * @param memtableBytes roughly how much memory to fill with new values before writing them out
+   *        as a segment.
+   * @param compactionFanIn how many segments are merged together at once. Compaction starts once
+   *        there are more segments than this.
+   * @throws IOException if the directory cannot be created or its files cannot be read.
+   */
+  public LogStructuredQualityMap(Path directory, Codec<State> stateCodec,
+      Codec<Action> actionCodec, @Nonnegative long memtableBytes, @Nonnegative int compactionFanIn)
+      throws IOException {
+    if (memtableBytes < 1) {
+      throw new IllegalArgumentException(
+          "In-memory table size must be positive, but got: " + memtableBytes);
+    }
+    if (compactionFanIn < 2) {
+      throw new IllegalArgumentException(
+          "Compaction must merge at least two segments, but got: " + compactionFanIn);
+    }
+    this.directory = directory;
+    this.stateCodec = stateCodec;
+    this.actionCodec = actionCodec;
+    this.memtableBytes = memtableBytes;
+    this.compactionFanIn = compactionFanIn;
+    this.flushExecutor = newBackgroundExecutor("qlearner-lsm-flush");
+    this.compactionExecutor = newBackgroundExecutor("qlearner-lsm-compaction");
+
+    Files.createDirectories(directory);
+    this.version = new Version(new ConcurrentSkipListMap<>(KEY_ORDER), Collections.emptyList(),
+        openSegments());
+    synchronized (versionLock) {
+      scheduleCompactionIfNeeded();
+    }
+  }
+
+  @SuppressWarnings("null")
+  private static ExecutorService newBackgroundExecutor(String name) {
+    return Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Set the {@code Quality} value that will be returned for {@code State}-{@code Action} pairs that
+   * this object has not yet stored.
+   * 
+   * @param defaultQuality the default {@code Quality} value.
+   */
+  public void setDefaultQuality(Quality defaultQuality) {
+    this.defaultQuality = defaultQuality;
+  }
+
+  @Override
+  public Quality getDefaultQuality() {
+    return defaultQuality;
+  }
+
+  @Override
+  public void put(State state, Action action, Quality quality) {
+    putKey(key(state, action), quality.doubleValue());
+  }
+
+  @Override
+  public void putRow(State state, Map<Action, Quality> qualities) {
+    byte[] prefix = Keys.statePrefix(encode(stateCodec, state));
+    for (Map.Entry<Action, Quality> entry : qualities.entrySet()) {
+      putKey(Keys.key(prefix, encode(actionCodec, entry.getKey())),
+          entry.getValue().doubleValue());
+    }
+  }
+
+  @Override
+  public Quality get(State state, Action action) {
+    Double value = lookup(key(state, action));
+    if (value == null) {
+      return defaultQuality;
+    }
+    return new Quality(value);
+  }
+
+  @Override
+  public Quality getBestQuality(State state) {
+    Double best = null;
+    for (Double value : readRow(Keys.statePrefix(encode(stateCodec, state))).values()) {
+      if (best == null || value > best) {
+        best = value;
+      }
+    }
+    if (best == null) {
+      return defaultQuality;
+    }
+    return new Quality(best);
+  }
+
+  @Override
+  public Map<Action, Quality> getRow(State state) {
+    byte[] prefix = Keys.statePrefix(encode(stateCodec, state));
+    Map<ByteBuffer, Double> row = readRow(prefix);
+    Map<Action, Quality> qualities = new HashMap<>(row.size() * 2);
+    for (Map.Entry<ByteBuffer, Double> entry : row.entrySet()) {
+      ByteBuffer key = entry.getKey();
+      try {
+        Action action = actionCodec.read(ByteStreams.newDataInput(key.array(), prefix.length));
+        qualities.put(action, new Quality(entry.getValue()));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not decode a stored action of " + state, e);
+      }
+    }
+    return qualities;
+  }
+
+  @Override
+  public StateActionQuality getTriplet(State state, Action action) {
+    return new StateActionQuality(state, action, get(state, action));
+  }
+
+  /**
+   * Write every value that is still in memory out to a segment, and wait until it is on disk.
+   * 
+   * @throws IOException if the values could not be written.
+   */
+  public void flush() throws IOException {
+    synchronized (versionLock) {
+      if (!version.memtable.isEmpty()) {
+        rotate();
+      }
+    }
+    try {
+      flushExecutor.submit(() -> { }).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for values to be written", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Could not wait for values to be written", e);
+    }
+    throwBackgroundFailure();
+  }
+
+  /**
+   * Write every value that is still in memory out to a segment, wait for any running compaction,
+   * and close all files. This object must not be used after it has been closed.
+   * 
+   * @throws IOException if the values could not be written, or a background task had failed.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (versionLock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (!version.memtable.isEmpty()) {
+        rotate();
+      }
+    }
+    flushExecutor.shutdown();
+    compactionExecutor.shutdown();
+    try {
+      flushExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      compactionExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for background tasks", e);
+    }
+    for (Segment segment : version.segments) {
+      segment.close();
+    }
+    throwBackgroundFailure();
+  }
+
+  /**
+   * Get the number of segment files currently in use.
+   */
+  @Nonnegative
+  int getSegmentCount() {
+    return version.segments.size();
+  }
+
+  private void putKey(byte[] key, double value) {
+    IOException failure = backgroundFailure;
+    if (failure != null) {
+      throw new UncheckedIOException("A background write failed, refusing new values", failure);
+    }
+
+    synchronized (versionLock) {
+      if (closed) {
+        throw new IllegalStateException("Cannot store values after the store was closed");
+      }
+      while (isStalled() && backgroundFailure == null) {
+        scheduleCompactionIfNeeded();
+        try {
+          versionLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      version.memtable.put(key, value);
+      memtableSize += key.length + ENTRY_OVERHEAD_BYTES;
+      if (memtableSize >= memtableBytes) {
+        rotate();
+      }
+    }
+  }
+
+  @GuardedBy("versionLock")
+  private boolean isStalled() {
+    return version.flushing.size() >= MAXIMUM_FLUSHING_MEMTABLES
+        || version.segments.size() >= compactionFanIn * STALL_SEGMENTS_PER_FAN_IN;
+  }
+
+  @Nullable
+  private Double lookup(byte[] key) {
+    while (true) {
+      Version current = version;
+      Double value = current.memtable.get(key);
+      if (value != null) {
+        return value;
+      }
+      for (ConcurrentNavigableMap<byte[], Double> flushing : current.flushing) {
+        value = flushing.get(key);
+        if (value != null) {
+          return value;
+        }
+      }
+      try {
+        for (Segment segment : current.segments) {
+          value = segment.get(key);
+          if (value != null) {
+            return value;
+          }
+        }
+        return null;
+      } catch (ClosedChannelException e) {
+        retryIfCompacted(current, e);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not read from " + directory, e);
+      }
+    }
+  }
+
+  /**
+   * Collect the newest value of every stored key with the given {@code State} prefix.
+   */
+  private Map<ByteBuffer, Double> readRow(byte[] prefix) {
+    while (true) {
+      Version current = version;
+      Map<ByteBuffer, Double> row = new HashMap<>();
+      scanMemtable(current.memtable, prefix, row);
+      for (ConcurrentNavigableMap<byte[], Double> flushing : current.flushing) {
+        scanMemtable(flushing, prefix, row);
+      }
+      try {
+        for (Segment segment : current.segments) {
+          segment.scan(prefix, (key, value) -> row.putIfAbsent(ByteBuffer.wrap(key), value));
+        }
+        return row;
+      } catch (ClosedChannelException e) {
+        retryIfCompacted(current, e);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not read from " + directory, e);
+      }
+    }
+  }
+
+  private static void scanMemtable(ConcurrentNavigableMap<byte[], Double> memtable, byte[] prefix,
+      Map<ByteBuffer, Double> row) {
+    for (Map.Entry<byte[], Double> entry : memtable.tailMap(prefix).entrySet()) {
+      byte[] key = entry.getKey();
+      if (!Keys.hasPrefix(key, 0, key.length, prefix)) {
+        return;
+      }
+      row.putIfAbsent(ByteBuffer.wrap(key), entry.getValue());
+    }
+  }
+
+  /**
+   * A read can find a segment closed underneath it when a compaction replaced that segment. In
+   * that case the read is simply retried against the newer version.
+   */
+  private void retryIfCompacted(Version readVersion, ClosedChannelException e) {
+    if (version == readVersion) {
+      throw new UncheckedIOException("A segment in " + directory + " was unexpectedly closed", e);
+    }
+  }
+
+  @GuardedBy("versionLock")
+  private void rotate() {
+    ConcurrentNavigableMap<byte[], Double> full = version.memtable;
+    List<ConcurrentNavigableMap<byte[], Double>> flushing =
+        new ArrayList<>(version.flushing.size() + 1);
+    flushing.add(full);
+    flushing.addAll(version.flushing);
+    version = new Version(new ConcurrentSkipListMap<>(KEY_ORDER),
+        Collections.unmodifiableList(flushing), version.segments);
+    memtableSize = 0;
+    flushExecutor.execute(() -> flushMemtable(full));
+  }
+
+  private void flushMemtable(ConcurrentNavigableMap<byte[], Double> memtable) {
+    try {
+      long number;
+      synchronized (versionLock) {
+        number = nextFileNumber++;
+      }
+      Segment segment = Segment.write(number, segmentPath(number),
+          memtable.entrySet().iterator(), memtable.size());
+      logger.debug("Wrote {} values to segment {}", segment.getRecordCount(), number);
+
+      synchronized (versionLock) {
+        List<Segment> segments = new ArrayList<>(version.segments.size() + 1);
+        segments.add(segment);
+        segments.addAll(version.segments);
+        List<ConcurrentNavigableMap<byte[], Double>> flushing = new ArrayList<>(version.flushing);
+        flushing.removeIf(candidate -> candidate == memtable);
+        writeManifest(segments);
+        version = new Version(version.memtable, Collections.unmodifiableList(flushing),
+            Collections.unmodifiableList(segments));
+        scheduleCompactionIfNeeded();
+        versionLock.notifyAll();
+      }
+    } catch (IOException | RuntimeException e) {
+      failInBackground("Could not write values to a new segment", e);
+    }
+  }
+
+  @GuardedBy("versionLock")
+  private void scheduleCompactionIfNeeded() {
+    if (compacting || closed || version.segments.size() <= compactionFanIn) {
+      return;
+    }
+    compacting = true;
+    compactionExecutor.execute(this::compact);
+  }
+
+  private void compact() {
+    try {
+      List<Segment> window;
+      long number;
+      synchronized (versionLock) {
+        window = chooseCompactionWindow(version.segments);
+        number = nextFileNumber++;
+      }
+
+      long expectedRecords = 0;
+      for (Segment segment : window) {
+        expectedRecords += segment.getRecordCount();
+      }
+
+      Segment merged;
+      List<Segment.RecordIterator> inputs = new ArrayList<>(window.size());
+      try {
+        for (Segment segment : window) {
+          inputs.add(segment.iterator());
+        }
+        merged = Segment.write(number, segmentPath(number), new MergingIterator(inputs),
+            expectedRecords);
+      } finally {
+        for (Segment.RecordIterator input : inputs) {
+          input.close();
+        }
+      }
+      logger.debug("Merged {} segments into segment {} with {} values", window.size(), number,
+          merged.getRecordCount());
+
+      synchronized (versionLock) {
+        List<Segment> segments = new ArrayList<>(version.segments);
+        int start = segments.indexOf(window.get(0));
+        segments.subList(start, start + window.size()).clear();
+        segments.add(start, merged);
+        writeManifest(segments);
+        version = new Version(version.memtable, version.flushing,
+            Collections.unmodifiableList(segments));
+        compacting = false;
+        scheduleCompactionIfNeeded();
+        versionLock.notifyAll();
+      }
+
+      for (Segment segment : window) {
+        segment.close();
+        Files.deleteIfExists(segment.getPath());
+      }
+    } catch (IOException | RuntimeException e) {
+      synchronized (versionLock) {
+        compacting = false;
+      }
+      failInBackground("Could not merge segments", e);
+    }
+  }
+
+  /**
+   * Pick the run of neighbouring segments with the smallest total size. Merging small segments
+   * first keeps each value from being rewritten too many times as the store grows.
+   */
+  private List<Segment> chooseCompactionWindow(List<Segment> segments) {
+    int bestStart = 0;
+    long bestSize = Long.MAX_VALUE;
+    for (int start = 0; start + compactionFanIn <= segments.size(); start++) {
+      long size = 0;
+      for (int i = start; i < start + compactionFanIn; i++) {
+        size += segments.get(i).getDataSize();
+      }
+      if (size < bestSize) {
+        bestSize = size;
+        bestStart = start;
+      }
+    }
+    return new ArrayList<>(segments.subList(bestStart, bestStart + compactionFanIn));
+  }
+
+  private void failInBackground(String message, Exception e) {
+    logger.error(message + " in " + directory, e);
+    synchronized (versionLock) {
+      if (backgroundFailure == null) {
+        backgroundFailure = e instanceof IOException ? (IOException) e : new IOException(e);
+      }
+      versionLock.notifyAll();
+    }
+  }
+
+  private void throwBackgroundFailure() throws IOException {
+    IOException failure = backgroundFailure;
+    if (failure != null) {
+      throw new IOException("A background write to " + directory + " failed", failure);
+    }
+  }
+
+  private List<Segment> openSegments() throws IOException {
+    Path manifest = directory.resolve(MANIFEST);
+    List<Segment> segments = new ArrayList<>();
+    Set<Path> live = new HashSet<>();
+
+    if (Files.exists(manifest)) {
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(manifest));
+      if (buffer.getInt() != MANIFEST_MAGIC) {
+        throw new IOException("Manifest " + manifest + " is not valid");
+      }
+      nextFileNumber = buffer.getLong();
+      int count = buffer.getInt();
+      try {
+        for (int i = 0; i < count; i++) {
+          long number = buffer.getLong();
+          segments.add(Segment.open(number, segmentPath(number)));
+          live.add(segmentPath(number));
+        }
+      } catch (IOException e) {
+        for (Segment segment : segments) {
+          segment.close();
+        }
+        throw e;
+      }
+    }
+
+    // Anything else was left behind by a flush or compaction that never finished.
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        if (!live.contains(file)) {
+          logger.debug("Deleting unfinished segment {}", file);
+          Files.delete(file);
+        }
+      }
+    }
+    Files.deleteIfExists(directory.resolve(MANIFEST_TEMPORARY));
+
+    return Collections.unmodifiableList(segments);
+  }
+
+  @GuardedBy("versionLock")
+  private void writeManifest(List<Segment> segments) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 2 + Long.BYTES * (segments.size() + 1));
+    buffer.putInt(MANIFEST_MAGIC);
+    buffer.putLong(nextFileNumber);
+    buffer.putInt(segments.size());
+    for (Segment segment : segments) {
+      buffer.putLong(segment.getNumber());
+    }
+    buffer.flip();
+
+    Path temporary = directory.resolve(MANIFEST_TEMPORARY);
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @SuppressWarnings("null")
+  private Path segmentPath(long number) {
+    return directory.resolve(String.format("%020d%s", number, SEGMENT_SUFFIX));
+  }
+
+  private byte[] key(State state, Action action) {
+    return Keys.key(Keys.statePrefix(encode(stateCodec, state)), encode(actionCodec, action));
+  }
+
+  @SuppressWarnings("null")
+  private static <T> byte[] encode(Codec<T> codec, T value) {
+    ByteArrayDataOutput output = ByteStreams.newDataOutput();
+    try {
+      codec.write(value, output);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not encode " + value, e);
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Merges sorted segments into one sorted sequence. When more than one segment has the same key,
+   * only the value from the newest segment is kept.
+   */
+  private static final class MergingIterator implements Iterator<Map.Entry<byte[], Double>> {
+    private static final class Head {
+      private final int age;
+      private final Iterator<Map.Entry<byte[], Double>> records;
+      private Map.Entry<byte[], Double> record;
+
+      private Head(int age, Iterator<Map.Entry<byte[], Double>> records) {
+        this.age = age;
+        this.records = records;
+        this.record = records.next();
+      }
+    }
+
+    private final PriorityQueue<Head> heads;
+
+    /**
+     * @param newestFirst the segments to merge, ordered from newest to oldest.
+     */
+    private MergingIterator(List<? extends Iterator<Map.Entry<byte[], Double>>> newestFirst) {
+      this.heads = new PriorityQueue<>(Math.max(1, newestFirst.size()), (left, right) -> {
+        int comparison = KEY_ORDER.compare(left.record.getKey(), right.record.getKey());
+        return comparison != 0 ? comparison : Integer.compare(left.age, right.age);
+      });
+      for (int age = 0; age < newestFirst.size(); age++) {
+        if (newestFirst.get(age).hasNext()) {
+          heads.add(new Head(age, newestFirst.get(age)));
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !heads.isEmpty();
+    }
+
+    @Override
+    public Map.Entry<byte[], Double> next() {
+      Head newest = heads.poll();
+      if (newest == null) {
+        throw new NoSuchElementException("All segments have been merged");
+      }
+      Map.Entry<byte[], Double> record = newest.record;
+      advance(newest);
+      while (!heads.isEmpty()
+          && KEY_ORDER.compare(heads.peek().record.getKey(), record.getKey()) == 0) {
+        advance(heads.poll());
+      }
+      return record;
+    }
+
+    private void advance(Head head) {
+      if (head.records.hasNext()) {
+        head.record = head.records.next();
+        heads.add(head);
+      }
+    }
+  }
+}
@@ -0,0 +1,442 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.io.CountingOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An immutable file of sorted key-value records.
+ * 
+ * <p>
+ * Records are grouped into blocks of about {@link #BLOCK_SIZE} bytes. The first key of every
+ * block is kept in memory as a sparse index, so a lookup reads exactly one block from disk. A
+ * bloom filter over every key, and every key's {@code State} prefix, lets most lookups for keys
+ * that are not in this segment skip the disk entirely.
+ * </p>
+ * 
+ * <pre>
+ * segment := record* index bloom footer
+ * record  := varint(key length) key double
+ * index   := varint(block count) (varint(key length) key long(block offset))*
+ * footer  := long(index offset) long(bloom offset) long(record count) int(magic)
+ * </pre>
+ */
+@ThreadSafe
+/* package-private */ final class Segment implements Closeable {
+  /**
+   * The size that data blocks are filled up to before a new one is started.
+   */
+  static final int BLOCK_SIZE = 4096;
+
+  private static final int MAGIC = 0x514C5347;
+  private static final int FOOTER_SIZE = 3 * Long.BYTES + Integer.BYTES;
+  private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+  /**
+   * Data is memory-mapped in chunks of this size, plus {@link #MAP_OVERLAP}, so that any block
+   * starting in a chunk can usually be read from that chunk alone.
+   */
+  private static final long MAP_CHUNK = 1L << 30;
+  private static final int MAP_OVERLAP = 1 << 20;
+
+  /**
+   * Receives the records found by a prefix scan.
+   */
+  interface RecordVisitor {
+    void visit(byte[] key, double value);
+  }
+
+  @Nonnegative
+  private final long number;
+  @Nonnull
+  private final Path path;
+  @Nonnull
+  private volatile FileChannel channel;
+  private volatile boolean closed = false;
+  @Nonnull
+  private final byte[][] indexKeys;
+  @Nonnull
+  private final long[] indexOffsets;
+  @Nonnegative
+  private final long dataEnd;
+  @Nonnegative
+  private final long recordCount;
+  @Nonnull
+  private final BloomFilter<byte[]> bloomFilter;
+  @Nonnull
+  private final MappedByteBuffer[] mappedData;
+
+  private Segment(long number, Path path, FileChannel channel, byte[][] indexKeys,
+      long[] indexOffsets, long dataEnd, long recordCount, BloomFilter<byte[]> bloomFilter)
+      throws IOException {
+    this.number = number;
+    this.path = path;
+    this.channel = channel;
+    this.indexKeys = indexKeys;
+    this.indexOffsets = indexOffsets;
+    this.dataEnd = dataEnd;
+    this.recordCount = recordCount;
+    this.bloomFilter = bloomFilter;
+
+    int chunks = (int) ((dataEnd + MAP_CHUNK - 1) / MAP_CHUNK);
+    this.mappedData = new MappedByteBuffer[chunks];
+    for (int i = 0; i < chunks; i++) {
+      long start = i * MAP_CHUNK;
+      mappedData[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+          Math.min(MAP_CHUNK + MAP_OVERLAP, dataEnd - start));
+    }
+  }
+
+  /**
+   * Write a new segment file containing the given records, then open it.
+   * 
+   * @param number the file number of the new segment.
+   * @param path where to write the segment. Any existing file will be replaced.
+   * @param records the records to write, in ascending key order, with no duplicate keys.
+   * @param expectedRecords an upper bound on the number of records, used to size the bloom filter.
+   */
+  @SuppressWarnings("null")
+  static Segment write(long number, Path path, Iterator<Map.Entry<byte[], Double>> records,
+      long expectedRecords) throws IOException {
+    int bloomSize = (int) Math.min(Integer.MAX_VALUE, Math.max(1, 2 * expectedRecords));
+    BloomFilter<byte[]> bloomFilter =
+        BloomFilter.create(Funnels.byteArrayFunnel(), bloomSize, BLOOM_FALSE_POSITIVE_RATE);
+
+    try (OutputStream file = Files.newOutputStream(path);
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(file));
+        DataOutputStream output = new DataOutputStream(counter)) {
+      ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+      DataOutputStream index = new DataOutputStream(indexBytes);
+
+      int blockCount = 0;
+      long blockStart = -BLOCK_SIZE;
+      long recordCount = 0;
+      byte[] lastPrefix = null;
+
+      while (records.hasNext()) {
+        Map.Entry<byte[], Double> record = records.next();
+        byte[] key = record.getKey();
+
+        if (counter.getCount() - blockStart >= BLOCK_SIZE) {
+          blockStart = counter.getCount();
+          blockCount++;
+          Varints.write(index, key.length);
+          index.write(key);
+          index.writeLong(blockStart);
+        }
+
+        Varints.write(output, key.length);
+        output.write(key);
+        output.writeDouble(record.getValue());
+        recordCount++;
+
+        bloomFilter.put(key);
+        if (lastPrefix == null || !Keys.hasPrefix(key, 0, key.length, lastPrefix)) {
+          lastPrefix = Arrays.copyOf(key, Keys.statePrefixLength(key));
+          bloomFilter.put(lastPrefix);
+        }
+      }
+
+      long indexOffset = counter.getCount();
+      Varints.write(output, blockCount);
+      index.flush();
+      indexBytes.writeTo(output);
+
+      long bloomOffset = counter.getCount();
+      output.flush();
+      bloomFilter.writeTo(output);
+
+      output.writeLong(indexOffset);
+      output.writeLong(bloomOffset);
+      output.writeLong(recordCount);
+      output.writeInt(MAGIC);
+    }
+
+    try (FileChannel sync = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      sync.force(true);
+    }
+
+    return open(number, path);
+  }
+
+  /**
+   * Open an existing segment file, loading its index and bloom filter into memory.
+   */
+  static Segment open(long number, Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      if (size < FOOTER_SIZE) {
+        throw new IOException("Segment " + path + " is too short to be valid");
+      }
+      ByteBuffer footer = read(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+      long indexOffset = footer.getLong();
+      long bloomOffset = footer.getLong();
+      long recordCount = footer.getLong();
+      if (footer.getInt() != MAGIC) {
+        throw new IOException("Segment " + path + " has an invalid footer");
+      }
+
+      ByteBuffer index = read(channel, indexOffset, (int) (bloomOffset - indexOffset));
+      int blockCount = Varints.get(index);
+      byte[][] indexKeys = new byte[blockCount][];
+      long[] indexOffsets = new long[blockCount];
+      for (int i = 0; i < blockCount; i++) {
+        indexKeys[i] = new byte[Varints.get(index)];
+        index.get(indexKeys[i]);
+        indexOffsets[i] = index.getLong();
+      }
+
+      ByteBuffer bloom = read(channel, bloomOffset, (int) (size - FOOTER_SIZE - bloomOffset));
+      BloomFilter<byte[]> bloomFilter = BloomFilter.readFrom(
+          new ByteArrayInputStream(bloom.array(), 0, bloom.limit()), Funnels.byteArrayFunnel());
+
+      return new Segment(number, path, channel, indexKeys, indexOffsets, indexOffset, recordCount,
+          bloomFilter);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  @Nonnegative
+  long getNumber() {
+    return number;
+  }
+
+  Path getPath() {
+    return path;
+  }
+
+  @Nonnegative
+  long getRecordCount() {
+    return recordCount;
+  }
+
+  @Nonnegative
+  long getDataSize() {
+    return dataEnd;
+  }
+
+  /**
+   * Find the value of the given key.
+   * 
+   * @return the value, or {@code null} if this segment does not contain the key.
+   */
+  @Nullable
+  Double get(byte[] key) throws IOException {
+    if (!bloomFilter.mightContain(key)) {
+      return null;
+    }
+    int block = findBlock(key);
+    if (block < 0) {
+      return null;
+    }
+    ByteBuffer buffer = readBlock(block);
+    byte[] bytes = buffer.array();
+    while (buffer.hasRemaining()) {
+      int keyLength = Varints.get(buffer);
+      int comparison = Keys.compare(bytes, buffer.position(), keyLength, key, 0, key.length);
+      buffer.position(buffer.position() + keyLength);
+      double value = buffer.getDouble();
+      if (comparison == 0) {
+        return value;
+      }
+      if (comparison > 0) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Visit every record whose key starts with the given prefix, in ascending key order.
+   */
+  void scan(byte[] prefix, RecordVisitor visitor) throws IOException {
+    if (!bloomFilter.mightContain(prefix)) {
+      return;
+    }
+    for (int block = Math.max(0, findBlock(prefix)); block < indexKeys.length; block++) {
+      ByteBuffer buffer = readBlock(block);
+      byte[] bytes = buffer.array();
+      while (buffer.hasRemaining()) {
+        int keyLength = Varints.get(buffer);
+        int keyStart = buffer.position();
+        buffer.position(keyStart + keyLength);
+        double value = buffer.getDouble();
+
+        if (Keys.hasPrefix(bytes, keyStart, keyLength, prefix)) {
+          visitor.visit(Arrays.copyOfRange(bytes, keyStart, keyStart + keyLength),
+              value);
+        } else if (Keys.compare(bytes, keyStart, keyLength, prefix, 0, prefix.length) > 0) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Iterate over every record of this segment in key order, reading the file sequentially.
+   */
+  RecordIterator iterator() throws IOException {
+    return new RecordIterator();
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    channel.close();
+  }
+
+  /**
+   * Find the last block whose first key is not greater than the given key.
+   * 
+   * @return the block index, or -1 if every block starts after the key.
+   */
+  private int findBlock(byte[] key) {
+    int low = 0;
+    int high = indexKeys.length - 1;
+    int found = -1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      byte[] blockKey = indexKeys[middle];
+      if (Keys.compare(blockKey, 0, blockKey.length, key, 0, key.length) <= 0) {
+        found = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return found;
+  }
+
+  private ByteBuffer readBlock(int block) throws IOException {
+    long start = indexOffsets[block];
+    long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : dataEnd;
+
+    MappedByteBuffer chunk = mappedData[(int) (start / MAP_CHUNK)];
+    int chunkOffset = (int) (start % MAP_CHUNK);
+    if (chunkOffset + (end - start) <= chunk.capacity()) {
+      ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+      ByteBuffer mapped = chunk.duplicate();
+      mapped.position(chunkOffset).limit(chunkOffset + buffer.capacity());
+      buffer.put(mapped);
+      buffer.flip();
+      return buffer;
+    }
+
+    try {
+      return read(channel, start, (int) (end - start));
+    } catch (ClosedChannelException e) {
+      // Interrupting any thread that is reading closes the channel for every thread.
+      if (closed) {
+        throw e;
+      }
+      reopen();
+      return read(channel, start, (int) (end - start));
+    }
+  }
+
+  private synchronized void reopen() throws IOException {
+    if (!closed && !channel.isOpen()) {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of segment file at " + position);
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Sequentially reads every record of this segment, for merging segments together.
+   */
+  final class RecordIterator implements Iterator<Map.Entry<byte[], Double>>, Closeable {
+    private final DataInputStream input;
+    private long remaining = recordCount;
+
+    @SuppressWarnings("null")
+    private RecordIterator() throws IOException {
+      FileChannel sequential = FileChannel.open(path, StandardOpenOption.READ);
+      this.input = new DataInputStream(
+          new BufferedInputStream(Channels.newInputStream(sequential), 16 * BLOCK_SIZE));
+    }
+
+    @Override
+    public boolean hasNext() {
+      return remaining > 0;
+    }
+
+    @Override
+    public Map.Entry<byte[], Double> next() {
+      if (remaining <= 0) {
+        throw new NoSuchElementException("No records left in " + path);
+      }
+      try {
+        byte[] key = new byte[Varints.read(input)];
+        input.readFully(key);
+        double value = input.readDouble();
+        remaining--;
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not read the next record of " + path, e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      input.close();
+    }
+  }
+}
@@ -0,0 +1,540 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityLog;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.algorithm.quality.StateActionQuality;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link QualityLog} that appends every new {@link Quality} value to memory-mapped files, so that
+ * updates made since the last checkpoint can be replayed after a crash.
+ * 
+ * <p>
+ * The log is split into fixed-size segment files, each mapped into memory once when it is created,
+ * so appending a value is just a few writes to memory. Each segment numbers the {@link State}s and
+ * {@link Action}s the first time they appear in it, and later records refer to them by those
+ * numbers, so most records take up about a dozen bytes.
+ * </p>
+ * 
+ * <p>
+ * Records are grouped into commits, each ending with a checksum of the records in it. How often
+ * commits happen and whether they are synced to disk is decided by the {@link FsyncPolicy}. When
+ * the log is replayed, each segment is read up to its last intact commit, so a write torn by a
+ * crash is dropped rather than applied.
+ * </p>
+ * 
+ * <p>
+ * To recover, restore the last checkpoint, wrap the map for checkpointing, and then
+ * {@link #replay(Path, QualityMap, Codec, Codec)} the log into the wrapped map, so that the
+ * replayed values are part of the next checkpoint. Passing this log to a
+ * {@link CheckpointScheduler} lets it delete segments once their values have been checkpointed.
+ * </p>
+ */
+@ThreadSafe
+public class WriteAheadLog implements QualityLog, Closeable {
+  @SuppressWarnings("null")
+  @Nonnull
+  private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+  private static final String SEGMENT_SUFFIX = ".wal";
+  private static final int MAGIC = 0x514C574C;
+  private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+  private static final int MINIMUM_SEGMENT_SIZE = 4096;
+  private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  private static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 10;
+
+  private static final byte DEFINE_STATE = 1;
+  private static final byte DEFINE_ACTION = 2;
+  private static final byte UPDATE = 3;
+  private static final byte COMMIT = 4;
+  private static final int MAX_UPDATE_SIZE = 1 + 2 * Varints.MAX_INT_SIZE + Double.BYTES;
+  private static final int COMMIT_SIZE = 1 + Integer.BYTES;
+
+  @Nonnull
+  private final Path directory;
+  @Nonnull
+  private final Codec<State> stateCodec;
+  @Nonnull
+  private final Codec<Action> actionCodec;
+  @Nonnull
+  private final FsyncPolicy policy;
+  @Nonnegative
+  private final int segmentSize;
+  @Nullable
+  private final ScheduledExecutorService committer;
+
+  @GuardedBy("this")
+  @Nonnull
+  private final Map<State, Integer> stateIds = new HashMap<>();
+  @GuardedBy("this")
+  @Nonnull
+  private final Map<Action, Integer> actionIds = new HashMap<>();
+  @GuardedBy("this")
+  @Nonnull
+  private final CRC32 checksum = new CRC32();
+  @GuardedBy("this")
+  @Nonnull
+  private MappedByteBuffer buffer;
+  @GuardedBy("this")
+  @Nonnegative
+  private long segmentNumber;
+  @GuardedBy("this")
+  @Nonnegative
+  private int committedPosition;
+  @GuardedBy("this")
+  private boolean closed = false;
+
+  /**
+   * Start a new log segment in the given directory, with 64 MiB segments and a commit interval of
+   * 10 milliseconds.
+   * 
+   * @param directory where to write segment files. It will be created if it does not exist.
+   * @param stateCodec the codec to write {@code State}s with.
+   * @param actionCodec the codec to write {@code Action}s with.
+   * @param policy how often to make records durable.
+   * @throws IOException if the first segment could not be created.
+   */
+  public WriteAheadLog(Path directory, Codec<State> stateCodec, Codec<Action> actionCodec,
+      FsyncPolicy policy) throws IOException {
+    this(directory, stateCodec, actionCodec, policy, DEFAULT_SEGMENT_SIZE,
+        DEFAULT_COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Start a new log segment in the given directory. Numbering continues from any segments already
+   * in the directory, which are left alone.
+   * 
+   * @param directory where to write segment files. It will be created if it does not exist.
+   * @param stateCodec the codec to write {@code State}s with.
+   * @param actionCodec the codec to write {@code Action}s with.
+   * @param policy how often to make records durable.
+   * @param segmentSize the size in bytes of each segment file.
+   * @param commitInterval how long to wait between background commits. This is unused if the
+   *        policy is {@link FsyncPolicy#EVERY_UPDATE}.
+   * @param unit the unit of {@code commitInterval}.
+   * @throws IOException if the first segment could not be created.
+   */
+  public WriteAheadLog(Path directory, Codec<State> stateCodec, Codec<Action> actionCodec,
+      FsyncPolicy policy, @Nonnegative int segmentSize, long commitInterval, TimeUnit unit)
+      throws IOException {
+    if (segmentSize < MINIMUM_SEGMENT_SIZE) {
+      throw new IllegalArgumentException(
+          "Segment size must be at least " + MINIMUM_SEGMENT_SIZE + ", but got: " + segmentSize);
+    }
+    if (commitInterval <= 0) {
+      throw new IllegalArgumentException(
+          "Commit interval must be positive, but got: " + commitInterval);
+    }
+    this.directory = directory;
+    this.stateCodec = stateCodec;
+    this.actionCodec = actionCodec;
+    this.policy = policy;
+    this.segmentSize = segmentSize;
+
+    Files.createDirectories(directory);
+    List<Path> segments = listSegments(directory);
+    synchronized (this) {
+      long number =
+          segments.isEmpty() ? 0 : segmentNumber(segments.get(segments.size() - 1)) + 1;
+      this.buffer = openSegment(number);
+    }
+
+    if (policy == FsyncPolicy.EVERY_UPDATE) {
+      this.committer = null;
+    } else {
+      this.committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "qlearner-wal-commit");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.committer.scheduleWithFixedDelay(this::commitInBackground, commitInterval,
+          commitInterval, unit);
+    }
+  }
+
+  /**
+   * Append a record of the given value to the log.
+   * 
+   * @throws UncheckedIOException if a new segment was needed and could not be created.
+   * @throws IllegalStateException if the log has been closed.
+   */
+  @Override
+  public synchronized void append(State state, Action action, Quality quality) {
+    if (closed) {
+      throw new IllegalStateException("Cannot append to a write-ahead log after closing it");
+    }
+    try {
+      Integer stateId = stateIds.get(state);
+      Integer actionId = actionIds.get(action);
+      if (stateId == null || actionId == null
+          || buffer.remaining() < MAX_UPDATE_SIZE + COMMIT_SIZE) {
+        appendSlowly(state, action, quality);
+      } else {
+        putUpdate(stateId, actionId, quality);
+      }
+
+      if (policy == FsyncPolicy.EVERY_UPDATE) {
+        commit();
+        buffer.force();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Commit every record appended so far and sync them to disk, regardless of the
+   * {@link FsyncPolicy}.
+   */
+  public synchronized void sync() {
+    commit();
+    buffer.force();
+  }
+
+  /**
+   * Start a new segment, so that the segments before it can later be deleted. If the current
+   * segment is still empty, it is kept instead.
+   * 
+   * @return the number of the segment that new records will be appended to.
+   * @throws IOException if the new segment could not be created.
+   */
+  public synchronized long roll() throws IOException {
+    if (buffer.position() > HEADER_SIZE) {
+      nextSegment();
+    }
+    return segmentNumber;
+  }
+
+  /**
+   * Delete every segment numbered lower than the given one. The current segment is never deleted.
+   * 
+   * @param number the number of the oldest segment to keep, as returned by {@link #roll()}.
+   * @throws IOException if a segment could not be deleted.
+   */
+  public synchronized void deleteSegmentsBefore(long number) throws IOException {
+    long oldestKept = Math.min(number, segmentNumber);
+    for (Path segment : listSegments(directory)) {
+      if (segmentNumber(segment) < oldestKept) {
+        Files.delete(segment);
+      }
+    }
+  }
+
+  /**
+   * Commit and sync every record appended so far, then stop the background commits.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      commit();
+      buffer.force();
+    }
+    if (committer != null) {
+      committer.shutdown();
+    }
+  }
+
+  /**
+   * Apply every committed record in the given directory to the given map, oldest first.
+   * 
+   * @param directory where the log was written.
+   * @param target where to store the logged values.
+   * @param stateCodec the codec to read {@code State}s with.
+   * @param actionCodec the codec to read {@code Action}s with.
+   * @return how many values were applied, which is zero if the directory does not exist.
+   * @throws IOException if a segment could not be read.
+   */
+  public static long replay(Path directory, QualityMap target, Codec<State> stateCodec,
+      Codec<Action> actionCodec) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return 0;
+    }
+    long applied = 0;
+    for (Path segment : listSegments(directory)) {
+      applied += replaySegment(segment, target, stateCodec, actionCodec);
+    }
+    return applied;
+  }
+
+  @SuppressWarnings("null")
+  private static long replaySegment(Path segment, QualityMap target, Codec<State> stateCodec,
+      Codec<Action> actionCodec) throws IOException {
+    ByteBuffer data;
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+      data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC) {
+      logger.warn("Skipping {}, which is not a write-ahead log segment", segment);
+      return 0;
+    }
+    data.getLong();
+
+    List<State> states = new ArrayList<>();
+    List<Action> actions = new ArrayList<>();
+    List<StateActionQuality> pending = new ArrayList<>();
+    CRC32 checksum = new CRC32();
+    int batchStart = data.position();
+    long applied = 0;
+    try {
+      while (data.hasRemaining()) {
+        int recordStart = data.position();
+        byte type = data.get();
+        if (type == DEFINE_STATE) {
+          int id = Varints.get(data);
+          State state = stateCodec.read(ByteStreams.newDataInput(nextBytes(data)));
+          if (id != states.size()) {
+            break;
+          }
+          states.add(state);
+        } else if (type == DEFINE_ACTION) {
+          int id = Varints.get(data);
+          Action action = actionCodec.read(ByteStreams.newDataInput(nextBytes(data)));
+          if (id != actions.size()) {
+            break;
+          }
+          actions.add(action);
+        } else if (type == UPDATE) {
+          int stateId = Varints.get(data);
+          int actionId = Varints.get(data);
+          double value = data.getDouble();
+          if (stateId < 0 || stateId >= states.size() || actionId < 0
+              || actionId >= actions.size()) {
+            break;
+          }
+          pending.add(new StateActionQuality(states.get(stateId), actions.get(actionId),
+              new Quality(value)));
+        } else if (type == COMMIT) {
+          int expected = data.getInt();
+          ByteBuffer batch = data.duplicate();
+          batch.position(batchStart);
+          batch.limit(recordStart);
+          checksum.reset();
+          checksum.update(batch);
+          if ((int) checksum.getValue() != expected) {
+            break;
+          }
+          for (StateActionQuality update : pending) {
+            target.put(update.getState(), update.getAction(), update.getQuality());
+          }
+          applied += pending.size();
+          pending.clear();
+          batchStart = data.position();
+        } else {
+          break;
+        }
+      }
+    } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+      logger.debug("Stopped replaying {} at a torn record", segment, e);
+    }
+    if (!pending.isEmpty()) {
+      logger.info("Dropped {} uncommitted updates from the end of {}", pending.size(), segment);
+    }
+    return applied;
+  }
+
+  private static byte[] nextBytes(ByteBuffer data) throws IOException {
+    int length = Varints.get(data);
+    if (length > data.remaining()) {
+      throw new IOException("Record is longer than the rest of the segment: " + length);
+    }
+    byte[] bytes = new byte[length];
+    data.get(bytes);
+    return bytes;
+  }
+
+  @GuardedBy("this")
+  private void appendSlowly(State state, Action action, Quality quality) throws IOException {
+    byte[] stateBytes = encode(stateCodec, state);
+    byte[] actionBytes = encode(actionCodec, action);
+    int needed = definitionSize(stateBytes) + definitionSize(actionBytes) + MAX_UPDATE_SIZE
+        + COMMIT_SIZE;
+    if (HEADER_SIZE + needed > segmentSize) {
+      throw new IllegalArgumentException(
+          "Record does not fit in a segment of " + segmentSize + " bytes, but needs: " + needed);
+    }
+    if (buffer.remaining() < needed) {
+      nextSegment();
+    }
+
+    Integer stateId = stateIds.get(state);
+    if (stateId == null) {
+      stateId = stateIds.size();
+      stateIds.put(state, stateId);
+      putDefinition(DEFINE_STATE, stateId, stateBytes);
+    }
+    Integer actionId = actionIds.get(action);
+    if (actionId == null) {
+      actionId = actionIds.size();
+      actionIds.put(action, actionId);
+      putDefinition(DEFINE_ACTION, actionId, actionBytes);
+    }
+    putUpdate(stateId, actionId, quality);
+  }
+
+  @GuardedBy("this")
+  private void putDefinition(byte type, int id, byte[] bytes) {
+    buffer.put(type);
+    Varints.put(buffer, id);
+    Varints.put(buffer, bytes.length);
+    buffer.put(bytes);
+  }
+
+  @GuardedBy("this")
+  private void putUpdate(int stateId, int actionId, Quality quality) {
+    buffer.put(UPDATE);
+    Varints.put(buffer, stateId);
+    Varints.put(buffer, actionId);
+    buffer.putDouble(quality.doubleValue());
+  }
+
+  /**
+   * End the current batch of records with a checksum of them, so that replay can tell that they
+   * were all written in full. Every append leaves room for this record.
+   * 
+   * @return {@code false} if there was nothing to commit.
+   */
+  @GuardedBy("this")
+  private boolean commit() {
+    int position = buffer.position();
+    if (position == committedPosition) {
+      return false;
+    }
+    ByteBuffer batch = buffer.duplicate();
+    batch.position(committedPosition);
+    batch.limit(position);
+    checksum.reset();
+    checksum.update(batch);
+
+    buffer.put(COMMIT);
+    buffer.putInt((int) checksum.getValue());
+    committedPosition = buffer.position();
+    return true;
+  }
+
+  private void commitInBackground() {
+    try {
+      MappedByteBuffer committed;
+      synchronized (this) {
+        if (closed || !commit()) {
+          return;
+        }
+        committed = buffer;
+      }
+      if (policy == FsyncPolicy.BATCHED) {
+        committed.force();
+      }
+    } catch (RuntimeException e) {
+      logger.error("Could not commit the write-ahead log in {}", directory, e);
+    }
+  }
+
+  @GuardedBy("this")
+  private void nextSegment() throws IOException {
+    commit();
+    buffer.force();
+    buffer = openSegment(segmentNumber + 1);
+  }
+
+  @GuardedBy("this")
+  private MappedByteBuffer openSegment(long number) throws IOException {
+    MappedByteBuffer segment;
+    try (FileChannel channel = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+    segment.putInt(MAGIC);
+    segment.putLong(number);
+    segmentNumber = number;
+    committedPosition = segment.position();
+    stateIds.clear();
+    actionIds.clear();
+    return segment;
+  }
+
+  private static int definitionSize(byte[] bytes) {
+    return 1 + Varints.MAX_INT_SIZE + Varints.size(bytes.length) + bytes.length;
+  }
+
+  private static <T> byte[] encode(Codec<T> codec, T value) throws IOException {
+    ByteArrayDataOutput output = ByteStreams.newDataOutput();
+    codec.write(value, output);
+    return output.toByteArray();
+  }
+
+  @SuppressWarnings("null")
+  private Path segmentPath(long number) {
+    return directory.resolve(String.format("%020d%s", number, SEGMENT_SUFFIX));
+  }
+
+  private static long segmentNumber(Path path) {
+    String name = path.getFileName().toString();
+    return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  /**
+   * List the segment files in the given directory, oldest first.
+   */
+  private static List<Path> listSegments(Path directory) throws IOException {
+    List<Path> segments = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        segments.add(file);
+      }
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+}
@@ -0,0 +1,26 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Classes for storing {@link io.github.cantido.qlearner.algorithm.model.Quality Quality} values
+ * outside of the heap, on the local filesystem.
+ * <p>
+ * {@link io.github.cantido.qlearner.client.State State} and
+ * {@link io.github.cantido.qlearner.client.Action Action} objects are written using
+ * {@link io.github.cantido.qlearner.storage.Codec Codec}s provided by the client.
+ * </p>
+ */
+@javax.annotation.ParametersAreNonnullByDefault
+package io.github.cantido.qlearner.storage;
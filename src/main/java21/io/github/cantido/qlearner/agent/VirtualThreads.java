@@ -0,0 +1,55 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import io.github.cantido.qlearner.client.Action;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors that run each task on its own virtual thread, for {@link Agent}s whose
+ * {@link Action}s spend most of their time blocked on I/O.
+ * 
+ * <p>
+ * This is the Java 21 version of this class, which multi-release runtimes load in place of the
+ * Java 8 version. Virtual threads are always supported here.
+ * </p>
+ */
+public final class VirtualThreads {
+  private VirtualThreads() {
+    // Static methods only
+  }
+
+  /**
+   * Check whether this runtime can run tasks on virtual threads.
+   * 
+   * @return {@code true}, always.
+   */
+  public static boolean isSupported() {
+    return true;
+  }
+
+  /**
+   * Create an {@code ExecutorService} that starts a new virtual thread for each task. Tasks never
+   * wait in a queue.
+   * 
+   * @return a new thread-per-task executor.
+   */
+  public static ExecutorService newExecutor() {
+    return Executors.newVirtualThreadPerTaskExecutor();
+  }
+}
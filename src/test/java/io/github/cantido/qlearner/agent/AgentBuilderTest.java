@@ -0,0 +1,122 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import static io.github.cantido.qlearner.storage.NumberedStates.state;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.github.cantido.qlearner.algorithm.abstraction.BisimulationAbstraction;
+import io.github.cantido.qlearner.algorithm.abstraction.StateAggregatingQualityMap;
+import io.github.cantido.qlearner.algorithm.quality.QualityHashMap;
+import io.github.cantido.qlearner.client.Environment;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.concurrent.ExecutorService;
+
+@SuppressWarnings({"null", "javadoc"})
+public class AgentBuilderTest {
+  @Rule
+  public MockitoRule mockito = MockitoJUnit.rule();
+
+  @Mock
+  Environment environment;
+
+  private final QualityHashMap qualityMap = new QualityHashMap();
+  private final BisimulationAbstraction abstraction = new BisimulationAbstraction(0.1);
+
+  private void learnFromTwoSteps(AgentBuilder builder) {
+    ConcurrentAgent<String> agent = builder.getConcurrentAgent();
+    agent.takeNextAction("a", state(1));
+    agent.takeNextAction("a", state(2));
+  }
+
+  @Test
+  public void reportsBoundedActionExecutor() {
+    try (BoundedActionExecutor bounded =
+        new BoundedActionExecutor(1, 4, OverflowPolicy.BLOCK, 1)) {
+      AgentBuilder builder = new AgentBuilder(environment).setBoundedActionExecutor(bounded);
+      assertThat(builder.getActionExecutor(), is(sameInstance(bounded)));
+
+      ExecutorService executor = MoreExecutors.newDirectExecutorService();
+      builder.setExecutorService(executor);
+      assertThat(builder.getActionExecutor(), is(sameInstance(executor)));
+    }
+  }
+
+  @Test
+  public void ownsOneVirtualThreadExecutor() {
+    AgentBuilder builder = new AgentBuilder(environment).useVirtualThreads();
+    ExecutorService executor = (ExecutorService) builder.getActionExecutor();
+    builder.useVirtualThreads();
+    assertThat(builder.getActionExecutor(), is(sameInstance(executor)));
+
+    builder.close();
+    assertThat(executor.isShutdown(), is(true));
+  }
+
+  @Test
+  public void leavesGivenExecutorRunningWhenClosed() {
+    ExecutorService executor = MoreExecutors.newDirectExecutorService();
+    AgentBuilder builder = new AgentBuilder(environment).setExecutorService(executor);
+
+    builder.close();
+    assertThat(executor.isShutdown(), is(false));
+  }
+
+  @Test
+  public void wrapsQualityMapInStateAbstraction() {
+    AgentBuilder builder =
+        new AgentBuilder(environment).setQualityMap(qualityMap).setStateAbstraction(abstraction);
+    learnFromTwoSteps(builder);
+
+    assertThat(builder.getQualityMap(), is(instanceOf(StateAggregatingQualityMap.class)));
+    assertThat(((StateAggregatingQualityMap) builder.getQualityMap()).getBackingMap(),
+        is(sameInstance(qualityMap)));
+    assertThat(abstraction.getStateCount(), is(2));
+  }
+
+  @Test
+  public void replacesStateAbstractionInsteadOfWrappingTwice() {
+    BisimulationAbstraction replaced = new BisimulationAbstraction(0.1);
+    AgentBuilder builder = new AgentBuilder(environment).setQualityMap(qualityMap)
+        .setStateAbstraction(replaced).setStateAbstraction(abstraction);
+    learnFromTwoSteps(builder);
+
+    assertThat(((StateAggregatingQualityMap) builder.getQualityMap()).getBackingMap(),
+        is(sameInstance(qualityMap)));
+    assertThat(replaced.getStateCount(), is(0));
+    assertThat(abstraction.getStateCount(), is(2));
+  }
+
+  @Test
+  public void dropsStateAbstractionWhenQualityMapIsReplaced() {
+    AgentBuilder builder =
+        new AgentBuilder(environment).setStateAbstraction(abstraction).setQualityMap(qualityMap);
+    learnFromTwoSteps(builder);
+
+    assertThat(builder.getQualityMap(), is(sameInstance(qualityMap)));
+    assertThat(abstraction.getStateCount(), is(0));
+  }
+}
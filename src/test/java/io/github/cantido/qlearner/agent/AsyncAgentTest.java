@@ -0,0 +1,184 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.github.cantido.qlearner.algorithm.model.ExplorationStrategy;
+import io.github.cantido.qlearner.algorithm.quality.ConcurrentQualityHashMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.AsyncAction;
+import io.github.cantido.qlearner.client.AsyncEnvironment;
+import io.github.cantido.qlearner.client.Environment;
+import io.github.cantido.qlearner.client.State;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+@SuppressWarnings({"null", "javadoc"})
+public class AsyncAgentTest {
+  @Rule
+  public MockitoRule mockito = MockitoJUnit.rule();
+
+  @Mock
+  Environment environment;
+  @Mock
+  ExplorationStrategy explorationStrategy;
+  @Mock
+  TransitionSink transitionSink;
+  @Mock
+  State firstState;
+  @Mock
+  State secondState;
+  @Mock
+  Action action;
+
+  AsyncAgent agent;
+
+  @Before
+  public void setUp() {
+    when(firstState.getActions()).thenReturn(Collections.singleton(action));
+    when(secondState.getActions()).thenReturn(Collections.singleton(action));
+    when(environment.getState()).thenReturn(firstState, secondState);
+    when(explorationStrategy.getNextAction(any())).thenReturn(action);
+
+    agent = new AsyncAgent(environment, explorationStrategy, new ConcurrentQualityHashMap(),
+        MoreExecutors.directExecutor(), transitionSink);
+  }
+
+  @Test
+  public void learnsFromPreviousStepOnNextStep() {
+    agent.takeActions(2).toCompletableFuture().join();
+
+    verify(transitionSink).publish(new Step(firstState, action), secondState);
+    assertThat(agent.getLastStep().get(), is(new Step(secondState, action)));
+  }
+
+  @Test
+  public void waitsForAsyncActionBeforeNextStep() {
+    PendingAction pendingAction = new PendingAction();
+    when(explorationStrategy.getNextAction(any())).thenReturn(pendingAction);
+
+    CompletionStage<Step> first = agent.takeNextAction();
+    CompletionStage<Step> second = agent.takeNextAction();
+    verify(environment, times(1)).getState();
+    assertThat(second.toCompletableFuture().isDone(), is(false));
+
+    pendingAction.finishOldest();
+    verify(environment, times(2)).getState();
+    assertThat(first.toCompletableFuture().join(), is(new Step(firstState, pendingAction)));
+  }
+
+  @Test
+  public void takesManyStepsWithDirectExecutor() {
+    agent.takeActions(20_000).toCompletableFuture().join();
+
+    verify(environment, times(20_000)).getState();
+  }
+
+  @Test
+  public void stopsTakingActionsAfterFailure() {
+    doThrow(new IllegalStateException("broken actuator")).when(action).run();
+
+    CompletableFuture<Void> done = agent.takeActions(5).toCompletableFuture();
+
+    assertThat(done.isCompletedExceptionally(), is(true));
+    verify(environment, times(1)).getState();
+  }
+
+  @Test
+  public void forgetsLastStepOnReset() {
+    agent.takeActions(1).toCompletableFuture().join();
+    agent.reset();
+    agent.takeActions(1).toCompletableFuture().join();
+
+    verify(transitionSink, times(0)).publish(any(), any());
+  }
+
+  @Test
+  public void waitsForAsyncObservationWithoutBlocking() {
+    CompletableFuture<State> observation = new CompletableFuture<>();
+    AsyncAgent asyncAgent = new AsyncAgent(new PendingEnvironment(observation), explorationStrategy,
+        new ConcurrentQualityHashMap(), MoreExecutors.directExecutor(), transitionSink);
+
+    CompletionStage<Step> step = asyncAgent.takeNextAction();
+    assertThat(step.toCompletableFuture().isDone(), is(false));
+
+    observation.complete(firstState);
+    assertThat(step.toCompletableFuture().join(), is(new Step(firstState, action)));
+  }
+
+  /**
+   * An asynchronous environment whose state arrives when the test says so.
+   */
+  static class PendingEnvironment implements Environment, AsyncEnvironment {
+    final CompletableFuture<State> observation;
+
+    PendingEnvironment(CompletableFuture<State> observation) {
+      this.observation = observation;
+    }
+
+    @Override
+    public CompletionStage<State> observe() {
+      return observation;
+    }
+
+    @Override
+    public State getState() {
+      throw new AssertionError("Should have been observed asynchronously");
+    }
+  }
+
+  /**
+   * An asynchronous action that only finishes when the test says so.
+   */
+  static class PendingAction extends Action implements AsyncAction {
+    final Queue<CompletableFuture<Void>> started = new ArrayDeque<>();
+
+    @Override
+    public CompletionStage<?> start() {
+      CompletableFuture<Void> performing = new CompletableFuture<>();
+      started.add(performing);
+      return performing;
+    }
+
+    void finishOldest() {
+      started.remove().complete(null);
+    }
+
+    @Override
+    public void run() {
+      start().toCompletableFuture().join();
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.client.AsyncEnvironment;
+import io.github.cantido.qlearner.client.BatchEnvironment;
+import io.github.cantido.qlearner.client.State;
+import io.github.cantido.qlearner.storage.NumberedStates;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+@SuppressWarnings({"null", "javadoc"})
+public class BatchingEnvironmentTest {
+  private final List<int[]> batches = new ArrayList<>();
+  private final List<CompletableFuture<List<State>>> replies = new ArrayList<>();
+
+  private final BatchEnvironment pendingEnvironment = instances -> {
+    batches.add(instances);
+    CompletableFuture<List<State>> reply = new CompletableFuture<>();
+    replies.add(reply);
+    return reply;
+  };
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyBatches() {
+    new BatchingEnvironment(pendingEnvironment, 0);
+  }
+
+  @Test
+  public void observesInstanceSynchronously() {
+    BatchingEnvironment environments =
+        new BatchingEnvironment(instances -> CompletableFuture.completedFuture(
+            Arrays.asList(NumberedStates.state(instances[0]))), 8);
+
+    assertThat(environments.getInstance(3).getState(), is(NumberedStates.state(3)));
+  }
+
+  @Test
+  public void batchesObservationsAskedForWhileABatchIsInFlight() {
+    BatchingEnvironment environments = new BatchingEnvironment(pendingEnvironment, 8);
+
+    CompletionStage<State> first = observe(environments, 0);
+    CompletionStage<State> second = observe(environments, 1);
+    CompletionStage<State> third = observe(environments, 2);
+    assertThat(batches.size(), is(1));
+
+    replies.get(0).complete(Arrays.asList(NumberedStates.state(0)));
+    assertThat(first.toCompletableFuture().join(), is(NumberedStates.state(0)));
+    assertThat(batches.size(), is(2));
+    assertThat(batches.get(1).length, is(2));
+
+    replies.get(1).complete(Arrays.asList(NumberedStates.state(1), NumberedStates.state(2)));
+    assertThat(second.toCompletableFuture().join(), is(NumberedStates.state(1)));
+    assertThat(third.toCompletableFuture().join(), is(NumberedStates.state(2)));
+    assertThat(environments.getBatchesSent(), is(2L));
+  }
+
+  @Test
+  public void splitsBatchesLargerThanMaximum() {
+    BatchingEnvironment environments = new BatchingEnvironment(pendingEnvironment, 2);
+
+    observe(environments, 0);
+    for (int i = 1; i <= 3; i++) {
+      observe(environments, i);
+    }
+    replies.get(0).complete(Arrays.asList(NumberedStates.state(0)));
+
+    assertThat(batches.get(1).length, is(2));
+    replies.get(1).complete(Arrays.asList(NumberedStates.state(1), NumberedStates.state(2)));
+
+    assertThat(batches.size(), is(3));
+    assertThat(batches.get(2)[0], is(3));
+  }
+
+  @Test
+  public void failsEveryObservationInAFailedBatch() {
+    BatchingEnvironment environments = new BatchingEnvironment(pendingEnvironment, 8);
+    observe(environments, 0);
+    CompletionStage<State> second = observe(environments, 1);
+    CompletionStage<State> third = observe(environments, 2);
+    replies.get(0).complete(Arrays.asList(NumberedStates.state(0)));
+
+    replies.get(1).completeExceptionally(new IllegalStateException("simulator down"));
+
+    assertThat(second.toCompletableFuture().isCompletedExceptionally(), is(true));
+    assertThat(third.toCompletableFuture().isCompletedExceptionally(), is(true));
+  }
+
+  @Test
+  public void failsBatchWithWrongNumberOfStates() {
+    BatchingEnvironment environments = new BatchingEnvironment(pendingEnvironment, 8);
+    CompletionStage<State> first = observe(environments, 0);
+
+    replies.get(0).complete(new ArrayList<>());
+
+    assertThat(first.toCompletableFuture().isCompletedExceptionally(), is(true));
+  }
+
+  @Test
+  public void observesAgainFromCompletedObservation() {
+    List<List<Integer>> observed = new ArrayList<>();
+    BatchingEnvironment environments = new BatchingEnvironment(instances -> {
+      List<Integer> batch = new ArrayList<>();
+      List<State> states = new ArrayList<>();
+      for (int instance : instances) {
+        batch.add(instance);
+        states.add(NumberedStates.state(instance));
+      }
+      observed.add(batch);
+      return CompletableFuture.completedFuture(states);
+    }, 8);
+
+    observe(environments, 0).thenCompose(state -> observe(environments, 1))
+        .toCompletableFuture().join();
+
+    List<List<Integer>> expected = Arrays.asList(Arrays.asList(0), Arrays.asList(1));
+    assertThat(observed, is(expected));
+  }
+
+  private static CompletionStage<State> observe(BatchingEnvironment environments, int instance) {
+    return ((AsyncEnvironment) environments.getInstance(instance)).observe();
+  }
+}
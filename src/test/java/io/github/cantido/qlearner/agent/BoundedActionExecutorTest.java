@@ -0,0 +1,189 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@SuppressWarnings({"null", "javadoc"})
+public class BoundedActionExecutorTest {
+  @Rule
+  public Timeout timeout = Timeout.seconds(10);
+
+  private final List<Integer> performed = new CopyOnWriteArrayList<>();
+  private final CountDownLatch started = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private BoundedActionExecutor executor;
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    if (executor != null) {
+      executor.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyQueues() {
+    new BoundedActionExecutor(1, 0, OverflowPolicy.BLOCK, 1);
+  }
+
+  @Test
+  public void performsActionsInOrder() throws Exception {
+    executor = new BoundedActionExecutor(2, 16, OverflowPolicy.BLOCK, 4);
+    ExecutorService lane = executor.newLane();
+
+    Future<?> last = null;
+    for (int i = 0; i < 10; i++) {
+      last = lane.submit(record(i));
+    }
+    last.get();
+
+    assertThat(performed, contains(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+  }
+
+  @Test
+  public void dropsOldestWhenFull() throws Exception {
+    executor = new BoundedActionExecutor(1, 2, OverflowPolicy.DROP_OLDEST, 4);
+    ExecutorService lane = blockedLane();
+
+    Future<?> oldest = lane.submit(record(1));
+    lane.submit(record(2));
+    Future<?> newest = lane.submit(record(3));
+    release.countDown();
+    newest.get();
+
+    assertThat(oldest.isCancelled(), is(true));
+    assertThat(performed, contains(2, 3));
+    assertThat(executor.getCancelledActionCount(), is(1L));
+  }
+
+  @Test
+  public void coalescesToLatestWhenFull() throws Exception {
+    executor = new BoundedActionExecutor(1, 2, OverflowPolicy.COALESCE_LATEST, 4);
+    ExecutorService lane = blockedLane();
+
+    lane.submit(record(1));
+    lane.submit(record(2));
+    Future<?> latest = lane.submit(record(3));
+    release.countDown();
+    latest.get();
+
+    assertThat(performed, contains(3));
+    assertThat(executor.getCancelledActionCount(), is(2L));
+  }
+
+  @Test
+  public void blocksWhenFull() throws Exception {
+    executor = new BoundedActionExecutor(1, 1, OverflowPolicy.BLOCK, 4);
+    ExecutorService lane = blockedLane();
+    lane.submit(record(1));
+
+    Thread submitter = new Thread(() -> lane.submit(record(2)));
+    submitter.start();
+    while (executor.getBlockedActionCount() == 0) {
+      Thread.sleep(1);
+    }
+    assertThat(submitter.isAlive(), is(true));
+
+    release.countDown();
+    submitter.join();
+    lane.shutdown();
+    lane.awaitTermination(5, TimeUnit.SECONDS);
+
+    assertThat(performed, contains(1, 2));
+  }
+
+  @Test
+  public void sharesWorkersBetweenLanes() throws Exception {
+    executor = new BoundedActionExecutor(1, 4, OverflowPolicy.BLOCK, 1);
+    ExecutorService first = executor.newLane();
+    ExecutorService second = executor.newLane();
+
+    first.submit(record(1));
+    second.submit(record(2));
+    first.submit(record(3)).get();
+    second.submit(record(4)).get();
+
+    assertThat(performed.size(), is(4));
+  }
+
+  @Test
+  public void performsActionsGivenDirectly() throws Exception {
+    executor = new BoundedActionExecutor(2, 16, OverflowPolicy.BLOCK, 4);
+    CountDownLatch done = new CountDownLatch(1);
+    executor.execute(record(1));
+    executor.execute(done::countDown);
+    done.await();
+
+    assertThat(performed, contains(1));
+  }
+
+  @Test
+  public void rejectsActionsAfterClosing() throws Exception {
+    executor = new BoundedActionExecutor(1, 4, OverflowPolicy.BLOCK, 1);
+    ExecutorService lane = executor.newLane();
+    lane.submit(record(1)).get();
+    executor.close();
+
+    try {
+      lane.submit(record(2));
+      fail("Expected the closed executor to reject the action");
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    lane.shutdown();
+
+    assertThat(lane.awaitTermination(1, TimeUnit.SECONDS), is(true));
+    assertThat(performed, contains(1));
+  }
+
+  /**
+   * Get a lane whose worker is busy until the test releases it, so that actions pile up.
+   */
+  private ExecutorService blockedLane() throws InterruptedException {
+    ExecutorService lane = executor.newLane();
+    lane.execute(() -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    started.await();
+    return lane;
+  }
+
+  private Runnable record(int number) {
+    return () -> performed.add(number);
+  }
+}
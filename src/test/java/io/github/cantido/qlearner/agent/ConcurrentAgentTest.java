@@ -0,0 +1,117 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.github.cantido.qlearner.algorithm.model.ExplorationStrategy;
+import io.github.cantido.qlearner.algorithm.quality.ConcurrentQualityHashMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import io.github.cantido.qlearner.storage.NumberedStates;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+@SuppressWarnings({"null", "javadoc"})
+public class ConcurrentAgentTest {
+  @Rule
+  public MockitoRule mockito = MockitoJUnit.rule();
+
+  @Mock
+  TransitionSink transitionSink;
+
+  private final ExplorationStrategy firstAction = triplets -> triplets.first().getAction();
+  private final State first = NumberedStates.state(1);
+  private final State second = NumberedStates.state(2);
+
+  private ConcurrentAgent<String> agent(TransitionSink sink) {
+    return new ConcurrentAgent<>(firstAction, new ConcurrentQualityHashMap(),
+        MoreExecutors.newDirectExecutorService(), sink);
+  }
+
+  @Test
+  public void learnsWithinSession() {
+    ConcurrentAgent<String> agent = agent(transitionSink);
+
+    agent.takeNextAction("a", first);
+    agent.takeNextAction("a", second);
+
+    Action taken = agent.getLastStep("a").get().getLeavingAction();
+    verify(transitionSink).publish(new Step(first, taken), second);
+  }
+
+  @Test
+  public void keepsSessionsApart() {
+    ConcurrentAgent<String> agent = agent(transitionSink);
+
+    agent.takeNextAction("a", first);
+    agent.takeNextAction("b", second);
+
+    verify(transitionSink, never()).publish(any(), any());
+    assertThat(agent.getSessionCount(), is(2));
+  }
+
+  @Test
+  public void forgetsEndedSessions() {
+    ConcurrentAgent<String> agent = agent(transitionSink);
+
+    agent.takeNextAction("a", first);
+    agent.endSession("a");
+    assertThat(agent.getLastStep("a").isPresent(), is(false));
+    agent.takeNextAction("a", second);
+
+    verify(transitionSink, never()).publish(any(), any());
+    assertThat(agent.getLastStep("a").get().getStartingState(), is(second));
+  }
+
+  @Test
+  public void learnsEveryTransitionFromManyThreads() throws Exception {
+    AtomicLong published = new AtomicLong();
+    ConcurrentAgent<Integer> agent = new ConcurrentAgent<>(firstAction,
+        new ConcurrentQualityHashMap(), MoreExecutors.newDirectExecutorService(),
+        (step, resultingState) -> published.incrementAndGet());
+
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int thread = t;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 1_000; i++) {
+          agent.takeNextAction(thread * 10 + i % 10, NumberedStates.state(i % 7));
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(agent.getSessionCount(), is(40));
+    assertThat(published.get(), is(4_000L - 40));
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.agent.VectorizedRunnerTest.Corridor;
+import io.github.cantido.qlearner.algorithm.model.ExplorationStrategy;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@SuppressWarnings({"null", "javadoc"})
+public class EpisodeRunnerTest {
+  private final ExplorationStrategy firstAction = triplets -> triplets.first().getAction();
+  private final Corridor corridor = new Corridor(0);
+  private final Agent agent =
+      new AgentBuilder(corridor).setExplorationStrategy(firstAction).getAgent();
+
+  private final EpisodeRunner<Corridor> runner = new EpisodeRunner<>(agent, corridor,
+      environment -> environment.position >= 3, environment -> environment.position = 0);
+
+  @Test
+  public void runsEpisodeUntilTerminal() throws Exception {
+    EpisodeStatistics episode = runner.runEpisode();
+
+    assertThat(episode.getSteps(), is(3L));
+    assertThat(episode.isTruncated(), is(false));
+    assertThat(corridor.position, is(0));
+    assertThat(agent.getLastStep().isPresent(), is(false));
+  }
+
+  @Test
+  public void runsGivenNumberOfEpisodes() throws Exception {
+    List<EpisodeStatistics> episodes = runner.runEpisodes(4);
+
+    assertThat(episodes.stream().map(EpisodeStatistics::getEpisode).collect(Collectors.toList()),
+        contains(0L, 1L, 2L, 3L));
+    assertThat(runner.getTotalSteps(), is(12L));
+  }
+
+  @Test
+  public void truncatesLongEpisodes() throws Exception {
+    runner.setMaximumSteps(2);
+
+    EpisodeStatistics episode = runner.runEpisode();
+
+    assertThat(episode.getSteps(), is(2L));
+    assertThat(episode.isTruncated(), is(true));
+  }
+
+  @Test
+  public void runsUntilConverged() throws Exception {
+    boolean converged = runner.runUntil(history -> history.size() == 5, 100);
+
+    assertThat(converged, is(true));
+    assertThat(runner.getHistory().size(), is(5));
+  }
+
+  @Test
+  public void stopsAfterMaximumEpisodes() throws Exception {
+    boolean converged = runner.runUntil(history -> false, 3);
+
+    assertThat(converged, is(false));
+    assertThat(runner.getHistory().size(), is(3));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsZeroMaximumSteps() {
+    runner.setMaximumSteps(0);
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+@SuppressWarnings({"null", "javadoc"})
+public class FixedRateAgentSchedulerTest {
+  @Rule
+  public MockitoRule mockito = MockitoJUnit.rule();
+
+  @Mock
+  Agent agent;
+  @Mock
+  ScheduledExecutorService executor;
+
+  private final PriorityQueue<PendingTick> pending = new PriorityQueue<>();
+  private long now = 0;
+  private ScheduledAgent cancelWhenRescheduling;
+  private FixedRateAgentScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    when(executor.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class)))
+        .thenAnswer(invocation -> {
+          Object[] arguments = invocation.getArguments();
+          long delay = ((TimeUnit) arguments[2]).toNanos((Long) arguments[1]);
+          if (cancelWhenRescheduling != null) {
+            cancelWhenRescheduling.cancel();
+          }
+          PendingTick tick = new PendingTick((Runnable) arguments[0], now + delay);
+          pending.add(tick);
+          return tick;
+        });
+    scheduler = new FixedRateAgentScheduler(executor, () -> now);
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.close();
+  }
+
+  /**
+   * Move the clock forward, running every tick that comes due on the way.
+   */
+  private void advanceTo(long millis) {
+    long time = TimeUnit.MILLISECONDS.toNanos(millis);
+    while (!pending.isEmpty() && pending.peek().due <= time) {
+      PendingTick tick = pending.poll();
+      if (!tick.cancelled) {
+        now = Math.max(now, tick.due);
+        tick.task.run();
+      }
+    }
+    now = Math.max(now, time);
+  }
+
+  private Runnable taking(long millis) {
+    return () -> now += TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNoThreads() {
+    new FixedRateAgentScheduler(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsZeroPeriod() {
+    scheduler.schedule(() -> { }, 0, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void drivesAgentOnEveryTick() throws Exception {
+    ScheduledAgent scheduled = scheduler.schedule(agent, 5, TimeUnit.MILLISECONDS);
+    advanceTo(10);
+
+    verify(agent, times(3)).takeNextAction();
+    verify(agent, times(3)).await();
+    assertThat(scheduled.getTicks(), is(3L));
+    assertThat(scheduled.getLatency().getCount(), is(3L));
+    assertThat(scheduled.getJitter().getCount(), is(2L));
+  }
+
+  @Test
+  public void keepsToFixedRate() {
+    ScheduledAgent scheduled = scheduler.schedule(taking(3), 10, TimeUnit.MILLISECONDS);
+    advanceTo(500);
+
+    assertThat(scheduled.getTicks(), is(51L));
+    assertThat(scheduled.getOverrunCount(), is(0L));
+  }
+
+  @Test
+  public void skipsTicksAfterOverrun() {
+    ScheduledAgent scheduled = scheduler.schedule(taking(25), 10, TimeUnit.MILLISECONDS);
+    advanceTo(0);
+
+    assertThat(scheduled.getTicks(), is(1L));
+    assertThat(scheduled.getOverrunCount(), is(2L));
+
+    advanceTo(30);
+
+    assertThat(scheduled.getTicks(), is(2L));
+    assertThat(scheduled.getOverrunCount(), is(4L));
+  }
+
+  @Test
+  public void carriesOnAfterFailure() {
+    ScheduledAgent scheduled = scheduler.schedule(() -> {
+      throw new IllegalStateException("broken actuator");
+    }, 5, TimeUnit.MILLISECONDS);
+    advanceTo(10);
+
+    assertThat(scheduled.getTicks(), is(3L));
+    assertThat(scheduled.getFailureCount(), is(3L));
+  }
+
+  @Test
+  public void stopsTickingWhenCancelled() {
+    ScheduledAgent scheduled = scheduler.schedule(() -> { }, 5, TimeUnit.MILLISECONDS);
+    advanceTo(0);
+
+    scheduled.cancel();
+    advanceTo(100);
+
+    assertThat(scheduled.getTicks(), is(1L));
+  }
+
+  @Test
+  public void stopsTickingWhenCancelledWhileTheNextTickIsScheduled() {
+    ScheduledAgent scheduled = scheduler.schedule(() -> { }, 5, TimeUnit.MILLISECONDS);
+    cancelWhenRescheduling = scheduled;
+    advanceTo(100);
+
+    assertThat(scheduled.getTicks(), is(1L));
+  }
+
+  /**
+   * A tick waiting in the fake executor.
+   */
+  private static final class PendingTick implements ScheduledFuture<Object> {
+    private final Runnable task;
+    private final long due;
+    private boolean cancelled;
+
+    private PendingTick(Runnable task, long due) {
+      this.task = task;
+      this.due = due;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(due, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(due, ((PendingTick) other).due);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      cancelled = true;
+      return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+      return cancelled;
+    }
+
+    @Override
+    public Object get() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object get(long timeout, TimeUnit unit) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
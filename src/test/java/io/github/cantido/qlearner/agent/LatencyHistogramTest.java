@@ -0,0 +1,84 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+@SuppressWarnings({"null", "javadoc"})
+public class LatencyHistogramTest {
+  private final LatencyHistogram histogram = new LatencyHistogram();
+
+  @Test
+  public void isEmptyAtFirst() {
+    assertThat(histogram.getCount(), is(0L));
+    assertThat(histogram.getMax(TimeUnit.NANOSECONDS), is(0L));
+    assertThat(histogram.getValueAtPercentile(99, TimeUnit.NANOSECONDS), is(0L));
+  }
+
+  @Test
+  public void countsSmallValuesExactly() {
+    for (int i = 0; i < 8; i++) {
+      histogram.record(i);
+    }
+
+    assertThat(histogram.getValueAtPercentile(50, TimeUnit.NANOSECONDS), is(3L));
+    assertThat(histogram.getValueAtPercentile(100, TimeUnit.NANOSECONDS), is(7L));
+    assertThat(histogram.getMean(TimeUnit.NANOSECONDS), is(closeTo(3.5, 0.001)));
+  }
+
+  @Test
+  public void readsPercentilesWithinAnEighth() {
+    for (long micros = 1; micros <= 1000; micros++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    assertThat(histogram.getValueAtPercentile(50, TimeUnit.MICROSECONDS),
+        is(both(greaterThanOrEqualTo(500L)).and(lessThanOrEqualTo(563L))));
+    assertThat(histogram.getValueAtPercentile(99, TimeUnit.MICROSECONDS),
+        is(both(greaterThanOrEqualTo(990L)).and(lessThanOrEqualTo(1000L))));
+    assertThat(histogram.getMax(TimeUnit.MICROSECONDS), is(1000L));
+    assertThat(histogram.getCount(), is(1000L));
+  }
+
+  @Test
+  public void countsNegativeDurationsAsZero() {
+    histogram.record(-5);
+
+    assertThat(histogram.getMax(TimeUnit.NANOSECONDS), is(0L));
+    assertThat(histogram.getValueAtPercentile(100, TimeUnit.NANOSECONDS), is(0L));
+  }
+
+  @Test
+  public void countsHugeDurations() {
+    histogram.record(Long.MAX_VALUE);
+
+    assertThat(histogram.getValueAtPercentile(100, TimeUnit.NANOSECONDS), is(Long.MAX_VALUE));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsPercentileOverHundred() {
+    histogram.getValueAtPercentile(101, TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.github.cantido.qlearner.algorithm.quality.QualityUpdater;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@SuppressWarnings({"null", "javadoc"})
+public class LearnerTest {
+  @Rule
+  public MockitoRule mockito = MockitoJUnit.rule();
+
+  @Mock
+  QualityUpdater updater;
+  @Mock
+  State startingState;
+  @Mock
+  State resultingState;
+  @Mock
+  Action action;
+
+  TransitionQueue transitions = new TransitionQueue(16);
+  Learner learner;
+  Step step;
+
+  @Before
+  public void setUp() {
+    learner = new Learner(transitions, updater, 2);
+    step = new Step(startingState, action);
+  }
+
+  @Test
+  public void learnsFromEveryQueuedTransition() {
+    for (int i = 0; i < 5; i++) {
+      transitions.publish(step, resultingState);
+    }
+
+    assertThat(learner.learnAll(), is(5L));
+    verify(updater, times(5)).updateQuality(step, resultingState);
+    assertThat(learner.getTransitionsLearned(), is(5L));
+  }
+
+  @Test
+  public void drainsQueueBeforeStopping() throws InterruptedException {
+    Thread thread = new Thread(learner);
+    thread.start();
+    for (int i = 0; i < 100; i++) {
+      transitions.publish(step, resultingState);
+    }
+    learner.stop();
+    thread.join();
+
+    assertThat(learner.getTransitionsLearned(), is(100L));
+    assertThat(transitions.size(), is(0));
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import static io.github.cantido.qlearner.storage.NumberedStates.action;
+import static io.github.cantido.qlearner.storage.NumberedStates.state;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.DiscountFactor;
+import io.github.cantido.qlearner.algorithm.model.LearningRate;
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.RowQualityMap;
+import io.github.cantido.qlearner.algorithm.quality.BackwardInduction;
+import io.github.cantido.qlearner.algorithm.quality.ConcurrentQualityHashMap;
+import io.github.cantido.qlearner.algorithm.quality.QualityUpdater;
+import io.github.cantido.qlearner.algorithm.quality.ShardedQualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+@SuppressWarnings({"null", "javadoc"})
+public class PartitionedLearnerTest {
+  /**
+   * Remembers which threads have written to it.
+   */
+  static class WriterRecordingMap extends ConcurrentQualityHashMap {
+    final Set<Thread> writers = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void put(State state, Action action, Quality quality) {
+      writers.add(Thread.currentThread());
+      super.put(state, action, quality);
+    }
+  }
+
+  Map<Integer, WriterRecordingMap> shards = new ConcurrentHashMap<>();
+  ShardedQualityMap qualityMap;
+  PartitionedLearner learner;
+
+  @Before
+  public void setUp() {
+    qualityMap = new ShardedQualityMap(3, () -> {
+      WriterRecordingMap shard = new WriterRecordingMap();
+      shards.put(shards.size(), shard);
+      return shard;
+    });
+    QualityUpdater updater = new QualityUpdater(qualityMap, new BackwardInduction(),
+        new LearningRate(1), new DiscountFactor(1));
+    learner = new PartitionedLearner(qualityMap, updater, 8, 4);
+  }
+
+  @Test
+  public void learnsFromEveryTransition() {
+    learner.start();
+    for (int i = 0; i < 300; i++) {
+      learner.publish(new Step(state(i), action(i % 3)), state(i + 1));
+    }
+    learner.close();
+
+    assertThat(learner.getTransitionsLearned(), is(300L));
+  }
+
+  @Test
+  public void writesEachShardFromOneThread() {
+    learner.start();
+    for (int i = 0; i < 300; i++) {
+      learner.publish(new Step(state(i), action(i % 3)), state(i + 1));
+    }
+    learner.close();
+
+    for (WriterRecordingMap shard : shards.values()) {
+      assertThat(shard.writers.size(), is(1));
+    }
+  }
+
+  @Test
+  public void learnsIntoDefaultShardsFromConcurrentPublishers() throws Exception {
+    ShardedQualityMap defaultShards = new ShardedQualityMap(4);
+    QualityUpdater updater = new QualityUpdater(defaultShards, new BackwardInduction(),
+        new LearningRate(1), new DiscountFactor(1));
+    PartitionedLearner concurrentLearner = new PartitionedLearner(defaultShards, updater, 8, 4);
+    concurrentLearner.start();
+
+    int publisherCount = 4;
+    int statesPerPublisher = 250;
+    CountDownLatch ready = new CountDownLatch(publisherCount);
+    List<Thread> publishers = new ArrayList<>();
+    for (int p = 0; p < publisherCount; p++) {
+      int first = p * statesPerPublisher;
+      Thread publisher = new Thread(() -> {
+        ready.countDown();
+        try {
+          ready.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        for (int i = first; i < first + statesPerPublisher; i++) {
+          concurrentLearner.publish(new Step(state(i), action(i % 3)), state(i + 1));
+        }
+      });
+      publisher.start();
+      publishers.add(publisher);
+    }
+    for (Thread publisher : publishers) {
+      publisher.join();
+    }
+    concurrentLearner.close();
+
+    int total = publisherCount * statesPerPublisher;
+    assertThat(concurrentLearner.getTransitionsLearned(), is((long) total));
+    for (int i = 0; i < total; i++) {
+      RowQualityMap shard =
+          (RowQualityMap) defaultShards.getShard(defaultShards.shardOf(state(i)));
+      assertThat(shard.getRow(state(i)).containsKey(action(i % 3)), is(true));
+    }
+  }
+
+  @Test
+  public void keepsTransitionsPublishedBeforeStarting() {
+    learner.publish(new Step(state(1), action(1)), state(2));
+    assertThat(learner.getQueue(qualityMap.shardOf(state(1))).size(), is(1));
+
+    learner.start();
+    learner.close();
+
+    assertThat(learner.getTransitionsLearned(), is(1L));
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+@SuppressWarnings({"null", "javadoc"})
+public class TransitionQueueTest {
+  @Rule
+  public MockitoRule mockito = MockitoJUnit.rule();
+
+  @Mock
+  State state;
+
+  TransitionQueue queue = new TransitionQueue(4);
+
+  private Step step(int number) {
+    return new Step(state, new NumberedAction(number));
+  }
+
+  @Test
+  public void roundsCapacityUpToPowerOfTwo() {
+    assertThat(new TransitionQueue(5).getCapacity(), is(8));
+  }
+
+  @Test
+  public void drainsInPublishOrder() {
+    queue.publish(step(1), state);
+    queue.publish(step(2), state);
+    queue.publish(step(3), state);
+
+    List<Step> drained = new ArrayList<>();
+    int count = queue.drain((step, resultingState) -> drained.add(step), 2);
+
+    assertThat(count, is(2));
+    assertThat(drained, contains(step(1), step(2)));
+    assertThat(queue.size(), is(1));
+  }
+
+  @Test
+  public void refusesOfferWhenFull() {
+    for (int i = 0; i < 4; i++) {
+      assertThat(queue.offer(step(i), state), is(true));
+    }
+
+    assertThat(queue.offer(step(4), state), is(false));
+    assertThat(queue.getHighWaterMark(), is(4L));
+  }
+
+  @Test
+  public void deliversEveryTransitionFromManyPublishers() throws InterruptedException {
+    int publishers = 4;
+    int transitionsEach = 5_000;
+    AtomicLong sum = new AtomicLong();
+    Thread[] threads = new Thread[publishers];
+    for (int i = 0; i < publishers; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 1; j <= transitionsEach; j++) {
+          queue.publish(step(j), state);
+        }
+      });
+      threads[i].start();
+    }
+
+    long expected = (long) publishers * transitionsEach * (transitionsEach + 1) / 2;
+    for (int attempt = 0; sum.get() < expected; attempt++) {
+      if (queue.drain((step, resultingState) -> sum.addAndGet(
+          ((NumberedAction) step.getLeavingAction()).number), 16) > 0) {
+        attempt = 0;
+      }
+      TransitionQueue.idle(attempt);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(sum.get(), is(expected));
+    assertThat(queue.size(), is(0));
+    assertThat(queue.getBlockedPublishCount(), is(greaterThan(0L)));
+  }
+
+  private static final class NumberedAction extends Action {
+    private final int number;
+
+    private NumberedAction(int number) {
+      this.number = number;
+    }
+
+    @Override
+    public void run() {}
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof NumberedAction && ((NumberedAction) other).number == number;
+    }
+
+    @Override
+    public int hashCode() {
+      return number;
+    }
+  }
+}
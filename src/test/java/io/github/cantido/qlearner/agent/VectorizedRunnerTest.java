@@ -0,0 +1,199 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.agent;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.ExplorationStrategy;
+import io.github.cantido.qlearner.algorithm.model.Reward;
+import io.github.cantido.qlearner.algorithm.quality.QualityHashMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.Environment;
+import io.github.cantido.qlearner.client.State;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+@SuppressWarnings({"null", "javadoc"})
+public class VectorizedRunnerTest {
+  private static final int GOAL = 2;
+
+  private final List<Integer> selectedFor = new ArrayList<>();
+  private final ExplorationStrategy firstAction = triplets -> {
+    selectedFor.add(((Position) triplets.first().getState()).position);
+    return triplets.first().getAction();
+  };
+  private final List<Integer> learnedFrom = new ArrayList<>();
+  private final TransitionSink recordingSink = (step, resultingState) ->
+      learnedFrom.add(((Position) step.getStartingState()).position);
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNoEnvironments() {
+    runner(Collections.emptyList());
+  }
+
+  @Test
+  public void learnsFromEveryEnvironmentOnEveryTick() {
+    VectorizedRunner<Corridor> runner = runner(corridors(0, 0, 0));
+
+    runner.runTicks(3);
+
+    assertThat(learnedFrom, contains(0, 0, 0, 1, 1, 1));
+    assertThat(runner.getTicks(), is(3L));
+  }
+
+  @Test
+  public void resetsFinishedEpisodesAndCarriesOn() {
+    List<Corridor> corridors = corridors(0, 1);
+    VectorizedRunner<Corridor> runner = runner(corridors);
+
+    runner.runTicks(2);
+
+    assertThat(runner.getEpisodesCompleted(), is(1L));
+    assertThat(corridors.get(0).position, is(2));
+    assertThat(corridors.get(1).position, is(1));
+  }
+
+  @Test
+  public void runsUntilEnoughEpisodesComplete() {
+    VectorizedRunner<Corridor> runner = runner(corridors(0, 0, 0));
+
+    runner.runEpisodes(6);
+
+    assertThat(runner.getEpisodesCompleted(), is(6L));
+    assertThat(runner.getTicks(), is(5L));
+  }
+
+  @Test
+  public void learnsInOrderOfState() {
+    VectorizedRunner<Corridor> runner = runner(corridors(1, 0, 1, 0));
+
+    runner.runTicks(2);
+
+    assertThat(learnedFrom, contains(0, 0, 1, 1));
+  }
+
+  @Test
+  public void selectsInOrderOfStateAfterResettingEnvironments() {
+    VectorizedRunner<Corridor> runner = runner(corridors(2, 1));
+
+    runner.tick();
+
+    assertThat(selectedFor, contains(0, 1));
+  }
+
+  @Test
+  public void forgetsLastStepsOnReset() {
+    VectorizedRunner<Corridor> runner = runner(corridors(0, 0));
+
+    runner.tick();
+    runner.reset();
+    runner.tick();
+
+    assertThat(learnedFrom.isEmpty(), is(true));
+  }
+
+  private VectorizedRunner<Corridor> runner(List<Corridor> corridors) {
+    return new VectorizedRunner<Corridor>(corridors, corridor -> corridor.position >= GOAL,
+        corridor -> corridor.position = 0, firstAction, new QualityHashMap(), recordingSink);
+  }
+
+  private static List<Corridor> corridors(Integer... positions) {
+    List<Corridor> corridors = new ArrayList<>();
+    for (int position : Arrays.asList(positions)) {
+      corridors.add(new Corridor(position));
+    }
+    return corridors;
+  }
+
+  /**
+   * An environment that moves one step towards its goal on every action.
+   */
+  static class Corridor implements Environment {
+    final Action advance = new Advance(this);
+    int position;
+
+    Corridor(int position) {
+      this.position = position;
+    }
+
+    @Override
+    public State getState() {
+      return new Position(position, advance);
+    }
+  }
+
+  static class Position extends State {
+    final int position;
+    final Set<Action> actions;
+
+    Position(int position, Action advance) {
+      this.position = position;
+      this.actions = Collections.singleton(advance);
+    }
+
+    @Override
+    public Reward getReward() {
+      return new Reward(position == GOAL ? 1 : 0);
+    }
+
+    @Override
+    public Set<Action> getActions() {
+      return actions;
+    }
+
+    @Override
+    public int hashCode() {
+      return position;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      return obj instanceof Position && ((Position) obj).position == position;
+    }
+  }
+
+  static class Advance extends Action {
+    final Corridor corridor;
+
+    Advance(Corridor corridor) {
+      this.corridor = corridor;
+    }
+
+    @Override
+    public void run() {
+      corridor.position++;
+    }
+
+    @Override
+    public int hashCode() {
+      return 1;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      return obj instanceof Advance;
+    }
+  }
+}
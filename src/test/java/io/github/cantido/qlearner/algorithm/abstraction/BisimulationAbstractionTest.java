@@ -0,0 +1,89 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.abstraction;
+
+import static io.github.cantido.qlearner.algorithm.approximation.FeatureStates.rewarding;
+import static io.github.cantido.qlearner.storage.NumberedStates.action;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.agent.Step;
+import io.github.cantido.qlearner.client.State;
+import org.junit.Test;
+
+@SuppressWarnings({"null", "javadoc"})
+public class BisimulationAbstractionTest {
+  private final BisimulationAbstraction abstraction = new BisimulationAbstraction(0.01, 1);
+
+  // Two corridors: a, b -> goal, and c -> d -> trap
+  private final State a = rewarding(0, 1);
+  private final State b = rewarding(0, 2);
+  private final State c = rewarding(0, 3);
+  private final State d = rewarding(0, 4);
+  private final State goal = rewarding(10, 5);
+  private final State trap = rewarding(-10, 6);
+
+  @Test
+  public void leavesUnseenStatesAlone() {
+    assertThat(abstraction.abstractState(a), is(a));
+    assertThat(abstraction.getVersion(), is(0L));
+  }
+
+  @Test
+  public void groupsStatesThatLeadToTheSameRewards() {
+    explore();
+
+    assertThat(abstraction.abstractState(b), is(a));
+    assertThat(abstraction.abstractState(a), is(a));
+  }
+
+  @Test
+  public void separatesStatesThatLeadToDifferentRewards() {
+    explore();
+
+    assertThat(abstraction.abstractState(d), is(not(abstraction.abstractState(a))));
+    assertThat(abstraction.abstractState(goal), is(goal));
+    assertThat(abstraction.abstractState(trap), is(trap));
+  }
+
+  @Test
+  public void separatesStatesByHowFarAwayTheirRewardIs() {
+    explore();
+
+    // c leads to d, which leads to the trap, so c differs from d even though both lead to 0s
+    assertThat(abstraction.abstractState(c), is(not(abstraction.abstractState(d))));
+    assertThat(abstraction.getGroupCount(), is(5));
+    assertThat(abstraction.getStateCount(), is(6));
+  }
+
+  @Test
+  public void changesVersionOnlyWhenGroupsChange() {
+    explore();
+    long version = abstraction.getVersion();
+
+    abstraction.publish(new Step(a, action(0)), goal);
+
+    assertThat(abstraction.getVersion(), is(version));
+  }
+
+  private void explore() {
+    abstraction.publish(new Step(a, action(0)), goal);
+    abstraction.publish(new Step(b, action(0)), goal);
+    abstraction.publish(new Step(c, action(0)), d);
+    abstraction.publish(new Step(d, action(0)), trap);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.abstraction;
+
+import static io.github.cantido.qlearner.storage.NumberedStates.action;
+import static io.github.cantido.qlearner.storage.NumberedStates.state;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.quality.QualityHashMap;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+@SuppressWarnings({"null", "javadoc"})
+public class StateAggregatingQualityMapTest {
+  private final QualityHashMap table = new QualityHashMap();
+  private final AtomicInteger lookups = new AtomicInteger();
+  /**
+   * Every number shares its values with the others of the same parity.
+   */
+  private final StateAbstraction parity = state -> {
+    lookups.incrementAndGet();
+    return state(state.hashCode() % 2);
+  };
+  private final StateAggregatingQualityMap map = new StateAggregatingQualityMap(table, parity);
+
+  @Test
+  public void sharesValuesBetweenEquivalentStates() {
+    map.put(state(2), action(0), new Quality(5));
+
+    assertThat(map.get(state(4), action(0)), is(new Quality(5)));
+    assertThat(map.getBestQuality(state(6)), is(new Quality(5)));
+    assertThat(map.get(state(3), action(0)), is(map.getDefaultQuality()));
+    assertThat(table.getStates().size(), is(1));
+  }
+
+  @Test
+  public void returnsTripletsForTheRawState() {
+    map.put(state(2), action(0), new Quality(5));
+
+    assertThat(map.getTriplet(state(4), action(0)).getState(), is(state(4)));
+  }
+
+  @Test
+  public void remembersAbstractStates() {
+    for (int i = 0; i < 10; i++) {
+      map.get(state(7), action(0));
+    }
+
+    assertThat(lookups.get(), is(1));
+    assertThat(map.getCacheMissCount(), is(1L));
+    assertThat(map.getCacheHitCount(), is(9L));
+  }
+
+  @Test
+  public void forgetsAbstractStatesWhenTheVersionChanges() {
+    AtomicInteger version = new AtomicInteger();
+    StateAbstraction changing = new StateAbstraction() {
+      @Override
+      public State abstractState(State state) {
+        return state(version.get());
+      }
+
+      @Override
+      public long getVersion() {
+        return version.get();
+      }
+    };
+    StateAggregatingQualityMap versioned = new StateAggregatingQualityMap(table, changing);
+    versioned.put(state(9), action(0), new Quality(1));
+
+    version.incrementAndGet();
+
+    assertThat(versioned.get(state(9), action(0)), is(versioned.getDefaultQuality()));
+    assertThat(table.get(state(0), action(0)), is(new Quality(1)));
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedStates() {
+    StateAggregatingQualityMap small = new StateAggregatingQualityMap(table, parity, 2);
+    small.get(state(1), action(0));
+    small.get(state(2), action(0));
+    small.get(state(3), action(0));
+    small.get(state(1), action(0));
+
+    assertThat(lookups.get(), is(4));
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import io.github.cantido.qlearner.storage.NumberedStates;
+import org.junit.Test;
+
+@SuppressWarnings({"null", "javadoc"})
+public class FeatureHashingQualityMapTest {
+  private final FeatureHashingQualityMap map = new FeatureHashingQualityMap(1 << 16, 3);
+  private final State state = NumberedStates.state(7);
+  private final Action left = NumberedStates.action(0);
+  private final Action right = NumberedStates.action(1);
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMoreHashesThanSlots() {
+    new FeatureHashingQualityMap(2, 3);
+  }
+
+  @Test
+  public void returnsDefaultQualityWhenEmpty() {
+    map.setDefaultQuality(new Quality(5));
+
+    assertThat(map.get(state, left), is(new Quality(5)));
+    assertThat(map.getBestQuality(state), is(new Quality(5)));
+    assertThat(map.getEstimatedCollisionRate(), is(0.0));
+  }
+
+  @Test
+  public void storesQuality() {
+    map.put(state, left, new Quality(1.5));
+
+    assertThat(map.get(state, left).doubleValue(), is(closeTo(1.5, 1e-6)));
+    assertThat(map.get(state, right).doubleValue(), is(closeTo(0, 1e-6)));
+  }
+
+  @Test
+  public void getsHighestQualityForBest() {
+    map.put(state, left, new Quality(1));
+    map.put(state, right, new Quality(2));
+
+    assertThat(map.getBestQuality(state).doubleValue(), is(closeTo(2, 1e-6)));
+  }
+
+  @Test
+  public void staysAccurateWithManyStates() {
+    for (int i = 0; i < 5_000; i++) {
+      map.put(NumberedStates.state(i), left, new Quality(i % 10));
+    }
+
+    double totalError = 0;
+    for (int i = 0; i < 5_000; i++) {
+      totalError += Math.abs(map.get(NumberedStates.state(i), left).doubleValue() - i % 10);
+    }
+    assertThat(totalError / 5_000, is(closeTo(0, 0.5)));
+  }
+
+  @Test
+  public void estimatesCrowding() {
+    for (int i = 0; i < 5_000; i++) {
+      map.put(NumberedStates.state(i), left, new Quality(1));
+    }
+
+    assertThat(map.getEstimatedPairCount(), is(closeTo(5_000, 250)));
+    assertThat(map.getEstimatedCollisionRate(), is(closeTo(1 - Math.pow(1 - map.getLoadFactor(),
+        3), 1e-9)));
+    assertThat(map.getEstimatedCollisionRate() > 0.1, is(true));
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import io.github.cantido.qlearner.algorithm.model.Reward;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.ContinuousState;
+import io.github.cantido.qlearner.client.FeatureState;
+import io.github.cantido.qlearner.client.State;
+import io.github.cantido.qlearner.storage.NumberedStates;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Simple {@link FeatureState}s and {@link ContinuousState}s for testing the approximation
+ * classes. Every state can take the {@link NumberedStates#ACTIONS}.
+ */
+@SuppressWarnings({"null", "javadoc"})
+public final class FeatureStates {
+  private FeatureStates() {
+    throw new AssertionError("FeatureStates is a utility class and should not be instantiated");
+  }
+
+  public static State sparse(int[] indices, double[] values) {
+    return sparse(indices, values, 0);
+  }
+
+  public static State sparse(int[] indices, double[] values, double reward) {
+    return new SparseState(indices, values, reward);
+  }
+
+  public static State continuous(double... inputs) {
+    return new ContinuousPoint(inputs, 0);
+  }
+
+  public static State rewarding(double reward, double... inputs) {
+    return new ContinuousPoint(inputs, reward);
+  }
+
+  public static State plain() {
+    return NumberedStates.state(0);
+  }
+
+  private static final class SparseState extends State implements FeatureState {
+    private final int[] indices;
+    private final double[] values;
+    private final double reward;
+
+    private SparseState(int[] indices, double[] values, double reward) {
+      this.indices = indices;
+      this.values = values;
+      this.reward = reward;
+    }
+
+    @Override
+    public int[] getFeatureIndices() {
+      return indices;
+    }
+
+    @Override
+    public double[] getFeatureValues() {
+      return values;
+    }
+
+    @Override
+    public Reward getReward() {
+      return new Reward(reward);
+    }
+
+    @Override
+    public Set<Action> getActions() {
+      return NumberedStates.ACTIONS;
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(indices) * 31 + Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      return obj instanceof SparseState
+          && Arrays.equals(((SparseState) obj).indices, indices)
+          && Arrays.equals(((SparseState) obj).values, values);
+    }
+
+    @Override
+    public String toString() {
+      return "SparseState" + Arrays.toString(indices) + Arrays.toString(values);
+    }
+  }
+
+  private static final class ContinuousPoint extends State implements ContinuousState {
+    private final double[] inputs;
+    private final double reward;
+
+    private ContinuousPoint(double[] inputs, double reward) {
+      this.inputs = inputs;
+      this.reward = reward;
+    }
+
+    @Override
+    public double[] getInputs() {
+      return inputs;
+    }
+
+    @Override
+    public Reward getReward() {
+      return new Reward(reward);
+    }
+
+    @Override
+    public Set<Action> getActions() {
+      return NumberedStates.ACTIONS;
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(inputs);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      return obj instanceof ContinuousPoint
+          && Arrays.equals(((ContinuousPoint) obj).inputs, inputs);
+    }
+
+    @Override
+    public String toString() {
+      return "ContinuousPoint" + Arrays.toString(inputs);
+    }
+  }
+}
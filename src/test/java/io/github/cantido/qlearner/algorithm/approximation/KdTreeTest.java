@@ -0,0 +1,119 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+@SuppressWarnings({"null", "javadoc"})
+public class KdTreeTest {
+  private final Random random = new Random(3);
+
+  @Test
+  public void findsTheSameNeighboursAsALinearScan() {
+    KdTree tree = new KdTree(3, 10_000);
+    double[][] points = new double[2_000][];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = new double[] {random.nextDouble(), random.nextDouble(), random.nextDouble()};
+      tree.put(points[i], i);
+    }
+
+    double[] values = new double[5];
+    double[] distances = new double[5];
+    for (int query = 0; query < 100; query++) {
+      double[] point = {random.nextDouble(), random.nextDouble(), random.nextDouble()};
+      double[] expected = new double[points.length];
+      for (int i = 0; i < points.length; i++) {
+        expected[i] = squaredDistance(points[i], point);
+      }
+      Arrays.sort(expected);
+
+      assertThat(tree.nearest(point, values, distances), is(5));
+      assertThat(distances, is(Arrays.copyOf(expected, 5)));
+    }
+  }
+
+  @Test
+  public void updatesExistingPoints() {
+    KdTree tree = new KdTree(1, 10);
+    tree.put(new double[] {1}, 1);
+    tree.put(new double[] {1}, 2);
+
+    double[] values = new double[1];
+    assertThat(tree.nearest(new double[] {1}, values, new double[1]), is(1));
+    assertThat(tree.size(), is(1));
+    assertThat(values[0], is(2.0));
+  }
+
+  @Test
+  public void staysShallowWhenPointsArriveInOrder() {
+    KdTree tree = new KdTree(1, 1 << 16);
+    for (int i = 0; i < 1 << 14; i++) {
+      tree.put(new double[] {i}, i);
+    }
+
+    assertThat(tree.getDepth(), is(lessThanOrEqualTo(2 * 15)));
+  }
+
+  @Test
+  public void rebuildsLittleWhenPointsArriveInOrder() {
+    int count = 1 << 16;
+    KdTree tree = new KdTree(2, count);
+    for (int i = 0; i < count; i++) {
+      tree.put(new double[] {i, 0.5 * i}, i);
+    }
+
+    int log = 16;
+    assertThat(tree.getDepth(), is(lessThanOrEqualTo(2 * (log + 1))));
+    assertThat(tree.getRebuiltNodeCount(), is(lessThanOrEqualTo(4L * log * count)));
+
+    double[] values = new double[1];
+    assertThat(tree.nearest(new double[] {1000.2, 500.1}, values, new double[1]), is(1));
+    assertThat(values[0], is(1000.0));
+  }
+
+  @Test
+  public void evictsTheOldestPoints() {
+    KdTree tree = new KdTree(1, 3);
+    for (int i = 0; i < 10; i++) {
+      tree.put(new double[] {i}, i);
+    }
+
+    double[] values = new double[10];
+    assertThat(tree.size(), is(3));
+    assertThat(tree.nearest(new double[] {0}, values, new double[10]), is(3));
+    assertThat(Arrays.copyOf(values, 3), is(new double[] {7, 8, 9}));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesPointsOfTheWrongSize() {
+    new KdTree(2, 10).put(new double[] {1}, 1);
+  }
+
+  private static double squaredDistance(double[] a, double[] b) {
+    double sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += (a[i] - b[i]) * (a[i] - b[i]);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import static io.github.cantido.qlearner.algorithm.approximation.FeatureStates.sparse;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.agent.Step;
+import io.github.cantido.qlearner.algorithm.model.DiscountFactor;
+import io.github.cantido.qlearner.algorithm.model.LearningRate;
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.quality.BackwardInduction;
+import io.github.cantido.qlearner.algorithm.quality.QualityUpdater;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import io.github.cantido.qlearner.storage.NumberedStates;
+import org.junit.Test;
+
+@SuppressWarnings({"null", "javadoc"})
+public class LinearQualityFunctionTest {
+  private final LinearQualityFunction function = new LinearQualityFunction(4);
+  private final Action left = NumberedStates.action(0);
+  private final Action right = NumberedStates.action(1);
+  private final State both = sparse(new int[] {0, 1}, new double[] {1, 1});
+  private final State first = sparse(new int[] {0}, new double[] {1});
+  private final State second = sparse(new int[] {1}, new double[] {1});
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNoFeatures() {
+    new LinearQualityFunction(0);
+  }
+
+  @Test
+  public void returnsDefaultQualityWhenEmpty() {
+    function.setDefaultQuality(new Quality(3));
+
+    assertThat(function.get(both, left), is(new Quality(3)));
+    assertThat(function.getBestQuality(both), is(new Quality(3)));
+  }
+
+  @Test
+  public void storesQualityExactly() {
+    function.put(both, left, new Quality(4));
+
+    assertThat(function.get(both, left).doubleValue(), is(closeTo(4, 1e-9)));
+  }
+
+  @Test
+  public void generalizesToStatesSharingFeatures() {
+    function.put(both, left, new Quality(4));
+
+    assertThat(function.get(first, left).doubleValue(), is(closeTo(2, 1e-9)));
+    assertThat(function.get(second, left).doubleValue(), is(closeTo(2, 1e-9)));
+  }
+
+  @Test
+  public void keepsActionsApart() {
+    function.put(both, left, new Quality(4));
+
+    assertThat(function.get(both, right), is(Quality.ZERO));
+  }
+
+  @Test
+  public void getsHighestQualityForBest() {
+    function.put(first, left, new Quality(-1));
+    function.put(first, right, new Quality(5));
+
+    assertThat(function.getBestQuality(first).doubleValue(), is(closeTo(5, 1e-9)));
+  }
+
+  @Test
+  public void ignoresStatesWithoutFeatures() {
+    State empty = sparse(new int[0], new double[0]);
+
+    function.put(empty, left, new Quality(4));
+
+    assertThat(function.get(empty, left), is(Quality.ZERO));
+  }
+
+  @Test
+  public void learnsWithQualityUpdater() {
+    QualityUpdater updater = new QualityUpdater(function, new BackwardInduction(),
+        new LearningRate(0.5), new DiscountFactor(0.0));
+    State goal = sparse(new int[] {3}, new double[] {1}, 10);
+
+    updater.updateQuality(new Step(first, left), goal);
+
+    assertThat(function.get(first, left).doubleValue(), is(closeTo(5, 1e-9)));
+  }
+
+  @Test
+  public void growsWithActionsNotStates() {
+    for (int i = 0; i < 100; i++) {
+      function.put(sparse(new int[] {i % 4}, new double[] {i}), left, new Quality(i));
+    }
+
+    assertThat(function.getWeightCount(), is(4L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsStatesWithoutFeatures() {
+    function.get(FeatureStates.plain(), left);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsFeatureIndexOutOfRange() {
+    function.get(sparse(new int[] {4}, new double[] {1}), left);
+  }
+}
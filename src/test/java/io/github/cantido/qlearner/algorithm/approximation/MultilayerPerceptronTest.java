@@ -0,0 +1,112 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+@SuppressWarnings({"null", "javadoc"})
+public class MultilayerPerceptronTest {
+  private final Random random = new Random(42);
+
+  @Test
+  public void countsParameters() {
+    MultilayerPerceptron network = new MultilayerPerceptron(new int[] {3, 5, 2}, random);
+
+    assertThat(network.getInputCount(), is(3));
+    assertThat(network.getOutputCount(), is(2));
+    assertThat(network.getParameterCount(), is(3 * 5 + 5 + 5 * 2 + 2));
+  }
+
+  @Test
+  public void batchPredictionMatchesSinglePredictions() {
+    MultilayerPerceptron network = new MultilayerPerceptron(new int[] {4, 40, 40, 3}, random);
+    int batch = 300;
+    double[] inputs = new double[batch * 4];
+    for (int i = 0; i < inputs.length; i++) {
+      inputs[i] = random.nextDouble() * 2 - 1;
+    }
+
+    double[] outputs = new double[batch * 3];
+    network.predict(inputs, batch, outputs);
+
+    for (int sample = 0; sample < batch; sample++) {
+      double[] input = new double[4];
+      System.arraycopy(inputs, sample * 4, input, 0, 4);
+      double[] output = network.predict(input);
+      for (int j = 0; j < 3; j++) {
+        assertThat(outputs[sample * 3 + j], is(closeTo(output[j], 1e-12)));
+      }
+    }
+  }
+
+  @Test
+  public void learnsXor() {
+    MultilayerPerceptron network = new MultilayerPerceptron(new int[] {2, 16, 1}, random);
+    double[] inputs = {0, 0, 0, 1, 1, 0, 1, 1};
+    int[] outputs = {0, 0, 0, 0};
+    double[] targets = {0, 1, 1, 0};
+
+    for (int step = 0; step < 5000; step++) {
+      network.train(inputs, 4, outputs, targets, 0.1);
+    }
+
+    assertThat(network.train(inputs, 4, outputs, targets, 0.0), is(lessThan(0.01)));
+  }
+
+  @Test
+  public void onlyTrainsTheChosenOutput() {
+    // Without hidden units, the outputs share no weights
+    MultilayerPerceptron network = new MultilayerPerceptron(new int[] {2, 2}, random);
+    double[] input = {0.5, -0.5};
+    double before = network.predict(input)[1];
+
+    for (int step = 0; step < 200; step++) {
+      network.train(input, 1, new int[] {0}, new double[] {3}, 0.05);
+    }
+
+    assertThat(network.predict(input)[0], is(closeTo(3, 0.01)));
+    assertThat(network.predict(input)[1], is(before));
+  }
+
+  @Test
+  public void copiesWeights() {
+    MultilayerPerceptron network = new MultilayerPerceptron(new int[] {2, 4, 1}, random);
+    MultilayerPerceptron copy = new MultilayerPerceptron(new int[] {2, 4, 1}, random);
+    double[] input = {1, 2};
+
+    copy.copyFrom(network);
+
+    assertThat(copy.predict(input)[0], is(network.predict(input)[0]));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesToCopyDifferentShapes() {
+    new MultilayerPerceptron(new int[] {2, 4, 1}, random)
+        .copyFrom(new MultilayerPerceptron(new int[] {2, 5, 1}, random));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesEmptyLayers() {
+    new MultilayerPerceptron(new int[] {2, 0, 1}, random);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import static io.github.cantido.qlearner.algorithm.approximation.FeatureStates.continuous;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.storage.NumberedStates;
+
+import org.junit.Test;
+
+@SuppressWarnings({"null", "javadoc"})
+public class NearestNeighbourQualityMapTest {
+  private final NearestNeighbourQualityMap map = new NearestNeighbourQualityMap(2, 100);
+  private final Action left = NumberedStates.action(0);
+  private final Action right = NumberedStates.action(1);
+
+  @Test
+  public void returnsDefaultQualityWhenEmpty() {
+    map.setDefaultQuality(new Quality(2));
+
+    assertThat(map.get(continuous(0.5), left), is(new Quality(2)));
+    assertThat(map.getBestQuality(continuous(0.5)), is(new Quality(2)));
+  }
+
+  @Test
+  public void returnsStoredQualitiesExactly() {
+    map.put(continuous(1, 1), left, new Quality(8));
+    map.put(continuous(2, 2), left, new Quality(4));
+
+    assertThat(map.get(continuous(1, 1), left), is(new Quality(8)));
+  }
+
+  @Test
+  public void weighsNeighboursByDistance() {
+    map.put(continuous(0), left, new Quality(0));
+    map.put(continuous(3), left, new Quality(10));
+
+    // Squared distances are 1 and 4, so the weights are 1 and 1/4
+    assertThat(map.get(continuous(1), left).doubleValue(), is(closeTo(2, 1e-9)));
+  }
+
+  @Test
+  public void keepsActionsApart() {
+    map.put(continuous(0), left, new Quality(1));
+    map.put(continuous(0), right, new Quality(5));
+
+    assertThat(map.get(continuous(0.1), left).doubleValue(), is(closeTo(1, 1e-9)));
+    assertThat(map.getBestQuality(continuous(0.1)).doubleValue(), is(closeTo(5, 1e-9)));
+    assertThat(map.size(), is(2));
+  }
+
+  @Test
+  public void forgetsTheOldestStatesWhenFull() {
+    NearestNeighbourQualityMap small = new NearestNeighbourQualityMap(1, 2);
+    small.put(continuous(0), left, new Quality(1));
+    small.put(continuous(10), left, new Quality(2));
+    small.put(continuous(20), left, new Quality(3));
+
+    assertThat(small.size(), is(2));
+    assertThat(small.get(continuous(0), left), is(new Quality(2)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesStatesWithoutInputs() {
+    map.put(NumberedStates.state(1), left, new Quality(1));
+  }
+}
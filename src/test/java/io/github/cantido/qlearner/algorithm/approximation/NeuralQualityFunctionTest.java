@@ -0,0 +1,101 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import static io.github.cantido.qlearner.algorithm.approximation.FeatureStates.continuous;
+import static io.github.cantido.qlearner.algorithm.approximation.FeatureStates.rewarding;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.agent.Step;
+import io.github.cantido.qlearner.algorithm.model.DiscountFactor;
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import io.github.cantido.qlearner.storage.NumberedStates;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+@SuppressWarnings({"null", "javadoc"})
+public class NeuralQualityFunctionTest {
+  private final Action left = NumberedStates.action(0);
+  private final Action right = NumberedStates.action(1);
+  private final NeuralQualityFunction function = new NeuralQualityFunction(2, new int[] {16},
+      new ArrayList<>(NumberedStates.ACTIONS), new Random(7));
+
+  @Test
+  public void learnsWhichActionPaysFromTransitions() {
+    function.setDiscountFactor(new DiscountFactor(0));
+    function.setTrainingInterval(1);
+    function.setBatchSize(8);
+    State start = continuous(1, 0);
+
+    for (int i = 0; i < 2000; i++) {
+      function.publish(new Step(start, left), rewarding(1, 0, 1));
+      function.publish(new Step(start, right), rewarding(-1, 0, 1));
+    }
+
+    assertThat(function.getTrainingSteps(), is(greaterThan(0L)));
+    assertThat(function.get(start, left).doubleValue(), is(closeTo(1, 0.1)));
+    assertThat(function.get(start, right).doubleValue(), is(closeTo(-1, 0.1)));
+    assertThat(function.getBestQuality(start).doubleValue(), is(closeTo(1, 0.1)));
+  }
+
+  @Test
+  public void discountsTheFrozenNetworksEstimate() {
+    function.setDiscountFactor(new DiscountFactor(0.5));
+    function.setTrainingInterval(1);
+    function.setBatchSize(8);
+    function.setTargetUpdateInterval(10);
+    State start = continuous(1, 0);
+    State end = rewarding(1, 0, 1);
+
+    for (int i = 0; i < 3000; i++) {
+      function.publish(new Step(start, left), end);
+      function.publish(new Step(end, left), rewarding(0, 1, 1));
+    }
+
+    // Q(end) settles near 0 + 0.5 * Q(1, 1), and Q(start) near 1 + 0.5 * Q(end)
+    double endQuality = function.get(end, left).doubleValue();
+    double startQuality = function.get(start, left).doubleValue();
+    assertThat(startQuality - 0.5 * endQuality, is(closeTo(1, 0.15)));
+  }
+
+  @Test
+  public void putMovesTowardsTheQuality() {
+    State state = continuous(0.5, 0.5);
+
+    for (int i = 0; i < 500; i++) {
+      function.put(state, right, new Quality(2));
+    }
+
+    assertThat(function.get(state, right).doubleValue(), is(closeTo(2, 0.05)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesStatesOfTheWrongSize() {
+    function.get(continuous(1, 2, 3), left);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesStatesWithoutInputs() {
+    function.get(NumberedStates.state(1), left);
+  }
+}
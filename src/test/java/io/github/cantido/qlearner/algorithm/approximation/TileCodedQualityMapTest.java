@@ -0,0 +1,85 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import static io.github.cantido.qlearner.algorithm.approximation.FeatureStates.continuous;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.storage.NumberedStates;
+import org.junit.Test;
+
+@SuppressWarnings({"null", "javadoc"})
+public class TileCodedQualityMapTest {
+  private final TileCodedQualityMap map =
+      new TileCodedQualityMap(new TileCoder(8, new double[] {1.0}, 1 << 16));
+  private final Action left = NumberedStates.action(0);
+  private final Action right = NumberedStates.action(1);
+
+  @Test
+  public void returnsDefaultQualityWhenEmpty() {
+    map.setDefaultQuality(new Quality(2));
+
+    assertThat(map.get(continuous(0.5), left), is(new Quality(2)));
+    assertThat(map.getBestQuality(continuous(0.5)), is(new Quality(2)));
+  }
+
+  @Test
+  public void storesQuality() {
+    map.put(continuous(0.5), left, new Quality(8));
+
+    assertThat(map.get(continuous(0.5), left).doubleValue(), is(closeTo(8, 1e-9)));
+  }
+
+  @Test
+  public void generalizesToNearbyStates() {
+    map.put(continuous(0.5), left, new Quality(8));
+
+    double near = map.get(continuous(0.6), left).doubleValue();
+    double far = map.get(continuous(3.0), left).doubleValue();
+
+    assertThat(near > 4, is(true));
+    assertThat(far, is(closeTo(0, 1e-9)));
+  }
+
+  @Test
+  public void keepsActionsApart() {
+    map.put(continuous(0.5), left, new Quality(8));
+    map.put(continuous(0.5), right, new Quality(-3));
+
+    assertThat(map.get(continuous(0.5), left).doubleValue(), is(closeTo(8, 1e-9)));
+    assertThat(map.getBestQuality(continuous(0.5)).doubleValue(), is(closeTo(8, 1e-9)));
+  }
+
+  @Test
+  public void learnsSmoothFunction() {
+    for (int pass = 0; pass < 20; pass++) {
+      for (double x = 0; x < 10; x += 0.1) {
+        map.put(continuous(x), left, new Quality(Math.sin(x)));
+      }
+    }
+
+    assertThat(map.get(continuous(1.55), left).doubleValue(), is(closeTo(Math.sin(1.55), 0.1)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsDiscreteStates() {
+    map.put(FeatureStates.plain(), left, new Quality(1));
+  }
+}
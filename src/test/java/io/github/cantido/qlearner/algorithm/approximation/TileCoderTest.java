@@ -0,0 +1,94 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.approximation;
+
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+@SuppressWarnings({"null", "javadoc"})
+public class TileCoderTest {
+  private final TileCoder coder = new TileCoder(8, new double[] {1.0, 1.0}, 4096);
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNoTilings() {
+    new TileCoder(0, new double[] {1.0}, 16);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsZeroTileWidth() {
+    new TileCoder(4, new double[] {0.0}, 16);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsWrongNumberOfInputs() {
+    coder.activeTiles(new double[] {1.0}, 0, new int[8]);
+  }
+
+  @Test
+  public void givesSameTilesForSamePoint() {
+    int[] first = tiles(0.3, 0.7, 0);
+    int[] second = tiles(0.3, 0.7, 0);
+
+    for (int i = 0; i < first.length; i++) {
+      assertThat(first[i], is(second[i]));
+    }
+  }
+
+  @Test
+  public void keepsTilesWithinSize() {
+    for (double x = -100; x < 100; x += 0.37) {
+      for (int tile : tiles(x, -x, 3)) {
+        assertThat(tile, is(both(greaterThanOrEqualTo(0)).and(lessThan(4096))));
+      }
+    }
+  }
+
+  @Test
+  public void sharesMoreTilesWithCloserPoints() {
+    int near = shared(tiles(0.50, 0.50, 0), tiles(0.55, 0.50, 0));
+    int far = shared(tiles(0.50, 0.50, 0), tiles(0.95, 0.50, 0));
+    int away = shared(tiles(0.50, 0.50, 0), tiles(5.00, 5.00, 0));
+
+    assertThat(near > far, is(true));
+    assertThat(far > away, is(true));
+  }
+
+  @Test
+  public void givesEachSaltItsOwnTiles() {
+    assertThat(shared(tiles(0.5, 0.5, 0), tiles(0.5, 0.5, 1)), is(0));
+  }
+
+  private int[] tiles(double x, double y, int salt) {
+    int[] tiles = new int[coder.getTilings()];
+    coder.activeTiles(new double[] {x, y}, salt, tiles);
+    return tiles;
+  }
+
+  private static int shared(int[] first, int[] second) {
+    int shared = 0;
+    for (int i = 0; i < first.length; i++) {
+      if (first[i] == second[i]) {
+        shared++;
+      }
+    }
+    return shared;
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.model.QualityMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.HashSet;
+import java.util.Set;
+
+@SuppressWarnings({"null", "javadoc"})
+public class CachingQualityMapTest {
+  @Rule
+  public MockitoRule mockito = MockitoJUnit.rule();
+
+  QualityHashMap backingMap = new QualityHashMap();
+  CachingQualityMap map = new CachingQualityMap(backingMap, 1, 100);
+  @Mock
+  State state;
+  @Mock
+  State otherState;
+  @Mock
+  Action action;
+  @Mock
+  Action otherAction;
+  @Mock
+  QualityMap slowMap;
+  Quality lowQuality = new Quality(-1.0);
+  Quality highQuality = new Quality(1.0);
+
+  Set<Action> actions = new HashSet<>();
+
+  @Before
+  public void setUp() {
+    actions.add(action);
+    actions.add(otherAction);
+
+    when(state.getActions()).thenReturn(actions);
+    when(otherState.getActions()).thenReturn(actions);
+  }
+
+  @After
+  public void tearDown() {
+    map.close();
+  }
+
+  @Test
+  public void readsThroughToBackingMap() {
+    backingMap.put(state, action, highQuality);
+
+    assertThat(map.get(state, action), is(highQuality));
+    assertThat(map.getBestQuality(state), is(highQuality));
+  }
+
+  @Test
+  public void returnsDefaultQualityWhenEmpty() {
+    assertThat(map.get(state, action), is(backingMap.getDefaultQuality()));
+    assertThat(map.getBestQuality(state), is(backingMap.getDefaultQuality()));
+  }
+
+  @Test
+  public void doesNotWriteThroughBeforeFlush() {
+    map.put(state, action, highQuality);
+
+    assertThat(map.get(state, action), is(highQuality));
+    assertThat(backingMap.get(state, action), is(backingMap.getDefaultQuality()));
+  }
+
+  @Test
+  public void flushWritesLatestValue() {
+    map.put(state, action, lowQuality);
+    map.put(state, action, highQuality);
+    map.flush();
+
+    assertThat(backingMap.get(state, action), is(highQuality));
+  }
+
+  @Test
+  public void evictedRowsAreStillVisible() {
+    map.put(state, action, highQuality);
+    map.put(otherState, action, lowQuality);
+
+    assertThat(map.get(state, action), is(highQuality));
+    assertThat(map.get(otherState, action), is(lowQuality));
+  }
+
+  @Test
+  public void closeFlushesEverything() {
+    map.put(state, action, highQuality);
+    map.put(otherState, otherAction, lowQuality);
+    map.close();
+
+    assertThat(backingMap.get(state, action), is(highQuality));
+    assertThat(backingMap.get(otherState, otherAction), is(lowQuality));
+  }
+
+  @Test
+  public void getsHighestQualityForBest() {
+    map.put(state, action, lowQuality);
+    map.put(state, otherAction, highQuality);
+
+    assertThat(map.getBestQuality(state), is(highQuality));
+  }
+
+  @Test
+  public void skipsBackingMapForUnseenStates() {
+    when(slowMap.getDefaultQuality()).thenReturn(Quality.ZERO);
+    CachingQualityMap filtered =
+        new CachingQualityMap(slowMap, 10, 100, new SeenStateFilter(100, 0.01));
+
+    assertThat(filtered.get(state, action), is(Quality.ZERO));
+    assertThat(filtered.getBestQuality(state), is(Quality.ZERO));
+    assertThat(filtered.getFilteredLookupCount(), is(2L));
+    verify(slowMap, never()).get(any(State.class), any(Action.class));
+    filtered.close();
+  }
+
+  @Test
+  public void readsSeededStatesFromBackingMap() {
+    backingMap.put(state, action, highQuality);
+    SeenStateFilter seenStates = new SeenStateFilter(100, 0.01);
+    seenStates.addAll(backingMap.getStates());
+    CachingQualityMap filtered = new CachingQualityMap(backingMap, 10, 100, seenStates);
+
+    assertThat(filtered.get(state, action), is(highQuality));
+    filtered.close();
+  }
+
+  @Test
+  public void seesStatesWrittenThroughIt() {
+    CachingQualityMap filtered =
+        new CachingQualityMap(backingMap, 1, 100, new SeenStateFilter(100, 0.01));
+    filtered.put(state, action, highQuality);
+    filtered.put(otherState, action, lowQuality);
+
+    assertThat(filtered.get(state, action), is(highQuality));
+    assertThat(filtered.getBestQuality(otherState), is(lowQuality));
+    filtered.close();
+    assertThat(backingMap.get(state, action), is(highQuality));
+  }
+}
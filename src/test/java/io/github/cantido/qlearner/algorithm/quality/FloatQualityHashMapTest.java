@@ -0,0 +1,128 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import static io.github.cantido.qlearner.storage.NumberedStates.action;
+import static io.github.cantido.qlearner.storage.NumberedStates.state;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.client.Action;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@SuppressWarnings({"null", "javadoc"})
+@RunWith(JUnitParamsRunner.class)
+public class FloatQualityHashMapTest {
+
+  @Test
+  @Parameters({"false", "true"})
+  public void returnsDefaultQualityWhenEmpty(boolean compensated) {
+    FloatQualityHashMap map = new FloatQualityHashMap(compensated);
+    map.setDefaultQuality(new Quality(3));
+
+    assertThat(map.get(state(1), action(0)), is(new Quality(3)));
+    assertThat(map.getBestQuality(state(1)), is(new Quality(3)));
+    assertThat(map.getRow(state(1)).isEmpty(), is(true));
+  }
+
+  @Test
+  @Parameters({"false", "true"})
+  public void storesValuesAtFloatPrecision(boolean compensated) {
+    FloatQualityHashMap map = new FloatQualityHashMap(compensated);
+    map.put(state(1), action(0), new Quality(0.1));
+
+    assertThat(map.get(state(1), action(0)), is(new Quality((float) 0.1)));
+    assertThat(map.get(state(1), action(1)), is(map.getDefaultQuality()));
+  }
+
+  @Test
+  @Parameters({"false", "true"})
+  public void findsTheBestStoredQuality(boolean compensated) {
+    FloatQualityHashMap map = new FloatQualityHashMap(compensated);
+    map.setDefaultQuality(new Quality(100));
+    map.put(state(1), action(0), new Quality(-1));
+    map.put(state(1), action(2), new Quality(4));
+    map.put(state(1), action(1), new Quality(2));
+
+    assertThat(map.getBestQuality(state(1)), is(new Quality(4)));
+  }
+
+  @Test
+  public void growsPastItsExpectedSize() {
+    FloatQualityHashMap map = new FloatQualityHashMap(2, 1, false);
+    for (int s = 0; s < 1000; s++) {
+      for (int a = 0; a < 5; a++) {
+        map.put(state(s), action(a), new Quality(s * 10 + a));
+      }
+    }
+
+    assertThat(map.size(), is(1000));
+    assertThat(map.getStates().size(), is(1000));
+    for (int s = 0; s < 1000; s++) {
+      for (int a = 0; a < 5; a++) {
+        assertThat(map.get(state(s), action(a)), is(new Quality(s * 10 + a)));
+      }
+    }
+  }
+
+  @Test
+  public void readsAndWritesRows() {
+    FloatQualityHashMap map = new FloatQualityHashMap(false);
+    Map<Action, Quality> row = new HashMap<>();
+    row.put(action(0), new Quality(1));
+    row.put(action(2), new Quality(3));
+
+    map.putRow(state(5), row);
+
+    assertThat(map.getRow(state(5)), is(row));
+  }
+
+  @Test
+  public void losesUpdatesSmallerThanItsPrecision() {
+    FloatQualityHashMap map = new FloatQualityHashMap(false);
+
+    accumulateSmallUpdates(map);
+
+    assertThat(map.get(state(1), action(0)).doubleValue(), is(1000.0));
+  }
+
+  @Test
+  public void compensatesForUpdatesSmallerThanItsPrecision() {
+    FloatQualityHashMap map = new FloatQualityHashMap(true);
+
+    accumulateSmallUpdates(map);
+
+    assertThat(map.get(state(1), action(0)).doubleValue(), is(closeTo(1000.01, 1e-4)));
+  }
+
+  private static void accumulateSmallUpdates(FloatQualityHashMap map) {
+    map.put(state(1), action(0), new Quality(1000));
+    for (int i = 0; i < 1000; i++) {
+      // A float near 1000 is only precise to about 6e-5, so each step rounds away on its own
+      double current = map.get(state(1), action(0)).doubleValue();
+      map.put(state(1), action(0), new Quality(current + 1e-5));
+    }
+  }
+}
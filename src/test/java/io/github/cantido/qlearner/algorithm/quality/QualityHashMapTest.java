@@ -24,6 +24,7 @@ import io.github.cantido.qlearner.algorithm.model.QualityMap;
 import io.github.cantido.qlearner.algorithm.quality.QualityHashMap;
 import io.github.cantido.qlearner.client.Action;
 import io.github.cantido.qlearner.client.State;
+import io.github.cantido.qlearner.storage.NumberedStates;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -31,8 +32,10 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings({"null", "javadoc"})
 public class QualityHashMapTest {
@@ -102,6 +105,14 @@ public class QualityHashMapTest {
     assertThat(actualQuality, is(highestQuality));
   }
 
+  @Test
+  public void keepsStoredDefaultQualityForBest() {
+    map.put(state, middleAction, defaultQuality);
+    map.put(state, worstAction, lowestQuality);
+
+    assertThat(map.getBestQuality(state), is(defaultQuality));
+  }
+
   @Test
   public void willNotDeleteDuplicateQualities() {
     fillMap();
@@ -116,4 +127,84 @@ public class QualityHashMapTest {
 
     assertThat(map.getBestQuality(state), is(highestQuality));
   }
+
+  @Test
+  public void compactionDropsDefaultValuesAndEmptyRows() {
+    QualityHashMap table = new QualityHashMap();
+    for (int i = 0; i < 100; i++) {
+      table.put(NumberedStates.state(i), NumberedStates.action(0), table.getDefaultQuality());
+    }
+
+    table.compact();
+
+    assertThat(table.getStates().isEmpty(), is(true));
+    assertThat(table.getDroppedValueCount(), is(100L));
+    assertThat(table.get(NumberedStates.state(1), NumberedStates.action(0)),
+        is(table.getDefaultQuality()));
+  }
+
+  @Test
+  public void compactionDropsDefaultValuesBesideHigherOnes() {
+    QualityHashMap table = new QualityHashMap();
+    table.put(NumberedStates.state(1), NumberedStates.action(0), new Quality(0));
+    table.put(NumberedStates.state(1), NumberedStates.action(1), new Quality(5));
+
+    table.compact();
+
+    assertThat(table.getRow(NumberedStates.state(1)).size(), is(1));
+    assertThat(table.getBestQuality(NumberedStates.state(1)), is(new Quality(5)));
+  }
+
+  @Test
+  public void compactionKeepsDefaultValuesThatAreTheBest() {
+    QualityHashMap table = new QualityHashMap();
+    table.put(NumberedStates.state(1), NumberedStates.action(0), new Quality(0));
+    table.put(NumberedStates.state(1), NumberedStates.action(1), new Quality(-5));
+
+    table.compact();
+
+    assertThat(table.getRow(NumberedStates.state(1)).size(), is(2));
+    assertThat(table.getBestQuality(NumberedStates.state(1)), is(new Quality(0)));
+  }
+
+  @Test
+  public void compactionDropsValuesWithinTolerance() {
+    QualityHashMap table = new QualityHashMap();
+    table.setCompactionTolerance(0.1);
+    table.put(NumberedStates.state(1), NumberedStates.action(0), new Quality(0.05));
+    table.put(NumberedStates.state(2), NumberedStates.action(0), new Quality(0.5));
+
+    table.compact();
+
+    assertThat(table.getStates(), is(Collections.singleton(NumberedStates.state(2))));
+  }
+
+  @Test
+  public void compactsInSlicesWhileStillUsable() {
+    QualityHashMap table = new QualityHashMap();
+    for (int i = 0; i < 10_000; i++) {
+      table.put(NumberedStates.state(i), NumberedStates.action(0), new Quality(i % 2));
+    }
+
+    assertThat(table.compact(0, TimeUnit.NANOSECONDS), is(false));
+    assertThat(table.isCompacting(), is(true));
+    table.put(NumberedStates.state(20_000), NumberedStates.action(0), new Quality(7));
+    table.put(NumberedStates.state(9_999), NumberedStates.action(1), new Quality(3));
+    assertThat(table.getStates().contains(NumberedStates.state(20_000)), is(true));
+    assertThat(table.get(NumberedStates.state(9_998), NumberedStates.action(0)),
+        is(new Quality(0)));
+
+    int slices = 1;
+    while (!table.compact(0, TimeUnit.NANOSECONDS)) {
+      slices++;
+    }
+
+    assertThat(slices > 1, is(true));
+    assertThat(table.isCompacting(), is(false));
+    assertThat(table.getStates().size(), is(5_001));
+    assertThat(table.get(NumberedStates.state(1), NumberedStates.action(0)), is(new Quality(1)));
+    assertThat(table.get(NumberedStates.state(20_000), NumberedStates.action(0)),
+        is(new Quality(7)));
+    assertThat(table.getBestQuality(NumberedStates.state(9_999)), is(new Quality(3)));
+  }
 }
@@ -0,0 +1,116 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import static io.github.cantido.qlearner.storage.NumberedStates.action;
+import static io.github.cantido.qlearner.storage.NumberedStates.state;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.client.State;
+
+import java.util.Random;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@SuppressWarnings({"null", "javadoc"})
+@RunWith(JUnitParamsRunner.class)
+public class QuantizedQualityTableTest {
+  private final QualityHashMap trained = new QualityHashMap();
+
+  @Before
+  public void setUp() {
+    trained.setDefaultQuality(new Quality(-5));
+    trained.put(state(1), action(0), new Quality(-2));
+    trained.put(state(1), action(1), new Quality(0.3));
+    trained.put(state(1), action(2), new Quality(7));
+    trained.put(state(2), action(0), new Quality(4));
+  }
+
+  @Test
+  @Parameters({"INT8", "INT16"})
+  public void keepsTheExtremesOfEachStateExactly(Quantization quantization) {
+    QuantizedQualityTable table = quantize(quantization);
+
+    assertThat(table.get(state(1), action(0)), is(new Quality(-2)));
+    assertThat(table.get(state(1), action(2)), is(new Quality(7)));
+    assertThat(table.get(state(2), action(0)), is(new Quality(4)));
+    assertThat(table.size(), is(4));
+  }
+
+  @Test
+  @Parameters({"INT8, 0.018", "INT16, 0.00007"})
+  public void keepsOtherValuesWithinHalfALevel(Quantization quantization, double error) {
+    QuantizedQualityTable table = quantize(quantization);
+
+    assertThat(table.get(state(1), action(1)).doubleValue(), is(closeTo(0.3, error)));
+  }
+
+  @Test
+  @Parameters({"INT8", "INT16"})
+  public void findsTheBestActionAndQuality(Quantization quantization) {
+    QuantizedQualityTable table = quantize(quantization);
+
+    assertThat(table.getBestAction(state(1)), is(action(2)));
+    assertThat(table.getBestQuality(state(1)), is(new Quality(7)));
+    assertThat(table.getBestQuality(state(2)), is(new Quality(4)));
+  }
+
+  @Test
+  public void agreesWithTheTrainingTableOnBestActions() {
+    QualityHashMap large = new QualityHashMap();
+    Random random = new Random(5);
+    for (int s = 0; s < 1000; s++) {
+      for (int a = 0; a < 3; a++) {
+        large.put(state(s), action(a), new Quality(random.nextInt(1000) / 10.0));
+      }
+    }
+
+    QuantizedQualityTable table =
+        new QuantizedQualityTable(large, large.getStates(), Quantization.INT16);
+
+    for (State state : large.getStates()) {
+      assertThat(table.getBestQuality(state), is(large.getBestQuality(state)));
+      assertThat(table.get(state, table.getBestAction(state)), is(large.getBestQuality(state)));
+    }
+  }
+
+  @Test
+  public void returnsDefaultsForUnstoredValues() {
+    QuantizedQualityTable table = quantize(Quantization.INT8);
+
+    assertThat(table.getDefaultQuality(), is(new Quality(-5)));
+    assertThat(table.get(state(2), action(1)), is(new Quality(-5)));
+    assertThat(table.getBestQuality(state(3)), is(new Quality(-5)));
+    assertThat(table.getBestAction(state(3)), is(nullValue()));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void isReadOnly() {
+    quantize(Quantization.INT8).put(state(1), action(0), new Quality(1));
+  }
+
+  private QuantizedQualityTable quantize(Quantization quantization) {
+    return new QuantizedQualityTable(trained, trained.getStates(), quantization);
+  }
+}
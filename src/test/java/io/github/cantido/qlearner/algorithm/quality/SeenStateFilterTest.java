@@ -0,0 +1,65 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import static io.github.cantido.qlearner.storage.NumberedStates.state;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+@SuppressWarnings({"null", "javadoc"})
+public class SeenStateFilterTest {
+  private final SeenStateFilter filter = new SeenStateFilter(10_000, 0.01);
+
+  @Test
+  public void alwaysContainsSeenStates() {
+    for (int i = 0; i < 10_000; i++) {
+      filter.add(state(i));
+    }
+
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(filter.mightContain(state(i)), is(true));
+    }
+  }
+
+  @Test
+  public void rarelyContainsUnseenStates() {
+    for (int i = 0; i < 10_000; i++) {
+      filter.add(state(i));
+    }
+
+    int falsePositives = 0;
+    for (int i = 10_000; i < 20_000; i++) {
+      if (filter.mightContain(state(i))) {
+        falsePositives++;
+      }
+    }
+    assertThat(falsePositives, is(lessThan(300)));
+  }
+
+  @Test
+  public void startsEmpty() {
+    assertThat(filter.mightContain(state(1)), is(false));
+    assertThat(filter.getExpectedFalsePositiveRate(), is(0.0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesImpossibleRates() {
+    new SeenStateFilter(10, 1.5);
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import static io.github.cantido.qlearner.storage.NumberedStates.action;
+import static io.github.cantido.qlearner.storage.NumberedStates.state;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+@SuppressWarnings({"null", "javadoc"})
+public class ShardedQualityMapTest {
+  ShardedQualityMap map = new ShardedQualityMap(4);
+
+  @Test
+  public void storesQualityInOwningShard() {
+    map.put(state(7), action(1), new Quality(1.0));
+
+    int shard = map.shardOf(state(7));
+    assertThat(map.get(state(7), action(1)), is(new Quality(1.0)));
+    assertThat(map.getShard(shard).get(state(7), action(1)), is(new Quality(1.0)));
+    assertThat(map.getShard((shard + 1) % 4).get(state(7), action(1)),
+        is(map.getDefaultQuality()));
+  }
+
+  @Test
+  public void getsBestQualityFromOwningShard() {
+    map.put(state(3), action(0), new Quality(-1.0));
+    map.put(state(3), action(1), new Quality(2.0));
+
+    assertThat(map.getBestQuality(state(3)), is(new Quality(2.0)));
+  }
+
+  @Test
+  public void spreadsSequentialStatesOverEveryShard() {
+    Set<Integer> used = new HashSet<>();
+    for (int i = 0; i < 64; i++) {
+      used.add(map.shardOf(state(i)));
+    }
+
+    assertThat(used.size(), is(4));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsZeroShards() {
+    new ShardedQualityMap(0);
+  }
+
+  @Test
+  public void routesEqualStatesToSameShard() {
+    assertThat(map.shardOf(state(12345)), is(map.shardOf(state(12345))));
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.algorithm.quality;
+
+import static io.github.cantido.qlearner.storage.NumberedStates.action;
+import static io.github.cantido.qlearner.storage.NumberedStates.state;
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+@SuppressWarnings({"null", "javadoc"})
+public class SingleWriterQualityHashMapTest {
+  SingleWriterQualityHashMap map = new SingleWriterQualityHashMap();
+
+  @Test
+  public void storesQuality() {
+    map.put(state(1), action(0), new Quality(1.0));
+    map.put(state(1), action(1), new Quality(2.0));
+    map.put(state(1), action(0), new Quality(3.0));
+
+    assertThat(map.get(state(1), action(0)), is(new Quality(3.0)));
+    assertThat(map.get(state(1), action(1)), is(new Quality(2.0)));
+    assertThat(map.get(state(1), action(2)), is(map.getDefaultQuality()));
+    assertThat(map.get(state(2), action(0)), is(map.getDefaultQuality()));
+    assertThat(map.size(), is(1));
+  }
+
+  @Test
+  public void tracksBestQualityWhenItGetsWorse() {
+    map.put(state(1), action(0), new Quality(5.0));
+    map.put(state(1), action(1), new Quality(2.0));
+    map.put(state(1), action(0), new Quality(-1.0));
+
+    assertThat(map.getBestQuality(state(1)), is(new Quality(2.0)));
+    assertThat(map.getBestQuality(state(2)), is(map.getDefaultQuality()));
+  }
+
+  @Test
+  public void growsPastItsExpectedSize() {
+    for (int i = 0; i < 10_000; i++) {
+      map.put(state(i), action(i % 3), new Quality(i));
+    }
+
+    assertThat(map.size(), is(10_000));
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(map.get(state(i), action(i % 3)), is(new Quality(i)));
+    }
+  }
+
+  @Test
+  public void returnsRows() {
+    map.put(state(1), action(0), new Quality(1.0));
+    map.put(state(1), action(2), new Quality(2.0));
+
+    assertThat(map.getRow(state(1)).size(), is(2));
+    assertThat(map.getRow(state(1)).get(action(2)), is(new Quality(2.0)));
+    assertThat(map.getRow(state(2)).isEmpty(), is(true));
+  }
+
+  @Test
+  public void readersSeeOnlyWrittenValuesWhileTheWriterGrowsTheTable() throws Exception {
+    int count = 200_000;
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicReference<AssertionError> failure = new AtomicReference<>();
+    Thread reader = new Thread(() -> {
+      try {
+        while (!done.get()) {
+          for (int i = 0; i < count; i += 97) {
+            assertThat(map.get(state(i), action(0)),
+                anyOf(is(map.getDefaultQuality()), is(new Quality(i + 1))));
+          }
+        }
+      } catch (AssertionError e) {
+        failure.set(e);
+      }
+    });
+    reader.start();
+    for (int i = 0; i < count; i++) {
+      map.put(state(i), action(0), new Quality(i + 1));
+    }
+    done.set(true);
+    reader.join();
+
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.gridworld.integration;
+
+import static org.apache.commons.math3.stat.StatUtils.max;
+import static org.apache.commons.math3.stat.StatUtils.min;
+import static org.apache.commons.math3.stat.StatUtils.percentile;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.agent.EpisodeRunner;
+import io.github.cantido.qlearner.agent.EpisodeStatistics;
+import io.github.cantido.qlearner.algorithm.quality.FloatQualityHashMap;
+import io.github.cantido.qlearner.algorithm.quality.QualityHashMap;
+import io.github.cantido.qlearner.gridworld.client.GridWorldBuilder;
+import io.github.cantido.qlearner.gridworld.client.GridWorldEnvironment;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A benchmark of learning GridWorld with {@code double}, {@code float}, and compensated
+ * {@code float} quality values, comparing how fast each converges and how many steps per second
+ * each takes.
+ * 
+ * <p>
+ * Each mode is run once to warm up the JIT before it is timed, and then timed over several fresh
+ * runs, so that the order the tests run in does not decide which mode looks fastest. The median
+ * of those runs is logged.
+ * </p>
+ */
+@SuppressWarnings({"null", "javadoc"})
+public class FloatQualitiesIT {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FloatQualitiesIT.class);
+
+  private static final int EPISODES = 2000;
+  private static final int WARM_UP_RUNS = 1;
+  private static final int MEASURED_RUNS = 5;
+  /**
+   * The "correct" solution to our gridworld takes exactly 20 steps.
+   */
+  private static final double EXACT_SOLUTION = 20;
+  /**
+   * How many episodes the agent gets to learn the environment, as in
+   * {@link GridWorldConvergenceIT}.
+   */
+  private static final int SUCCESSES_UNTIL_CONVERGENCE = 10;
+  /**
+   * How far the median episode after the learning period may be from the exact solution. The
+   * agent keeps exploring, so only some episodes take exactly the shortest path, but the median
+   * one should come close.
+   */
+  private static final double CONVERGED_MEDIAN = 1.5 * EXACT_SOLUTION;
+
+  @Rule
+  public Timeout timeout = Timeout.seconds(60);
+
+  @Test
+  public void doubles() throws Exception {
+    benchmark("double", () -> {
+      GridWorldBuilder builder = new GridWorldBuilder();
+      builder.setQualityMap(new QualityHashMap());
+      return builder;
+    });
+  }
+
+  @Test
+  public void floats() throws Exception {
+    benchmark("float", () -> {
+      GridWorldBuilder builder = new GridWorldBuilder();
+      builder.useFloatQualities(false);
+      return builder;
+    });
+  }
+
+  @Test
+  public void compensatedFloats() throws Exception {
+    benchmark("compensated float", () -> {
+      GridWorldBuilder builder = new GridWorldBuilder();
+      builder.useFloatQualities(true);
+      return builder;
+    });
+  }
+
+  private void benchmark(String mode, Supplier<GridWorldBuilder> builders) throws Exception {
+    for (int i = 0; i < WARM_UP_RUNS; i++) {
+      run(builders.get());
+    }
+
+    double[] stepsPerSecond = new double[MEASURED_RUNS];
+    double[] firstOptimal = new double[MEASURED_RUNS];
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      EpisodeRunner<GridWorldEnvironment> runner = run(builders.get());
+      List<EpisodeStatistics> episodes = runner.getHistory();
+
+      double[] steps = episodes.stream().mapToDouble(EpisodeStatistics::getSteps).toArray();
+      long nanos = episodes.stream()
+          .mapToLong(episode -> episode.getDuration(TimeUnit.NANOSECONDS)).sum();
+      stepsPerSecond[i] = runner.getTotalSteps() * 1e9 / Math.max(1, nanos);
+      int optimal = 0;
+      while (optimal < steps.length && steps[optimal] > EXACT_SOLUTION) {
+        optimal++;
+      }
+      firstOptimal[i] = optimal;
+
+      double[] learned = Arrays.copyOfRange(steps, SUCCESSES_UNTIL_CONVERGENCE, steps.length);
+      assertThat(percentile(learned, 50), lessThanOrEqualTo(CONVERGED_MEDIAN));
+    }
+
+    LOGGER.info("{}: median of {} runs of {} episodes: {} steps per second (from {} to {}), "
+        + "first optimal episode {}", mode, MEASURED_RUNS, EPISODES,
+        Math.round(percentile(stepsPerSecond, 50)), Math.round(min(stepsPerSecond)),
+        Math.round(max(stepsPerSecond)), Math.round(percentile(firstOptimal, 50)));
+  }
+
+  private static EpisodeRunner<GridWorldEnvironment> run(GridWorldBuilder builder)
+      throws Exception {
+    GridWorldEnvironment environment = (GridWorldEnvironment) builder.getEnvironment();
+    EpisodeRunner<GridWorldEnvironment> runner = new EpisodeRunner<>(builder.getAgent(),
+        environment, GridWorldEnvironment::isAtGoalState, GridWorldEnvironment::reset);
+    runner.runEpisodes(EPISODES);
+    return runner;
+  }
+}
@@ -20,6 +20,8 @@ import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertThat;
 
 import io.github.cantido.qlearner.agent.Agent;
+import io.github.cantido.qlearner.agent.EpisodeRunner;
+import io.github.cantido.qlearner.agent.EpisodeStatistics;
 import io.github.cantido.qlearner.gridworld.client.GridWorldBuilder;
 import io.github.cantido.qlearner.gridworld.client.GridWorldEnvironment;
 import org.junit.Rule;
@@ -86,25 +88,17 @@ public class GridWorldConvergenceIT {
    * </p>
    */
   @Test
-  public void reachesHighSuccessRate() {
+  public void reachesHighSuccessRate() throws Exception {
     // I know the fastest way to do this would be to just divide totalSteps
     // by totalSuccesses, but creating a double array allows us to do some
     // more fancy statistics, if I ever write tests for that.
 
-    double[] stepCounts = new double[MAX_SUCCESS_COUNT];
+    EpisodeRunner<GridWorldEnvironment> runner = new EpisodeRunner<>(agent, environment,
+        GridWorldEnvironment::isAtGoalState, GridWorldEnvironment::reset);
 
-    for (int successCount = 0; successCount < MAX_SUCCESS_COUNT; successCount++) {
-      int stepCount = 0;
-
-      while (!environment.isAtGoalState()) {
-        agent.takeNextAction();
-        stepCount++;
-      }
-
-      stepCounts[successCount] = stepCount;
-      environment.reset();
-      agent.reset();
-    }
+    double[] stepCounts = runner.runEpisodes(MAX_SUCCESS_COUNT).stream()
+        .mapToDouble(EpisodeStatistics::getSteps)
+        .toArray();
 
     assertThat(percentile(stepCounts, CONVERGENCE_PERCENTAGE), lessThanOrEqualTo(EXACT_SOLUTION));
   }
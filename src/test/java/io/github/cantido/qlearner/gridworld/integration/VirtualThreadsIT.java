@@ -0,0 +1,165 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.gridworld.integration;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+
+import io.github.cantido.qlearner.agent.Agent;
+import io.github.cantido.qlearner.agent.AgentBuilder;
+import io.github.cantido.qlearner.agent.VirtualThreads;
+import io.github.cantido.qlearner.algorithm.model.Reward;
+import io.github.cantido.qlearner.algorithm.quality.ConcurrentQualityHashMap;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A benchmark of tens of thousands of {@link Agent}s whose {@link Action}s block, comparing
+ * direct, pooled, and virtual-thread execution.
+ * 
+ * <p>
+ * Each {@code Action} sleeps for a millisecond, standing in for a network call. With a fixed pool
+ * of platform threads, only as many agents as there are threads can wait at once. With virtual
+ * threads, every agent can.
+ * </p>
+ */
+@SuppressWarnings({"null", "javadoc"})
+public class VirtualThreadsIT {
+  private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadsIT.class);
+
+  private static final int AGENT_COUNT = 10_000;
+  private static final int STEPS_PER_AGENT = 10;
+  private static final int PLATFORM_THREAD_COUNT = 200;
+  private static final long ACTION_MILLIS = 1;
+
+  @Rule
+  public Timeout timeout = Timeout.seconds(60);
+
+  private final AtomicLong actionsRun = new AtomicLong();
+  private final State state = new BlockingState();
+  private final AgentBuilder builder = new AgentBuilder(() -> state)
+      .setQualityMap(new ConcurrentQualityHashMap());
+
+  /**
+   * Agent loops on a pool of platform threads, each running its own {@code Action}s.
+   */
+  @Test
+  public void directExecutorOnPlatformThreads() throws Exception {
+    run("direct", Executors.newFixedThreadPool(PLATFORM_THREAD_COUNT));
+  }
+
+  /**
+   * Agent loops on a pool of platform threads, handing their {@code Action}s to another pool.
+   */
+  @Test
+  public void pooledExecutorOnPlatformThreads() throws Exception {
+    ExecutorService actions = Executors.newFixedThreadPool(PLATFORM_THREAD_COUNT);
+    builder.setExecutorService(actions);
+    run("pooled", Executors.newFixedThreadPool(PLATFORM_THREAD_COUNT));
+    actions.shutdown();
+  }
+
+  /**
+   * Agent loops on virtual threads, each running its own {@code Action}s.
+   */
+  @Test
+  public void directExecutorOnVirtualThreads() throws Exception {
+    run("virtual loops", VirtualThreads.newExecutor());
+  }
+
+  /**
+   * Agent loops and their {@code Action}s each on their own virtual threads.
+   */
+  @Test
+  public void virtualExecutorOnVirtualThreads() throws Exception {
+    builder.useVirtualThreads();
+    run("virtual loops and actions", VirtualThreads.newExecutor());
+    builder.close();
+  }
+
+  private void run(String mode, ExecutorService agentLoops) throws Exception {
+    CountDownLatch finished = new CountDownLatch(AGENT_COUNT);
+    Instant start = Instant.now();
+
+    for (int i = 0; i < AGENT_COUNT; i++) {
+      Agent agent = builder.getAgent();
+      agentLoops.execute(() -> {
+        try {
+          for (int step = 0; step < STEPS_PER_AGENT; step++) {
+            agent.takeNextAction();
+            agent.await();
+          }
+        } catch (Exception e) {
+          LOGGER.error("Agent failed", e);
+        } finally {
+          finished.countDown();
+        }
+      });
+    }
+    finished.await();
+
+    Duration runTime = Duration.between(start, Instant.now());
+    agentLoops.shutdown();
+    agentLoops.awaitTermination(1, TimeUnit.SECONDS);
+
+    LOGGER.info("{}: {} agents took {} steps each in {} (virtual threads supported: {})", mode,
+        AGENT_COUNT, STEPS_PER_AGENT, runTime, VirtualThreads.isSupported());
+    assertThat(actionsRun.get(), is((long) AGENT_COUNT * STEPS_PER_AGENT));
+  }
+
+  private final class BlockingAction extends Action {
+    @Override
+    public void run() {
+      try {
+        Thread.sleep(ACTION_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      actionsRun.incrementAndGet();
+    }
+  }
+
+  private final class BlockingState extends State {
+    private final Set<Action> actions =
+        ImmutableSet.<Action>of(new BlockingAction(), new BlockingAction());
+
+    @Override
+    public Reward getReward() {
+      return new Reward(0);
+    }
+
+    @Override
+    public Set<Action> getActions() {
+      return actions;
+    }
+  }
+}
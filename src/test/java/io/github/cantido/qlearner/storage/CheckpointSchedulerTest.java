@@ -0,0 +1,183 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import static io.github.cantido.qlearner.storage.NumberedStates.ACTION_CODEC;
+import static io.github.cantido.qlearner.storage.NumberedStates.STATE_CODEC;
+import static io.github.cantido.qlearner.storage.NumberedStates.action;
+import static io.github.cantido.qlearner.storage.NumberedStates.state;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.quality.QualityHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@SuppressWarnings({"null", "javadoc"})
+public class CheckpointSchedulerTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  Path directory;
+  DirtyTrackingQualityMap qualityMap;
+  CheckpointScheduler scheduler;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = folder.getRoot().toPath().resolve("checkpoints");
+    qualityMap = new DirtyTrackingQualityMap(new QualityHashMap());
+    scheduler = new CheckpointScheduler(qualityMap, directory, STATE_CODEC, ACTION_CODEC, 1,
+        TimeUnit.HOURS, 3);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    scheduler.close();
+  }
+
+  private long rowsIn(Path checkpoint) throws IOException {
+    try (CheckpointReader reader =
+        new CheckpointReader(FileChannel.open(checkpoint, StandardOpenOption.READ), STATE_CODEC,
+            ACTION_CODEC)) {
+      reader.forEachRow((state, qualities) -> {
+      });
+      return reader.getRowsRead();
+    }
+  }
+
+  private QualityHashMap restore() throws IOException {
+    QualityHashMap restored = new QualityHashMap();
+    CheckpointScheduler.restore(directory, restored, STATE_CODEC, ACTION_CODEC);
+    return restored;
+  }
+
+  @Test
+  public void skipsCheckpointWithoutChanges() throws IOException {
+    assertThat(scheduler.checkpoint(), is(nullValue()));
+  }
+
+  @Test
+  public void writesOnlyChangedStates() throws IOException {
+    for (int i = 0; i < 100; i++) {
+      qualityMap.put(state(i), action(0), new Quality(i));
+    }
+    Path first = scheduler.checkpoint();
+    qualityMap.put(state(7), action(1), new Quality(70.0));
+    Path second = scheduler.checkpoint();
+
+    assertThat(rowsIn(first), is(100L));
+    assertThat(rowsIn(second), is(1L));
+  }
+
+  @Test
+  public void restoresLatestValues() throws IOException {
+    qualityMap.put(state(1), action(1), new Quality(1.0));
+    scheduler.checkpoint();
+    qualityMap.put(state(1), action(1), new Quality(2.0));
+    qualityMap.put(state(2), action(1), new Quality(3.0));
+    scheduler.close();
+
+    QualityHashMap restored = restore();
+    assertThat(restored.get(state(1), action(1)), is(new Quality(2.0)));
+    assertThat(restored.get(state(2), action(1)), is(new Quality(3.0)));
+  }
+
+  @Test
+  public void keepsRetainedCheckpointsRestorable() throws IOException {
+    List<Path> checkpoints = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      qualityMap.put(state(i), action(0), new Quality(i + 1));
+      checkpoints.add(scheduler.checkpoint());
+    }
+
+    assertThat(directory.toFile().list().length, is(4));
+    for (int i = 2; i < 5; i++) {
+      QualityHashMap restored = new QualityHashMap();
+      CheckpointScheduler.restore(directory, restored, STATE_CODEC, ACTION_CODEC,
+          checkpoints.get(i));
+      for (int j = 0; j < 5; j++) {
+        Quality expected = j <= i ? new Quality(j + 1) : restored.getDefaultQuality();
+        assertThat(restored.get(state(j), action(0)), is(expected));
+      }
+    }
+  }
+
+  @Test
+  public void mergesOlderCheckpointsInTiers() throws IOException {
+    scheduler.close();
+    scheduler = new CheckpointScheduler(qualityMap, directory, STATE_CODEC, ACTION_CODEC, 1,
+        TimeUnit.HOURS, 1);
+    for (int i = 0; i < 256; i++) {
+      qualityMap.put(state(i), action(0), new Quality(i));
+      scheduler.checkpoint();
+      assertThat(directory.toFile().list().length, is(lessThanOrEqualTo(10)));
+    }
+
+    QualityHashMap restored = restore();
+    for (int i = 0; i < 256; i++) {
+      assertThat(restored.get(state(i), action(0)), is(new Quality(i)));
+    }
+  }
+
+  @Test
+  public void mergesRowsOfTheSameState() throws IOException {
+    scheduler.close();
+    scheduler = new CheckpointScheduler(qualityMap, directory, STATE_CODEC, ACTION_CODEC, 1,
+        TimeUnit.HOURS, 1);
+    qualityMap.put(state(1), action(0), new Quality(1.0));
+    qualityMap.put(state(1), action(1), new Quality(1.0));
+    scheduler.checkpoint();
+    qualityMap.put(state(1), action(1), new Quality(2.0));
+    scheduler.checkpoint();
+    qualityMap.put(state(2), action(1), new Quality(3.0));
+    scheduler.checkpoint();
+
+    assertThat(directory.toFile().list().length, is(2));
+    assertThat(rowsIn(directory.toFile().listFiles()[0].toPath())
+        + rowsIn(directory.toFile().listFiles()[1].toPath()), is(2L));
+    QualityHashMap restored = restore();
+    assertThat(restored.get(state(1), action(0)), is(new Quality(1.0)));
+    assertThat(restored.get(state(1), action(1)), is(new Quality(2.0)));
+    assertThat(restored.get(state(2), action(1)), is(new Quality(3.0)));
+  }
+
+  @Test
+  public void continuesNumberingAfterReopening() throws IOException {
+    qualityMap.put(state(1), action(1), new Quality(1.0));
+    scheduler.close();
+
+    scheduler = new CheckpointScheduler(qualityMap, directory, STATE_CODEC, ACTION_CODEC, 1,
+        TimeUnit.HOURS, 3);
+    qualityMap.put(state(1), action(1), new Quality(2.0));
+    scheduler.close();
+
+    assertThat(restore().get(state(1), action(1)), is(new Quality(2.0)));
+  }
+}
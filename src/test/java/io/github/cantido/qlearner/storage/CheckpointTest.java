@@ -0,0 +1,103 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import static io.github.cantido.qlearner.storage.NumberedStates.ACTION_CODEC;
+import static io.github.cantido.qlearner.storage.NumberedStates.STATE_CODEC;
+import static io.github.cantido.qlearner.storage.NumberedStates.action;
+import static io.github.cantido.qlearner.storage.NumberedStates.state;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.quality.QualityHashMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+@SuppressWarnings({"null", "javadoc"})
+public class CheckpointTest {
+  QualityHashMap source;
+
+  @Before
+  public void setUp() {
+    source = new QualityHashMap();
+    source.setDefaultQuality(new Quality(-5.0));
+    for (int state = 0; state < 5_000; state++) {
+      for (int action = 0; action < 4; action++) {
+        source.put(state(state), action(action), new Quality(state * 4 + action));
+      }
+    }
+  }
+
+  private byte[] write(QualityHashMap qualityMap) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (CheckpointWriter writer = new CheckpointWriter(Channels.newChannel(bytes), STATE_CODEC,
+        ACTION_CODEC, qualityMap.getDefaultQuality())) {
+      writer.writeAll(qualityMap, qualityMap.getStates());
+    }
+    return bytes.toByteArray();
+  }
+
+  private CheckpointReader reader(byte[] checkpoint) throws IOException {
+    return new CheckpointReader(Channels.newChannel(new ByteArrayInputStream(checkpoint)),
+        STATE_CODEC, ACTION_CODEC);
+  }
+
+  @Test
+  public void restoresEveryValue() throws IOException {
+    QualityHashMap restored = new QualityHashMap();
+    try (CheckpointReader reader = reader(write(source))) {
+      restored.setDefaultQuality(reader.getDefaultQuality());
+      reader.readAll(restored);
+      assertThat(reader.getRowsRead(), is(5_000L));
+    }
+
+    assertThat(restored.getDefaultQuality(), is(new Quality(-5.0)));
+    assertThat(restored.getStates().size(), is(5_000));
+    assertThat(restored.get(state(1234), action(3)), is(new Quality(1234 * 4 + 3)));
+    assertThat(restored.getBestQuality(state(4999)), is(new Quality(4999 * 4 + 3)));
+  }
+
+  @Test
+  public void restoresEmptyMap() throws IOException {
+    QualityHashMap restored = new QualityHashMap();
+    try (CheckpointReader reader = reader(write(new QualityHashMap()))) {
+      reader.readAll(restored);
+    }
+
+    assertThat(restored.getStates().isEmpty(), is(true));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsCorruptBlocks() throws IOException {
+    byte[] checkpoint = write(source);
+    checkpoint[checkpoint.length / 2] ^= 0x10;
+
+    try (CheckpointReader reader = reader(checkpoint)) {
+      reader.readAll(new QualityHashMap());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsOtherFiles() throws IOException {
+    reader(new byte[32]).close();
+  }
+}
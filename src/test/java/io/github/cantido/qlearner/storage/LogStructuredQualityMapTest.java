@@ -0,0 +1,114 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import static io.github.cantido.qlearner.storage.NumberedStates.ACTION_CODEC;
+import static io.github.cantido.qlearner.storage.NumberedStates.STATE_CODEC;
+import static io.github.cantido.qlearner.storage.NumberedStates.action;
+import static io.github.cantido.qlearner.storage.NumberedStates.state;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+@SuppressWarnings({"null", "javadoc"})
+public class LogStructuredQualityMapTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  LogStructuredQualityMap map;
+  Quality lowQuality = new Quality(-1.0);
+  Quality highQuality = new Quality(1.0);
+
+  @Before
+  public void setUp() throws IOException {
+    map = open();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    map.close();
+  }
+
+  private LogStructuredQualityMap open() throws IOException {
+    return new LogStructuredQualityMap(folder.getRoot().toPath(), STATE_CODEC, ACTION_CODEC,
+        4096, 2);
+  }
+
+  @Test
+  public void returnsDefaultQualityWhenEmpty() {
+    assertThat(map.get(state(1), action(1)), is(map.getDefaultQuality()));
+    assertThat(map.getBestQuality(state(1)), is(map.getDefaultQuality()));
+  }
+
+  @Test
+  public void storesQuality() {
+    map.put(state(1), action(1), highQuality);
+
+    assertThat(map.get(state(1), action(1)), is(highQuality));
+  }
+
+  @Test
+  public void getsHighestQualityForBest() {
+    map.put(state(1), action(0), lowQuality);
+    map.put(state(1), action(1), highQuality);
+    map.put(state(2), action(2), new Quality(5.0));
+
+    assertThat(map.getBestQuality(state(1)), is(highQuality));
+  }
+
+  @Test
+  public void newestValueWinsAcrossSegments() throws IOException {
+    for (int i = 0; i < 10_000; i++) {
+      map.put(state(i % 500), action(i % 3), new Quality(i));
+    }
+    map.flush();
+
+    assertThat(map.get(state(499), action(0)), is(new Quality(9_999)));
+    assertThat(map.get(state(0), action(0)), is(new Quality(9_000)));
+  }
+
+  @Test
+  public void compactsSegments() throws IOException, InterruptedException {
+    for (int i = 0; i < 20_000; i++) {
+      map.put(state(i % 1_000), action(0), new Quality(i));
+    }
+    map.close();
+    map = open();
+
+    assertThat(map.getSegmentCount(), lessThan(20));
+    assertThat(map.get(state(999), action(0)), is(new Quality(19_999)));
+  }
+
+  @Test
+  public void survivesReopening() throws IOException {
+    map.put(state(1), action(1), highQuality);
+    map.put(state(1), action(2), lowQuality);
+    map.close();
+    map = open();
+
+    assertThat(map.get(state(1), action(1)), is(highQuality));
+    assertThat(map.getRow(state(1)).size(), is(2));
+  }
+}
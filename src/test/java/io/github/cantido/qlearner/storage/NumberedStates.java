@@ -0,0 +1,138 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import io.github.cantido.qlearner.algorithm.model.Reward;
+import io.github.cantido.qlearner.client.Action;
+import io.github.cantido.qlearner.client.State;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Simple {@link State}s and {@link Action}s identified by a number, along with {@link Codec}s
+ * for them, for testing the storage classes.
+ */
+@SuppressWarnings({"null", "javadoc"})
+public final class NumberedStates {
+  public static final Set<Action> ACTIONS = Collections.unmodifiableSet(
+      new HashSet<>(Arrays.asList(new NumberedAction(0), new NumberedAction(1),
+          new NumberedAction(2))));
+
+  public static final Codec<State> STATE_CODEC = new Codec<State>() {
+    @Override
+    public void write(State value, DataOutput output) throws IOException {
+      output.writeInt(((NumberedState) value).number);
+    }
+
+    @Override
+    public State read(DataInput input) throws IOException {
+      return new NumberedState(input.readInt());
+    }
+  };
+
+  public static final Codec<Action> ACTION_CODEC = new Codec<Action>() {
+    @Override
+    public void write(Action value, DataOutput output) throws IOException {
+      output.writeInt(((NumberedAction) value).number);
+    }
+
+    @Override
+    public Action read(DataInput input) throws IOException {
+      return new NumberedAction(input.readInt());
+    }
+  };
+
+  private NumberedStates() {
+    throw new AssertionError("NumberedStates is a utility class and should not be instantiated");
+  }
+
+  public static State state(int number) {
+    return new NumberedState(number);
+  }
+
+  public static Action action(int number) {
+    return new NumberedAction(number);
+  }
+
+  private static final class NumberedState extends State {
+    private final int number;
+
+    private NumberedState(int number) {
+      this.number = number;
+    }
+
+    @Override
+    public Reward getReward() {
+      return new Reward(0);
+    }
+
+    @Override
+    public Set<Action> getActions() {
+      return ACTIONS;
+    }
+
+    @Override
+    public int hashCode() {
+      return number;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      return obj instanceof NumberedState && ((NumberedState) obj).number == number;
+    }
+
+    @Override
+    public String toString() {
+      return "NumberedState[" + number + "]";
+    }
+  }
+
+  private static final class NumberedAction extends Action {
+    private final int number;
+
+    private NumberedAction(int number) {
+      this.number = number;
+    }
+
+    @Override
+    public void run() {
+      // Nothing to do
+    }
+
+    @Override
+    public int hashCode() {
+      return number;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      return obj instanceof NumberedAction && ((NumberedAction) obj).number == number;
+    }
+
+    @Override
+    public String toString() {
+      return "NumberedAction[" + number + "]";
+    }
+  }
+}
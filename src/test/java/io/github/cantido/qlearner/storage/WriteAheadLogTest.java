@@ -0,0 +1,133 @@
+/*
+ * This file is part of QLearner.
+ *
+ * QLearner is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QLearner is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with QLearner. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.cantido.qlearner.storage;
+
+import static io.github.cantido.qlearner.storage.NumberedStates.ACTION_CODEC;
+import static io.github.cantido.qlearner.storage.NumberedStates.STATE_CODEC;
+import static io.github.cantido.qlearner.storage.NumberedStates.action;
+import static io.github.cantido.qlearner.storage.NumberedStates.state;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.github.cantido.qlearner.algorithm.model.Quality;
+import io.github.cantido.qlearner.algorithm.quality.QualityHashMap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@SuppressWarnings({"null", "javadoc"})
+public class WriteAheadLogTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  Path directory;
+
+  @Before
+  public void setUp() {
+    directory = folder.getRoot().toPath();
+  }
+
+  private WriteAheadLog open(FsyncPolicy policy) throws IOException {
+    return new WriteAheadLog(directory, STATE_CODEC, ACTION_CODEC, policy, 4096, 1,
+        TimeUnit.HOURS);
+  }
+
+  private QualityHashMap replay() throws IOException {
+    QualityHashMap replayed = new QualityHashMap();
+    WriteAheadLog.replay(directory, replayed, STATE_CODEC, ACTION_CODEC);
+    return replayed;
+  }
+
+  @Test
+  public void replaysLatestValues() throws IOException {
+    try (WriteAheadLog log = open(FsyncPolicy.BATCHED)) {
+      log.append(state(1), action(1), new Quality(1.0));
+      log.append(state(1), action(1), new Quality(2.0));
+      log.append(state(2), action(3), new Quality(3.0));
+    }
+
+    QualityHashMap replayed = replay();
+    assertThat(replayed.get(state(1), action(1)), is(new Quality(2.0)));
+    assertThat(replayed.get(state(2), action(3)), is(new Quality(3.0)));
+  }
+
+  @Test
+  public void replaysAcrossSegments() throws IOException {
+    try (WriteAheadLog log = open(FsyncPolicy.NEVER)) {
+      for (int i = 0; i < 2_000; i++) {
+        log.append(state(i), action(i % 4), new Quality(i));
+      }
+    }
+
+    assertThat(directory.toFile().list().length, is(greaterThan(1)));
+    QualityHashMap replayed = replay();
+    for (int i = 0; i < 2_000; i++) {
+      assertThat(replayed.get(state(i), action(i % 4)), is(new Quality(i)));
+    }
+  }
+
+  @Test
+  public void dropsUncommittedUpdates() throws IOException {
+    WriteAheadLog log = open(FsyncPolicy.NEVER);
+    log.append(state(1), action(1), new Quality(1.0));
+    log.sync();
+    log.append(state(2), action(2), new Quality(2.0));
+
+    QualityHashMap replayed = replay();
+    assertThat(replayed.get(state(1), action(1)), is(new Quality(1.0)));
+    assertThat(replayed.get(state(2), action(2)), is(replayed.getDefaultQuality()));
+    log.close();
+  }
+
+  @Test
+  public void dropsCommitsThatFailTheirChecksum() throws IOException {
+    try (WriteAheadLog log = open(FsyncPolicy.EVERY_UPDATE)) {
+      log.append(state(1), action(1), new Quality(1.0));
+      log.append(state(1), action(2), new Quality(2.0));
+    }
+    try (RandomAccessFile segment =
+        new RandomAccessFile(directory.toFile().listFiles()[0], "rw")) {
+      // Inside the value of the second update, after the first commit.
+      segment.seek(55);
+      segment.write(0x7F);
+    }
+
+    QualityHashMap replayed = replay();
+    assertThat(replayed.get(state(1), action(1)), is(new Quality(1.0)));
+    assertThat(replayed.get(state(1), action(2)), is(replayed.getDefaultQuality()));
+  }
+
+  @Test
+  public void deletesOldSegments() throws IOException {
+    try (WriteAheadLog log = open(FsyncPolicy.NEVER)) {
+      log.append(state(1), action(1), new Quality(1.0));
+      long first = log.roll();
+      log.append(state(2), action(2), new Quality(2.0));
+      log.deleteSegmentsBefore(first);
+    }
+
+    QualityHashMap replayed = replay();
+    assertThat(replayed.get(state(1), action(1)), is(replayed.getDefaultQuality()));
+    assertThat(replayed.get(state(2), action(2)), is(new Quality(2.0)));
+  }
+}